@@ -133,6 +133,20 @@ tasks.withType<Test> {
     useJUnitPlatform()
 }
 
+// Measure time and allocation of metrics-lib parsing, e.g.
+// ./gradlew descriptorBenchmark --args="FILE..." or
+// ./gradlew descriptorBenchmark -Pbenchmark=impl.ParseHelperBenchmark
+tasks.register<JavaExec>("descriptorBenchmark") {
+    group = "verification"
+    description = "Runs a benchmark from the metrics-lib test sources."
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("org.torproject.descriptor." +
+        (project.findProperty("benchmark") ?: "benchmark.DescriptorParserBenchmark"))
+    listOf("benchmark.warmups", "benchmark.iterations").forEach { name ->
+        project.findProperty(name)?.let { systemProperty(name, it) }
+    }
+}
+
 // Configure docker build and push
 jib {
     to {
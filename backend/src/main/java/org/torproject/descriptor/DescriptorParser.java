@@ -26,6 +26,12 @@ public interface DescriptorParser {
    * Parse descriptors in the given byte array and return the parsed/unparseable
    * descriptors.
    *
+   * <p>Files containing more than one descriptor are split and parsed one
+   * descriptor at a time while iterating over the returned descriptors, so
+   * that descriptors can be processed and discarded before the next ones are
+   * parsed.  Iterating over the returned descriptors more than once parses
+   * them again.</p>
+   *
    * @param rawDescriptorBytes Raw descriptor bytes containing one or more
    *     descriptors
    * @param sourceFile Optional descriptor source file reference, e.g., the name
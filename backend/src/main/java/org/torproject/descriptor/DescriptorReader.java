@@ -4,6 +4,7 @@
 package org.torproject.descriptor;
 
 import java.io.File;
+import java.util.Set;
 import java.util.SortedMap;
 
 /**
@@ -104,6 +105,75 @@ public interface DescriptorReader {
    */
   void setMaxDescriptorsInQueue(int maxDescriptorsInQueue);
 
+  /**
+   * Don't keep descriptors in the queue that take up more than this
+   * estimated number of bytes on the heap together (default: no limit).
+   *
+   * <p>The heap size of a descriptor is estimated from its raw descriptor
+   * length plus the typical overhead of parsed descriptor objects.  A
+   * single descriptor that exceeds this limit on its own is still queued,
+   * but only when the queue is otherwise empty.  The maximum number of
+   * descriptors in the queue still applies in addition to this limit.</p>
+   *
+   * @param maxBytesInQueue Maximum estimated number of bytes in the queue.
+   */
+  void setMaxBytesInQueue(long maxBytesInQueue);
+
+  /**
+   * Read and parse up to this number of files or tarballs concurrently
+   * (default: 1).
+   *
+   * <p>Descriptors are still returned file by file, in the order in which
+   * files are found, with all descriptors of a file or tarball returned
+   * together.  Every additional thread can keep a share of the configured
+   * maximum number of descriptors in its own queue while waiting for
+   * earlier files to be consumed.</p>
+   *
+   * <p>This setting also controls whether tarball entries are parsed while
+   * further entries are being decompressed, for which there is no separate
+   * setting.  With a single thread, each tarball entry is decompressed and
+   * parsed on the same thread before the next entry is decompressed.  With
+   * more than one thread, entries of tarballs are parsed by the same number
+   * of additional threads, and up to two entries per thread are
+   * decompressed ahead.  Either way, entries are returned in the order in
+   * which they are contained in the tarball.</p>
+   *
+   * @param readerThreads Number of files to read concurrently.
+   */
+  void setReaderThreads(int readerThreads);
+
+  /**
+   * Parse status entries in consensuses lazily (default: false).
+   *
+   * <p>Only the r and s lines of status entries are parsed while reading,
+   * which contain nickname, fingerprint, address, ports, and flags.  All
+   * other lines are parsed when any of their fields is requested for the
+   * first time.  Consensuses with invalid lines of that kind are therefore
+   * not returned as unparseable descriptors, but methods returning fields
+   * from those lines throw an {@link IllegalStateException}.</p>
+   *
+   * @param lazyStatusEntries Whether to parse status entries lazily.
+   */
+  void setLazyStatusEntries(boolean lazyStatusEntries);
+
+  /**
+   * Only parse lines with the given keywords in descriptors of the given
+   * type, and skip all other lines with known keywords.
+   *
+   * <p>Projections are currently supported for server descriptors, where
+   * the router line is always parsed.  Checks of how often each keyword may
+   * occur still include skipped lines, but fields contained in skipped lines
+   * are left unset as if those lines were missing.</p>
+   *
+   * @param descriptorType Descriptor type, e.g., {@link ServerDescriptor} or
+   *     a subtype of it.
+   * @param keywords Keywords of lines to parse.
+   * @throws IllegalArgumentException If the descriptor type does not
+   *     support projections, or if a keyword is not known.
+   */
+  void setProjection(Class<? extends Descriptor> descriptorType,
+      Set<String> keywords);
+
   /**
    * Read descriptors from the given descriptor file(s) and return the parsed
    * descriptors.
@@ -120,5 +190,41 @@ public interface DescriptorReader {
    * @since 1.9.0
    */
   Iterable<Descriptor> readDescriptors(File... descriptorFiles);
+
+  /**
+   * Return the number of descriptors that have been read and are waiting
+   * in the queue to be returned, or 0 if the queue has been cancelled.
+   *
+   * <p>A queue depth close to the maximum number of descriptors in the
+   * queue indicates that descriptors are read faster than they are
+   * processed.</p>
+   *
+   * @return Number of queued descriptors.
+   * @throws IllegalStateException If reading has not started yet.
+   */
+  int getQueueDepth();
+
+  /**
+   * Return the total number of milliseconds that reading has been blocked
+   * so far, because the queue was full.
+   *
+   * <p>With more than one reader thread, this only includes the time that
+   * the thread forwarding descriptors from file queues to the queue
+   * returned by {@link #readDescriptors} was blocked.</p>
+   *
+   * @return Milliseconds spent waiting for room in the queue.
+   * @throws IllegalStateException If reading has not started yet.
+   */
+  long getProducerStallMillis();
+
+  /**
+   * Return the total number of milliseconds that the caller iterating over
+   * descriptors has been blocked so far, because no descriptors were
+   * available yet.
+   *
+   * @return Milliseconds spent waiting for descriptors.
+   * @throws IllegalStateException If reading has not started yet.
+   */
+  long getConsumerStallMillis();
 }
 
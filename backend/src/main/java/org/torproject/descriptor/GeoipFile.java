@@ -27,5 +27,32 @@ public interface GeoipFile extends Descriptor {
 
   List<GeoipEntry> getEntries();
 
+  /**
+   * Look up the entry containing the given address, or return an empty
+   * {@link Optional} if no entry contains it.
+   *
+   * <p>IPv4 addresses are only looked up in entries with IPv4 start and end
+   * addresses, and IPv6 addresses only in entries with IPv6 start and end
+   * addresses.  Looking up an address of the other family than all entries,
+   * like an IPv6 address in Tor's IPv4-only geoip file, returns an empty
+   * {@link Optional}.  Note that {@link InetAddress#getByName} returns
+   * IPv4-mapped IPv6 addresses like {@code ::ffff:1.2.3.4} as IPv4
+   * addresses.</p>
+   */
   Optional<GeoipEntry> getEntry(InetAddress forAddress);
+
+  /**
+   * Look up the entry containing the given IPv4 address, given as 32-bit
+   * integer with the first octet in the most significant byte, without
+   * creating an {@link InetAddress} first, which is useful for looking up
+   * many addresses in bulk.
+   */
+  Optional<GeoipEntry> getEntry(int ipv4Address);
+
+  /**
+   * Look up the entry containing the given IPv6 address, given as its upper
+   * and lower 64 bits, without creating an {@link InetAddress} first, which
+   * is useful for looking up many addresses in bulk.
+   */
+  Optional<GeoipEntry> getEntry(long ipv6AddressHigh, long ipv6AddressLow);
 }
\ No newline at end of file
@@ -66,6 +66,13 @@ public interface WebServerAccessLog extends LogDescriptor {
   /**
    * Returns a stream of all valid log lines.
    *
+   * <p>Log lines are read while the stream is being consumed.  Errors while
+   * reading them are thrown as {@link java.io.UncheckedIOException} from the
+   * stream's terminal operation rather than as
+   * {@link DescriptorParseException} from this method, which is only thrown
+   * if the log cannot be decompressed at all.  The stream should be closed
+   * after use.</p>
+   *
    * @since 2.3.0
    */
   @Override
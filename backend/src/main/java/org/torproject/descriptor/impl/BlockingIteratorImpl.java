@@ -3,72 +3,326 @@
 
 package org.torproject.descriptor.impl;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.NoSuchElementException;
-import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
 
-/* Provide an iterator for a queue of objects and block when there are
- * currently no objects in the queue.  Allow the producer to signal that
- * there won't be further objects and unblock any waiting consumers. */
+/* Provide an iterator for a bounded queue of objects and block when there
+ * are currently no objects in the queue.  Allow the producer to signal that
+ * there won't be further objects and unblock any waiting consumers.
+ *
+ * Objects may be added by several producer threads but are meant to be
+ * consumed by a single thread, which takes all objects that are available
+ * at once into a local batch, so that producers and the consumer only
+ * contend for the queue once per batch rather than once per object.
+ *
+ * Optionally, the queue also limits the total weight of objects, which are
+ * weighed when they are added and again when they are returned to the
+ * consumer.  An object that exceeds the limit on its own is only admitted
+ * when there are no other objects in the queue.
+ *
+ * Either side can cancel the queue: a consumer by calling cancel() or by
+ * being interrupted while waiting, and a producer by being interrupted
+ * while waiting.  Afterwards, adding and taking objects fails with a
+ * CancellationException.
+ *
+ * The queue is an ArrayBlockingQueue, which guards its array with a single
+ * lock.  Lock-free queues like ConcurrentLinkedQueue are unbounded and
+ * leave it to callers to park and signal waiting threads, which is exactly
+ * what ArrayBlockingQueue's conditions do.  Batching already takes the lock
+ * only once per batch on the consumer side, so a lock-free queue would
+ * save little.  Waiting threads are only woken up by being signalled:
+ * cancelling clears the queue, which signals waiting producers, and adds a
+ * marker object, which signals the waiting consumer. */
 public class BlockingIteratorImpl<T> implements Iterator<T>, Iterable<T> {
 
-  /* Queue containing produced elemnts waiting for consumers. */
-  private Queue<T> queue = new LinkedList<>();
+  private static final Logger logger = LoggerFactory.getLogger(
+      BlockingIteratorImpl.class);
+
+  /* Object following the last produced object in the queue. */
+  private static final Object END_OF_STREAM = new Object();
+
+  /* Object added when cancelling the queue to wake up a waiting
+   * consumer. */
+  private static final Object CANCELLED = new Object();
+
+  /* Queue containing produced elements waiting for consumers. */
+  private final BlockingQueue<Object> queue;
+
+  /* Maximum number of elements taken from the queue at once, which is a
+   * quarter of the maximum number of elements that are queued or in the
+   * consumer's batch together. */
+  private final int maxBatchSize;
+
+  /* Elements taken from the queue but not yet returned to the consumer. */
+  private final ArrayDeque<Object> batch = new ArrayDeque<>();
+
+  /* Whether the consumer has taken the end-of-stream object. */
+  private boolean reachedEndOfStream = false;
+
+  private volatile boolean outOfDescriptors = false;
+
+  private volatile boolean cancelled = false;
 
-  /* Maximum number of elements in queue. */
-  private int maxQueueSize = 100;
+  /* Maximum total weight of elements that are queued or in the consumer's
+   * batch, and function to determine the weight of an element, or null if
+   * elements are not weighed. */
+  private final long maxQueuedWeight;
+
+  private final ToLongFunction<? super T> weigher;
+
+  /* Total weight of elements that are queued or in the consumer's batch. */
+  private final AtomicLong queuedWeight = new AtomicLong();
+
+  /* Lock and condition for producers waiting for the total weight to go
+   * down, and number of waiting producers. */
+  private final ReentrantLock weightLock = new ReentrantLock();
+
+  private final Condition weightReleased = this.weightLock.newCondition();
+
+  private volatile int producersAwaitingWeight = 0;
+
+  /* Number of elements that have been added but not yet returned to the
+   * consumer. */
+  private final LongAdder queuedElements = new LongAdder();
+
+  /* Nanoseconds producers spent waiting for room in the queue. */
+  private final LongAdder producerStallNanos = new LongAdder();
+
+  /* Nanoseconds the consumer spent waiting for elements. */
+  private final LongAdder consumerStallNanos = new LongAdder();
 
   /* Create instance with maximum queue size. */
   protected BlockingIteratorImpl(Integer maxQueueSize) {
-    if (null != maxQueueSize) {
-      this.maxQueueSize = maxQueueSize;
-    }
+    this(maxQueueSize, Long.MAX_VALUE, null);
   }
 
-  /* Add an object to the queue if there's still room. */
-  protected synchronized void add(T object) {
+  /* Create instance with maximum queue size and maximum total weight of
+   * queued elements as determined by the given weigher. */
+  protected BlockingIteratorImpl(Integer maxQueueSize, long maxQueuedWeight,
+      ToLongFunction<? super T> weigher) {
+    this.maxQueuedWeight = maxQueuedWeight;
+    this.weigher = weigher;
+    int maxElements = null == maxQueueSize ? 100 : maxQueueSize;
+    this.maxBatchSize = Math.max(1, maxElements / 4);
+    this.queue = new ArrayBlockingQueue<>(Math.max(1,
+        maxElements - this.maxBatchSize));
+  }
+
+  /* Add an object to the queue, and wait until there's room if necessary.
+   * Throw a CancellationException if the queue has been cancelled before
+   * or while waiting. */
+  protected void add(T object) {
     if (this.outOfDescriptors) {
       throw new IllegalStateException("Internal error: Adding results to "
           + "descriptor queue not allowed after sending end-of-stream "
           + "object.");
     }
-    while (this.queue.size() >= this.maxQueueSize) {
+    if (null != this.weigher) {
+      this.reserveWeight(this.weigher.applyAsLong(object));
+    }
+    this.put(object);
+    this.queuedElements.increment();
+  }
+
+  /* Add the given weight to the total weight of queued elements, and wait
+   * until the total weight is low enough if necessary. */
+  private void reserveWeight(long weight) {
+    long started = 0L;
+    try {
+      while (true) {
+        long queued = this.queuedWeight.get();
+        if (queued == 0L || queued + weight <= this.maxQueuedWeight) {
+          if (this.queuedWeight.compareAndSet(queued, queued + weight)) {
+            return;
+          }
+          continue;
+        }
+        if (this.cancelled) {
+          throw new CancellationException("Descriptor queue was "
+              + "cancelled.");
+        }
+        if (0L == started) {
+          started = System.nanoTime();
+        }
+        this.weightLock.lockInterruptibly();
+        try {
+          this.producersAwaitingWeight++;
+          if (!this.cancelled && this.queuedWeight.get() == queued) {
+            this.weightReleased.await();
+          }
+        } finally {
+          this.producersAwaitingWeight--;
+          this.weightLock.unlock();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      this.cancel();
+      throw new CancellationException("Interrupted while adding to "
+          + "descriptor queue.");
+    } finally {
+      if (0L != started) {
+        this.producerStallNanos.add(System.nanoTime() - started);
+      }
+    }
+  }
+
+  /* Subtract the weight of an element returned to the consumer from the
+   * total weight of queued elements, and wake up waiting producers. */
+  private void releaseWeight(T object) {
+    this.queuedWeight.addAndGet(-this.weigher.applyAsLong(object));
+    if (this.producersAwaitingWeight > 0) {
+      this.weightLock.lock();
       try {
-        wait();
-      } catch (InterruptedException e) {
-        /* nothing to be done */
+        this.weightReleased.signalAll();
+      } finally {
+        this.weightLock.unlock();
       }
     }
-    this.queue.offer(object);
-    notifyAll();
   }
 
-  /* Signalize that there won't be any further objects to be enqueued. */
-  private boolean outOfDescriptors = false;
+  private void put(Object object) {
+    if (this.cancelled) {
+      throw new CancellationException("Descriptor queue was cancelled.");
+    }
+    if (!this.queue.offer(object)) {
+      long started = System.nanoTime();
+      try {
+        this.queue.put(object);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.cancel();
+        throw new CancellationException("Interrupted while adding to "
+            + "descriptor queue.");
+      } finally {
+        this.producerStallNanos.add(System.nanoTime() - started);
+      }
+    }
+    if (this.cancelled) {
+      /* The queue was cancelled while or right before adding the object.
+       * Discard it, which also wakes up the next producer that is still
+       * waiting for room in the queue and that will do the same. */
+      this.queue.clear();
+      throw new CancellationException("Descriptor queue was cancelled.");
+    }
+  }
 
-  protected synchronized void setOutOfDescriptors() {
+  /* Signalize that there won't be any further objects to be enqueued.
+   * Wait until there's room for the end-of-stream object if necessary, but
+   * return silently if the queue has been cancelled. */
+  protected void setOutOfDescriptors() {
     if (this.outOfDescriptors) {
       throw new IllegalStateException("Internal error: Sending "
           + "end-of-stream object only permitted once.");
     }
     this.outOfDescriptors = true;
-    notifyAll();
+    try {
+      this.put(END_OF_STREAM);
+    } catch (CancellationException e) {
+      /* Nobody is waiting for further objects anymore. */
+    }
   }
 
-  /* Return whether there are more objects.  Block if there are currently
-   * no objects, but the producer hasn't signalized that there won't be
-   * further objects. */
-  @Override
-  public synchronized boolean hasNext() {
-    while (!this.outOfDescriptors && this.queue.isEmpty()) {
+  /* Stop producing and consuming objects and discard all queued objects.
+   * A consumer that has no further use for remaining objects should call
+   * this to make producers stop early. */
+  public void cancel() {
+    this.cancelled = true;
+    this.queue.clear();
+    this.queue.offer(CANCELLED);
+    if (null != this.weigher) {
+      this.weightLock.lock();
       try {
-        wait();
+        this.weightReleased.signalAll();
+      } finally {
+        this.weightLock.unlock();
+      }
+    }
+  }
+
+  /* Return whether the queue has been cancelled. */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /* Return the number of elements that have been added but not yet
+   * returned to the consumer, or 0 if the queue has been cancelled.  The
+   * consumer may return an element before its producer has counted it, so
+   * the number can be lower than the actual number for a moment. */
+  int getQueueDepth() {
+    return this.cancelled ? 0 : Math.max(0, this.queuedElements.intValue());
+  }
+
+  /* Return the milliseconds producers spent waiting for room in the queue
+   * so far, not including waits that are still in progress. */
+  long getProducerStallMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(this.producerStallNanos.sum());
+  }
+
+  /* Return the milliseconds the consumer spent waiting for elements so
+   * far, not including a wait that is still in progress. */
+  long getConsumerStallMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(this.consumerStallNanos.sum());
+  }
+
+  /* Make sure that the local batch contains at least one element, which
+   * may be the end-of-stream object, unless the end of stream has been
+   * reached.  Take all elements that are available at once, and wait for
+   * elements if there are none. */
+  private void fillBatch() {
+    if (!this.batch.isEmpty() || this.reachedEndOfStream) {
+      return;
+    }
+    if (this.cancelled) {
+      throw new CancellationException("Descriptor queue was cancelled.");
+    }
+    if (this.queue.drainTo(this.batch, this.maxBatchSize) == 0) {
+      long started = System.nanoTime();
+      try {
+        this.batch.add(this.queue.take());
       } catch (InterruptedException e) {
-        /* nothing to be done */
+        Thread.currentThread().interrupt();
+        this.cancel();
+        throw new CancellationException("Interrupted while waiting for "
+            + "descriptors.");
+      } finally {
+        this.consumerStallNanos.add(System.nanoTime() - started);
       }
+      this.queue.drainTo(this.batch, this.maxBatchSize - 1);
+    }
+    if (this.cancelled) {
+      this.batch.clear();
+      throw new CancellationException("Descriptor queue was cancelled.");
+    }
+    if (this.batch.peekLast() == END_OF_STREAM) {
+      this.reachedEndOfStream = true;
+      logger.debug("Reached end of descriptor queue.  Producers waited {} ms "
+          + "for room in the queue, and the consumer waited {} ms for "
+          + "descriptors.",
+          this.getProducerStallMillis(), this.getConsumerStallMillis());
     }
-    return this.queue.peek() != null;
+  }
+
+  /* Return whether there are more objects.  Block if there are currently
+   * no objects, but the producer hasn't signalized that there won't be
+   * further objects. */
+  @Override
+  public boolean hasNext() {
+    this.fillBatch();
+    return !this.batch.isEmpty() && this.batch.peekFirst() != END_OF_STREAM;
   }
 
   /* Return the next object in the queue or throw an exception when there
@@ -76,19 +330,17 @@ public class BlockingIteratorImpl<T> implements Iterator<T>, Iterable<T> {
    * the producer hasn't signalized that there won't be further
    * objects. */
   @Override
-  public synchronized T next() {
-    while (!this.outOfDescriptors && this.queue.isEmpty()) {
-      try {
-        wait();
-      } catch (InterruptedException e) {
-        /* nothing to be done */
-      }
-    }
-    if (this.queue.peek() == null) {
+  @SuppressWarnings("unchecked")
+  public T next() {
+    if (!this.hasNext()) {
       throw new NoSuchElementException();
     }
-    notifyAll();
-    return this.queue.remove();
+    T object = (T) this.batch.removeFirst();
+    this.queuedElements.decrement();
+    if (null != this.weigher) {
+      this.releaseWeight(object);
+    }
+    return object;
   }
 
   /* Don't support explicitly removing objects.  They are removed
@@ -103,4 +355,3 @@ public class BlockingIteratorImpl<T> implements Iterator<T>, Iterable<T> {
     return this;
   }
 }
-
@@ -7,6 +7,7 @@ import org.torproject.descriptor.BridgeServerDescriptor;
 import org.torproject.descriptor.DescriptorParseException;
 
 import java.io.File;
+import java.util.Set;
 
 public class BridgeServerDescriptorImpl extends ServerDescriptorImpl
     implements BridgeServerDescriptor {
@@ -16,7 +17,13 @@ public class BridgeServerDescriptorImpl extends ServerDescriptorImpl
   protected BridgeServerDescriptorImpl(byte[] rawDescriptorBytes,
       int[] offsetAndLength, File descriptorFile)
       throws DescriptorParseException {
-    super(rawDescriptorBytes, offsetAndLength, descriptorFile);
+    this(rawDescriptorBytes, offsetAndLength, descriptorFile, null);
+  }
+
+  protected BridgeServerDescriptorImpl(byte[] rawDescriptorBytes,
+      int[] offsetAndLength, File descriptorFile, Set<Key> projection)
+      throws DescriptorParseException {
+    super(rawDescriptorBytes, offsetAndLength, descriptorFile, projection);
   }
 }
 
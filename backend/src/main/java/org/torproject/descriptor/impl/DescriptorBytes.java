@@ -0,0 +1,127 @@
+/* Copyright 2012--2020 The Tor Project
+ * See LICENSE for licensing information */
+
+package org.torproject.descriptor.impl;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Search raw descriptor bytes for ASCII tokens without decoding them into
+ * strings first.
+ *
+ * <p>All methods operate on the range of a byte array from index
+ * {@code from} (inclusive) to {@code to} (exclusive) and return absolute
+ * indexes into the array.  Results are the same as searching a string
+ * decoded from that range using US-ASCII, because every byte is decoded to
+ * exactly one character, and bytes outside of the ASCII range are decoded to
+ * a replacement character that never matches an ASCII token.</p>
+ */
+final class DescriptorBytes {
+
+  static final byte NL = '\n';
+
+  static final byte SP = ' ';
+
+  private DescriptorBytes() {
+  }
+
+  /** Return the bytes of the given ASCII token. */
+  static byte[] ascii(String token) {
+    return token.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Return whether the given token is contained at index {@code at} without
+   * exceeding index {@code to}.
+   */
+  static boolean regionMatches(byte[] bytes, int at, int to, byte[] token) {
+    if (at < 0 || at + token.length > to) {
+      return false;
+    }
+    for (int i = 0; i < token.length; i++) {
+      if (bytes[at + i] != token[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return the index of the first occurrence of the given token starting at
+   * or after index {@code from} and ending at or before index {@code to}, or
+   * -1 if there is none.
+   */
+  static int indexOf(byte[] bytes, int from, int to, byte[] token) {
+    if (token.length == 0) {
+      return Math.max(from, 0) <= to ? Math.max(from, 0) : -1;
+    }
+    byte first = token[0];
+    int last = to - token.length;
+    for (int i = Math.max(from, 0); i <= last; i++) {
+      if (bytes[i] == first && regionMatches(bytes, i, to, token)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Return whether a line starting with the given keyword followed by the
+   * given separator begins at index {@code at}.
+   */
+  static boolean isKeywordAt(byte[] bytes, int at, int to, byte[] keyword,
+      byte separator) {
+    return at + keyword.length < to && bytes[at + keyword.length] == separator
+        && regionMatches(bytes, at, to, keyword);
+  }
+
+  /**
+   * Return the index of the first newline starting at or after index
+   * {@code from} that is followed by the given keyword and the given
+   * separator, all ending at or before index {@code to}, or -1 if there is
+   * none.
+   *
+   * <p>This is equivalent to searching for the string consisting of a
+   * newline, the keyword, and the separator.</p>
+   */
+  static int indexOfNewlineKeyword(byte[] bytes, int from, int to,
+      byte[] keyword, byte separator) {
+    int last = to - keyword.length - 2;
+    for (int i = Math.max(from, 0); i <= last; i++) {
+      if (bytes[i] == NL && isKeywordAt(bytes, i + 1, to, keyword,
+          separator)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Return the index of the first newline starting at or after index
+   * {@code from} that is followed by the given keyword and a space, or, only
+   * if there is none, by the given keyword and a newline, or -1 if there is
+   * neither.
+   */
+  static int indexOfNewlineKeyword(byte[] bytes, int from, int to,
+      byte[] keyword) {
+    int index = indexOfNewlineKeyword(bytes, from, to, keyword, SP);
+    if (index < 0) {
+      index = indexOfNewlineKeyword(bytes, from, to, keyword, NL);
+    }
+    return index;
+  }
+
+  /**
+   * Return the index of the first occurrence of the given byte starting at
+   * or after index {@code from} and before index {@code to}, or -1 if there
+   * is none.
+   */
+  static int indexOf(byte[] bytes, int from, int to, byte value) {
+    for (int i = Math.max(from, 0); i < to; i++) {
+      if (bytes[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -3,8 +3,6 @@
 
 package org.torproject.descriptor.impl;
 
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.binary.Hex;
 import org.torproject.descriptor.Descriptor;
 import org.torproject.descriptor.DescriptorParseException;
 
@@ -58,7 +56,8 @@ public abstract class DescriptorImpl implements Descriptor {
    *
    * <p>If possible, subclasses should avoid retrieving raw descriptor bytes and
    * converting them to a String themselves and instead rely on
-   * {@link #newScanner()} and related methods to parse the descriptor.</p>
+   * {@link #newLineTokenizer()} and related methods to parse the
+   * descriptor.</p>
    *
    * @return Copy of the full raw descriptor bytes.
    */
@@ -73,7 +72,8 @@ public abstract class DescriptorImpl implements Descriptor {
    *
    * <p>If possible, subclasses should avoid retrieving raw descriptor bytes and
    * converting them to a String themselves and instead rely on
-   * {@link #newScanner()} and related methods to parse the descriptor.</p>
+   * {@link #newLineTokenizer()} and related methods to parse the
+   * descriptor.</p>
    *
    * @param offset The index of the first byte to include.
    * @param length The number of bytes to include.
@@ -115,6 +115,30 @@ public abstract class DescriptorImpl implements Descriptor {
         this.rawDescriptorBytes, offset, length), StandardCharsets.UTF_8));
   }
 
+  /**
+   * Returns a new {@link LineTokenizer} for iterating over lines of the full
+   * raw descriptor, which is considerably cheaper than a {@link Scanner}
+   * using a newline as delimiter and returns the exact same lines.
+   *
+   * @return Tokenizer for the full raw descriptor bytes.
+   */
+  protected LineTokenizer newLineTokenizer() {
+    return this.newLineTokenizer(this.offset, this.length);
+  }
+
+  /**
+   * Returns a new {@link LineTokenizer} for iterating over lines of the raw
+   * descriptor starting at byte {@code offset} containing {@code length}
+   * bytes.
+   *
+   * @param offset The index of the first byte to parse.
+   * @param length The number of bytes to parse.
+   * @return Tokenizer for the given raw descriptor bytes.
+   */
+  protected LineTokenizer newLineTokenizer(int offset, int length) {
+    return new LineTokenizer(this.rawDescriptorBytes, offset, length);
+  }
+
   /**
    * Returns the index within the raw descriptor of the first occurrence of the
    * given {@code key}, or {@code -1} if the key is not contained.
@@ -123,21 +147,16 @@ public abstract class DescriptorImpl implements Descriptor {
    * @return Index of the first occurrence, or -1.
    */
   protected int findFirstIndexOfKey(Key key) {
-    String ascii = new String(this.rawDescriptorBytes, this.offset, this.length,
-        StandardCharsets.US_ASCII);
-    if (ascii.startsWith(key.keyword + SP)
-        || ascii.startsWith(key.keyword + NL)) {
+    int end = this.offset + this.length;
+    if (DescriptorBytes.isKeywordAt(this.rawDescriptorBytes, this.offset, end,
+        key.keywordBytes, DescriptorBytes.SP)
+        || DescriptorBytes.isKeywordAt(this.rawDescriptorBytes, this.offset,
+        end, key.keywordBytes, DescriptorBytes.NL)) {
       return this.offset;
     }
-    int keywordIndex = ascii.indexOf(NL + key.keyword + SP);
-    if (keywordIndex < 0) {
-      keywordIndex = ascii.indexOf(NL + key.keyword + NL);
-    }
-    if (keywordIndex < 0) {
-      return -1;
-    } else {
-      return this.offset + keywordIndex + 1;
-    }
+    int keywordIndex = DescriptorBytes.indexOfNewlineKeyword(
+        this.rawDescriptorBytes, this.offset, end, key.keywordBytes);
+    return keywordIndex < 0 ? -1 : keywordIndex + 1;
   }
 
   /**
@@ -155,25 +174,22 @@ public abstract class DescriptorImpl implements Descriptor {
   protected List<int[]> splitByKey(Key key, int offset, int length,
       boolean truncateTrailingNewlines) {
     List<int[]> splitParts = new ArrayList<>();
-    String ascii = new String(this.rawDescriptorBytes, offset, length,
-        StandardCharsets.US_ASCII);
-    int from = 0;
-    while (from < length) {
-      int to = ascii.indexOf(NL + key.keyword + SP, from);
-      if (to < 0) {
-        to = ascii.indexOf(NL + key.keyword + NL, from);
-      }
+    int end = offset + length;
+    int from = offset;
+    while (from < end) {
+      int to = DescriptorBytes.indexOfNewlineKeyword(this.rawDescriptorBytes,
+          from, end, key.keywordBytes);
       if (to < 0) {
-        to = length;
+        to = end;
       } else {
         to += 1;
       }
       int toNoNewline = to;
       while (truncateTrailingNewlines && toNoNewline > from
-          && ascii.charAt(toNoNewline - 1) == '\n') {
+          && this.rawDescriptorBytes[toNoNewline - 1] == DescriptorBytes.NL) {
         toNoNewline--;
       }
-      splitParts.add(new int[] { offset + from, toNoNewline - from });
+      splitParts.add(new int[] { from, toNoNewline - from });
       from = to;
     }
     return splitParts;
@@ -215,23 +231,29 @@ public abstract class DescriptorImpl implements Descriptor {
   private List<String> annotations = new ArrayList<>();
 
   private void cutOffAnnotations() throws DescriptorParseException {
-    int start = 0;
-    String ascii = new String(this.getRawDescriptorBytes(),
-        StandardCharsets.US_ASCII);
-    while ((start == 0 && ascii.startsWith("@"))
-        || (start > 0 && ascii.indexOf(NL + "@", start - 1) >= 0)) {
-      int end = ascii.indexOf(NL, start);
+    byte[] bytes = this.rawDescriptorBytes;
+    int descriptorEnd = this.offset + this.length;
+    int start = this.offset;
+    while ((start == this.offset && start < descriptorEnd
+        && bytes[start] == '@')
+        || (start > this.offset && DescriptorBytes.indexOf(bytes, start - 1,
+        descriptorEnd, NEWLINE_AT) >= 0)) {
+      int end = DescriptorBytes.indexOf(bytes, start, descriptorEnd,
+          DescriptorBytes.NL);
       if (end < 0) {
         throw new DescriptorParseException("Annotation line does not "
             + "contain a newline.");
       }
-      this.annotations.add(ascii.substring(start, end));
+      this.annotations.add(new String(bytes, start, end - start,
+          StandardCharsets.US_ASCII));
       start = end + 1;
     }
-    this.offset += start;
-    this.length -= start;
+    this.length -= start - this.offset;
+    this.offset = start;
   }
 
+  private static final byte[] NEWLINE_AT = DescriptorBytes.ascii(NL + "@");
+
   @Override
   public List<String> getAnnotations() {
     return new ArrayList<>(this.annotations);
@@ -250,9 +272,9 @@ public abstract class DescriptorImpl implements Descriptor {
       throw new DescriptorParseException("Descriptor is empty.");
     }
     boolean skipCrypto = false;
-    Scanner scanner = this.newScanner().useDelimiter(NL);
-    while (scanner.hasNext()) {
-      String line = scanner.next();
+    LineTokenizer tokenizer = this.newLineTokenizer();
+    while (tokenizer.hasNext()) {
+      String line = tokenizer.next();
       if (line.isEmpty() && !blankLinesAllowed) {
         throw new DescriptorParseException("Blank lines are not allowed.");
       } else if (line.startsWith(Key.CRYPTO_BEGIN.keyword)) {
@@ -263,7 +285,9 @@ public abstract class DescriptorImpl implements Descriptor {
           && !skipCrypto) {
         String lineNoOpt = line.startsWith(Key.OPT.keyword + SP)
             ? line.substring(Key.OPT.keyword.length() + 1) : line;
-        String keyword = lineNoOpt.split(SP, -1)[0];
+        int firstSpace = lineNoOpt.indexOf(SP);
+        String keyword = firstSpace < 0 ? lineNoOpt
+            : lineNoOpt.substring(0, firstSpace);
         if (keyword.equals("")) {
           throw new DescriptorParseException("Illegal keyword in line '"
               + line + "'.");
@@ -348,8 +372,17 @@ public abstract class DescriptorImpl implements Descriptor {
     this.parsedKeys = null;
   }
 
+  /* Digests are only computed when they are first requested, because many
+   * applications never read them.  Tokens delimiting the digested part of a
+   * descriptor are still located while parsing, so that descriptors lacking
+   * them are rejected as before.  The start and end of the digested part,
+   * relative to the start of this descriptor, are kept until then. */
   private String digestSha1Hex;
 
+  private int digestSha1Start = -1;
+
+  private int digestSha1End = -1;
+
   protected void setDigestSha1Hex(String digestSha1Hex) {
     this.digestSha1Hex = digestSha1Hex;
   }
@@ -357,42 +390,91 @@ public abstract class DescriptorImpl implements Descriptor {
   protected void calculateDigestSha1Hex(String startToken, String endToken)
       throws DescriptorParseException {
     if (null == this.digestSha1Hex) {
-      String ascii = new String(this.rawDescriptorBytes, this.offset,
-          this.length, StandardCharsets.US_ASCII);
-      int start = ascii.indexOf(startToken);
-      int end = -1;
-      if (null == endToken) {
-        end = ascii.length();
-      } else if (ascii.contains(endToken)) {
-        end = ascii.indexOf(endToken) + endToken.length();
-      }
-      if (start >= 0 && end >= 0 && end > start) {
-        this.digestSha1Hex = Hex.encodeHexString(
-            messageDigest("SHA-1", start, end)).toLowerCase();
+      int start = this.indexOfToken(startToken);
+      int end = this.endOfToken(endToken);
+      if (start < 0 || end < 0 || end <= start) {
+        throw new DescriptorParseException("Could not calculate descriptor "
+            + "digest.");
       }
+      this.digestSha1Start = start;
+      this.digestSha1End = end;
     }
-    if (null == this.digestSha1Hex) {
-      throw new DescriptorParseException("Could not calculate descriptor "
-          + "digest.");
+  }
+
+  /* Return the index of the first occurrence of the given token relative to
+   * the start of this descriptor, or -1 if it is not contained. */
+  private int indexOfToken(String token) {
+    int index = DescriptorBytes.indexOf(this.rawDescriptorBytes, this.offset,
+        this.offset + this.length, DescriptorBytes.ascii(token));
+    return index < 0 ? -1 : index - this.offset;
+  }
+
+  /* Return the index following the first occurrence of the given token
+   * relative to the start of this descriptor, the length of this descriptor
+   * if the token is null, or -1 if the token is not contained. */
+  private int endOfToken(String token) {
+    if (null == token) {
+      return this.length;
     }
+    int index = this.indexOfToken(token);
+    return index < 0 ? -1 : index + token.length();
   }
 
-  private byte[] messageDigest(String alg, int start, int end) {
+  /* Message digest instances are costly to obtain and cannot be shared
+   * between threads, so that each thread reuses its own instances.  Calling
+   * digest() resets an instance for the next use. */
+  private static final ThreadLocal<MessageDigest> SHA1 =
+      ThreadLocal.withInitial(() -> newMessageDigest("SHA-1"));
+
+  private static final ThreadLocal<MessageDigest> SHA256 =
+      ThreadLocal.withInitial(() -> newMessageDigest("SHA-256"));
+
+  private static MessageDigest newMessageDigest(String algorithm) {
     try {
-      MessageDigest md = MessageDigest.getInstance(alg);
-      md.update(this.rawDescriptorBytes, this.offset + start, end - start);
-      return md.digest();
+      return MessageDigest.getInstance(algorithm);
     } catch (NoSuchAlgorithmException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private byte[] messageDigest(ThreadLocal<MessageDigest> messageDigest,
+      int start, int end) {
+    MessageDigest md = messageDigest.get();
+    md.update(this.rawDescriptorBytes, this.offset + start, end - start);
+    return md.digest();
+  }
+
+  private static final char[] LOWER_HEX_DIGITS =
+      "0123456789abcdef".toCharArray();
+
+  private static String encodeHex(byte[] bytes) {
+    char[] hex = new char[2 * bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = LOWER_HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      hex[2 * i + 1] = LOWER_HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+
+  private static final Base64.Encoder BASE64_WITHOUT_PADDING =
+      Base64.getEncoder().withoutPadding();
+
+  /* Compute a digest on first access; concurrent first accesses may both
+   * compute it, which is harmless, because they compute the same string. */
   public String getDigestSha1Hex() {
+    if (null == this.digestSha1Hex && this.digestSha1Start >= 0) {
+      this.digestSha1Hex = encodeHex(this.messageDigest(SHA1,
+          this.digestSha1Start, this.digestSha1End));
+    }
     return this.digestSha1Hex;
   }
 
   private String digestSha256Base64;
 
+  private int digestSha256Start = -1;
+
+  private int digestSha256End = -1;
+
   protected void setDigestSha256Base64(String digestSha256Base64) {
     this.digestSha256Base64 = digestSha256Base64;
   }
@@ -400,26 +482,17 @@ public abstract class DescriptorImpl implements Descriptor {
   protected void calculateDigestSha256Base64(String startToken,
       String endToken) throws DescriptorParseException {
     if (null == this.digestSha256Base64) {
-      String ascii = new String(this.rawDescriptorBytes, this.offset,
-          this.length, StandardCharsets.US_ASCII);
       int start = 0;
       if (null != startToken) {
-        start = ascii.indexOf(startToken);
+        start = this.indexOfToken(startToken);
       }
-      int end = -1;
-      if (null == endToken) {
-        end = ascii.length();
-      } else if (ascii.contains(endToken)) {
-        end = ascii.indexOf(endToken) + endToken.length();
+      int end = this.endOfToken(endToken);
+      if (start < 0 || end < 0 || end <= start) {
+        throw new DescriptorParseException("Could not calculate descriptor "
+            + "digest.");
       }
-      if (start >= 0 && end >= 0 && end > start) {
-        this.digestSha256Base64 = Base64.encodeBase64String(
-            messageDigest("SHA-256", start, end)).replaceAll("=", "");
-      }
-    }
-    if (null == this.digestSha256Base64) {
-      throw new DescriptorParseException("Could not calculate descriptor "
-          + "digest.");
+      this.digestSha256Start = start;
+      this.digestSha256End = end;
     }
   }
 
@@ -433,7 +506,11 @@ public abstract class DescriptorImpl implements Descriptor {
   }
 
   public String getDigestSha256Base64() {
+    if (null == this.digestSha256Base64 && this.digestSha256Start >= 0) {
+      this.digestSha256Base64 = BASE64_WITHOUT_PADDING.encodeToString(
+          this.messageDigest(SHA256, this.digestSha256Start,
+          this.digestSha256End));
+    }
     return this.digestSha256Base64;
   }
 }
-
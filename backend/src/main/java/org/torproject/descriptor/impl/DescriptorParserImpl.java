@@ -8,15 +8,19 @@ import org.slf4j.LoggerFactory;
 import org.torproject.descriptor.Descriptor;
 import org.torproject.descriptor.DescriptorParseException;
 import org.torproject.descriptor.DescriptorParser;
+import org.torproject.descriptor.ServerDescriptor;
 import org.torproject.descriptor.log.LogDescriptorImpl;
 import org.torproject.descriptor.onionperf.OnionPerfAnalysisConverter;
 
 import java.io.File;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import static org.torproject.descriptor.impl.DescriptorImpl.NL;
 import static org.torproject.descriptor.impl.DescriptorImpl.SP;
@@ -26,6 +30,87 @@ public class DescriptorParserImpl implements DescriptorParser {
   private static final Logger logger
       = LoggerFactory.getLogger(DescriptorParserImpl.class);
 
+  private boolean lazyStatusEntries = false;
+
+  /**
+   * Parse status entries in consensuses lazily (default: false), that is,
+   * only parse their r and s lines right away and defer parsing all other
+   * lines until any of their fields is requested for the first time.
+   *
+   * <p>This saves time and memory when only few status entry fields are
+   * used, but it also means that consensuses with invalid deferred lines are
+   * not rejected as unparseable.  Instead, methods returning fields from
+   * those lines throw an {@link IllegalStateException}.</p>
+   */
+  public void setLazyStatusEntries(boolean lazyStatusEntries) {
+    this.lazyStatusEntries = lazyStatusEntries;
+  }
+
+  /* Keys of lines to parse by descriptor type, for descriptor types that
+   * are only parsed partially. */
+  private final Map<Class<? extends Descriptor>, Set<Key>> projections =
+      new HashMap<>();
+
+  /**
+   * Only parse lines with the given keywords in descriptors of the given
+   * type, and skip all other lines with known keywords, which saves time and
+   * memory when only few fields are needed.
+   *
+   * <p>Projections are currently supported for server descriptors, where
+   * the router line is always parsed.  Checks of how often each keyword may
+   * occur still include skipped lines, but fields contained in skipped lines
+   * are left unset as if those lines were missing.</p>
+   *
+   * @param descriptorType Descriptor type, e.g., {@link ServerDescriptor} or
+   *     a subtype of it.
+   * @param keywords Keywords of lines to parse, or null to parse all lines
+   *     again.
+   * @throws IllegalArgumentException If the descriptor type does not
+   *     support projections, or if a keyword is not known.
+   */
+  public void setProjection(Class<? extends Descriptor> descriptorType,
+      Set<String> keywords) {
+    if (null == keywords) {
+      this.projections.remove(descriptorType);
+    } else {
+      this.projections.put(descriptorType,
+          projectionKeys(descriptorType, keywords));
+    }
+  }
+
+  /* Return the keys of the given keywords for a projection of the given
+   * descriptor type, or throw an exception if either is not supported. */
+  static Set<Key> projectionKeys(Class<? extends Descriptor> descriptorType,
+      Set<String> keywords) {
+    if (!ServerDescriptor.class.isAssignableFrom(descriptorType)) {
+      throw new IllegalArgumentException("Projections are not supported for "
+          + "descriptor type " + descriptorType.getName() + ".");
+    }
+    Set<Key> keys = EnumSet.noneOf(Key.class);
+    for (String keyword : keywords) {
+      Key key = Key.get(keyword);
+      if (Key.INVALID == key) {
+        throw new IllegalArgumentException("Unknown keyword '" + keyword
+            + "' in projection.");
+      }
+      keys.add(key);
+    }
+    return keys;
+  }
+
+  /* Return the keys of lines to parse in descriptors of the given class, or
+   * null if all lines are to be parsed. */
+  private Set<Key> projectionOf(
+      Class<? extends DescriptorImpl> descriptorClass) {
+    for (Map.Entry<Class<? extends Descriptor>, Set<Key>> projection
+        : this.projections.entrySet()) {
+      if (projection.getKey().isAssignableFrom(descriptorClass)) {
+        return projection.getValue();
+      }
+    }
+    return null;
+  }
+
   @Override
   public Iterable<Descriptor> parseDescriptors(byte[] rawDescriptorBytes,
       File sourceFile, String fileName) {
@@ -41,112 +126,167 @@ public class DescriptorParserImpl implements DescriptorParser {
     }
   }
 
-  private List<Descriptor> detectTypeAndParseDescriptors(
+  /* Create a descriptor contained in the given part of raw descriptor
+   * bytes. */
+  @FunctionalInterface
+  interface DescriptorFactory {
+    DescriptorImpl newDescriptor(byte[] rawDescriptorBytes,
+        int[] offsetAndLength, File descriptorFile)
+        throws DescriptorParseException;
+  }
+
+  /* Number of bytes at the start of a descriptor file that are searched for
+   * type annotations and keywords to detect the descriptor type. */
+  private static final int DETECTION_BYTES = 100;
+
+  private static final byte[] TYPE_ANNOTATION = DescriptorBytes.ascii(
+      "@type ");
+
+  private static final byte[] NETWORK_STATUS_VERSION_3 =
+      DescriptorBytes.ascii(Key.NETWORK_STATUS_VERSION.keyword + SP + "3");
+
+  private static final byte[] NETWORK_STATUS_VERSION_3_NL =
+      DescriptorBytes.ascii(Key.NETWORK_STATUS_VERSION.keyword + SP + "3"
+      + NL);
+
+  private static final byte[] NETWORK_STATUS_VERSION_2_NL =
+      DescriptorBytes.ascii(Key.NETWORK_STATUS_VERSION.keyword + SP + "2"
+      + NL);
+
+  private static final byte[] VOTE_STATUS_CONSENSUS = DescriptorBytes.ascii(
+      NL + Key.VOTE_STATUS.keyword + SP + "consensus" + NL);
+
+  private static final byte[] VOTE_STATUS_VOTE = DescriptorBytes.ascii(
+      NL + Key.VOTE_STATUS.keyword + SP + "vote" + NL);
+
+  private static final byte[] R_SP = keywordSp(Key.R);
+
+  private static final byte[] ROUTER_SP = keywordSp(Key.ROUTER);
+
+  private static final byte[] EXTRA_INFO_SP = keywordSp(Key.EXTRA_INFO);
+
+  private static final byte[] ONION_KEY_NL = DescriptorBytes.ascii(
+      Key.ONION_KEY.keyword + NL);
+
+  private static final byte[] BRIDGE_POOL_ASSIGNMENT_SP =
+      keywordSp(Key.BRIDGE_POOL_ASSIGNMENT);
+
+  private static final byte[] DIR_KEY_CERTIFICATE_VERSION_SP =
+      keywordSp(Key.DIR_KEY_CERTIFICATE_VERSION);
+
+  private static final byte[] EXIT_NODE_SP = DescriptorBytes.ascii(
+      "ExitNode" + SP);
+
+  private static final byte[] SIGNED_DIRECTORY_NL = DescriptorBytes.ascii(
+      Key.SIGNED_DIRECTORY.keyword + NL);
+
+  private static final byte[] SNOWFLAKE_STATS_END_SP =
+      keywordSp(Key.SNOWFLAKE_STATS_END);
+
+  private static final byte[] BRIDGEDB_METRICS_END_SP =
+      keywordSp(Key.BRIDGEDB_METRICS_END);
+
+  private static final byte[] BRIDGESTRAP_STATS_END_SP =
+      keywordSp(Key.BRIDGESTRAP_STATS_END);
+
+  private static byte[] keywordSp(Key key) {
+    return DescriptorBytes.ascii(key.keyword + SP);
+  }
+
+  private Iterable<Descriptor> detectTypeAndParseDescriptors(
       byte[] rawDescriptorBytes, File sourceFile, String fileName)
       throws DescriptorParseException {
-    byte[] first100Chars = new byte[Math.min(100,
-        rawDescriptorBytes.length)];
-    System.arraycopy(rawDescriptorBytes, 0, first100Chars, 0,
-        first100Chars.length);
-    String firstLines = new String(first100Chars);
-    if (firstLines.startsWith("@type network-status-consensus-3 1.")
-        || firstLines.startsWith(
-        "@type network-status-microdesc-consensus-3 1.")
-        || ((firstLines.startsWith(
-        Key.NETWORK_STATUS_VERSION.keyword + SP + "3")
-        || firstLines.contains(
-        NL + Key.NETWORK_STATUS_VERSION.keyword + SP + "3"))
-        && firstLines.contains(
-        NL + Key.VOTE_STATUS.keyword + SP + "consensus" + NL))) {
+    /* Only look at the first bytes, which contain the type annotation or
+     * the first lines of the first descriptor. */
+    byte[] bytes = rawDescriptorBytes;
+    int end = Math.min(DETECTION_BYTES, bytes.length);
+    if (hasTypeAnnotation(bytes, end, "network-status-consensus-3 1.")
+        || hasTypeAnnotation(bytes, end,
+        "network-status-microdesc-consensus-3 1.")
+        || (containsLine(bytes, end, NETWORK_STATUS_VERSION_3)
+        && DescriptorBytes.indexOf(bytes, 0, end, VOTE_STATUS_CONSENSUS)
+        >= 0)) {
+      boolean lazyStatusEntries = this.lazyStatusEntries;
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.NETWORK_STATUS_VERSION, RelayNetworkStatusConsensusImpl.class);
-    } else if (firstLines.startsWith("@type network-status-vote-3 1.")
-        || ((firstLines.startsWith(
-        Key.NETWORK_STATUS_VERSION.keyword + SP + "3" + NL)
-        || firstLines.contains(
-        NL + Key.NETWORK_STATUS_VERSION.keyword + SP + "3" + NL))
-        && firstLines.contains(
-        NL + Key.VOTE_STATUS.keyword + SP + "vote" + NL))) {
+          Key.NETWORK_STATUS_VERSION, (descriptorBytes, offsetAndLength,
+          descriptorFile) -> new RelayNetworkStatusConsensusImpl(
+          descriptorBytes, offsetAndLength, descriptorFile,
+          lazyStatusEntries));
+    } else if (hasTypeAnnotation(bytes, end, "network-status-vote-3 1.")
+        || (containsLine(bytes, end, NETWORK_STATUS_VERSION_3_NL)
+        && DescriptorBytes.indexOf(bytes, 0, end, VOTE_STATUS_VOTE) >= 0)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.NETWORK_STATUS_VERSION, RelayNetworkStatusVoteImpl.class);
-    } else if (firstLines.startsWith("@type bridge-network-status 1.")
-        || firstLines.startsWith(Key.R.keyword + SP)) {
+          Key.NETWORK_STATUS_VERSION, RelayNetworkStatusVoteImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "bridge-network-status 1.")
+        || DescriptorBytes.regionMatches(bytes, 0, end, R_SP)) {
       List<Descriptor> parsedDescriptors = new ArrayList<>();
       parsedDescriptors.add(new BridgeNetworkStatusImpl(
           rawDescriptorBytes, new int[] { 0, rawDescriptorBytes.length },
           sourceFile, fileName));
       return parsedDescriptors;
-    } else if (firstLines.startsWith("@type bridge-server-descriptor 1.")) {
+    } else if (hasTypeAnnotation(bytes, end, "bridge-server-descriptor 1.")) {
+      Set<Key> projection = this.projectionOf(BridgeServerDescriptorImpl.class);
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.ROUTER, BridgeServerDescriptorImpl.class);
-    } else if (firstLines.startsWith("@type server-descriptor 1.")
-        || firstLines.startsWith(Key.ROUTER.keyword + SP)
-        || firstLines.contains(NL + Key.ROUTER.keyword + SP)) {
+          Key.ROUTER, (descriptorBytes, offsetAndLength, descriptorFile) ->
+          new BridgeServerDescriptorImpl(descriptorBytes, offsetAndLength,
+          descriptorFile, projection));
+    } else if (hasTypeAnnotation(bytes, end, "server-descriptor 1.")
+        || containsLine(bytes, end, ROUTER_SP)) {
+      Set<Key> projection = this.projectionOf(RelayServerDescriptorImpl.class);
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.ROUTER, RelayServerDescriptorImpl.class);
-    } else if (firstLines.startsWith("@type bridge-extra-info 1.")) {
+          Key.ROUTER, (descriptorBytes, offsetAndLength, descriptorFile) ->
+          new RelayServerDescriptorImpl(descriptorBytes, offsetAndLength,
+          descriptorFile, projection));
+    } else if (hasTypeAnnotation(bytes, end, "bridge-extra-info 1.")) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.EXTRA_INFO, BridgeExtraInfoDescriptorImpl.class);
-    } else if (firstLines.startsWith("@type extra-info 1.")
-        || firstLines.startsWith(Key.EXTRA_INFO.keyword + SP)
-        || firstLines.contains(NL + Key.EXTRA_INFO.keyword + SP)) {
+          Key.EXTRA_INFO, BridgeExtraInfoDescriptorImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "extra-info 1.")
+        || containsLine(bytes, end, EXTRA_INFO_SP)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.EXTRA_INFO, RelayExtraInfoDescriptorImpl.class);
-    } else if (firstLines.startsWith("@type microdescriptor 1.")
-        || firstLines.startsWith(Key.ONION_KEY.keyword + NL)
-        || firstLines.contains(NL + Key.ONION_KEY.keyword + NL)) {
+          Key.EXTRA_INFO, RelayExtraInfoDescriptorImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "microdescriptor 1.")
+        || containsLine(bytes, end, ONION_KEY_NL)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.ONION_KEY, MicrodescriptorImpl.class);
-    } else if (firstLines.startsWith("@type bridge-pool-assignment 1.")
-        || firstLines.startsWith(Key.BRIDGE_POOL_ASSIGNMENT.keyword + SP)
-        || firstLines.contains(NL + Key.BRIDGE_POOL_ASSIGNMENT.keyword + SP)) {
+          Key.ONION_KEY, MicrodescriptorImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "bridge-pool-assignment 1.")
+        || containsLine(bytes, end, BRIDGE_POOL_ASSIGNMENT_SP)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.BRIDGE_POOL_ASSIGNMENT, BridgePoolAssignmentImpl.class);
-    } else if (firstLines.startsWith("@type dir-key-certificate-3 1.")
-        || firstLines.startsWith(Key.DIR_KEY_CERTIFICATE_VERSION.keyword + SP)
-        || firstLines.contains(
-        NL + Key.DIR_KEY_CERTIFICATE_VERSION.keyword + SP)) {
+          Key.BRIDGE_POOL_ASSIGNMENT, BridgePoolAssignmentImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "dir-key-certificate-3 1.")
+        || containsLine(bytes, end, DIR_KEY_CERTIFICATE_VERSION_SP)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.DIR_KEY_CERTIFICATE_VERSION, DirectoryKeyCertificateImpl.class);
-    } else if (firstLines.startsWith("@type tordnsel 1.")
-        || firstLines.startsWith("ExitNode" + SP)
-        || firstLines.contains(NL + "ExitNode" + SP)) {
+          Key.DIR_KEY_CERTIFICATE_VERSION, DirectoryKeyCertificateImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "tordnsel 1.")
+        || containsLine(bytes, end, EXIT_NODE_SP)) {
       List<Descriptor> parsedDescriptors = new ArrayList<>();
       parsedDescriptors.add(new ExitListImpl(rawDescriptorBytes, sourceFile,
           fileName));
       return parsedDescriptors;
-    } else if (firstLines.startsWith("@type network-status-2 1.")
-        || firstLines.startsWith(
-        Key.NETWORK_STATUS_VERSION.keyword + SP + "2" + NL)
-        || firstLines.contains(
-        NL + Key.NETWORK_STATUS_VERSION.keyword + SP + "2" + NL)) {
+    } else if (hasTypeAnnotation(bytes, end, "network-status-2 1.")
+        || containsLine(bytes, end, NETWORK_STATUS_VERSION_2_NL)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.NETWORK_STATUS_VERSION, RelayNetworkStatusImpl.class);
-    } else if (firstLines.startsWith("@type directory 1.")
-        || firstLines.startsWith(Key.SIGNED_DIRECTORY.keyword + NL)
-        || firstLines.contains(NL + Key.SIGNED_DIRECTORY.keyword + NL)) {
+          Key.NETWORK_STATUS_VERSION, RelayNetworkStatusImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "directory 1.")
+        || containsLine(bytes, end, SIGNED_DIRECTORY_NL)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.SIGNED_DIRECTORY, RelayDirectoryImpl.class);
-    } else if (firstLines.startsWith("@type torperf 1.")) {
+          Key.SIGNED_DIRECTORY, RelayDirectoryImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "torperf 1.")) {
       return TorperfResultImpl.parseTorperfResults(rawDescriptorBytes,
           sourceFile);
-    } else if (firstLines.startsWith("@type snowflake-stats 1.")
-        || firstLines.startsWith(Key.SNOWFLAKE_STATS_END.keyword + SP)
-        || firstLines.contains(NL + Key.SNOWFLAKE_STATS_END.keyword + SP)) {
+    } else if (hasTypeAnnotation(bytes, end, "snowflake-stats 1.")
+        || containsLine(bytes, end, SNOWFLAKE_STATS_END_SP)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-          Key.SNOWFLAKE_STATS_END, SnowflakeStatsImpl.class);
-    } else if (firstLines.startsWith("@type bridgedb-metrics 1.")
-        || firstLines.startsWith(Key.BRIDGEDB_METRICS_END.keyword + SP)
-        || firstLines.contains(NL + Key.BRIDGEDB_METRICS_END.keyword + SP)) {
+          Key.SNOWFLAKE_STATS_END, SnowflakeStatsImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "bridgedb-metrics 1.")
+        || containsLine(bytes, end, BRIDGEDB_METRICS_END_SP)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-              Key.BRIDGEDB_METRICS_END, BridgedbMetricsImpl.class);
-    } else if (firstLines.startsWith("@type bridgestrap-stats 1.")
-        || firstLines.startsWith(Key.BRIDGESTRAP_STATS_END.keyword + SP)
-        || firstLines.contains(NL + Key.BRIDGESTRAP_STATS_END.keyword + SP)) {
+          Key.BRIDGEDB_METRICS_END, BridgedbMetricsImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "bridgestrap-stats 1.")
+        || containsLine(bytes, end, BRIDGESTRAP_STATS_END_SP)) {
       return this.parseOneOrMoreDescriptors(rawDescriptorBytes, sourceFile,
-              Key.BRIDGESTRAP_STATS_END, BridgestrapStatsImpl.class);
-    } else if (firstLines.startsWith("@type bandwidth-file 1.")
-        || firstLines.matches("(?s)[0-9]{10}\\n.*")) {
+          Key.BRIDGESTRAP_STATS_END, BridgestrapStatsImpl::new);
+    } else if (hasTypeAnnotation(bytes, end, "bandwidth-file 1.")
+        || startsWithTimestampLine(bytes, end)) {
       /* Identifying bandwidth files by a 10-digit timestamp in the first line
        * breaks with files generated before 2002 or after 2286 and when the next
        * descriptor identifier starts with just a timestamp in the first line
@@ -172,98 +312,93 @@ public class DescriptorParserImpl implements DescriptorParser {
       return GeoipNamesFileImpl.parse(rawDescriptorBytes, sourceFile);
     } else {
       throw new DescriptorParseException("Could not detect descriptor "
-          + "type in descriptor starting with '" + firstLines + "'.");
+          + "type in descriptor starting with '" + new String(bytes, 0, end)
+          + "'.");
     }
   }
 
-  private List<Descriptor> parseOneOrMoreDescriptors(byte[] rawDescriptorBytes,
-      File sourceFile, Key key,
-      Class<? extends DescriptorImpl> descriptorClass) {
-    List<Descriptor> parsedDescriptors = new ArrayList<>();
-    Constructor<? extends DescriptorImpl> constructor;
-    try {
-      constructor = descriptorClass.getDeclaredConstructor(byte[].class,
-          int[].class, File.class);
-    } catch (NoSuchMethodException e) {
-      throw new RuntimeException(e);
+  /* Return whether the given bytes start with a type annotation of the
+   * given type name and version prefix. */
+  private static boolean hasTypeAnnotation(byte[] bytes, int end,
+      String typeAndVersion) {
+    int typeStart = TYPE_ANNOTATION.length;
+    if (!DescriptorBytes.regionMatches(bytes, 0, end, TYPE_ANNOTATION)
+        || typeStart + typeAndVersion.length() > end) {
+      return false;
     }
-    int startAnnotations = 0;
-    int endAllDescriptors = rawDescriptorBytes.length;
-    String ascii = new String(rawDescriptorBytes, StandardCharsets.US_ASCII);
-    boolean containsAnnotations = ascii.startsWith("@")
-        || ascii.contains(NL + "@");
-    boolean containsKeywordSpace = ascii.startsWith(key.keyword + SP)
-        || ascii.contains(NL + key.keyword + SP);
-    boolean containsKeywordNewline = ascii.startsWith(key.keyword + NL)
-        || ascii.contains(NL + key.keyword + NL);
-    while (startAnnotations < endAllDescriptors) {
-      int startDescriptor = -1;
-      if ((containsKeywordSpace
-          && startAnnotations == ascii.indexOf(key.keyword + SP,
-          startAnnotations))
-          || (containsKeywordNewline
-          && startAnnotations == ascii.indexOf(key.keyword + NL,
-          startAnnotations))) {
-        startDescriptor = startAnnotations;
-      } else {
-        if (containsKeywordSpace) {
-          startDescriptor = ascii.indexOf(NL + key.keyword + SP,
-              startAnnotations - 1);
-        }
-        if (startDescriptor < 0 && containsKeywordNewline) {
-          startDescriptor = ascii.indexOf(NL + key.keyword + NL,
-              startAnnotations - 1);
-        }
-        if (startDescriptor < 0) {
-          break;
-        } else {
-          startDescriptor += 1;
-        }
-      }
-      int endDescriptor = -1;
-      if (containsAnnotations) {
-        endDescriptor = ascii.indexOf(NL + "@", startDescriptor);
-      }
-      if (endDescriptor < 0 && containsKeywordSpace) {
-        endDescriptor = ascii.indexOf(NL + key.keyword + SP, startDescriptor);
+    for (int i = 0; i < typeAndVersion.length(); i++) {
+      if (bytes[typeStart + i] != typeAndVersion.charAt(i)) {
+        return false;
       }
-      if (endDescriptor < 0 && containsKeywordNewline) {
-        endDescriptor = ascii.indexOf(NL + key.keyword + NL, startDescriptor);
-      }
-      if (endDescriptor < 0) {
-        endDescriptor = endAllDescriptors - 1;
-      }
-      endDescriptor += 1;
-      int[] offsetAndLength = new int[] { startAnnotations,
-          endDescriptor - startAnnotations };
-      try {
-        parsedDescriptors.add(this.parseOneDescriptor(rawDescriptorBytes,
-            offsetAndLength, sourceFile, constructor));
-      } catch (DescriptorParseException e) {
-        parsedDescriptors.add(new UnparseableDescriptorImpl(
-            rawDescriptorBytes, offsetAndLength, sourceFile, e));
+    }
+    return true;
+  }
+
+  /* Return whether any line that starts before index end starts with the
+   * given token ending before index end, which is the same as the bytes
+   * either starting with the token or containing a newline followed by it. */
+  private static boolean containsLine(byte[] bytes, int end, byte[] token) {
+    if (DescriptorBytes.regionMatches(bytes, 0, end, token)) {
+      return true;
+    }
+    for (int newline = DescriptorBytes.indexOf(bytes, 0, end,
+        DescriptorBytes.NL); newline >= 0; newline = DescriptorBytes.indexOf(
+        bytes, newline + 1, end, DescriptorBytes.NL)) {
+      if (DescriptorBytes.regionMatches(bytes, newline + 1, end, token)) {
+        return true;
       }
-      startAnnotations = endDescriptor;
     }
-    return parsedDescriptors;
+    return false;
   }
 
-  Descriptor parseOneDescriptor(byte[] rawDescriptorBytes,
-      int[] offsetAndLength, File sourceFile,
-      Constructor<? extends DescriptorImpl> constructor)
-      throws DescriptorParseException {
-    try {
-      return constructor.newInstance(rawDescriptorBytes, offsetAndLength,
-          sourceFile);
-    } catch (InvocationTargetException e) {
-      if (null != e.getCause()
-          && e.getCause() instanceof DescriptorParseException) {
-        throw (DescriptorParseException) e.getCause();
-      } else {
-        throw new RuntimeException(e);
+  /* Return whether the first line consists of a 10-digit timestamp. */
+  private static boolean startsWithTimestampLine(byte[] bytes, int end) {
+    if (end < 11 || bytes[10] != DescriptorBytes.NL) {
+      return false;
+    }
+    for (int i = 0; i < 10; i++) {
+      if (bytes[i] < '0' || bytes[i] > '9') {
+        return false;
       }
-    } catch (InstantiationException | IllegalAccessException e) {
-      throw new RuntimeException(e);
     }
+    return true;
+  }
+
+  /* Return the descriptors contained in the given bytes, which are only
+   * split and parsed one at a time while iterating over them, so that
+   * descriptors that have been processed can be garbage-collected before
+   * the remaining descriptors of a large file are parsed.  Iterating more
+   * than once parses all descriptors again. */
+  private Iterable<Descriptor> parseOneOrMoreDescriptors(
+      byte[] rawDescriptorBytes, File sourceFile, Key key,
+      DescriptorFactory descriptorFactory) {
+    return () -> new Iterator<Descriptor>() {
+
+      private final DescriptorSplitter splitter = new DescriptorSplitter(
+          rawDescriptorBytes, key.keywordBytes);
+
+      private int[] nextOffsetAndLength = this.splitter.next();
+
+      @Override
+      public boolean hasNext() {
+        return null != this.nextOffsetAndLength;
+      }
+
+      @Override
+      public Descriptor next() {
+        int[] offsetAndLength = this.nextOffsetAndLength;
+        if (null == offsetAndLength) {
+          throw new NoSuchElementException();
+        }
+        this.nextOffsetAndLength = this.splitter.next();
+        try {
+          return descriptorFactory.newDescriptor(rawDescriptorBytes,
+              offsetAndLength, sourceFile);
+        } catch (DescriptorParseException e) {
+          return new UnparseableDescriptorImpl(rawDescriptorBytes,
+              offsetAndLength, sourceFile, e);
+        }
+      }
+    };
   }
 }
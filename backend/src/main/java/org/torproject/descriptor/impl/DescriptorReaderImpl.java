@@ -19,12 +19,24 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DescriptorReaderImpl implements DescriptorReader {
 
   private static final Logger logger = LoggerFactory.getLogger(
       DescriptorReaderImpl.class);
 
+  /* Buffer size for reading compressed input files, whose decompressors would
+   * otherwise issue many small reads. */
+  private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+  /* Largest array size that is supported by most JVMs. */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
   private boolean hasStartedReading = false;
 
   private File manualSaveHistoryFile;
@@ -78,8 +90,81 @@ public class DescriptorReaderImpl implements DescriptorReader {
     this.maxDescriptorsInQueue = maxDescriptorsInQueue;
   }
 
+  private long maxBytesInQueue = Long.MAX_VALUE;
+
+  @Override
+  public void setMaxBytesInQueue(long maxBytesInQueue) {
+    if (this.hasStartedReading) {
+      throw new IllegalStateException("Reconfiguration is not permitted "
+          + "after starting to read.");
+    }
+    if (maxBytesInQueue < 1L) {
+      throw new IllegalArgumentException("The maximum number of bytes in "
+          + "the queue must be positive.");
+    }
+    this.maxBytesInQueue = maxBytesInQueue;
+  }
+
+  /* Estimated heap bytes of parsed descriptor objects per raw descriptor
+   * byte, in addition to the raw descriptor bytes themselves, and per
+   * descriptor.  These are rough estimates: keeping 2000 parsed copies of
+   * each sample file in the tests took between 1.5 (server descriptors)
+   * and 2.7 (a consensus with 8 entries) additional heap bytes per raw
+   * byte, including the overhead per descriptor.  Full-size consensuses
+   * have not been measured. */
+  private static final long PARSED_BYTES_PER_RAW_BYTE = 2L;
+
+  private static final long PARSED_BYTES_PER_DESCRIPTOR = 1024L;
+
+  static long estimateHeapBytes(Descriptor descriptor) {
+    return (1L + PARSED_BYTES_PER_RAW_BYTE)
+        * descriptor.getRawDescriptorLength() + PARSED_BYTES_PER_DESCRIPTOR;
+  }
+
+  private boolean lazyStatusEntries = false;
+
+  @Override
+  public void setLazyStatusEntries(boolean lazyStatusEntries) {
+    if (this.hasStartedReading) {
+      throw new IllegalStateException("Reconfiguration is not permitted "
+          + "after starting to read.");
+    }
+    this.lazyStatusEntries = lazyStatusEntries;
+  }
+
+  private Map<Class<? extends Descriptor>, Set<String>> projections =
+      new HashMap<>();
+
+  @Override
+  public void setProjection(Class<? extends Descriptor> descriptorType,
+      Set<String> keywords) {
+    if (this.hasStartedReading) {
+      throw new IllegalStateException("Reconfiguration is not permitted "
+          + "after starting to read.");
+    }
+    DescriptorParserImpl.projectionKeys(descriptorType, keywords);
+    this.projections.put(descriptorType, keywords);
+  }
+
+  private int readerThreads = 1;
+
+  @Override
+  public void setReaderThreads(int readerThreads) {
+    if (this.hasStartedReading) {
+      throw new IllegalStateException("Reconfiguration is not permitted "
+          + "after starting to read.");
+    }
+    if (readerThreads < 1) {
+      throw new IllegalArgumentException("At least one reader thread is "
+          + "required.");
+    }
+    this.readerThreads = readerThreads;
+  }
+
   private DescriptorReaderRunnable reader;
 
+  private BlockingIteratorImpl<Descriptor> descriptorQueue;
+
   @Override
   public Iterable<Descriptor> readDescriptors(File... descriptorFiles) {
     if (this.hasStartedReading) {
@@ -87,10 +172,22 @@ public class DescriptorReaderImpl implements DescriptorReader {
           + "permitted once.");
     }
     this.hasStartedReading = true;
+    /* When reading files in parallel, leave half of the byte budget to the
+     * queues of files that are read ahead. */
+    long maxBytesInDescriptorQueue = this.readerThreads > 1
+        && this.maxBytesInQueue < Long.MAX_VALUE
+        ? Math.max(1L, this.maxBytesInQueue / 2L) : this.maxBytesInQueue;
+    long maxBytesInFileQueues = this.maxBytesInQueue < Long.MAX_VALUE
+        ? Math.max(1L, this.maxBytesInQueue - maxBytesInDescriptorQueue)
+        : Long.MAX_VALUE;
     BlockingIteratorImpl<Descriptor> descriptorQueue =
-        new BlockingIteratorImpl<>(this.maxDescriptorsInQueue);
+        newDescriptorQueue(this.maxDescriptorsInQueue,
+        maxBytesInDescriptorQueue);
+    this.descriptorQueue = descriptorQueue;
     this.reader = new DescriptorReaderRunnable(descriptorFiles, descriptorQueue,
-        this.manualSaveHistoryFile, this.excludedFiles);
+        this.manualSaveHistoryFile, this.excludedFiles,
+        this.maxDescriptorsInQueue, maxBytesInFileQueues, this.readerThreads,
+        this.lazyStatusEntries, this.projections);
     Thread readerThread = new Thread(this.reader);
     readerThread.setDaemon(true);
     readerThread.start();
@@ -106,6 +203,37 @@ public class DescriptorReaderImpl implements DescriptorReader {
     this.reader.writeNewHistory(historyFile);
   }
 
+  @Override
+  public int getQueueDepth() {
+    return this.startedDescriptorQueue().getQueueDepth();
+  }
+
+  @Override
+  public long getProducerStallMillis() {
+    return this.startedDescriptorQueue().getProducerStallMillis();
+  }
+
+  @Override
+  public long getConsumerStallMillis() {
+    return this.startedDescriptorQueue().getConsumerStallMillis();
+  }
+
+  private BlockingIteratorImpl<Descriptor> startedDescriptorQueue() {
+    if (null == this.descriptorQueue) {
+      throw new IllegalStateException("Operation is not permitted before "
+          + "starting to read.");
+    }
+    return this.descriptorQueue;
+  }
+
+  private static BlockingIteratorImpl<Descriptor> newDescriptorQueue(
+      int maxDescriptors, long maxBytes) {
+    return maxBytes < Long.MAX_VALUE
+        ? new BlockingIteratorImpl<>(maxDescriptors, maxBytes,
+        DescriptorReaderImpl::estimateHeapBytes)
+        : new BlockingIteratorImpl<>(maxDescriptors);
+  }
+
   private static class DescriptorReaderRunnable implements Runnable {
 
     private File[] descriptorFiles;
@@ -114,46 +242,94 @@ public class DescriptorReaderImpl implements DescriptorReader {
 
     private File manualSaveHistoryFile;
 
+    private List<File> plainFiles = new ArrayList<>();
+
     private List<File> tarballs = new ArrayList<>();
 
     private SortedMap<String, Long> excludedFilesBefore = new TreeMap<>();
 
     private SortedMap<String, Long> excludedFilesAfter = new TreeMap<>();
 
-    private SortedMap<String, Long> parsedFilesAfter = new TreeMap<>();
+    private SortedMap<String, Long> parsedFilesAfter =
+        Collections.synchronizedSortedMap(new TreeMap<>());
 
     private DescriptorParser descriptorParser;
 
-    private boolean hasFinishedReading = false;
+    /* Threads parsing tarball entries while tarballs are being decompressed,
+     * or null if tarball entries are parsed by the decompressing thread.
+     * Only created when reading with more than one reader thread, so that
+     * setReaderThreads(1) keeps reading fully sequential. */
+    private ExecutorService parserExecutor;
+
+    private int maxDescriptorsInQueue;
+
+    private long maxBytesInFileQueues;
+
+    private int readerThreads;
+
+    private volatile boolean hasFinishedReading = false;
 
     private DescriptorReaderRunnable(File[] descriptorFiles,
         BlockingIteratorImpl<Descriptor> descriptorQueue,
-        File manualSaveHistoryFile, SortedMap<String, Long> excludedFiles) {
+        File manualSaveHistoryFile, SortedMap<String, Long> excludedFiles,
+        int maxDescriptorsInQueue, long maxBytesInFileQueues,
+        int readerThreads, boolean lazyStatusEntries,
+        Map<Class<? extends Descriptor>, Set<String>> projections) {
       this.descriptorFiles = descriptorFiles;
       this.descriptorQueue = descriptorQueue;
       this.manualSaveHistoryFile = manualSaveHistoryFile;
       if (excludedFiles != null) {
         this.excludedFilesBefore = excludedFiles;
       }
-      this.descriptorParser = new DescriptorParserImpl();
+      DescriptorParserImpl descriptorParser = new DescriptorParserImpl();
+      descriptorParser.setLazyStatusEntries(lazyStatusEntries);
+      for (Map.Entry<Class<? extends Descriptor>, Set<String>> projection
+          : projections.entrySet()) {
+        descriptorParser.setProjection(projection.getKey(),
+            projection.getValue());
+      }
+      this.descriptorParser = descriptorParser;
+      this.maxDescriptorsInQueue = maxDescriptorsInQueue;
+      this.maxBytesInFileQueues = maxBytesInFileQueues;
+      this.readerThreads = readerThreads;
     }
 
     public void run() {
       try {
         this.readOldHistory(this.manualSaveHistoryFile);
-        this.readDescriptorFiles();
-        this.readTarballs();
+        this.findDescriptorFiles();
+        if (this.readerThreads > 1) {
+          this.parserExecutor = newDaemonThreadPool(this.readerThreads);
+          this.readFilesInParallel();
+        } else {
+          this.readDescriptorFiles();
+          this.readTarballs();
+        }
         this.hasFinishedReading = true;
+      } catch (CancellationException e) {
+        logger.debug("Stopped reading descriptors, because the descriptor "
+            + "queue was cancelled.");
       } catch (Throwable t) {
         logger.error("Bug: uncaught exception or error while reading "
             + "descriptors.", t);
       } finally {
+        if (null != this.parserExecutor) {
+          this.parserExecutor.shutdownNow();
+        }
         if (null != this.descriptorQueue) {
           this.descriptorQueue.setOutOfDescriptors();
         }
       }
     }
 
+    private static ExecutorService newDaemonThreadPool(int threads) {
+      return Executors.newFixedThreadPool(threads, runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
     private void readOldHistory(File historyFile) {
       if (historyFile == null || !historyFile.exists()) {
         return;
@@ -188,7 +364,9 @@ public class DescriptorReaderImpl implements DescriptorReader {
           StandardCharsets.UTF_8)) {
         SortedMap<String, Long> newHistory = new TreeMap<>();
         newHistory.putAll(this.excludedFilesAfter);
-        newHistory.putAll(this.parsedFilesAfter);
+        synchronized (this.parsedFilesAfter) {
+          newHistory.putAll(this.parsedFilesAfter);
+        }
         for (Map.Entry<String, Long> e : newHistory.entrySet()) {
           String absolutePath = e.getKey();
           String lastModifiedMillis = String.valueOf(e.getValue());
@@ -201,7 +379,9 @@ public class DescriptorReaderImpl implements DescriptorReader {
       }
     }
 
-    private void readDescriptorFiles() {
+    /* Walk the given descriptor files and directories and remember tarballs
+     * and other files to be read, except for excluded files. */
+    private void findDescriptorFiles() {
       if (null == this.descriptorFiles) {
         return;
       }
@@ -213,33 +393,40 @@ public class DescriptorReaderImpl implements DescriptorReader {
         files.add(descriptorFile);
         while (!files.isEmpty()) {
           File file = files.pop();
-          try {
-            String absolutePath = file.getAbsolutePath();
-            long lastModifiedMillis = file.lastModified();
-            if (this.excludedFilesBefore.getOrDefault(absolutePath, 0L)
-                == lastModifiedMillis) {
-              this.excludedFilesAfter.put(absolutePath, lastModifiedMillis);
-              continue;
-            }
-            if (file.isDirectory()) {
-              files.addAll(Arrays.asList(file.listFiles()));
-              continue;
-            } else if (file.getName().endsWith(".tar")
-                || file.getName().endsWith(".tar.bz2")
-                || file.getName().endsWith(".tar.xz")) {
-              tarballs.add(file);
-              continue;
-            } else {
-              this.readDescriptorFile(file);
-            }
-            this.parsedFilesAfter.put(absolutePath, lastModifiedMillis);
-          } catch (IOException e) {
-            logger.warn("Unable to read descriptor file {}.", file, e);
+          String absolutePath = file.getAbsolutePath();
+          long lastModifiedMillis = file.lastModified();
+          if (this.excludedFilesBefore.getOrDefault(absolutePath, 0L)
+              == lastModifiedMillis) {
+            this.excludedFilesAfter.put(absolutePath, lastModifiedMillis);
+          } else if (file.isDirectory()) {
+            files.addAll(Arrays.asList(file.listFiles()));
+          } else if (isTarball(file)) {
+            this.tarballs.add(file);
+          } else {
+            this.plainFiles.add(file);
           }
         }
       }
     }
 
+    private static boolean isTarball(File file) {
+      return file.getName().endsWith(".tar")
+          || file.getName().endsWith(".tar.bz2")
+          || file.getName().endsWith(".tar.xz");
+    }
+
+    private void readDescriptorFiles() {
+      for (File file : this.plainFiles) {
+        try {
+          this.readDescriptorFile(file, this.descriptorQueue);
+          this.parsedFilesAfter.put(file.getAbsolutePath(),
+              file.lastModified());
+        } catch (IOException e) {
+          logger.warn("Unable to read descriptor file {}.", file, e);
+        }
+      }
+    }
+
     private void readTarballs() {
       if (this.tarballs.isEmpty()) {
         return;
@@ -251,27 +438,103 @@ public class DescriptorReaderImpl implements DescriptorReader {
       long progress = 0L;
       for (File tarball : this.tarballs) {
         try {
-          this.readTarball(tarball);
+          this.readTarball(tarball, this.descriptorQueue);
           this.parsedFilesAfter.put(tarball.getAbsolutePath(),
               tarball.lastModified());
         } catch (IOException e) {
           logger.warn("Unable to read tarball {}.", tarball, e);
         }
-        long previousPercentDone = 100L * progress / total;
-        progress += tarball.length();
-        long percentDone = 100L * progress / total;
-        if (percentDone > previousPercentDone) {
-          logger.info("Finished reading {}% of tarball bytes.",
-              percentDone);
+        progress = logTarballProgress(progress, tarball.length(), total);
+      }
+    }
+
+    private static long logTarballProgress(long progress, long length,
+        long total) {
+      long previousPercentDone = 100L * progress / total;
+      progress += length;
+      long percentDone = 100L * progress / total;
+      if (percentDone > previousPercentDone) {
+        logger.info("Finished reading {}% of tarball bytes.",
+            percentDone);
+      }
+      return progress;
+    }
+
+    /* Read files and tarballs on several threads.  Each thread parses one
+     * file at a time into its own bounded queue, and this thread forwards
+     * these queues to the descriptor queue one after the other in the order
+     * in which files were found, so that all descriptors of a file are
+     * delivered together.  Only a limited number of files is submitted ahead
+     * of the file being forwarded, and threads block as soon as their own
+     * queue is full. */
+    private void readFilesInParallel() {
+      List<File> files = new ArrayList<>(this.plainFiles);
+      files.addAll(this.tarballs);
+      long total = 0L;
+      for (File tarball : this.tarballs) {
+        total += tarball.length();
+      }
+      int filesAhead = this.readerThreads + 1;
+      int maxDescriptorsPerFile = Math.max(1,
+          this.maxDescriptorsInQueue / filesAhead);
+      long maxBytesPerFile = this.maxBytesInFileQueues < Long.MAX_VALUE
+          ? Math.max(1L, this.maxBytesInFileQueues / filesAhead)
+          : Long.MAX_VALUE;
+      ExecutorService executor = newDaemonThreadPool(this.readerThreads);
+      Deque<BlockingIteratorImpl<Descriptor>> fileQueues = new ArrayDeque<>();
+      try {
+        int submitted = 0;
+        long progress = 0L;
+        for (File file : files) {
+          while (submitted < files.size() && fileQueues.size() < filesAhead) {
+            File nextFile = files.get(submitted++);
+            BlockingIteratorImpl<Descriptor> fileQueue =
+                newDescriptorQueue(maxDescriptorsPerFile, maxBytesPerFile);
+            fileQueues.add(fileQueue);
+            executor.execute(() -> this.readFile(nextFile, fileQueue));
+          }
+          for (Descriptor descriptor : fileQueues.remove()) {
+            this.descriptorQueue.add(descriptor);
+          }
+          if (isTarball(file)) {
+            progress = logTarballProgress(progress, file.length(), total);
+          }
+        }
+      } finally {
+        for (BlockingIteratorImpl<Descriptor> fileQueue : fileQueues) {
+          fileQueue.cancel();
+        }
+        executor.shutdownNow();
+      }
+    }
+
+    private void readFile(File file, BlockingIteratorImpl<Descriptor> queue) {
+      try {
+        if (isTarball(file)) {
+          this.readTarball(file, queue);
+        } else {
+          this.readDescriptorFile(file, queue);
         }
+        this.parsedFilesAfter.put(file.getAbsolutePath(), file.lastModified());
+      } catch (IOException e) {
+        logger.warn("Unable to read descriptor file {}.", file, e);
+      } catch (CancellationException e) {
+        /* Descriptors of this file are not needed anymore. */
+      } catch (Throwable t) {
+        logger.error("Bug: uncaught exception or error while reading "
+            + "descriptor file {}.", file, t);
+      } finally {
+        queue.setOutOfDescriptors();
       }
     }
 
-    private void readTarball(File file) throws IOException {
-      try (FileInputStream in = new FileInputStream(file)) {
-        if (in.available() <= 0) {
+    private void readTarball(File file, BlockingIteratorImpl<Descriptor> queue)
+        throws IOException {
+      try (FileInputStream fis = new FileInputStream(file)) {
+        if (fis.available() <= 0) {
           return;
         }
+        InputStream in = new BufferedInputStream(fis, INPUT_BUFFER_SIZE);
         TarArchiveInputStream tais;
         if (file.getName().endsWith(".tar.bz2")) {
           tais = new TarArchiveInputStream(new BZip2CompressorInputStream(in));
@@ -282,47 +545,140 @@ public class DescriptorReaderImpl implements DescriptorReader {
         } else {
           return;
         }
-        try (BufferedInputStream bis = new BufferedInputStream(tais)) {
-          TarArchiveEntry tae;
-          while ((tae = tais.getNextTarEntry()) != null) {
-            if (tae.isDirectory()) {
-              continue;
-            }
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-              int len;
-              byte[] data = new byte[1024];
-              while ((len = bis.read(data, 0, 1024)) >= 0) {
-                baos.write(data, 0, len);
-              }
-              byte[] rawDescriptorBytes = baos.toByteArray();
-              if (rawDescriptorBytes.length < 1) {
-                continue;
-              }
-              String fileName = tae.getName().substring(
-                      tae.getName().lastIndexOf("/") + 1);
-              for (Descriptor descriptor :
-                      this.descriptorParser.parseDescriptors(
-                      rawDescriptorBytes, file, fileName)) {
-                this.descriptorQueue.add(descriptor);
-              }
-            }
+        if (null != this.parserExecutor) {
+          this.readTarballEntriesPipelined(file, tais, queue);
+          return;
+        }
+        TarArchiveEntry tae;
+        while ((tae = tais.getNextEntry()) != null) {
+          if (tae.isDirectory()) {
+            continue;
+          }
+          byte[] rawDescriptorBytes = readTarEntry(tais, tae);
+          if (rawDescriptorBytes.length < 1) {
+            continue;
+          }
+          String fileName = tae.getName().substring(
+                  tae.getName().lastIndexOf("/") + 1);
+          for (Descriptor descriptor :
+                  this.descriptorParser.parseDescriptors(
+                  rawDescriptorBytes, file, fileName)) {
+            queue.add(descriptor);
           }
         }
       }
     }
 
-    private void readDescriptorFile(File file) throws IOException {
-      try (FileInputStream fis = new FileInputStream(file)) {
-        InputStream is = fis;
-        if (file.getName().endsWith(".gz")) {
-          is = new GzipCompressorInputStream(fis);
-        }
-        byte[] rawDescriptorBytes = IOUtils.toByteArray(is);
-        if (rawDescriptorBytes.length > 0) {
-          for (Descriptor descriptor : this.descriptorParser.parseDescriptors(
-              rawDescriptorBytes, file, file.getName())) {
-            this.descriptorQueue.add(descriptor);
+    /* Decompress tar entries on this thread and parse them on the parser
+     * threads.  Parsed entries are added to the queue in the order in which
+     * they appear in the tarball, and at most two entries per parser thread
+     * are decompressed ahead of the entry that is added next. */
+    private void readTarballEntriesPipelined(File file,
+        TarArchiveInputStream tais, BlockingIteratorImpl<Descriptor> queue)
+        throws IOException {
+      int maxEntriesAhead = 2 * this.readerThreads;
+      Deque<Future<Iterable<Descriptor>>> parsedEntries = new ArrayDeque<>();
+      try {
+        TarArchiveEntry tae;
+        while ((tae = tais.getNextEntry()) != null) {
+          if (tae.isDirectory()) {
+            continue;
+          }
+          byte[] rawDescriptorBytes = readTarEntry(tais, tae);
+          if (rawDescriptorBytes.length < 1) {
+            continue;
           }
+          String fileName = tae.getName().substring(
+              tae.getName().lastIndexOf("/") + 1);
+          parsedEntries.add(this.parserExecutor.submit(
+              () -> parseAhead(this.descriptorParser.parseDescriptors(
+              rawDescriptorBytes, file, fileName))));
+          if (parsedEntries.size() >= maxEntriesAhead) {
+            addParsedEntry(parsedEntries.remove(), queue);
+          }
+        }
+        while (!parsedEntries.isEmpty()) {
+          addParsedEntry(parsedEntries.remove(), queue);
+        }
+      } finally {
+        for (Future<Iterable<Descriptor>> parsedEntry : parsedEntries) {
+          parsedEntry.cancel(true);
+        }
+      }
+    }
+
+    /* Parse all descriptors of a tar entry on the calling parser thread,
+     * rather than only when they are added to the queue, because the parser
+     * only parses descriptors while iterating over them. */
+    private static List<Descriptor> parseAhead(
+        Iterable<Descriptor> descriptors) {
+      List<Descriptor> parsedDescriptors = new ArrayList<>();
+      for (Descriptor descriptor : descriptors) {
+        parsedDescriptors.add(descriptor);
+      }
+      return parsedDescriptors;
+    }
+
+    private static void addParsedEntry(
+        Future<Iterable<Descriptor>> parsedEntry,
+        BlockingIteratorImpl<Descriptor> queue) throws IOException {
+      Iterable<Descriptor> descriptors;
+      try {
+        descriptors = parsedEntry.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for "
+            + "tar entries to be parsed.");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        } else if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+      for (Descriptor descriptor : descriptors) {
+        queue.add(descriptor);
+      }
+    }
+
+    /* Read the current tar entry directly into an array of the size given in
+     * the entry header.  The array cannot be reused for the next entry,
+     * because parsed descriptors keep referencing it. */
+    private static byte[] readTarEntry(TarArchiveInputStream tais,
+        TarArchiveEntry tae) throws IOException {
+      long size = tae.getSize();
+      if (size > MAX_ARRAY_SIZE) {
+        throw new IOException("Tar entry " + tae.getName() + " with "
+            + size + " bytes is too large to be read into memory.");
+      }
+      byte[] rawDescriptorBytes = new byte[(int) size];
+      int read = IOUtils.readFully(tais, rawDescriptorBytes);
+      if (read < rawDescriptorBytes.length) {
+        logger.warn("Tar entry {} is truncated after {} of {} bytes.",
+            tae.getName(), read, size);
+        rawDescriptorBytes = Arrays.copyOf(rawDescriptorBytes, read);
+      }
+      return rawDescriptorBytes;
+    }
+
+    private void readDescriptorFile(File file,
+        BlockingIteratorImpl<Descriptor> queue) throws IOException {
+      byte[] rawDescriptorBytes;
+      if (file.getName().endsWith(".gz")) {
+        try (InputStream is = new GzipCompressorInputStream(
+            new BufferedInputStream(new FileInputStream(file),
+            INPUT_BUFFER_SIZE))) {
+          rawDescriptorBytes = IOUtils.toByteArray(is);
+        }
+      } else {
+        /* The file size is known, so read it into an array of that size. */
+        rawDescriptorBytes = Files.readAllBytes(file.toPath());
+      }
+      if (rawDescriptorBytes.length > 0) {
+        for (Descriptor descriptor : this.descriptorParser.parseDescriptors(
+            rawDescriptorBytes, file, file.getName())) {
+          queue.add(descriptor);
         }
       }
     }
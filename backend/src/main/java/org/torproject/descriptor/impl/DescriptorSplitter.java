@@ -0,0 +1,159 @@
+/* Copyright 2012--2020 The Tor Project
+ * See LICENSE for licensing information */
+
+package org.torproject.descriptor.impl;
+
+import java.util.Arrays;
+
+/**
+ * Split raw descriptor bytes containing one or more descriptors of the same
+ * type into the parts belonging to each descriptor, including annotations
+ * preceding it.
+ *
+ * <p>The bytes are scanned exactly once up front, recording the start of
+ * every line that starts with an annotation ({@code @}), with the keyword
+ * followed by a space, or with the keyword followed by a newline.  Every
+ * descriptor boundary is then found by advancing a cursor over these line
+ * starts rather than by searching the bytes again.</p>
+ *
+ * <p>A descriptor starts at the current position if a line with the keyword
+ * starts there, or otherwise at the next line starting with the keyword and
+ * a space, or, only if there is none, with the keyword and a newline.  Any
+ * bytes following the last descriptor without such a line are ignored.  A
+ * descriptor ends before the next annotation line, or, if there is none,
+ * before the next line starting with the keyword and a space, or, if there
+ * is none either, before the next line starting with the keyword and a
+ * newline, or at the end of the bytes.</p>
+ */
+final class DescriptorSplitter {
+
+  private final byte[] bytes;
+
+  private final int end;
+
+  /* Line starts of annotation lines, of lines starting with the keyword and
+   * a space, and of lines starting with the keyword and a newline, each in
+   * ascending order, and the number of recorded line starts in each. */
+  private int[] annotationLines = new int[8];
+
+  private int annotationCount = 0;
+
+  private int[] keywordSpaceLines = new int[8];
+
+  private int keywordSpaceCount = 0;
+
+  private int[] keywordNewlineLines = new int[8];
+
+  private int keywordNewlineCount = 0;
+
+  /* Indexes of the first recorded line starts that have not been passed
+   * yet, which only ever move forward because positions only increase. */
+  private int annotationCursor = 0;
+
+  private int keywordSpaceCursor = 0;
+
+  private int keywordNewlineCursor = 0;
+
+  /* Start of the next descriptor's annotations. */
+  private int position = 0;
+
+  /** Scan the given bytes for lines starting descriptors or annotations. */
+  DescriptorSplitter(byte[] bytes, byte[] keyword) {
+    this.bytes = bytes;
+    this.end = bytes.length;
+    byte first = keyword[0];
+    for (int lineStart = 0; lineStart < this.end; ) {
+      byte lineFirst = bytes[lineStart];
+      if (lineFirst == '@') {
+        this.annotationLines = append(this.annotationLines,
+            this.annotationCount++, lineStart);
+      } else if (lineFirst == first) {
+        if (DescriptorBytes.isKeywordAt(bytes, lineStart, this.end, keyword,
+            DescriptorBytes.SP)) {
+          this.keywordSpaceLines = append(this.keywordSpaceLines,
+              this.keywordSpaceCount++, lineStart);
+        } else if (DescriptorBytes.isKeywordAt(bytes, lineStart, this.end,
+            keyword, DescriptorBytes.NL)) {
+          this.keywordNewlineLines = append(this.keywordNewlineLines,
+              this.keywordNewlineCount++, lineStart);
+        }
+      }
+      int newline = DescriptorBytes.indexOf(bytes, lineStart, this.end,
+          DescriptorBytes.NL);
+      if (newline < 0) {
+        break;
+      }
+      lineStart = newline + 1;
+    }
+  }
+
+  private static int[] append(int[] lines, int count, int lineStart) {
+    if (count == lines.length) {
+      lines = Arrays.copyOf(lines, count * 2);
+    }
+    lines[count] = lineStart;
+    return lines;
+  }
+
+  /**
+   * Return offset and length of the next descriptor including its
+   * annotations, or null if there are no further descriptors.
+   */
+  int[] next() {
+    if (this.position >= this.end) {
+      return null;
+    }
+    int startDescriptor = this.nextKeywordSpaceLine(this.position);
+    int keywordNewlineLine = this.nextKeywordNewlineLine(this.position);
+    if (keywordNewlineLine == this.position || startDescriptor < 0) {
+      startDescriptor = keywordNewlineLine;
+    }
+    if (startDescriptor < 0) {
+      this.position = this.end;
+      return null;
+    }
+    int endDescriptor = this.nextAnnotationLine(startDescriptor + 1);
+    if (endDescriptor < 0) {
+      endDescriptor = this.nextKeywordSpaceLine(startDescriptor + 1);
+    }
+    if (endDescriptor < 0) {
+      endDescriptor = this.nextKeywordNewlineLine(startDescriptor + 1);
+    }
+    if (endDescriptor < 0) {
+      endDescriptor = this.end;
+    }
+    int[] offsetAndLength = new int[] { this.position,
+        endDescriptor - this.position };
+    this.position = endDescriptor;
+    return offsetAndLength;
+  }
+
+  /* Return the first annotation line start at or after the given index, or
+   * -1 if there is none. */
+  private int nextAnnotationLine(int from) {
+    while (this.annotationCursor < this.annotationCount
+        && this.annotationLines[this.annotationCursor] < from) {
+      this.annotationCursor++;
+    }
+    return this.annotationCursor < this.annotationCount
+        ? this.annotationLines[this.annotationCursor] : -1;
+  }
+
+  private int nextKeywordSpaceLine(int from) {
+    while (this.keywordSpaceCursor < this.keywordSpaceCount
+        && this.keywordSpaceLines[this.keywordSpaceCursor] < from) {
+      this.keywordSpaceCursor++;
+    }
+    return this.keywordSpaceCursor < this.keywordSpaceCount
+        ? this.keywordSpaceLines[this.keywordSpaceCursor] : -1;
+  }
+
+  private int nextKeywordNewlineLine(int from) {
+    while (this.keywordNewlineCursor < this.keywordNewlineCount
+        && this.keywordNewlineLines[this.keywordNewlineCursor] < from) {
+      this.keywordNewlineCursor++;
+    }
+    return this.keywordNewlineCursor < this.keywordNewlineCount
+        ? this.keywordNewlineLines[this.keywordNewlineCursor] : -1;
+  }
+}
@@ -109,14 +109,14 @@ public abstract class ExtraInfoDescriptorImpl extends DescriptorImpl
    *
    */
   private void parseDescriptorBytes() throws DescriptorParseException {
-    Scanner scanner = this.newScanner().useDelimiter(NL);
+    LineTokenizer tokenizer = this.newLineTokenizer();
     Key nextCrypto = Key.EMPTY;
     List<String> cryptoLines = null;
-    while (scanner.hasNext()) {
-      String line = scanner.next();
+    while (tokenizer.hasNext()) {
+      String line = tokenizer.next();
       String lineNoOpt = line.startsWith(Key.OPT.keyword + SP)
           ? line.substring(Key.OPT.keyword.length() + 1) : line;
-      String[] partsNoOpt = lineNoOpt.split("[ \t]+");
+      String[] partsNoOpt = LineTokenizer.splitFields(lineNoOpt);
       Key key = Key.get(partsNoOpt[0]);
       switch (key) {
         case EXTRA_INFO:
@@ -5,9 +5,12 @@ import org.torproject.descriptor.DescriptorParseException;
 import org.torproject.descriptor.GeoipFile;
 
 import java.io.File;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
@@ -22,6 +25,7 @@ public class GeoipFileImpl extends DescriptorImpl implements GeoipFile {
     super(rawDescriptorBytes, offsetAndLength, descriptorFile);
     entries = new ArrayList<>();
     this.splitAndParseEntries();
+    this.indexEntries();
   }
 
   private void splitAndParseEntries() throws DescriptorParseException {
@@ -68,63 +72,150 @@ public class GeoipFileImpl extends DescriptorImpl implements GeoipFile {
     return this.entries;
   }
 
-  /**
-   * Compares two InetAddresses.
-   *
-   * @param a1 first address
-   * @param a2 second address
-   * @return -1 if a1 < a2, 0 if a1 == a2, and 1 if a1 > a2
-   * @throws RuntimeException when addresses have differing lengths
-   */
-  private int compareAddresses(InetAddress a1, InetAddress a2) {
-    byte[] b1 = a1.getAddress();
-    byte[] b2 = a2.getAddress();
-    if (b1.length != b2.length) {
-      throw new RuntimeException(
-              "Comparing two addresses of different lengths.");
-    }
-    for (int i = 0; i < b1.length; i++) {
-      int i1 = ((int) b1[i] & 0xFF);
-      int i2 = ((int) b2[i] & 0xFF);
-      if (i1 < i2) {
-        return -1;
-      } else if (i1 > i2) {
-        return 1;
+  /* Start and end addresses of IPv4 entries as 32-bit integers, sorted by
+   * start address, with the entry at the same index in ipv4Entries. */
+  private int[] ipv4Starts;
+
+  private int[] ipv4Ends;
+
+  private GeoipEntry[] ipv4Entries;
+
+  /* Start and end addresses of IPv6 entries as pairs of upper and lower 64
+   * bits, sorted by start address, with the entry at half the index in
+   * ipv6Entries. */
+  private long[] ipv6Starts;
+
+  private long[] ipv6Ends;
+
+  private GeoipEntry[] ipv6Entries;
+
+  /* Pack start and end addresses of all entries into primitive arrays, so
+   * that looking up an address compares primitive values rather than
+   * address bytes copied out of InetAddress instances.  Entries whose start
+   * and end addresses are not of the same family cannot contain any
+   * address and are left out. */
+  private void indexEntries() {
+    List<GeoipEntry> ipv4 = new ArrayList<>();
+    List<GeoipEntry> ipv6 = new ArrayList<>();
+    for (GeoipEntry entry : this.entries) {
+      if (entry.getStart() instanceof Inet4Address
+          && entry.getEnd() instanceof Inet4Address) {
+        ipv4.add(entry);
+      } else if (entry.getStart() instanceof Inet6Address
+          && entry.getEnd() instanceof Inet6Address) {
+        ipv6.add(entry);
       }
     }
-    return 0;
+    ipv4.sort(Comparator.comparingLong(
+        entry -> Integer.toUnsignedLong(ipv4Bits(entry.getStart()
+        .getAddress()))));
+    this.ipv4Starts = new int[ipv4.size()];
+    this.ipv4Ends = new int[ipv4.size()];
+    this.ipv4Entries = ipv4.toArray(new GeoipEntry[0]);
+    for (int i = 0; i < this.ipv4Entries.length; i++) {
+      this.ipv4Starts[i] = ipv4Bits(this.ipv4Entries[i].getStart()
+          .getAddress());
+      this.ipv4Ends[i] = ipv4Bits(this.ipv4Entries[i].getEnd()
+          .getAddress());
+    }
+    ipv6.sort((e1, e2) -> compareIpv6(e1.getStart().getAddress(),
+        e2.getStart().getAddress()));
+    this.ipv6Starts = new long[2 * ipv6.size()];
+    this.ipv6Ends = new long[2 * ipv6.size()];
+    this.ipv6Entries = ipv6.toArray(new GeoipEntry[0]);
+    for (int i = 0; i < this.ipv6Entries.length; i++) {
+      byte[] start = this.ipv6Entries[i].getStart().getAddress();
+      this.ipv6Starts[2 * i] = longBits(start, 0);
+      this.ipv6Starts[2 * i + 1] = longBits(start, 8);
+      byte[] end = this.ipv6Entries[i].getEnd().getAddress();
+      this.ipv6Ends[2 * i] = longBits(end, 0);
+      this.ipv6Ends[2 * i + 1] = longBits(end, 8);
+    }
+  }
+
+  private static int ipv4Bits(byte[] bytes) {
+    return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+        | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+  }
+
+  private static long longBits(byte[] bytes, int offset) {
+    long bits = 0L;
+    for (int i = offset; i < offset + 8; i++) {
+      bits = bits << 8 | (bytes[i] & 0xFF);
+    }
+    return bits;
+  }
+
+  private static int compareIpv6(byte[] b1, byte[] b2) {
+    int result = Long.compareUnsigned(longBits(b1, 0), longBits(b2, 0));
+    return result != 0 ? result
+        : Long.compareUnsigned(longBits(b1, 8), longBits(b2, 8));
   }
 
   @Override
   public Optional<GeoipEntry> getEntry(InetAddress forAddress) {
+    byte[] bytes = forAddress.getAddress();
+    if (bytes.length == 4) {
+      return this.getEntry(ipv4Bits(bytes));
+    } else {
+      return this.getEntry(longBits(bytes, 0), longBits(bytes, 8));
+    }
+  }
+
+  /* Entry ranges are expected to not overlap, as in Tor's geoip files, so
+   * that the only entry that can contain an address is the one with the
+   * greatest start address less than or equal to it. */
+  @Override
+  public Optional<GeoipEntry> getEntry(int ipv4Address) {
     int low = 0;
-    int mid;
-    int high = entries.size();
+    int high = this.ipv4Starts.length - 1;
     while (low <= high) {
-      mid = (low + high) / 2;
-      GeoipEntry entry = entries.get(mid);
-      int startComparisonResult = compareAddresses(
-              entry.getStart(), forAddress);
-      if (startComparisonResult == -1) {
-        /* entry start is less than desired address */
-        int endComparisonResult = compareAddresses(
-                entry.getEnd(), forAddress);
-        if (endComparisonResult >= 0) {
-          /* entry end is equal to or greater than desired address */
-          return Optional.of(entry);
-        }
+      int mid = (low + high) >>> 1;
+      if (Integer.compareUnsigned(this.ipv4Starts[mid], ipv4Address) <= 0) {
         low = mid + 1;
-      } else if (startComparisonResult == 1) {
-        /* entry start is greater than desired address */
+      } else {
         high = mid - 1;
-      } else if (startComparisonResult == 0) {
-        /* entry start is the same as desired address */
-        return Optional.of(entry);
       }
     }
+    /* high is now the index of the greatest start address less than or
+     * equal to the given address, or -1 if there is none. */
+    if (high >= 0
+        && Integer.compareUnsigned(ipv4Address, this.ipv4Ends[high]) <= 0) {
+      return Optional.of(this.ipv4Entries[high]);
+    }
     return Optional.empty();
   }
 
+  @Override
+  public Optional<GeoipEntry> getEntry(long ipv6AddressHigh,
+      long ipv6AddressLow) {
+    int low = 0;
+    int high = this.ipv6Entries.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (compareIpv6(this.ipv6Starts, 2 * mid, ipv6AddressHigh,
+          ipv6AddressLow) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (high >= 0 && compareIpv6(this.ipv6Ends, 2 * high, ipv6AddressHigh,
+        ipv6AddressLow) >= 0) {
+      return Optional.of(this.ipv6Entries[high]);
+    }
+    return Optional.empty();
+  }
+
+  /* Compare the address at the given index of the given array with the
+   * given address. */
+  private static int compareIpv6(long[] addresses, int index, long high,
+      long low) {
+    int result = Long.compareUnsigned(addresses[index], high);
+    return result != 0 ? result
+        : Long.compareUnsigned(addresses[index + 1], low);
+  }
+
   /**
    * Parse a GeoIP file.
    */
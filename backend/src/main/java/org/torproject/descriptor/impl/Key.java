@@ -191,6 +191,9 @@ public enum Key {
   /** The keyword as it appears in descriptors. */
   public final String keyword;
 
+  /* US-ASCII bytes of the keyword for searching raw descriptor bytes. */
+  final byte[] keywordBytes;
+
   private static final Map<String, Key> keywordMap = new HashMap<>();
   static {
     for (Key key : values()) {
@@ -202,6 +205,7 @@ public enum Key {
 
   Key(String keyword) {
     this.keyword = keyword;
+    this.keywordBytes = DescriptorBytes.ascii(keyword);
   }
 
   /** Retrieve a Key for a keyword.
@@ -0,0 +1,136 @@
+/* Copyright 2012--2020 The Tor Project
+ * See LICENSE for licensing information */
+
+package org.torproject.descriptor.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterate over newline-separated lines in raw descriptor bytes and split
+ * lines into space or tab-separated fields, without going through a
+ * {@link java.util.Scanner} or regular expressions.
+ *
+ * <p>Lines are returned exactly like a {@link java.util.Scanner} using a
+ * single newline as delimiter would return them: each line is decoded as
+ * UTF-8, one newline preceding a line is skipped, lines between two
+ * consecutive newlines are returned as empty lines, and an empty last line
+ * following a final newline is not returned at all.</p>
+ */
+public class LineTokenizer {
+
+  private final byte[] bytes;
+
+  private final int end;
+
+  /* Index of the next byte to read, which is either the first byte of the
+   * next line or the newline preceding it. */
+  private int position;
+
+  /**
+   * Create a tokenizer for {@code length} bytes starting at index
+   * {@code offset}.
+   */
+  public LineTokenizer(byte[] bytes, int offset, int length) {
+    if (offset < 0 || length < 0 || offset + length > bytes.length) {
+      throw new IndexOutOfBoundsException("offset=" + offset + " length="
+          + length + " bytes.length=" + bytes.length);
+    }
+    this.bytes = bytes;
+    this.position = offset;
+    this.end = offset + length;
+  }
+
+  private int lineStart() {
+    return this.position < this.end
+        && this.bytes[this.position] == DescriptorBytes.NL
+        ? this.position + 1 : this.position;
+  }
+
+  /** Return whether there is another line. */
+  public boolean hasNext() {
+    return this.lineStart() < this.end;
+  }
+
+  /** Return the next line without its terminating newline. */
+  public String next() {
+    int lineStart = this.lineStart();
+    if (lineStart >= this.end) {
+      throw new NoSuchElementException();
+    }
+    int lineEnd = DescriptorBytes.indexOf(this.bytes, lineStart, this.end,
+        DescriptorBytes.NL);
+    if (lineEnd < 0) {
+      lineEnd = this.end;
+    }
+    this.position = lineEnd;
+    return new String(this.bytes, lineStart, lineEnd - lineStart,
+        StandardCharsets.UTF_8);
+  }
+
+  private static final String[] NO_FIELDS = new String[0];
+
+  /**
+   * Split the given line into fields separated by one or more spaces or
+   * tabs, with the exact same result as {@code line.split("[ \t]+")}.
+   *
+   * <p>In particular, a line starting with a space or tab has an empty first
+   * field, trailing spaces and tabs are ignored, an empty line consists of a
+   * single empty field, and a line of only spaces and tabs has no fields at
+   * all.</p>
+   */
+  public static String[] splitFields(String line) {
+    int length = line.length();
+    if (length == 0) {
+      return new String[] { line };
+    }
+    String[] fields = new String[8];
+    int count = 0;
+    if (isFieldSeparator(line.charAt(0))) {
+      fields[count++] = "";
+    }
+    int index = 0;
+    while (index < length) {
+      while (index < length && isFieldSeparator(line.charAt(index))) {
+        index++;
+      }
+      if (index == length) {
+        break;
+      }
+      int fieldStart = index;
+      while (index < length && !isFieldSeparator(line.charAt(index))) {
+        index++;
+      }
+      if (count == fields.length) {
+        fields = Arrays.copyOf(fields, count * 2);
+      }
+      fields[count++] = fieldStart == 0 && index == length ? line
+          : line.substring(fieldStart, index);
+    }
+    if (count == 1 && fields[0].isEmpty()) {
+      /* The line only consists of separators. */
+      return NO_FIELDS;
+    }
+    return count == fields.length ? fields : Arrays.copyOf(fields, count);
+  }
+
+  /**
+   * Return the first field of the given line starting at the given index,
+   * which is the same as the first element returned by
+   * {@link #splitFields(String)} for the rest of the line, unless the rest
+   * of the line starts with a space or tab, in which case an empty string is
+   * returned.
+   */
+  public static String firstField(String line, int fromIndex) {
+    int index = fromIndex;
+    while (index < line.length() && !isFieldSeparator(line.charAt(index))) {
+      index++;
+    }
+    return line.substring(fromIndex, index);
+  }
+
+  private static boolean isFieldSeparator(char character) {
+    return character == ' ' || character == '\t';
+  }
+}
@@ -23,7 +23,6 @@ public class MicrodescriptorImpl extends DescriptorImpl
     super(descriptorBytes, offsetAndLength, descriptorFile, false);
     this.parseDescriptorBytes();
     this.calculateDigestSha256Base64(Key.ONION_KEY.keyword + NL);
-    this.convertDigestSha256Base64ToHex();
     this.checkExactlyOnceKeys(EnumSet.of(Key.ONION_KEY));
     Set<Key> atMostOnceKeys = EnumSet.of(
         Key.NTOR_ONION_KEY, Key.FAMILY, Key.P, Key.P6, Key.ID);
@@ -33,15 +32,15 @@ public class MicrodescriptorImpl extends DescriptorImpl
   }
 
   private void parseDescriptorBytes() throws DescriptorParseException {
-    Scanner scanner = this.newScanner().useDelimiter(NL);
+    LineTokenizer tokenizer = this.newLineTokenizer();
     Key nextCrypto = Key.EMPTY;
     StringBuilder crypto = null;
-    while (scanner.hasNext()) {
-      String line = scanner.next();
+    while (tokenizer.hasNext()) {
+      String line = tokenizer.next();
       if (line.startsWith("@")) {
         continue;
       }
-      String[] parts = line.split("[ \t]+");
+      String[] parts = LineTokenizer.splitFields(line);
       Key key = Key.get(parts[0]);
       switch (key) {
         case ONION_KEY:
@@ -210,15 +209,15 @@ public class MicrodescriptorImpl extends DescriptorImpl
     }
   }
 
-  private void convertDigestSha256Base64ToHex() {
-    this.digestSha256Hex = Hex.encodeHexString(Base64.decodeBase64(
-        this.getDigestSha256Base64()));
-  }
-
   private String digestSha256Hex;
 
+  /* Convert the digest on first access, like the digest itself. */
   @Override
   public String getDigestSha256Hex() {
+    if (null == this.digestSha256Hex) {
+      this.digestSha256Hex = Hex.encodeHexString(Base64.decodeBase64(
+          this.getDigestSha256Base64()));
+    }
     return this.digestSha256Hex;
   }
 
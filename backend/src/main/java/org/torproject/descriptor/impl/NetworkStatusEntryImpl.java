@@ -46,19 +46,54 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
   protected NetworkStatusEntryImpl(DescriptorImpl parent, int offset,
       int length, boolean microdescConsensus, Map<String, Integer> flagIndexes,
       Map<Integer, String> flagStrings) throws DescriptorParseException {
+    this(parent, offset, length, microdescConsensus, flagIndexes, flagStrings,
+        false);
+  }
+
+  /**
+   * Parse a status entry, and if {@code lazy} is true, only parse its r and
+   * s lines right away and defer parsing all other lines until any of their
+   * fields is requested for the first time.
+   *
+   * <p>In lazy mode, the entry is still checked for duplicate lines, and
+   * unrecognized lines are still reported to the parent, but the contents of
+   * deferred lines are not validated until they are parsed.  If a deferred
+   * line turns out to be invalid at that time, the methods returning fields
+   * of that line throw an {@link IllegalStateException} with the
+   * {@link DescriptorParseException} as cause on every call, whereas the
+   * methods returning fields of other lines are not affected.</p>
+   */
+  protected NetworkStatusEntryImpl(DescriptorImpl parent, int offset,
+      int length, boolean microdescConsensus, Map<String, Integer> flagIndexes,
+      Map<Integer, String> flagStrings, boolean lazy)
+      throws DescriptorParseException {
     this.parent = parent;
     this.offset = offset;
     this.length = length;
     this.microdescConsensus = microdescConsensus;
     this.flagIndexes = flagIndexes;
     this.flagStrings = flagStrings;
-    this.parseStatusEntryBytes();
+    this.parseStatusEntryBytes(lazy);
     this.clearAtMostOnceKeys();
   }
 
-  private Set<Key> atMostOnceKeys = EnumSet.of(
+  private static final Set<Key> AT_MOST_ONCE_KEYS = EnumSet.of(
       Key.S, Key.V, Key.PR, Key.W, Key.P);
 
+  /* Keys of lines that are not parsed right away in lazy mode. */
+  private static final Set<Key> DEFERRED_KEYS = EnumSet.of(
+      Key.A, Key.V, Key.PR, Key.W, Key.P, Key.M, Key.ID);
+
+  private Set<Key> atMostOnceKeys = EnumSet.copyOf(AT_MOST_ONCE_KEYS);
+
+  /* Whether there are deferred lines that have not been parsed yet. */
+  private boolean deferredLines = false;
+
+  /* Exceptions thrown while parsing deferred lines by key of the invalid
+   * line, which are thrown again whenever one of its fields is requested,
+   * or null if all deferred lines were parsed successfully. */
+  private Map<Key, DescriptorParseException> deferredLinesExceptions;
+
   private void parsedAtMostOnceKey(Key key)
       throws DescriptorParseException {
     if (!this.atMostOnceKeys.contains(key)) {
@@ -68,57 +103,120 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
     this.atMostOnceKeys.remove(key);
   }
 
-  private void parseStatusEntryBytes() throws DescriptorParseException {
+  private void parseStatusEntryBytes(boolean lazy)
+      throws DescriptorParseException {
     /* We need to pass this.offset and this.length, because the overloaded
      * method without arguments would use this.parent.offset and
      * this.parent.length as bounds, which is not what we want! */
-    Scanner scanner = this.parent.newScanner(this.offset, this.length)
-        .useDelimiter(NL);
+    LineTokenizer tokenizer = this.parent.newLineTokenizer(this.offset,
+        this.length);
     String line;
-    if (!scanner.hasNext() || !(line = scanner.next()).startsWith("r ")) {
+    if (!tokenizer.hasNext() || !(line = tokenizer.next()).startsWith("r ")) {
       throw new DescriptorParseException("Status entry must start with "
           + "an r line.");
     }
-    String[] rlineParts = line.split("[ \t]+");
+    String[] rlineParts = LineTokenizer.splitFields(line);
     this.parseRLine(line, rlineParts);
-    while (scanner.hasNext()) {
-      line = scanner.next();
-      String[] parts = !line.startsWith(Key.OPT.keyword + SP)
-          ? line.split("[ \t]+")
-          : line.substring(Key.OPT.keyword.length() + 1).split("[ \t]+");
-      Key key = Key.get(parts[0]);
-      switch (key) {
-        case A:
-          this.parseALine(line, parts);
-          break;
-        case S:
-          this.parseSLine(parts);
-          break;
-        case V:
-          this.parseVLine(line);
-          break;
-        case PR:
-          this.parsePrLine(line, parts);
-          break;
-        case W:
-          this.parseWLine(line, parts);
-          break;
-        case P:
-          this.parsePLine(line, parts);
-          break;
-        case M:
-          this.parseMLine(line, parts);
-          break;
-        case ID:
-          this.parseIdLine(line, parts);
-          break;
-        default:
-          if (this.unrecognizedLines == null) {
-            this.unrecognizedLines = new ArrayList<>();
+    while (tokenizer.hasNext()) {
+      line = tokenizer.next();
+      Key deferredKey = lazy ? deferredKey(line) : null;
+      if (null == deferredKey) {
+        this.parseLine(line);
+      } else {
+        if (AT_MOST_ONCE_KEYS.contains(deferredKey)) {
+          this.parsedAtMostOnceKey(deferredKey);
+        }
+        this.deferredLines = true;
+      }
+    }
+  }
+
+  /* Return the key of the given line if parsing it is deferred in lazy
+   * mode, or null otherwise.  Only looks at the first field rather than
+   * splitting the whole line. */
+  private static Key deferredKey(String line) {
+    Key key = Key.get(LineTokenizer.firstField(line,
+        line.startsWith(Key.OPT.keyword + SP)
+        ? Key.OPT.keyword.length() + 1 : 0));
+    return DEFERRED_KEYS.contains(key) ? key : null;
+  }
+
+  /* Parse deferred lines if there are any left, which is done at most once
+   * by the first method that returns one of their fields, and throw an
+   * exception if a line with the given key could not be parsed. */
+  private synchronized void parseDeferredLines(Key key) {
+    if (this.deferredLines) {
+      this.deferredLines = false;
+      LineTokenizer tokenizer = this.parent.newLineTokenizer(this.offset,
+          this.length);
+      /* Skip the r line, which has been parsed before. */
+      tokenizer.next();
+      this.atMostOnceKeys = EnumSet.copyOf(AT_MOST_ONCE_KEYS);
+      try {
+        while (tokenizer.hasNext()) {
+          String line = tokenizer.next();
+          Key deferredKey = deferredKey(line);
+          if (null == deferredKey) {
+            continue;
           }
-          this.unrecognizedLines.add(line);
+          try {
+            this.parseLine(line);
+          } catch (DescriptorParseException e) {
+            if (null == this.deferredLinesExceptions) {
+              this.deferredLinesExceptions = new EnumMap<>(Key.class);
+            }
+            this.deferredLinesExceptions.putIfAbsent(deferredKey, e);
+          }
+        }
+      } finally {
+        this.clearAtMostOnceKeys();
       }
     }
+    if (null != this.deferredLinesExceptions
+        && this.deferredLinesExceptions.containsKey(key)) {
+      throw new IllegalStateException("Unable to parse deferred '"
+          + key.keyword + "' line in status entry.",
+          this.deferredLinesExceptions.get(key));
+    }
+  }
+
+  private void parseLine(String line) throws DescriptorParseException {
+    String[] parts = !line.startsWith(Key.OPT.keyword + SP)
+        ? LineTokenizer.splitFields(line)
+        : LineTokenizer.splitFields(line.substring(
+        Key.OPT.keyword.length() + 1));
+    Key key = Key.get(parts[0]);
+    switch (key) {
+      case A:
+        this.parseALine(line, parts);
+        break;
+      case S:
+        this.parseSLine(parts);
+        break;
+      case V:
+        this.parseVLine(line);
+        break;
+      case PR:
+        this.parsePrLine(line, parts);
+        break;
+      case W:
+        this.parseWLine(line, parts);
+        break;
+      case P:
+        this.parsePLine(line, parts);
+        break;
+      case M:
+        this.parseMLine(line, parts);
+        break;
+      case ID:
+        this.parseIdLine(line, parts);
+        break;
+      default:
+        if (this.unrecognizedLines == null) {
+          this.unrecognizedLines = new ArrayList<>();
+        }
+        this.unrecognizedLines.add(line);
+    }
   }
 
   private void parseRLine(String line, String[] parts)
@@ -327,6 +425,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public Set<String> getMicrodescriptorDigestsSha256Base64() {
+    this.parseDeferredLines(Key.M);
     return this.microdescriptorDigests == null ? null
         : new HashSet<>(this.microdescriptorDigests);
   }
@@ -335,6 +434,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public List<String> getOrAddresses() {
+    this.parseDeferredLines(Key.A);
     return new ArrayList<>(this.orAddresses);
   }
 
@@ -356,6 +456,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public String getVersion() {
+    this.parseDeferredLines(Key.V);
     return this.version;
   }
 
@@ -363,6 +464,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public SortedMap<String, SortedSet<Long>> getProtocols() {
+    this.parseDeferredLines(Key.PR);
     return this.protocols;
   }
 
@@ -370,6 +472,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public long getBandwidth() {
+    this.parseDeferredLines(Key.W);
     return this.bandwidth;
   }
 
@@ -377,6 +480,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public long getMeasured() {
+    this.parseDeferredLines(Key.W);
     return this.measured;
   }
 
@@ -384,6 +488,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public boolean getUnmeasured() {
+    this.parseDeferredLines(Key.W);
     return this.unmeasured;
   }
 
@@ -391,6 +496,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public String getDefaultPolicy() {
+    this.parseDeferredLines(Key.P);
     return this.defaultPolicy;
   }
 
@@ -398,6 +504,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public String getPortList() {
+    this.parseDeferredLines(Key.P);
     return this.portList;
   }
 
@@ -405,6 +512,7 @@ public class NetworkStatusEntryImpl implements NetworkStatusEntry {
 
   @Override
   public String getMasterKeyEd25519() {
+    this.parseDeferredLines(Key.ID);
     return this.masterKeyEd25519;
   }
 }
@@ -4,7 +4,6 @@
 package org.torproject.descriptor.impl;
 
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.codec.binary.Hex;
 import org.torproject.descriptor.DescriptorParseException;
 
 import java.text.DateFormat;
@@ -15,7 +14,6 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * Parse helper for descriptor contents.
@@ -28,42 +26,90 @@ import java.util.regex.Pattern;
  */
 public class ParseHelper {
 
-  private static Pattern keywordPattern = Pattern.compile("^[A-Za-z0-9-]+$");
+  /* Character classes of descriptor fields, which are checked by hand
+   * rather than by matching regular expressions, because they are checked
+   * once or more per status entry or server descriptor. */
+  private static boolean isDigit(char character) {
+    return character >= '0' && character <= '9';
+  }
+
+  private static boolean isAlphanumeric(char character) {
+    return isDigit(character) || (character >= 'a' && character <= 'z')
+        || (character >= 'A' && character <= 'Z');
+  }
+
+  private static boolean isHexDigit(char character) {
+    return isDigit(character) || (character >= 'a' && character <= 'f')
+        || (character >= 'A' && character <= 'F');
+  }
+
+  /* Return the value of the given base64 character without padding, or -1
+   * if it's not a base64 character. */
+  private static int base64Value(char character) {
+    if (character >= 'A' && character <= 'Z') {
+      return character - 'A';
+    } else if (character >= 'a' && character <= 'z') {
+      return character - 'a' + 26;
+    } else if (isDigit(character)) {
+      return character - '0' + 52;
+    } else if (character == '+') {
+      return 62;
+    } else if (character == '/') {
+      return 63;
+    } else {
+      return -1;
+    }
+  }
+
+  /* Return whether the given string has the given length and only consists
+   * of base64 characters without padding. */
+  private static boolean isBase64(String string, int length) {
+    if (string.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (base64Value(string.charAt(i)) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
 
   protected static String parseKeyword(String line, String keyword)
       throws DescriptorParseException {
-    if (!keywordPattern.matcher(keyword).matches()) {
+    boolean isValid = !keyword.isEmpty();
+    for (int i = 0; isValid && i < keyword.length(); i++) {
+      char character = keyword.charAt(i);
+      isValid = isAlphanumeric(character) || character == '-';
+    }
+    if (!isValid) {
       throw new DescriptorParseException("Unrecognized character in "
           + "keyword '" + keyword + "' in line '" + line + "'.");
     }
     return keyword;
   }
 
-  private static Pattern ipv4Pattern = Pattern.compile("^[0-9.]{7,15}$");
-
   protected static String parseIpv4Address(String line, String address)
       throws DescriptorParseException {
-    boolean isValid = true;
-    if (!ipv4Pattern.matcher(address).matches()) {
-      isValid = false;
-    } else {
-      String[] parts = address.split("\\.", -1);
-      if (parts.length != 4) {
-        isValid = false;
+    /* Accept 7 to 15 characters forming four non-empty decimal octets
+     * separated by dots, possibly with leading zeros. */
+    int length = address.length();
+    boolean isValid = length >= 7 && length <= 15;
+    int octets = 0;
+    int octetValue = -1;
+    for (int i = 0; isValid && i <= length; i++) {
+      char character = i < length ? address.charAt(i) : '.';
+      if (character == '.') {
+        isValid = octetValue >= 0 && ++octets <= 4;
+        octetValue = -1;
+      } else if (isDigit(character)) {
+        octetValue = Math.max(octetValue, 0) * 10 + (character - '0');
+        isValid = octetValue <= 255;
       } else {
-        for (int i = 0; i < 4; i++) {
-          try {
-            int octetValue = Integer.parseInt(parts[i]);
-            if (octetValue < 0 || octetValue > 255) {
-              isValid = false;
-            }
-          } catch (NumberFormatException e) {
-            isValid = false;
-          }
-        }
+        isValid = false;
       }
     }
-    if (!isValid) {
+    if (!isValid || octets != 4) {
       throw new DescriptorParseException("'" + address + "' in line '"
           + line + "' is not a valid IPv4 address.");
     }
@@ -224,14 +270,14 @@ public class ParseHelper {
     return parseHexString(line, hexString, -1);
   }
 
-  private static Pattern hexPattern = Pattern.compile("^[0-9a-fA-F]*$");
-
   private static String parseHexString(String line, String hexString,
       int expectedLength) throws DescriptorParseException {
-    if (!hexPattern.matcher(hexString).matches()
-        || hexString.length() % 2 != 0
-        || (expectedLength >= 0
-        && hexString.length() != expectedLength)) {
+    boolean isValid = hexString.length() % 2 == 0 && (expectedLength < 0
+        || hexString.length() == expectedLength);
+    for (int i = 0; isValid && i < hexString.length(); i++) {
+      isValid = isHexDigit(hexString.charAt(i));
+    }
+    if (!isValid) {
       throw new DescriptorParseException("Illegal hex string in line '"
           + line + "'.");
     }
@@ -252,12 +298,13 @@ public class ParseHelper {
         .parseKeyValueList(line, parts, startIndex, 0, " ");
   }
 
-  private static Pattern nicknamePattern =
-      Pattern.compile("^[0-9a-zA-Z]{1,19}$");
-
   protected static String parseNickname(String line, String nickname)
       throws DescriptorParseException {
-    if (!nicknamePattern.matcher(nickname).matches()) {
+    boolean isValid = nickname.length() >= 1 && nickname.length() <= 19;
+    for (int i = 0; isValid && i < nickname.length(); i++) {
+      isValid = isAlphanumeric(nickname.charAt(i));
+    }
+    if (!isValid) {
       throw new DescriptorParseException("Illegal nickname in line '"
           + line + "'.");
     }
@@ -277,8 +324,8 @@ public class ParseHelper {
     }
   }
 
-  private static Pattern twentyByteBase64Pattern =
-      Pattern.compile("^[0-9a-zA-Z+/]{27}$");
+  private static final char[] UPPER_HEX_DIGITS =
+      "0123456789ABCDEF".toCharArray();
 
   protected static void verifyTwentyByteBase64String(String line,
       String base64String) throws DescriptorParseException {
@@ -287,21 +334,31 @@ public class ParseHelper {
 
   protected static String convertTwentyByteBase64StringToHex(String line,
       String base64String) throws DescriptorParseException {
-    if (!twentyByteBase64Pattern.matcher(base64String).matches()) {
+    if (!isBase64(base64String, 27)) {
       throw new DescriptorParseException("'" + base64String
           + "' in line '" + line + "' is not a valid base64-encoded "
           + "20-byte value.");
     }
-    return Hex.encodeHexString(Base64.decodeBase64(base64String + "="))
-        .toUpperCase();
+    /* Decode 27 base64 characters with 6 bits each directly into 40 hex
+     * digits with 4 bits each, and discard the 2 remaining bits. */
+    char[] hex = new char[40];
+    int bits = 0;
+    int bitCount = 0;
+    int hexLength = 0;
+    for (int i = 0; i < 27; i++) {
+      bits = (bits << 6) | base64Value(base64String.charAt(i));
+      bitCount += 6;
+      while (bitCount >= 4 && hexLength < hex.length) {
+        bitCount -= 4;
+        hex[hexLength++] = UPPER_HEX_DIGITS[(bits >> bitCount) & 0xf];
+      }
+    }
+    return new String(hex);
   }
 
-  private static Pattern thirtyTwoByteBase64Pattern =
-      Pattern.compile("^[0-9a-zA-Z+/]{43}$");
-
   protected static void verifyThirtyTwoByteBase64String(String line,
       String base64String) throws DescriptorParseException {
-    if (!thirtyTwoByteBase64Pattern.matcher(base64String).matches()) {
+    if (!isBase64(base64String, 43)) {
       throw new DescriptorParseException("'" + base64String
           + "' in line '" + line + "' is not a valid base64-encoded "
           + "32-byte value.");
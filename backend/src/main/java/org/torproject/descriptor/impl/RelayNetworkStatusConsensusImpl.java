@@ -18,7 +18,16 @@ public class RelayNetworkStatusConsensusImpl extends NetworkStatusImpl
   protected RelayNetworkStatusConsensusImpl(byte[] consensusBytes,
       int[] offsetAndLimit, File descriptorFile)
       throws DescriptorParseException {
+    this(consensusBytes, offsetAndLimit, descriptorFile, false);
+  }
+
+  /* Parse a consensus, and if lazyStatusEntries is true, defer parsing
+   * status entry lines other than r and s lines until they are needed. */
+  protected RelayNetworkStatusConsensusImpl(byte[] consensusBytes,
+      int[] offsetAndLimit, File descriptorFile, boolean lazyStatusEntries)
+      throws DescriptorParseException {
     super(consensusBytes, offsetAndLimit, descriptorFile, false);
+    this.lazyStatusEntries = lazyStatusEntries;
     this.splitAndParseParts(true);
     Set<Key> exactlyOnceKeys = EnumSet.of(
         Key.VOTE_STATUS, Key.CONSENSUS_METHOD, Key.VALID_AFTER, Key.FRESH_UNTIL,
@@ -39,10 +48,10 @@ public class RelayNetworkStatusConsensusImpl extends NetworkStatusImpl
 
   protected void parseHeader(int offset, int length)
       throws DescriptorParseException {
-    Scanner scanner = this.newScanner(offset, length).useDelimiter(NL);
-    while (scanner.hasNext()) {
-      String line = scanner.next();
-      String[] parts = line.split("[ \t]+");
+    LineTokenizer tokenizer = this.newLineTokenizer(offset, length);
+    while (tokenizer.hasNext()) {
+      String line = tokenizer.next();
+      String[] parts = LineTokenizer.splitFields(line);
       Key key = Key.get(parts[0]);
       switch (key) {
         case NETWORK_STATUS_VERSION:
@@ -110,11 +119,13 @@ public class RelayNetworkStatusConsensusImpl extends NetworkStatusImpl
 
   private boolean microdescConsensus = false;
 
+  private boolean lazyStatusEntries;
+
   protected void parseStatusEntry(int offset, int length)
       throws DescriptorParseException {
     NetworkStatusEntryImpl statusEntry = new NetworkStatusEntryImpl(this,
         offset, length, this.microdescConsensus, this.flagIndexes,
-        this.flagStrings);
+        this.flagStrings, this.lazyStatusEntries);
     this.statusEntries.put(statusEntry.getFingerprint(), statusEntry);
     List<String> unrecognizedStatusEntryLines = statusEntry
         .getAndClearUnrecognizedLines();
@@ -128,10 +139,10 @@ public class RelayNetworkStatusConsensusImpl extends NetworkStatusImpl
 
   protected void parseFooter(int offset, int length)
       throws DescriptorParseException {
-    Scanner scanner = this.newScanner(offset, length).useDelimiter(NL);
-    while (scanner.hasNext()) {
-      String line = scanner.next();
-      String[] parts = line.split("[ \t]+");
+    LineTokenizer tokenizer = this.newLineTokenizer(offset, length);
+    while (tokenizer.hasNext()) {
+      String line = tokenizer.next();
+      String[] parts = LineTokenizer.splitFields(line);
       Key key = Key.get(parts[0]);
       switch (key) {
         case DIRECTORY_FOOTER:
@@ -7,6 +7,7 @@ import org.torproject.descriptor.DescriptorParseException;
 import org.torproject.descriptor.RelayServerDescriptor;
 
 import java.io.File;
+import java.util.Set;
 
 public class RelayServerDescriptorImpl extends ServerDescriptorImpl
     implements RelayServerDescriptor {
@@ -16,7 +17,13 @@ public class RelayServerDescriptorImpl extends ServerDescriptorImpl
   protected RelayServerDescriptorImpl(byte[] descriptorBytes,
       int[] offsetAndLength, File descriptorFile)
       throws DescriptorParseException {
-    super(descriptorBytes, offsetAndLength, descriptorFile);
+    this(descriptorBytes, offsetAndLength, descriptorFile, null);
+  }
+
+  protected RelayServerDescriptorImpl(byte[] descriptorBytes,
+      int[] offsetAndLength, File descriptorFile, Set<Key> projection)
+      throws DescriptorParseException {
+    super(descriptorBytes, offsetAndLength, descriptorFile, projection);
     this.calculateDigestSha1Hex(Key.ROUTER.keyword + SP,
         NL + Key.ROUTER_SIGNATURE.keyword + NL);
     this.calculateDigestSha256Base64(Key.ROUTER.keyword + SP,
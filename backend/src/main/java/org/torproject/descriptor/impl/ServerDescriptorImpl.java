@@ -30,10 +30,37 @@ public abstract class ServerDescriptorImpl extends DescriptorImpl
   private static final Set<Key> exactlyOnce = EnumSet.of(
       Key.ROUTER, Key.BANDWIDTH, Key.PUBLISHED);
 
+  /* Keys of lines that are followed by a crypto block belonging to them. */
+  private static final Set<Key> cryptoKeys = EnumSet.of(
+      Key.ONION_KEY, Key.SIGNING_KEY, Key.ROUTER_SIGNATURE,
+      Key.IDENTITY_ED25519, Key.ONION_KEY_CROSSCERT,
+      Key.NTOR_ONION_KEY_CROSSCERT);
+
+  /* Keys of lines that are parsed regardless of any projection: the router
+   * line, crypto block delimiters, and lines with unknown keys. */
+  private static final Set<Key> alwaysParsedKeys = EnumSet.of(
+      Key.ROUTER, Key.CRYPTO_BEGIN, Key.CRYPTO_END, Key.INVALID);
+
   protected ServerDescriptorImpl(byte[] descriptorBytes, int[] offsetAndLength,
       File descriptorFile) throws DescriptorParseException {
+    this(descriptorBytes, offsetAndLength, descriptorFile, null);
+  }
+
+  /**
+   * Parse a server descriptor, but if {@code projection} is not null, only
+   * parse the router line and lines with the given keys, together with their
+   * crypto blocks, and skip all other known lines.
+   *
+   * <p>Skipped lines still count towards the checks of how often each key
+   * may occur, and lines with keywords that are not known at all are still
+   * reported as unrecognized lines.  Fields contained in skipped lines are
+   * left unset as if those lines were missing.</p>
+   */
+  protected ServerDescriptorImpl(byte[] descriptorBytes, int[] offsetAndLength,
+      File descriptorFile, Set<Key> projection)
+      throws DescriptorParseException {
     super(descriptorBytes, offsetAndLength, descriptorFile, false);
-    this.parseDescriptorBytes();
+    this.parseDescriptorBytes(projection);
     this.checkExactlyOnceKeys(exactlyOnce);
     this.checkAtMostOnceKeys(atMostOnce);
     this.checkFirstKey(Key.ROUTER);
@@ -45,18 +72,31 @@ public abstract class ServerDescriptorImpl extends DescriptorImpl
     this.clearParsedKeys();
   }
 
-  private void parseDescriptorBytes() throws DescriptorParseException {
-    Scanner scanner = this.newScanner().useDelimiter(NL);
+  private void parseDescriptorBytes(Set<Key> projection)
+      throws DescriptorParseException {
+    LineTokenizer tokenizer = this.newLineTokenizer();
     Key nextCrypto = Key.EMPTY;
     List<String> cryptoLines = null;
-    while (scanner.hasNext()) {
-      String line = scanner.next();
+    while (tokenizer.hasNext()) {
+      String line = tokenizer.next();
       if (line.startsWith("@")) {
         continue;
       }
-      String lineNoOpt = line.startsWith(Key.OPT.keyword + SP)
+      boolean startsWithOpt = line.startsWith(Key.OPT.keyword + SP);
+      if (null != projection && null == cryptoLines) {
+        Key key = Key.get(LineTokenizer.firstField(line,
+            startsWithOpt ? Key.OPT.keyword.length() + 1 : 0));
+        if (!alwaysParsedKeys.contains(key) && !projection.contains(key)) {
+          if (cryptoKeys.contains(key)) {
+            /* Skip the crypto block following this line, too. */
+            nextCrypto = key;
+          }
+          continue;
+        }
+      }
+      String lineNoOpt = startsWithOpt
           ? line.substring(Key.OPT.keyword.length() + 1) : line;
-      String[] partsNoOpt = lineNoOpt.split("[ \t]+");
+      String[] partsNoOpt = LineTokenizer.splitFields(lineNoOpt);
       Key key = Key.get(partsNoOpt[0]);
       switch (key) {
         case ROUTER:
@@ -186,6 +226,12 @@ public abstract class ServerDescriptorImpl extends DescriptorImpl
                 + Key.CRYPTO_BEGIN);
           }
           cryptoLines.add(line);
+          if (null != projection && !projection.contains(nextCrypto)
+              && cryptoKeys.contains(nextCrypto)) {
+            cryptoLines = null;
+            nextCrypto = Key.EMPTY;
+            break;
+          }
           StringBuilder sb = new StringBuilder();
           for (String cryptoLine : cryptoLines) {
             sb.append(NL).append(cryptoLine);
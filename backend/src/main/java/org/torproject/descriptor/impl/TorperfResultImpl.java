@@ -16,9 +16,19 @@ public class TorperfResultImpl extends DescriptorImpl
 
   private static final long serialVersionUID = 8961567618137500044L;
 
+  private static final byte[] TYPE_ANNOTATION_PREFIX =
+      DescriptorBytes.ascii("@type torperf ");
+
+  private static final byte[] NO_TYPE_ANNOTATION = new byte[0];
+
   /**
    * Parse the given descriptor to one or more {@link TorperfResult} instances.
    *
+   * <p>Lines are split directly in the given bytes, exactly like a
+   * {@link Scanner} using {@code \r?\n} as delimiter would split them: one
+   * line break at the very beginning is skipped, and an empty last line
+   * following a final line break is not returned at all.</p>
+   *
    * @param rawDescriptorBytes Bytes to parse
    * @param descriptorFile Descriptor file containing the given bytes
    * @return Parsed {@link TorperfResult} instances
@@ -32,162 +42,214 @@ public class TorperfResultImpl extends DescriptorImpl
       throw new DescriptorParseException("Descriptor is empty.");
     }
     List<Descriptor> parsedDescriptors = new ArrayList<>();
-    String descriptorString = new String(rawDescriptorBytes,
-        StandardCharsets.UTF_8);
-    try (Scanner scanner =
-                 new Scanner(descriptorString).useDelimiter("\r?\n")) {
-      String typeAnnotation = "";
-      while (scanner.hasNext()) {
-        String line = scanner.next();
-        if (line.startsWith("@type torperf ")) {
-          String[] parts = line.split(" ");
-          if (parts.length != 3) {
-            throw new DescriptorParseException("Illegal line '" + line
-                    + "'.");
-          }
-          String version = parts[2];
-          if (!version.startsWith("1.")) {
-            throw new DescriptorParseException("Unsupported version in "
-                    + " line '" + line + "'.");
-          }
-          typeAnnotation = line + "\n";
-        } else {
-          /* XXX21932 */
-          parsedDescriptors.add(new TorperfResultImpl(
-                  (typeAnnotation + line + "\n")
-                          .getBytes(StandardCharsets.UTF_8),
-                  descriptorFile));
-          typeAnnotation = "";
+    byte[] bytes = rawDescriptorBytes;
+    int end = bytes.length;
+    int lineStart = 0;
+    if (bytes[0] == '\n') {
+      lineStart = 1;
+    } else if (end > 1 && bytes[0] == '\r' && bytes[1] == '\n') {
+      lineStart = 2;
+    }
+    byte[] typeAnnotation = NO_TYPE_ANNOTATION;
+    while (lineStart < end) {
+      int newline = DescriptorBytes.indexOf(bytes, lineStart, end,
+          DescriptorBytes.NL);
+      int lineEnd = newline < 0 ? end : newline;
+      if (newline > lineStart && bytes[newline - 1] == '\r') {
+        lineEnd--;
+      }
+      if (DescriptorBytes.regionMatches(bytes, lineStart, lineEnd,
+          TYPE_ANNOTATION_PREFIX)) {
+        String line = new String(bytes, lineStart, lineEnd - lineStart,
+            StandardCharsets.UTF_8);
+        String[] parts = line.split(" ");
+        if (parts.length != 3) {
+          throw new DescriptorParseException("Illegal line '" + line
+                  + "'.");
         }
+        String version = parts[2];
+        if (!version.startsWith("1.")) {
+          throw new DescriptorParseException("Unsupported version in "
+                  + " line '" + line + "'.");
+        }
+        typeAnnotation = (line + "\n").getBytes(StandardCharsets.UTF_8);
+      } else {
+        /* XXX21932 */
+        parsedDescriptors.add(new TorperfResultImpl(
+            resultBytes(typeAnnotation, bytes, lineStart, lineEnd),
+            descriptorFile));
+        typeAnnotation = NO_TYPE_ANNOTATION;
       }
+      lineStart = newline < 0 ? end : newline + 1;
     }
     return parsedDescriptors;
   }
 
+  /* Concatenate the type annotation, the result line, and a newline.  Lines
+   * that are not entirely ASCII are decoded and encoded again, so that
+   * malformed UTF-8 is replaced just like it would be when going through a
+   * string. */
+  private static byte[] resultBytes(byte[] typeAnnotation, byte[] bytes,
+      int lineStart, int lineEnd) {
+    for (int i = lineStart; i < lineEnd; i++) {
+      if (bytes[i] < 0) {
+        bytes = new String(bytes, lineStart, lineEnd - lineStart,
+            StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+        lineStart = 0;
+        lineEnd = bytes.length;
+        break;
+      }
+    }
+    int lineLength = lineEnd - lineStart;
+    byte[] result = new byte[typeAnnotation.length + lineLength + 1];
+    System.arraycopy(typeAnnotation, 0, result, 0, typeAnnotation.length);
+    System.arraycopy(bytes, lineStart, result, typeAnnotation.length,
+        lineLength);
+    result[result.length - 1] = DescriptorBytes.NL;
+    return result;
+  }
+
   protected TorperfResultImpl(byte[] rawDescriptorBytes, File descriptorFile)
       throws DescriptorParseException {
     super(rawDescriptorBytes, new int[] { 0, rawDescriptorBytes.length },
         descriptorFile, false);
-    this.parseTorperfResultLine();
+    this.parseTorperfResultLine(this.firstLine());
   }
 
-  private void parseTorperfResultLine()
-      throws DescriptorParseException {
-    String line = this.newScanner().nextLine();
-    while (null != line && line.startsWith("@") && line.contains("\n")) {
-      line = line.split("\n")[1];
+  /* Return the first line following the annotations, which ends at the
+   * first line terminator recognized by Scanner#nextLine, or null if there
+   * is no such line. */
+  private String firstLine() {
+    if (this.length == 0) {
+      return null;
     }
+    int newline = DescriptorBytes.indexOf(this.rawDescriptorBytes,
+        this.offset, this.offset + this.length, DescriptorBytes.NL);
+    int lineEnd = newline < 0 ? this.offset + this.length : newline;
+    String line = new String(this.rawDescriptorBytes, this.offset,
+        lineEnd - this.offset, StandardCharsets.UTF_8);
+    for (int i = 0; i < line.length(); i++) {
+      char character = line.charAt(i);
+      if (character == '\r' || character == '\u0085'
+          || character == '\u2028' || character == '\u2029') {
+        return line.substring(0, i);
+      }
+    }
+    return line;
+  }
+
+  private void parseTorperfResultLine(String line)
+      throws DescriptorParseException {
     if (null == line || line.isEmpty()) {
       throw new DescriptorParseException("Blank lines are not allowed.");
     }
-    String[] parts = line.split(" ");
-    for (String keyValue : parts) {
-      String[] keyValueParts = keyValue.split("=");
-      if (keyValueParts.length != 2) {
-        throw new DescriptorParseException("Illegal key-value pair in "
-            + "line '" + line + "'.");
+    Set<String> parsedKeys = new HashSet<>();
+    KeyValueTokenizer pair = new KeyValueTokenizer(line);
+    while (pair.next()) {
+      String key = pair.key();
+      if (!parsedKeys.add(key)) {
+        throw new DescriptorParseException("Key '" + key + "' is contained "
+            + "at least twice in line '" + line + "', but must be "
+            + "contained at most once.");
       }
-      String key = keyValueParts[0];
-      this.markKeyAsParsed(key, line);
-      String value = keyValueParts[1];
       switch (key) {
         case "SOURCE":
-          this.parseSource(value);
+          this.source = pair.value();
           break;
         case "FILESIZE":
-          this.parseFileSize(value, keyValue, line);
+          this.fileSize = this.parseInt(pair);
           break;
         case "START":
-          this.parseStart(value, keyValue, line);
+          this.startMillis = this.parseTimestamp(pair);
           break;
         case "SOCKET":
-          this.parseSocket(value, keyValue, line);
+          this.socketMillis = this.parseTimestamp(pair);
           break;
         case "CONNECT":
-          this.parseConnect(value, keyValue, line);
+          this.connectMillis = this.parseTimestamp(pair);
           break;
         case "NEGOTIATE":
-          this.parseNegotiate(value, keyValue, line);
+          this.negotiateMillis = this.parseTimestamp(pair);
           break;
         case "REQUEST":
-          this.parseRequest(value, keyValue, line);
+          this.requestMillis = this.parseTimestamp(pair);
           break;
         case "RESPONSE":
-          this.parseResponse(value, keyValue, line);
+          this.responseMillis = this.parseTimestamp(pair);
           break;
         case "DATAREQUEST":
-          this.parseDataRequest(value, keyValue, line);
+          this.dataRequestMillis = this.parseTimestamp(pair);
           break;
         case "DATARESPONSE":
-          this.parseDataResponse(value, keyValue, line);
+          this.dataResponseMillis = this.parseTimestamp(pair);
           break;
         case "DATACOMPLETE":
-          this.parseDataComplete(value, keyValue, line);
+          this.dataCompleteMillis = this.parseTimestamp(pair);
           break;
         case "WRITEBYTES":
-          this.parseWriteBytes(value, keyValue, line);
+          this.writeBytes = this.parseInt(pair);
           break;
         case "READBYTES":
-          this.parseReadBytes(value, keyValue, line);
+          this.readBytes = this.parseInt(pair);
           break;
         case "DIDTIMEOUT":
-          this.parseDidTimeout(value, keyValue, line);
+          this.parseDidTimeout(pair);
           break;
         case "LAUNCH":
-          this.parseLaunch(value, keyValue, line);
+          this.launchMillis = this.parseTimestamp(pair);
           break;
         case "USED_AT":
-          this.parseUsedAt(value, keyValue, line);
+          this.usedAtMillis = this.parseTimestamp(pair);
           break;
         case "PATH":
-          this.parsePath(value, keyValue, line);
+          this.parsePath(pair);
           break;
         case "BUILDTIMES":
-          this.parseBuildTimes(value, keyValue, line);
+          this.parseBuildTimes(pair);
           break;
         case "TIMEOUT":
-          this.parseTimeout(value, keyValue, line);
+          this.timeout = this.parseInt(pair);
           break;
         case "QUANTILE":
-          this.parseQuantile(value, keyValue, line);
+          this.quantile = this.parseDouble(pair);
           break;
         case "CIRC_ID":
-          this.parseCircId(value, keyValue, line);
+          this.circId = this.parseInt(pair);
           break;
         case "USED_BY":
-          this.parseUsedBy(value, keyValue, line);
+          this.usedBy = this.parseInt(pair);
           break;
         case "ENDPOINTLOCAL":
-          this.parseEndpointLocal(value);
+          this.endpointLocal = pair.value();
           break;
         case "ENDPOINTPROXY":
-          this.parseEndpointProxy(value);
+          this.endpointProxy = pair.value();
           break;
         case "ENDPOINTREMOTE":
-          this.parseEndpointRemote(value);
+          this.endpointRemote = pair.value();
           break;
         case "HOSTNAMELOCAL":
-          this.parseHostnameLocal(value);
+          this.hostnameLocal = pair.value();
           break;
         case "HOSTNAMEREMOTE":
-          this.parseHostnameRemote(value);
+          this.hostnameRemote = pair.value();
           break;
         case "SOURCEADDRESS":
-          this.parseSourceAddress(value);
+          this.sourceAddress = pair.value();
           break;
         case "ERRORCODE":
-          this.parseErrorcode(value);
+          this.errorCode = pair.value();
           break;
         default:
           if (key.startsWith("DATAPERC")) {
-            this.parseDataPercentile(value, keyValue, line);
+            this.parseDataPercentile(pair);
           } else if (key.startsWith("PARTIAL")) {
-            this.parsePartial(value, keyValue, line);
+            this.parsePartial(pair);
           } else {
             if (this.unrecognizedKeys == null) {
               this.unrecognizedKeys = new TreeMap<>();
             }
-            this.unrecognizedKeys.put(key, value);
+            this.unrecognizedKeys.put(key, pair.value());
             if (this.unrecognizedLines == null) {
               this.unrecognizedLines = new ArrayList<>();
             }
@@ -197,127 +259,139 @@ public class TorperfResultImpl extends DescriptorImpl
           }
       }
     }
-    this.checkAllRequiredKeysParsed(line);
+    for (String key : REQUIRED_KEYS) {
+      if (!parsedKeys.contains(key)) {
+        throw new DescriptorParseException("Key '" + key + "' is contained "
+            + "contained 0 times in line '" + line + "', but must be "
+            + "contained exactly once.");
+      }
+    }
   }
 
-  private Set<String> parsedKeys = new HashSet<>();
+  /* Required keys, iterated in the same order as before, so that the first
+   * missing key is the one being reported. */
+  private static final Set<String> REQUIRED_KEYS = new HashSet<>(
+      Arrays.asList(("SOURCE,FILESIZE,START,SOCKET,CONNECT,NEGOTIATE,"
+      + "REQUEST,RESPONSE,DATAREQUEST,DATARESPONSE,DATACOMPLETE,WRITEBYTES,"
+      + "READBYTES").split(",")));
 
-  private Set<String> requiredKeys = new HashSet<>(Arrays.asList(
-      ("SOURCE,FILESIZE,START,SOCKET,CONNECT,NEGOTIATE,REQUEST,RESPONSE,"
-      + "DATAREQUEST,DATARESPONSE,DATACOMPLETE,WRITEBYTES,READBYTES")
-      .split(",")));
+  /**
+   * Iterate over the space-separated key-value pairs of a result line in a
+   * single pass, with the exact same pairs, keys, and values as splitting
+   * the line with {@code line.split(" ")} and each pair with
+   * {@code keyValue.split("=")}, but without creating substrings for
+   * anything other than keys and values that are actually requested.
+   */
+  private static final class KeyValueTokenizer {
 
-  private void markKeyAsParsed(String key, String line)
-      throws DescriptorParseException {
-    if (this.parsedKeys.contains(key)) {
-      throw new DescriptorParseException("Key '" + key + "' is contained "
-          + "at least twice in line '" + line + "', but must be "
-          + "contained at most once.");
-    }
-    this.parsedKeys.add(key);
-    this.requiredKeys.remove(key);
-  }
+    private final String line;
 
-  private void checkAllRequiredKeysParsed(String line)
-      throws DescriptorParseException {
-    for (String key : this.requiredKeys) {
-      throw new DescriptorParseException("Key '" + key + "' is contained "
-          + "contained 0 times in line '" + line + "', but must be "
-          + "contained exactly once.");
-    }
-  }
+    /* End of the line without trailing spaces, which String#split ignores. */
+    private final int lineEnd;
 
-  private void parseSource(String value) {
-    this.source = value;
-  }
+    private int position = 0;
 
-  private void parseFileSize(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    try {
-      this.fileSize = Integer.parseInt(value);
-    } catch (NumberFormatException e) {
-      throw new DescriptorParseException("Illegal value in '" + keyValue
-          + "' in line '" + line + "'.");
-    }
-  }
+    private int keyValueStart;
 
-  private void parseStart(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.startMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    private int keyValueEnd;
 
-  private void parseSocket(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.socketMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    private int separator;
 
-  private void parseConnect(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.connectMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    /* End of the value without trailing equal signs, which String#split
+     * ignores, too. */
+    private int valueEnd;
 
-  private void parseNegotiate(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.negotiateMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    private KeyValueTokenizer(String line) {
+      this.line = line;
+      int lineEnd = line.length();
+      while (lineEnd > 0 && line.charAt(lineEnd - 1) == ' ') {
+        lineEnd--;
+      }
+      this.lineEnd = lineEnd;
+    }
 
-  private void parseRequest(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.requestMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    /* Move to the next key-value pair and return whether there is one. */
+    private boolean next() throws DescriptorParseException {
+      if (this.position >= this.lineEnd) {
+        return false;
+      }
+      this.keyValueStart = this.position;
+      int space = this.line.indexOf(' ', this.position);
+      this.keyValueEnd = space < 0 || space > this.lineEnd ? this.lineEnd
+          : space;
+      this.position = this.keyValueEnd + 1;
+      this.separator = this.line.indexOf('=', this.keyValueStart);
+      if (this.separator < 0 || this.separator >= this.keyValueEnd) {
+        throw this.illegalKeyValuePair();
+      }
+      this.valueEnd = this.keyValueEnd;
+      while (this.valueEnd > this.separator + 1
+          && this.line.charAt(this.valueEnd - 1) == '=') {
+        this.valueEnd--;
+      }
+      if (this.valueEnd == this.separator + 1) {
+        throw this.illegalKeyValuePair();
+      }
+      int nextSeparator = this.line.indexOf('=', this.separator + 1);
+      if (nextSeparator >= 0 && nextSeparator < this.valueEnd) {
+        throw this.illegalKeyValuePair();
+      }
+      return true;
+    }
 
-  private void parseResponse(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.responseMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    private DescriptorParseException illegalKeyValuePair() {
+      return new DescriptorParseException("Illegal key-value pair in "
+          + "line '" + this.line + "'.");
+    }
 
-  private void parseDataRequest(String value, String keyValue,
-      String line) throws DescriptorParseException {
-    this.dataRequestMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    private String key() {
+      return this.line.substring(this.keyValueStart, this.separator);
+    }
 
-  private void parseDataResponse(String value, String keyValue,
-      String line) throws DescriptorParseException {
-    this.dataResponseMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    private int valueStart() {
+      return this.separator + 1;
+    }
 
-  private void parseDataComplete(String value, String keyValue,
-      String line) throws DescriptorParseException {
-    this.dataCompleteMillis = this.parseTimestamp(value, keyValue, line);
-  }
+    private String value() {
+      return this.line.substring(this.separator + 1, this.valueEnd);
+    }
 
-  private void parseWriteBytes(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.writeBytes = parseInt(value, keyValue, line);
-  }
+    private DescriptorParseException illegalValue() {
+      return new DescriptorParseException("Illegal value in '"
+          + this.line.substring(this.keyValueStart, this.keyValueEnd)
+          + "' in line '" + this.line + "'.");
+    }
 
-  private void parseReadBytes(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.readBytes = parseInt(value, keyValue, line);
+    private DescriptorParseException illegalTimestamp(String value) {
+      return new DescriptorParseException("Illegal timestamp '" + value
+          + "' in '" + this.line.substring(this.keyValueStart,
+          this.keyValueEnd) + "' in line '" + this.line + "'.");
+    }
   }
 
-  private void parseDidTimeout(String value, String keyValue, String line)
+  private void parseDidTimeout(KeyValueTokenizer pair)
       throws DescriptorParseException {
-    switch (value) {
-      case "1":
+    if (pair.valueEnd - pair.valueStart() != 1) {
+      throw pair.illegalValue();
+    }
+    switch (pair.line.charAt(pair.valueStart())) {
+      case '1':
         this.didTimeout = true;
         break;
-      case "0":
+      case '0':
         this.didTimeout = false;
         break;
       default:
-        throw new DescriptorParseException("Illegal value in '" + keyValue
-            + "' in line '" + line + "'.");
+        throw pair.illegalValue();
     }
   }
 
-  private void parsePartial(String value, String keyValue, String line)
+  private void parsePartial(KeyValueTokenizer pair)
       throws DescriptorParseException {
-    String key = keyValue.substring(0, keyValue.indexOf("="));
-    String bytesString = key.substring("PARTIAL".length());
     int bytes;
     try {
-      bytes = Integer.parseInt(bytesString);
+      bytes = Integer.parseInt(pair.line, pair.keyValueStart
+          + "PARTIAL".length(), pair.separator, 10);
     } catch (NumberFormatException e) {
       /* Treat key as unrecognized below. */
       bytes = -1;
@@ -326,9 +400,9 @@ public class TorperfResultImpl extends DescriptorImpl
       if (this.unrecognizedKeys == null) {
         this.unrecognizedKeys = new TreeMap<>();
       }
-      this.unrecognizedKeys.put(key, value);
+      this.unrecognizedKeys.put(pair.key(), pair.value());
     } else {
-      long timestamp = this.parseTimestamp(value, keyValue, line);
+      long timestamp = this.parseTimestamp(pair);
       if (this.partials == null) {
         this.partials = new TreeMap<>();
       }
@@ -336,13 +410,12 @@ public class TorperfResultImpl extends DescriptorImpl
     }
   }
 
-  private void parseDataPercentile(String value, String keyValue,
-      String line) throws DescriptorParseException {
-    String key = keyValue.substring(0, keyValue.indexOf("="));
-    String percentileString = key.substring("DATAPERC".length());
+  private void parseDataPercentile(KeyValueTokenizer pair)
+      throws DescriptorParseException {
     int percentile;
     try {
-      percentile = Integer.parseInt(percentileString);
+      percentile = Integer.parseInt(pair.line, pair.keyValueStart
+          + "DATAPERC".length(), pair.separator, 10);
     } catch (NumberFormatException e) {
       /* Treat key as unrecognized below. */
       percentile = -1;
@@ -351,9 +424,9 @@ public class TorperfResultImpl extends DescriptorImpl
       if (this.unrecognizedKeys == null) {
         this.unrecognizedKeys = new TreeMap<>();
       }
-      this.unrecognizedKeys.put(key, value);
+      this.unrecognizedKeys.put(pair.key(), pair.value());
     } else {
-      long timestamp = this.parseTimestamp(value, keyValue, line);
+      long timestamp = this.parseTimestamp(pair);
       if (this.dataPercentiles == null) {
         this.dataPercentiles = new TreeMap<>();
       }
@@ -361,91 +434,68 @@ public class TorperfResultImpl extends DescriptorImpl
     }
   }
 
-  private void parseLaunch(String value, String keyValue, String line)
+  private void parsePath(KeyValueTokenizer pair)
       throws DescriptorParseException {
-    this.launchMillis = this.parseTimestamp(value, keyValue, line);
-  }
-
-  private void parseUsedAt(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.usedAtMillis = this.parseTimestamp(value, keyValue, line);
-  }
-
-  private void parsePath(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    String[] valueParts = value.split(",");
+    String[] valueParts = pair.value().split(",");
     String[] result = new String[valueParts.length];
     for (int i = 0; i < valueParts.length; i++) {
       if (valueParts[i].length() != 41) {
-        throw new DescriptorParseException("Illegal value in '" + keyValue
-            + "' in line '" + line + "'.");
+        throw pair.illegalValue();
       }
-      result[i] = ParseHelper.parseTwentyByteHexString(line,
+      result[i] = ParseHelper.parseTwentyByteHexString(pair.line,
           valueParts[i].substring(1));
     }
     this.path = result;
   }
 
-  private void parseBuildTimes(String value, String keyValue, String line)
+  private void parseBuildTimes(KeyValueTokenizer pair)
       throws DescriptorParseException {
-    String[] valueParts = value.split(",");
+    String[] valueParts = pair.value().split(",");
     Long[] result = new Long[valueParts.length];
     for (int i = 0; i < valueParts.length; i++) {
-      result[i] = this.parseTimestamp(valueParts[i], keyValue, line);
+      result[i] = this.parseTimestamp(valueParts[i], 0,
+          valueParts[i].length(), pair);
     }
     this.buildTimes = result;
   }
 
-  private void parseTimeout(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.timeout = this.parseInt(value, keyValue, line);
-  }
-
-  private void parseQuantile(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.quantile = this.parseDouble(value, keyValue, line);
-  }
-
-  private void parseCircId(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.circId = this.parseInt(value, keyValue, line);
-  }
-
-  private void parseUsedBy(String value, String keyValue, String line)
-      throws DescriptorParseException {
-    this.usedBy = this.parseInt(value, keyValue, line);
-  }
-
-  private void parseEndpointLocal(String value) {
-    this.endpointLocal = value;
-  }
-
-  private void parseEndpointProxy(String value) {
-    this.endpointProxy = value;
-  }
-
-  private void parseEndpointRemote(String value) {
-    this.endpointRemote = value;
-  }
-
-  private void parseHostnameLocal(String value) {
-    this.hostnameLocal = value;
-  }
-
-  private void parseHostnameRemote(String value) {
-    this.hostnameRemote = value;
-  }
-
-  private void parseSourceAddress(String value) {
-    this.sourceAddress = value;
-  }
-
-  private void parseErrorcode(String value) {
-    this.errorCode = value;
-  }
-
-  private long parseTimestamp(String value, String keyValue, String line)
+  private long parseTimestamp(KeyValueTokenizer pair)
       throws DescriptorParseException {
+    return this.parseTimestamp(pair.line, pair.valueStart(), pair.valueEnd,
+        pair);
+  }
+
+  /* Parse a timestamp with seconds and a fraction of seconds to
+   * milliseconds, truncating any decimal places after the third.  Plain
+   * timestamps of ASCII digits are parsed directly from the given part of
+   * the text; anything else goes through the original string operations to
+   * accept and reject exactly the same timestamps. */
+  private long parseTimestamp(String text, int start, int end,
+      KeyValueTokenizer pair) throws DescriptorParseException {
+    int dot = text.indexOf('.', start);
+    if (dot > start && dot < end && dot - start <= 15 && dot + 1 < end) {
+      long timestamp = 0L;
+      int index = start;
+      for (; index < dot && isDigit(text.charAt(index)); index++) {
+        timestamp = timestamp * 10L + (text.charAt(index) - '0');
+      }
+      if (index == dot) {
+        index++;
+        for (int decimals = 0; decimals < 3; decimals++) {
+          timestamp *= 10L;
+          if (index + decimals < end) {
+            timestamp += text.charAt(index + decimals) - '0';
+          }
+        }
+        while (index < end && isDigit(text.charAt(index))) {
+          index++;
+        }
+        if (index == end) {
+          return timestamp;
+        }
+      }
+    }
+    String value = text.substring(start, end);
     long timestamp = -1L;
     if (value.contains(".") && value.split("\\.").length == 2) {
       String zeroPaddedValue = (value + "000");
@@ -459,29 +509,31 @@ public class TorperfResultImpl extends DescriptorImpl
       }
     }
     if (timestamp < 0L) {
-      throw new DescriptorParseException("Illegal timestamp '" + value
-          + "' in '" + keyValue + "' in line '" + line + "'.");
+      throw pair.illegalTimestamp(value);
     }
     return timestamp;
   }
 
-  private int parseInt(String value, String keyValue, String line)
+  private static boolean isDigit(char character) {
+    return character >= '0' && character <= '9';
+  }
+
+  private int parseInt(KeyValueTokenizer pair)
       throws DescriptorParseException {
     try {
-      return Integer.parseInt(value);
+      return Integer.parseInt(pair.line, pair.valueStart(), pair.valueEnd,
+          10);
     } catch (NumberFormatException e) {
-      throw new DescriptorParseException("Illegal value in '" + keyValue
-          + "' in line '" + line + "'.");
+      throw pair.illegalValue();
     }
   }
 
-  private double parseDouble(String value, String keyValue, String line)
+  private double parseDouble(KeyValueTokenizer pair)
       throws DescriptorParseException {
     try {
-      return Double.parseDouble(value);
+      return Double.parseDouble(pair.value());
     } catch (NumberFormatException e) {
-      throw new DescriptorParseException("Illegal value in '" + keyValue
-          + "' in line '" + line + "'.");
+      throw pair.illegalValue();
     }
   }
 
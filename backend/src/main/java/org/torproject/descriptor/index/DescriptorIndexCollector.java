@@ -8,14 +8,22 @@ import org.slf4j.LoggerFactory;
 import org.torproject.descriptor.DescriptorCollector;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.*;
 
 /**
  * Download files from a CollecTor instance based on the remote
@@ -28,6 +36,12 @@ public class DescriptorIndexCollector implements DescriptorCollector {
   private static final Logger logger = LoggerFactory
       .getLogger(DescriptorIndexCollector.class);
 
+  private static final int READ_TIMEOUT = Integer.parseInt(System
+      .getProperty("sun.net.client.defaultReadTimeout", "60000"));
+
+  private static final int CONNECT_TIMEOUT = Integer.parseInt(System
+      .getProperty("sun.net.client.defaultConnectTimeout", "60000"));
+
   /**
    * If {@code collecTorIndexUrlString} contains just the
    * base url, e.g. https://some.host.org, the path
@@ -57,7 +71,26 @@ public class DescriptorIndexCollector implements DescriptorCollector {
     }
     logger.info("Indexing local directory {}.",
         localDirectory.getAbsolutePath());
-    SortedMap<String, Long> localFiles = statLocalDirectory(localDirectory);
+    LocalFileInventory inventory = null != this.localFileInventory
+        && this.localFileInventory.covers(localDirectory)
+        ? this.localFileInventory : null;
+    SortedMap<String, Long> localFiles = null == inventory
+        ? statLocalDirectory(localDirectory) : inventory.refresh();
+    try {
+      this.collectDescriptors(collecTorIndexUrlString, remoteDirectories,
+          minLastModified, localDirectory, deleteExtraneousLocalFiles,
+          localFiles, inventory);
+    } finally {
+      if (null != inventory) {
+        inventory.save();
+      }
+    }
+  }
+
+  private void collectDescriptors(String collecTorIndexUrlString,
+      String[] remoteDirectories, long minLastModified,
+      File localDirectory, boolean deleteExtraneousLocalFiles,
+      SortedMap<String, Long> localFiles, LocalFileInventory inventory) {
     SortedMap<String, FileNode> remoteFiles;
     IndexNode index;
     String indexUrlString = "";
@@ -68,7 +101,9 @@ public class DescriptorIndexCollector implements DescriptorCollector {
         indexUrlString += "/index/index.json";
       }
       logger.info("Fetching remote index file {}.", indexUrlString);
-      index = IndexNode.fetchIndex(indexUrlString);
+      index = null == this.indexCache
+          ? IndexNode.fetchIndex(indexUrlString, remoteDirectories)
+          : this.indexCache.fetchIndex(indexUrlString, remoteDirectories);
       remoteFiles = index.retrieveFilesIn(remoteDirectories);
     } catch (Exception ex) {
       logger.warn("Cannot fetch index file {} and hence cannot determine which "
@@ -78,20 +113,122 @@ public class DescriptorIndexCollector implements DescriptorCollector {
     }
     logger.info("Fetching remote files from {}.", index.path);
     if (!this.fetchRemoteFiles(index.path, remoteFiles, minLastModified,
-        localDirectory, localFiles)) {
+        localDirectory, localFiles, inventory)) {
       return;
     }
     if (deleteExtraneousLocalFiles) {
       logger.info("Deleting extraneous files from local directory {}.",
           localDirectory);
       deleteExtraneousLocalFiles(remoteDirectories, remoteFiles, localDirectory,
-          localFiles);
+          localFiles, inventory);
     }
     logger.info("Finished descriptor collection.");
   }
 
+  private IndexCache indexCache;
+
+  /**
+   * Obtain the remote index through the given cache, which may be shared
+   * with other collectors, rather than fetching and parsing it on every
+   * collection run (default: no cache).
+   */
+  public void setIndexCache(IndexCache indexCache) {
+    this.indexCache = indexCache;
+  }
+
+  private LocalFileInventory localFileInventory;
+
+  /**
+   * Determine which files exist locally using the given persisted inventory
+   * rather than walking the whole local directory on every collection run,
+   * if the inventory covers the local directory (default: no inventory).
+   */
+  public void setLocalFileInventory(LocalFileInventory localFileInventory) {
+    this.localFileInventory = localFileInventory;
+  }
+
+  private int maxDownloadThreads = 1;
+
+  /**
+   * Fetch up to this number of remote files in parallel (default: 1, which
+   * fetches files one after another).
+   */
+  public void setMaxDownloadThreads(int maxDownloadThreads) {
+    if (maxDownloadThreads < 1) {
+      throw new IllegalArgumentException("At least one download thread is "
+          + "required.");
+    }
+    this.maxDownloadThreads = maxDownloadThreads;
+  }
+
+  private int maxConnectionsPerHost = 4;
+
+  /**
+   * Don't open more than this number of concurrent connections to the same
+   * remote host, regardless of the number of download threads (default: 4).
+   *
+   * <p>Connection limits are shared by all collection runs of this
+   * collector, so that this can only be set before the first run.</p>
+   *
+   * @throws IllegalStateException Thrown if this collector has already
+   *     started collecting descriptors.
+   */
+  public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException("At least one connection per host "
+          + "is required.");
+    }
+    if (this.hasStartedCollecting) {
+      throw new IllegalStateException("Reconfiguration is not permitted "
+          + "after starting to collect.");
+    }
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  private int maxRetries = 0;
+
+  /**
+   * Retry fetching a remote file up to this number of times after an I/O
+   * error or a size mismatch (default: 0).
+   */
+  public void setMaxRetries(int maxRetries) {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("A negative number of retries is "
+          + "not permitted.");
+    }
+    this.maxRetries = maxRetries;
+  }
+
+  private long retryBackoffMillis = 1000L;
+
+  /**
+   * Wait this number of milliseconds before the first retry and double the
+   * waiting time before each further retry (default: 1000).
+   */
+  public void setRetryBackoffMillis(long retryBackoffMillis) {
+    if (retryBackoffMillis < 0L) {
+      throw new IllegalArgumentException("A negative backoff is not "
+          + "permitted.");
+    }
+    this.retryBackoffMillis = retryBackoffMillis;
+  }
+
+  private volatile boolean hasStartedCollecting = false;
+
+  private final Map<String, Semaphore> hostConnections =
+      new ConcurrentHashMap<>();
+
   boolean fetchRemoteFiles(String baseUrl, SortedMap<String, FileNode> remotes,
       long minLastModified, File localDir, SortedMap<String, Long> locals) {
+    return this.fetchRemoteFiles(baseUrl, remotes, minLastModified, localDir,
+        locals, null);
+  }
+
+  boolean fetchRemoteFiles(String baseUrl, SortedMap<String, FileNode> remotes,
+      long minLastModified, File localDir, SortedMap<String, Long> locals,
+      LocalFileInventory inventory) {
+    this.hasStartedCollecting = true;
+    List<Callable<Long>> fetchTasks = new ArrayList<>();
     for (Map.Entry<String, FileNode> entry : remotes.entrySet()) {
       String filepathname = entry.getKey();
       String filename = entry.getValue().path;
@@ -132,40 +269,242 @@ public class DescriptorIndexCollector implements DescriptorCollector {
       }
       Path destinationPath = parentRealPath.resolve(filename).normalize();
       Path tempDestinationPath = parentRealPath.resolve("." + filename).normalize();
-      File destinationFile = destinationPath.toFile();
-      File tempDestinationFile = tempDestinationPath.toFile();
-      logger.debug("Fetching remote file {} with expected size of {} bytes "
-          + "from {}, storing locally to temporary file {}, then renaming to "
-          + "{}.",
-          filepathname, entry.getValue().size, baseUrl,
-          tempDestinationFile.getAbsolutePath(),
-          destinationFile.getAbsolutePath());
-      try (InputStream is = new URL(baseUrl + "/" + filepathname)
-          .openStream()) {
-        Files.copy(is, tempDestinationFile.toPath(),
-            StandardCopyOption.REPLACE_EXISTING);
-        if (tempDestinationFile.length() == entry.getValue().size) {
-          tempDestinationFile.renameTo(destinationFile);
-          destinationFile.setLastModified(lastModifiedMillis);
-        } else {
-          logger.warn("Fetched remote file {} from {} has a size of {} bytes "
-              + "which is different from the expected {} bytes.  Not storing "
-              + "this file.",
-              filename, baseUrl, tempDestinationFile.length(),
-              entry.getValue().size);
+      fetchTasks.add(() -> {
+        long fetchedBytes = this.fetchRemoteFile(baseUrl, filepathname,
+            entry.getValue(), destinationPath.toFile(),
+            tempDestinationPath.toFile());
+        if (fetchedBytes >= 0L && null != inventory) {
+          inventory.fileFetched(filepathname, lastModifiedMillis);
+        }
+        return fetchedBytes;
+      });
+    }
+    if (fetchTasks.isEmpty()) {
+      return true;
+    }
+    long startedMillis = System.currentTimeMillis();
+    long fetchedBytes = 0L;
+    int fetchedFiles = 0;
+    int threads = Math.min(this.maxDownloadThreads, fetchTasks.size());
+    if (threads <= 1) {
+      for (Callable<Long> fetchTask : fetchTasks) {
+        try {
+          long bytes = fetchTask.call();
+          if (bytes >= 0L) {
+            fetchedBytes += bytes;
+            fetchedFiles++;
+          }
+        } catch (InterruptedException e) {
+          logger.warn("Interrupted while fetching remote files from {}. "
+              + "Aborting descriptor collection.", baseUrl);
+          Thread.currentThread().interrupt();
+          return false;
+        } catch (Exception e) {
+          logger.warn("Unexpected error while fetching remote file from {}.",
+              baseUrl, e);
         }
-      } catch (IOException e) {
-        logger.warn("Cannot fetch remote file {} from {}.  Skipping that file.",
-            filename, baseUrl, e);
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        for (Future<Long> result : executor.invokeAll(fetchTasks)) {
+          try {
+            long bytes = result.get();
+            if (bytes >= 0L) {
+              fetchedBytes += bytes;
+              fetchedFiles++;
+            }
+          } catch (ExecutionException e) {
+            logger.warn("Unexpected error while fetching remote file from "
+                + "{}.", baseUrl, e.getCause());
+          }
+        }
+      } catch (InterruptedException e) {
+        logger.warn("Interrupted while fetching remote files from {}. "
+            + "Aborting descriptor collection.", baseUrl);
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        executor.shutdownNow();
       }
     }
+    long elapsedMillis = System.currentTimeMillis() - startedMillis;
+    logger.info("Fetched {} of {} remote files with {} bytes from {} in {} "
+        + "ms ({} KiB/s) using {} download thread(s).", fetchedFiles,
+        fetchTasks.size(), fetchedBytes, baseUrl, elapsedMillis,
+        kibPerSecond(fetchedBytes, elapsedMillis), Math.max(threads, 1));
     return true;
   }
 
+  /**
+   * Fetch a single remote file to a temporary file, retrying with backoff if
+   * configured, and rename it to the destination file if it has the expected
+   * size.  Returns the number of fetched bytes or -1 if the file could not be
+   * stored.
+   */
+  long fetchRemoteFile(String baseUrl, String filepathname,
+      FileNode fileNode, File destinationFile, File tempDestinationFile)
+      throws InterruptedException {
+    logger.debug("Fetching remote file {} with expected size of {} bytes "
+        + "from {}, storing locally to temporary file {}, then renaming to "
+        + "{}.",
+        filepathname, fileNode.size, baseUrl,
+        tempDestinationFile.getAbsolutePath(),
+        destinationFile.getAbsolutePath());
+    URL url;
+    try {
+      url = new URL(baseUrl + "/" + filepathname);
+    } catch (MalformedURLException e) {
+      logger.warn("Cannot fetch remote file {} from {}.  Skipping that file.",
+          fileNode.path, baseUrl, e);
+      return -1L;
+    }
+    Semaphore connections = this.hostConnections.computeIfAbsent(
+        url.getHost(), host -> new Semaphore(this.maxConnectionsPerHost));
+    long backoffMillis = this.retryBackoffMillis;
+    for (int attempt = 0; attempt <= this.maxRetries; attempt++) {
+      if (attempt > 0) {
+        logger.debug("Retrying to fetch remote file {} from {} in {} ms "
+            + "(retry {} of {}).", filepathname, baseUrl, backoffMillis,
+            attempt, this.maxRetries);
+        Thread.sleep(backoffMillis);
+        backoffMillis *= 2L;
+      }
+      long startedMillis = System.currentTimeMillis();
+      long transferredBytes;
+      connections.acquire();
+      try {
+        transferredBytes = this.transferRemoteFile(url, fileNode,
+            tempDestinationFile);
+      } catch (IOException e) {
+        logger.warn("Cannot fetch remote file {} from {}.  {}", fileNode.path,
+            baseUrl, attempt < this.maxRetries ? "Retrying." : "Skipping that "
+            + "file.", e);
+        continue;
+      } finally {
+        connections.release();
+      }
+      long elapsedMillis = System.currentTimeMillis() - startedMillis;
+      long fetchedBytes = tempDestinationFile.length();
+      if (fetchedBytes == fileNode.size) {
+        tempDestinationFile.renameTo(destinationFile);
+        destinationFile.setLastModified(fileNode.lastModifiedMillis());
+        logger.debug("Fetched remote file {} with {} bytes in {} ms ({} "
+            + "KiB/s).", filepathname, transferredBytes, elapsedMillis,
+            kibPerSecond(transferredBytes, elapsedMillis));
+        return transferredBytes;
+      }
+      logger.warn("Fetched remote file {} from {} has a size of {} bytes "
+          + "which is different from the expected {} bytes.  {}",
+          fileNode.path, baseUrl, fetchedBytes, fileNode.size,
+          attempt < this.maxRetries ? "Retrying." : "Not storing this file.");
+    }
+    return -1L;
+  }
+
+  /**
+   * Transfer the remote file to the given temporary file and return the
+   * number of transferred bytes.
+   *
+   * <p>If a temporary file from a previously interrupted transfer of the same
+   * remote file version exists, only the missing bytes are requested using an
+   * HTTP range request.  A partial temporary file is considered to belong to
+   * the same version if it is smaller than the expected size and has the
+   * remote file's last-modified time, which is set after every transfer
+   * attempt.  If the server ignores the range request, the file is fetched
+   * completely.</p>
+   */
+  long transferRemoteFile(URL url, FileNode fileNode, File tempFile)
+      throws IOException {
+    long resumeFrom = 0L;
+    if (tempFile.exists() && tempFile.length() > 0L
+        && tempFile.length() < fileNode.size
+        && tempFile.lastModified() == fileNode.lastModifiedMillis()) {
+      resumeFrom = tempFile.length();
+    }
+    URLConnection connection = url.openConnection();
+    connection.setReadTimeout(READ_TIMEOUT);
+    connection.setConnectTimeout(CONNECT_TIMEOUT);
+    boolean append = false;
+    if (resumeFrom > 0L && connection instanceof HttpURLConnection) {
+      HttpURLConnection httpConnection = (HttpURLConnection) connection;
+      httpConnection.setRequestProperty("Range", "bytes=" + resumeFrom + "-");
+      int responseCode = httpConnection.getResponseCode();
+      if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+        if (!isExpectedContentRange(
+            httpConnection.getHeaderField("Content-Range"), resumeFrom,
+            fileNode.size) || isNewerThan(httpConnection.getLastModified(),
+            fileNode)) {
+          httpConnection.disconnect();
+          Files.deleteIfExists(tempFile.toPath());
+          throw new IOException("Remote file " + url + " has changed or "
+              + "returned an unexpected content range.  Discarding "
+              + resumeFrom + " previously fetched bytes.");
+        }
+        logger.debug("Resuming fetch of remote file {} at byte {} of {}.",
+            url, resumeFrom, fileNode.size);
+        append = true;
+      } else if (responseCode
+          == 416 /* HTTP_REQUESTED_RANGE_NOT_SATISFIABLE */) {
+        httpConnection.disconnect();
+        Files.deleteIfExists(tempFile.toPath());
+        throw new IOException("Remote file " + url + " cannot be resumed at "
+            + "byte " + resumeFrom + ".  Discarding previously fetched bytes.");
+      } else {
+        logger.debug("Remote server ignored range request for {} with "
+            + "response code {}.  Fetching the whole file.", url,
+            responseCode);
+      }
+    }
+    try (InputStream is = connection.getInputStream();
+        OutputStream os = new FileOutputStream(tempFile, append)) {
+      return is.transferTo(os);
+    } finally {
+      if (tempFile.exists()) {
+        tempFile.setLastModified(fileNode.lastModifiedMillis());
+      }
+    }
+  }
+
+  /* Check that a Content-Range header like "bytes 100-199/200" starts at the
+   * requested offset and reaches until the end of the expected size. */
+  private static boolean isExpectedContentRange(String contentRange,
+      long resumeFrom, long size) {
+    if (null == contentRange) {
+      return false;
+    }
+    String expected = "bytes " + resumeFrom + "-" + (size - 1) + "/";
+    return contentRange.trim().equals(expected + size)
+        || contentRange.trim().equals(expected + "*");
+  }
+
+  /* Tolerate a deviation of one minute, which is the precision of
+   * last-modified times in the index. */
+  private static boolean isNewerThan(long lastModifiedHeaderMillis,
+      FileNode fileNode) {
+    return lastModifiedHeaderMillis > 0L && lastModifiedHeaderMillis
+        >= fileNode.lastModifiedMillis() + 60L * 1000L;
+  }
+
+  private static long kibPerSecond(long bytes, long millis) {
+    return millis > 0L ? bytes * 1000L / 1024L / millis : 0L;
+  }
+
   static void deleteExtraneousLocalFiles(String[] remoteDirectories,
       SortedMap<String, FileNode> remoteFiles,
       File localDir, SortedMap<String, Long> locals) {
+    deleteExtraneousLocalFiles(remoteDirectories, remoteFiles, localDir,
+        locals, null);
+  }
+
+  static void deleteExtraneousLocalFiles(String[] remoteDirectories,
+      SortedMap<String, FileNode> remoteFiles,
+      File localDir, SortedMap<String, Long> locals,
+      LocalFileInventory inventory) {
     for (String localPath : locals.keySet()) {
+      if (isTemporaryFile(localPath)) {
+        continue;
+      }
       for (String remoteDirectory : remoteDirectories) {
         String remDir = remoteDirectory.charAt(0) == '/'
             ? remoteDirectory.substring(1) : remoteDirectory;
@@ -174,28 +513,45 @@ public class DescriptorIndexCollector implements DescriptorCollector {
             File extraneousLocalFile = new File(localDir, localPath);
             logger.debug("Deleting extraneous local file {}.",
                 extraneousLocalFile.getAbsolutePath());
-            extraneousLocalFile.delete();
+            if (extraneousLocalFile.delete() && null != inventory) {
+              inventory.fileDeleted(localPath);
+            }
           }
         }
       }
     }
   }
 
+  /**
+   * Return whether the file at the given relative path is a temporary file
+   * holding a partially fetched remote file, which is kept for resuming the
+   * transfer and must neither be mistaken for a local copy nor be deleted as
+   * extraneous file.
+   */
+  static boolean isTemporaryFile(String relativePath) {
+    int nameStart = Math.max(relativePath.lastIndexOf('/'),
+        relativePath.lastIndexOf(File.separatorChar)) + 1;
+    return relativePath.startsWith(".", nameStart);
+  }
+
   static SortedMap<String, Long> statLocalDirectory(
       final File localDir) {
     final SortedMap<String, Long> locals = new TreeMap<>();
     if (!localDir.exists()) {
       return locals;
     }
+    final Path localPath = localDir.toPath();
     try {
-      Files.walkFileTree(localDir.toPath(),
+      Files.walkFileTree(localPath,
           new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult visitFile(Path path,
                 BasicFileAttributes bfa) {
-              locals.put(path.toFile().getAbsolutePath()
-                  .replace(localDir.getAbsolutePath() + File.separator, ""),
-                      path.toFile().lastModified());
+              if (isTemporaryFile(path.getFileName().toString())) {
+                return FileVisitResult.CONTINUE;
+              }
+              locals.put(localPath.relativize(path).toString(),
+                  bfa.lastModifiedTime().toMillis());
               return FileVisitResult.CONTINUE;
             }
         });
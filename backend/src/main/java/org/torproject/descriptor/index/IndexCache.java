@@ -0,0 +1,270 @@
+/* Copyright 2016--2020 The Tor Project
+ * See LICENSE for licensing information */
+
+package org.torproject.descriptor.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.torproject.descriptor.internal.FileType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Keeps the most recently fetched index in memory and a raw copy of it on
+ * disk, so that several collection runs can share one index.
+ *
+ * <p>Within the configured maximum age the in-memory index is returned
+ * without contacting the remote server.  After that the index is revalidated
+ * with a conditional request using the {@code ETag} and
+ * {@code Last-Modified} values of the previous response.  If the server
+ * answers with 304 (Not Modified) the in-memory index is kept without
+ * parsing any JSON, or, after a restart, read from the persisted copy.</p>
+ *
+ * <p>One instance is meant to be shared by all collectors fetching the same
+ * index, and concurrent fetches wait for each other.</p>
+ */
+public class IndexCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+      IndexCache.class);
+
+  private static final int READ_TIMEOUT = Integer.parseInt(System
+      .getProperty("sun.net.client.defaultReadTimeout", "60000"));
+
+  private static final int CONNECT_TIMEOUT = Integer.parseInt(System
+      .getProperty("sun.net.client.defaultConnectTimeout", "60000"));
+
+  private static final String ETAG = "etag";
+
+  private static final String LAST_MODIFIED = "last-modified";
+
+  private static final String URL_KEY = "url";
+
+  private final File cacheFile;
+
+  private final File metadataFile;
+
+  private final long maxAgeMillis;
+
+  private final String[] remoteDirectories;
+
+  private String cachedUrlString;
+
+  private IndexNode cachedIndex;
+
+  private long cachedAtMillis;
+
+  /**
+   * Create a cache that persists the raw index to the given file, if not
+   * {@code null}, and reuses the in-memory index for the given number of
+   * milliseconds without revalidating it.
+   */
+  public IndexCache(File cacheFile, long maxAgeMillis) {
+    this(cacheFile, maxAgeMillis, new String[0]);
+  }
+
+  /**
+   * Create a cache like {@link #IndexCache(File, long)} that only keeps the
+   * parts of the index along the given remote directories in memory, which
+   * must include all remote directories that collectors sharing this cache
+   * request; see {@link #fetchIndex(String, String...)}.
+   */
+  public IndexCache(File cacheFile, long maxAgeMillis,
+      String ... remoteDirectories) {
+    if (maxAgeMillis < 0L) {
+      throw new IllegalArgumentException("A negative maximum age is not "
+          + "permitted.");
+    }
+    this.cacheFile = cacheFile;
+    this.metadataFile = null == cacheFile ? null
+        : new File(cacheFile.getPath() + ".properties");
+    this.maxAgeMillis = maxAgeMillis;
+    this.remoteDirectories = remoteDirectories;
+  }
+
+  /**
+   * Return the index at the given URL like {@link #fetchIndex(String)}, after
+   * checking that this cache keeps all of the given remote directories.
+   *
+   * <p>Files in directories that are not kept would be missing from the
+   * returned index, and a collector deleting extraneous local files would
+   * delete all local copies of them.</p>
+   *
+   * @throws IllegalArgumentException Thrown if this cache only keeps
+   *     selected remote directories, and one of the given remote directories
+   *     is not among them.
+   */
+  public IndexNode fetchIndex(String urlString,
+      String ... requestedDirectories) throws Exception {
+    List<String[]> keptPaths = directoryPaths(this.remoteDirectories);
+    if (!keptPaths.isEmpty()) {
+      for (String[] requestedPath : directoryPaths(requestedDirectories)) {
+        if (keptPaths.stream().noneMatch(
+            keptPath -> Arrays.equals(keptPath, requestedPath))) {
+          throw new IllegalArgumentException("Remote directory "
+              + String.join("/", requestedPath) + " is not kept by this "
+              + "index cache, which only keeps remote directories "
+              + Arrays.toString(this.remoteDirectories) + ".");
+        }
+      }
+    }
+    return this.fetchIndex(urlString);
+  }
+
+  /* Split the given remote directories into path elements the same way as
+   * IndexNode does, leaving out null or empty remote directories. */
+  private static List<String[]> directoryPaths(String ... remoteDirectories) {
+    List<String[]> paths = new ArrayList<>();
+    if (null != remoteDirectories) {
+      for (String remote : remoteDirectories) {
+        if (null != remote && !remote.replaceAll("/", " ").trim().isEmpty()) {
+          paths.add(remote.replaceAll("/", " ").trim().split(" "));
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Return the index at the given URL, either from memory, from the
+   * persisted copy, or freshly fetched from the remote server.
+   */
+  public synchronized IndexNode fetchIndex(String urlString)
+      throws Exception {
+    long now = System.currentTimeMillis();
+    if (null != this.cachedIndex && urlString.equals(this.cachedUrlString)
+        && now - this.cachedAtMillis < this.maxAgeMillis) {
+      logger.debug("Reusing index {} fetched {} ms ago.", urlString,
+          now - this.cachedAtMillis);
+      return this.cachedIndex;
+    }
+    Properties metadata = this.readMetadata(urlString);
+    URLConnection connection = (new URL(urlString)).openConnection();
+    connection.setReadTimeout(READ_TIMEOUT);
+    connection.setConnectTimeout(CONNECT_TIMEOUT);
+    if (null != metadata && connection instanceof HttpURLConnection) {
+      if (metadata.containsKey(ETAG)) {
+        connection.setRequestProperty("If-None-Match",
+            metadata.getProperty(ETAG));
+      }
+      if (metadata.containsKey(LAST_MODIFIED)) {
+        connection.setRequestProperty("If-Modified-Since",
+            metadata.getProperty(LAST_MODIFIED));
+      }
+    }
+    connection.connect();
+    if (connection instanceof HttpURLConnection
+        && ((HttpURLConnection) connection).getResponseCode()
+        == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      ((HttpURLConnection) connection).disconnect();
+      if (null == this.cachedIndex
+          || !urlString.equals(this.cachedUrlString)) {
+        logger.info("Index {} has not changed.  Reading persisted copy {}.",
+            urlString, this.cacheFile);
+        this.cachedIndex = this.readIndex(urlString, this.cacheFile.toPath());
+        this.cachedUrlString = urlString;
+      } else {
+        logger.info("Index {} has not changed.  Reusing in-memory index.",
+            urlString);
+      }
+      this.cachedAtMillis = now;
+      return this.cachedIndex;
+    }
+    IndexNode index;
+    if (null == this.cacheFile) {
+      try (InputStream is = fileType(urlString)
+          .inputStream(connection.getInputStream())) {
+        index = IndexNode.fetchIndex(is, this.remoteDirectories);
+      }
+    } else {
+      Path tempPath = new File(this.cacheFile.getParentFile(),
+          "." + this.cacheFile.getName()).toPath();
+      if (null != this.cacheFile.getParentFile()) {
+        this.cacheFile.getParentFile().mkdirs();
+      }
+      try (InputStream is = connection.getInputStream()) {
+        Files.copy(is, tempPath, StandardCopyOption.REPLACE_EXISTING);
+      }
+      index = this.readIndex(urlString, tempPath);
+      Files.move(tempPath, this.cacheFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+      this.writeMetadata(urlString, connection.getHeaderField("ETag"),
+          connection.getHeaderField("Last-Modified"));
+    }
+    this.cachedIndex = index;
+    this.cachedUrlString = urlString;
+    this.cachedAtMillis = now;
+    return index;
+  }
+
+  private IndexNode readIndex(String urlString, Path path)
+      throws Exception {
+    try (InputStream is = fileType(urlString)
+        .inputStream(Files.newInputStream(path))) {
+      return IndexNode.fetchIndex(is, this.remoteDirectories);
+    }
+  }
+
+  private static FileType fileType(String urlString) {
+    return FileType.valueOf(urlString.substring(
+        urlString.lastIndexOf(".") + 1).toUpperCase());
+  }
+
+  /* Return metadata of the persisted index if it belongs to the given URL
+   * and can be used for a conditional request, or null otherwise. */
+  private Properties readMetadata(String urlString) {
+    if (null == this.cacheFile || !this.cacheFile.exists()
+        || !this.metadataFile.exists()) {
+      return null;
+    }
+    Properties metadata = new Properties();
+    try (Reader reader = Files.newBufferedReader(this.metadataFile.toPath(),
+        StandardCharsets.UTF_8)) {
+      metadata.load(reader);
+    } catch (IOException e) {
+      logger.warn("Cannot read index cache metadata {}.  Fetching the whole "
+          + "index.", this.metadataFile, e);
+      return null;
+    }
+    if (!urlString.equals(metadata.getProperty(URL_KEY))
+        || !(metadata.containsKey(ETAG)
+        || metadata.containsKey(LAST_MODIFIED))) {
+      return null;
+    }
+    return metadata;
+  }
+
+  private void writeMetadata(String urlString, String etag,
+      String lastModified) {
+    Properties metadata = new Properties();
+    metadata.setProperty(URL_KEY, urlString);
+    if (null != etag) {
+      metadata.setProperty(ETAG, etag);
+    }
+    if (null != lastModified) {
+      metadata.setProperty(LAST_MODIFIED, lastModified);
+    }
+    try (Writer writer = Files.newBufferedWriter(this.metadataFile.toPath(),
+        StandardCharsets.UTF_8)) {
+      metadata.store(writer, null);
+    } catch (IOException e) {
+      logger.warn("Cannot write index cache metadata {}.", this.metadataFile,
+          e);
+    }
+  }
+}
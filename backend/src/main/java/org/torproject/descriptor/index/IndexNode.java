@@ -4,9 +4,12 @@
 package org.torproject.descriptor.index;
 
 import com.fasterxml.jackson.annotation.*;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.torproject.descriptor.internal.FileType;
 
 import java.io.IOException;
@@ -16,6 +19,8 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
@@ -97,6 +102,15 @@ public class IndexNode {
    * Returns an empty IndexNode in case of an error.
    */
   public static IndexNode fetchIndex(String urlString) throws Exception {
+    return fetchIndex(urlString, new String[0]);
+  }
+
+  /**
+   * Reads JSON from given URL String, but only creates nodes along the given
+   * remote directories.
+   */
+  public static IndexNode fetchIndex(String urlString,
+      String ... remoteDirectories) throws Exception {
     String ending
         = urlString.substring(urlString.lastIndexOf(".") + 1).toUpperCase();
     URLConnection connection = (new URL(urlString)).openConnection();
@@ -105,7 +119,7 @@ public class IndexNode {
     connection.connect();
     try (InputStream is = FileType.valueOf(ending)
         .inputStream(connection.getInputStream())) {
-      return fetchIndex(is);
+      return fetchIndex(is, remoteDirectories);
     }
   }
 
@@ -117,6 +131,179 @@ public class IndexNode {
     return objectMapper.readValue(is, IndexNode.class);
   }
 
+  /**
+   * Reads JSON from given InputStream, but only creates directory and file
+   * nodes along the given remote directories, e.g.,
+   * {@code "/recent/relay-descriptors/consensuses/"}, and skips all other
+   * subtrees without binding them.
+   *
+   * <p>The returned index contains the directories on these paths and their
+   * files, so that {@link #retrieveFilesIn} returns the same files for the
+   * given remote directories as it would on the complete index.  If no
+   * remote directories are given, the complete index is read.</p>
+   */
+  public static IndexNode fetchIndex(InputStream is,
+      String ... remoteDirectories) throws IOException {
+    List<String[]> requestedPaths = new ArrayList<>();
+    if (null != remoteDirectories) {
+      for (String remote : remoteDirectories) {
+        if (null != remote && !remote.replaceAll("/", " ").trim().isEmpty()) {
+          requestedPaths.add(remote.replaceAll("/", " ").trim().split(" "));
+        }
+      }
+    }
+    if (requestedPaths.isEmpty()) {
+      return fetchIndex(is);
+    }
+    try (JsonParser parser = objectMapper.getFactory().createParser(is)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Index does not start with a JSON object.");
+      }
+      String created = null;
+      String revision = null;
+      String path = null;
+      SortedSet<DirectoryNode> directories = new TreeSet<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String fieldName = parser.getCurrentName();
+        parser.nextToken();
+        switch (fieldName) {
+          case "index_created":
+            created = parser.getValueAsString();
+            break;
+          case "build_revision":
+            revision = parser.getValueAsString();
+            break;
+          case "path":
+            path = parser.getValueAsString();
+            break;
+          case "directories":
+            directories = readDirectories(parser, requestedPaths,
+                new ArrayList<>());
+            break;
+          default:
+            parser.skipChildren();
+        }
+      }
+      return new IndexNode(created, revision, path, new TreeSet<>(),
+          directories);
+    }
+  }
+
+  /* Read an array of directory objects and return those on one of the
+   * requested paths, with the parent directory names given in parentPath. */
+  private static SortedSet<DirectoryNode> readDirectories(JsonParser parser,
+      List<String[]> requestedPaths, List<String> parentPath)
+      throws IOException {
+    SortedSet<DirectoryNode> directories = new TreeSet<>();
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return directories;
+    }
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      DirectoryNode directory = readDirectory(parser, requestedPaths,
+          parentPath);
+      if (null != directory) {
+        directories.add(directory);
+      }
+    }
+    return directories;
+  }
+
+  /* Read a directory object and return it if it is on one of the requested
+   * paths, or skip its contents and return null otherwise.  Files and
+   * subdirectories preceding the directory's path in the JSON object are
+   * buffered as tokens until it is known whether they are needed. */
+  private static DirectoryNode readDirectory(JsonParser parser,
+      List<String[]> requestedPaths, List<String> parentPath)
+      throws IOException {
+    String path = null;
+    boolean requested = false;
+    List<String> currentPath = null;
+    SortedSet<FileNode> files = new TreeSet<>();
+    SortedSet<DirectoryNode> directories = new TreeSet<>();
+    TokenBuffer pendingFiles = null;
+    TokenBuffer pendingDirectories = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldName = parser.getCurrentName();
+      parser.nextToken();
+      if ("path".equals(fieldName)) {
+        path = parser.getValueAsString();
+        currentPath = new ArrayList<>(parentPath);
+        currentPath.add(path);
+        requested = isOnRequestedPath(currentPath, requestedPaths);
+      } else if ("files".equals(fieldName)) {
+        if (null == path) {
+          pendingFiles = new TokenBuffer(parser);
+          pendingFiles.copyCurrentStructure(parser);
+        } else if (requested) {
+          files = readFiles(parser);
+        } else {
+          parser.skipChildren();
+        }
+      } else if ("directories".equals(fieldName)) {
+        if (null == path) {
+          pendingDirectories = new TokenBuffer(parser);
+          pendingDirectories.copyCurrentStructure(parser);
+        } else if (requested) {
+          directories = readDirectories(parser, requestedPaths, currentPath);
+        } else {
+          parser.skipChildren();
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if (!requested) {
+      return null;
+    }
+    if (null != pendingFiles) {
+      try (JsonParser pendingParser = pendingFiles.asParser(parser)) {
+        pendingParser.nextToken();
+        files = readFiles(pendingParser);
+      }
+    }
+    if (null != pendingDirectories) {
+      try (JsonParser pendingParser = pendingDirectories.asParser(parser)) {
+        pendingParser.nextToken();
+        directories = readDirectories(pendingParser, requestedPaths,
+            currentPath);
+      }
+    }
+    return new DirectoryNode(path, files, directories);
+  }
+
+  private static SortedSet<FileNode> readFiles(JsonParser parser)
+      throws IOException {
+    SortedSet<FileNode> files = new TreeSet<>();
+    if (parser.currentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return files;
+    }
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      files.add(objectMapper.readValue(parser, FileNode.class));
+    }
+    return files;
+  }
+
+  /* Return whether the given directory path is a prefix of one of the
+   * requested paths. */
+  private static boolean isOnRequestedPath(List<String> path,
+      List<String[]> requestedPaths) {
+    for (String[] requestedPath : requestedPaths) {
+      if (path.size() > requestedPath.length) {
+        continue;
+      }
+      boolean matches = true;
+      for (int i = 0; i < path.size() && matches; i++) {
+        matches = requestedPath[i].equals(path.get(i));
+      }
+      if (matches) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** Return a map of file paths for the given directories. */
   public SortedMap<String, FileNode> retrieveFilesIn(String ... remoteDirs) {
     SortedMap<String, FileNode> map = new TreeMap<>();
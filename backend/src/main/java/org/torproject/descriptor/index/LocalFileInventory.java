@@ -0,0 +1,283 @@
+/* Copyright 2016--2020 The Tor Project
+ * See LICENSE for licensing information */
+
+package org.torproject.descriptor.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inventory of files in a local directory with their last-modified times,
+ * which is persisted between collection runs and kept up-to-date when files
+ * are fetched or deleted.
+ *
+ * <p>Refreshing the inventory only lists directories whose last-modified
+ * time has changed since they were last listed, which happens whenever files
+ * are added, removed, or renamed in them.  If nothing has changed, only the
+ * directories are stat'ed, not the files they contain.  Files that are
+ * modified in place without touching their directory are not noticed, which
+ * is fine for a directory that is only written by a collector.  Temporary
+ * files of partially fetched remote files, whose names start with a dot, are
+ * left out.</p>
+ *
+ * <p>Lines in the inventory file contain a type ({@code D} for directory or
+ * {@code F} for file), the last modified time in milliseconds since the
+ * epoch, and the path relative to the local directory, separated by a
+ * space.</p>
+ */
+public class LocalFileInventory {
+
+  private static final Logger logger = LoggerFactory.getLogger(
+      LocalFileInventory.class);
+
+  /* Directories modified less than this many milliseconds before they were
+   * listed are listed again next time, because files could be added within
+   * the same file system timestamp granularity without changing it. */
+  private static final long RACY_MILLIS = 2000L;
+
+  private final File localDirectory;
+
+  private final File inventoryFile;
+
+  private boolean loaded = false;
+
+  /* Relative directory paths ("" for the local directory itself) and their
+   * last-modified times when last listed. */
+  private final SortedMap<String, Long> directories = new TreeMap<>();
+
+  /* Relative file paths and their last-modified times. */
+  private final SortedMap<String, Long> files = new TreeMap<>();
+
+  /**
+   * Create an inventory of the given local directory that is persisted to
+   * the given file, which should be located outside of the local directory.
+   */
+  public LocalFileInventory(File localDirectory, File inventoryFile) {
+    this.localDirectory = localDirectory;
+    this.inventoryFile = inventoryFile;
+  }
+
+  /** Return whether this inventory covers the given local directory. */
+  public boolean covers(File localDirectory) {
+    return this.localDirectory.getAbsoluteFile()
+        .equals(localDirectory.getAbsoluteFile());
+  }
+
+  /**
+   * Bring the inventory up-to-date with the local directory and return
+   * relative file paths and last-modified times.
+   */
+  public synchronized SortedMap<String, Long> refresh() {
+    if (!this.loaded) {
+      this.load();
+      this.loaded = true;
+    }
+    Path root = this.localDirectory.toPath();
+    if (!Files.isDirectory(root)) {
+      this.directories.clear();
+      this.files.clear();
+      return new TreeMap<>();
+    }
+    try {
+      this.refreshDirectory(root, "",
+          Files.readAttributes(root, BasicFileAttributes.class));
+    } catch (IOException ioe) {
+      logger.warn("Cannot index local directory {} to skip any remote files "
+          + "that already exist locally. Continuing with an either empty or "
+          + "incomplete index of local files.", this.localDirectory, ioe);
+    }
+    return new TreeMap<>(this.files);
+  }
+
+  private void refreshDirectory(Path directory, String relativePath,
+      BasicFileAttributes attributes) throws IOException {
+    long lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+    Long recordedMillis = this.directories.get(relativePath);
+    if (null != recordedMillis && recordedMillis == lastModifiedMillis) {
+      for (String subdirectory : this.subdirectories(relativePath)) {
+        Path subdirectoryPath = this.localDirectory.toPath()
+            .resolve(subdirectory);
+        BasicFileAttributes subdirectoryAttributes;
+        try {
+          subdirectoryAttributes = Files.readAttributes(subdirectoryPath,
+              BasicFileAttributes.class);
+        } catch (IOException e) {
+          /* Removed in the meantime without touching its parent. */
+          this.removeTree(subdirectory);
+          continue;
+        }
+        this.refreshDirectory(subdirectoryPath, subdirectory,
+            subdirectoryAttributes);
+      }
+      return;
+    }
+    String prefix = relativePath.isEmpty() ? ""
+        : relativePath + File.separator;
+    List<String> previousSubdirectories = this.subdirectories(relativePath);
+    this.removeChildren(prefix, this.files);
+    List<String> currentSubdirectories = new ArrayList<>();
+    List<BasicFileAttributes> currentSubdirectoryAttributes =
+        new ArrayList<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      for (Path entry : entries) {
+        BasicFileAttributes entryAttributes;
+        try {
+          entryAttributes = Files.readAttributes(entry,
+              BasicFileAttributes.class);
+        } catch (IOException e) {
+          continue;
+        }
+        String entryPath = prefix + entry.getFileName().toString();
+        if (entryAttributes.isDirectory()) {
+          currentSubdirectories.add(entryPath);
+          currentSubdirectoryAttributes.add(entryAttributes);
+        } else if (!DescriptorIndexCollector.isTemporaryFile(entryPath)) {
+          this.files.put(entryPath,
+              entryAttributes.lastModifiedTime().toMillis());
+        }
+      }
+    }
+    for (String previousSubdirectory : previousSubdirectories) {
+      if (!currentSubdirectories.contains(previousSubdirectory)) {
+        this.removeTree(previousSubdirectory);
+      }
+    }
+    this.directories.put(relativePath,
+        System.currentTimeMillis() - lastModifiedMillis < RACY_MILLIS
+        ? -1L : lastModifiedMillis);
+    for (int i = 0; i < currentSubdirectories.size(); i++) {
+      String subdirectory = currentSubdirectories.get(i);
+      this.refreshDirectory(directory.resolve(subdirectory.substring(
+          prefix.length())), subdirectory,
+          currentSubdirectoryAttributes.get(i));
+    }
+  }
+
+  /* Return the recorded direct subdirectories of the given directory. */
+  private List<String> subdirectories(String relativePath) {
+    String prefix = relativePath.isEmpty() ? ""
+        : relativePath + File.separator;
+    List<String> subdirectories = new ArrayList<>();
+    for (String directory : this.children(prefix, this.directories)
+        .keySet()) {
+      if (!directory.isEmpty()
+          && directory.indexOf(File.separatorChar, prefix.length()) < 0) {
+        subdirectories.add(directory);
+      }
+    }
+    return subdirectories;
+  }
+
+  /* Remove a directory and everything recorded below it. */
+  private void removeTree(String relativePath) {
+    this.directories.remove(relativePath);
+    String prefix = relativePath + File.separator;
+    this.children(prefix, this.directories).clear();
+    this.children(prefix, this.files).clear();
+  }
+
+  /* Remove direct children of the directory with the given prefix. */
+  private void removeChildren(String prefix, SortedMap<String, Long> map) {
+    this.children(prefix, map).keySet().removeIf(path -> !path.isEmpty()
+        && path.indexOf(File.separatorChar, prefix.length()) < 0);
+  }
+
+  private SortedMap<String, Long> children(String prefix,
+      SortedMap<String, Long> map) {
+    return prefix.isEmpty() ? map
+        : map.subMap(prefix, prefix + Character.MAX_VALUE);
+  }
+
+  /** Record a file that has been fetched to the local directory. */
+  public synchronized void fileFetched(String relativePath,
+      long lastModifiedMillis) {
+    this.files.put(relativePath, lastModifiedMillis);
+  }
+
+  /** Record a file that has been deleted from the local directory. */
+  public synchronized void fileDeleted(String relativePath) {
+    this.files.remove(relativePath);
+  }
+
+  private void load() {
+    if (null == this.inventoryFile || !this.inventoryFile.exists()) {
+      return;
+    }
+    try (BufferedReader br = Files.newBufferedReader(
+        this.inventoryFile.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        int firstSpace = line.indexOf(' ');
+        int secondSpace = line.indexOf(' ', firstSpace + 1);
+        if (firstSpace != 1 || secondSpace < 0) {
+          logger.warn("Unexpected line structure in local file inventory: "
+              + "{}", line);
+          continue;
+        }
+        long lastModifiedMillis = Long.parseLong(line.substring(2,
+            secondSpace));
+        String relativePath = line.substring(secondSpace + 1);
+        if (line.charAt(0) == 'D') {
+          this.directories.put(relativePath, lastModifiedMillis);
+        } else if (!DescriptorIndexCollector.isTemporaryFile(relativePath)) {
+          this.files.put(relativePath, lastModifiedMillis);
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      logger.warn("Trouble reading local file inventory {}.  Indexing local "
+          + "directory {} from scratch.", this.inventoryFile,
+          this.localDirectory, e);
+      this.directories.clear();
+      this.files.clear();
+    }
+  }
+
+  /** Persist the inventory for the next collection run. */
+  public synchronized void save() {
+    if (null == this.inventoryFile) {
+      return;
+    }
+    File parent = this.inventoryFile.getAbsoluteFile().getParentFile();
+    parent.mkdirs();
+    Path tempPath = new File(parent, "." + this.inventoryFile.getName())
+        .toPath();
+    try (BufferedWriter bw = Files.newBufferedWriter(tempPath,
+        StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, Long> e : this.directories.entrySet()) {
+        bw.write("D " + e.getValue() + " " + e.getKey());
+        bw.newLine();
+      }
+      for (Map.Entry<String, Long> e : this.files.entrySet()) {
+        bw.write("F " + e.getValue() + " " + e.getKey());
+        bw.newLine();
+      }
+    } catch (IOException e) {
+      logger.warn("Trouble writing local file inventory {}.",
+          this.inventoryFile, e);
+      return;
+    }
+    try {
+      Files.move(tempPath, this.inventoryFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      logger.warn("Trouble writing local file inventory {}.",
+          this.inventoryFile, e);
+    }
+  }
+}
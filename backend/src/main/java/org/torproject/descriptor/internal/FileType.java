@@ -11,6 +11,7 @@ import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * These enums provide compression functionality.
@@ -23,18 +24,48 @@ import java.io.*;
  */
 public enum FileType {
 
-  BZ2(BZip2CompressorInputStream.class, BZip2CompressorOutputStream.class),
-  GZ(GzipCompressorInputStream.class, GzipCompressorOutputStream.class),
-  JSON(BufferedInputStream.class, BufferedOutputStream.class),
-  PLAIN(BufferedInputStream.class, BufferedOutputStream.class),
-  XZ(XZCompressorInputStream.class, XZCompressorOutputStream.class);
+  BZ2(in -> new BZip2CompressorInputStream(in),
+      out -> new BZip2CompressorOutputStream(out)),
+  GZ(in -> new GzipCompressorInputStream(in),
+      out -> new GzipCompressorOutputStream(out)),
+  JSON(in -> new BufferedInputStream(in),
+      out -> new BufferedOutputStream(out)),
+  PLAIN(in -> new BufferedInputStream(in),
+      out -> new BufferedOutputStream(out)),
+  XZ(in -> new XZCompressorInputStream(in),
+      out -> new XZCompressorOutputStream(out));
+
+  /* Create a stream reading from or writing to the given stream by calling
+   * the stream class's constructor directly rather than looking it up via
+   * reflection on every call.  Lambdas rather than constructor references
+   * are used, so that stream classes and their dependencies are only loaded
+   * when a type is used for the first time, as before. */
+  @FunctionalInterface
+  private interface StreamFactory<T> {
+    T create(T stream) throws IOException;
+  }
+
+  /* Minimum initial size of the array that decompressed bytes are read
+   * into, which is otherwise the number of compressed bytes times the
+   * expected compression ratio. */
+  private static final int MIN_DECOMPRESSED_SIZE = 8192;
+
+  /* Minimum initial size of the buffer that compressed bytes are written
+   * to, which is otherwise the number of uncompressed bytes divided by the
+   * expected compression ratio. */
+  private static final int MIN_COMPRESSED_SIZE = 8192;
 
-  private final Class<? extends InputStream> inClass;
-  private final Class<? extends OutputStream> outClass;
+  private static final int EXPECTED_COMPRESSION_RATIO = 4;
 
-  FileType(Class<? extends InputStream> in, Class<? extends OutputStream> out) {
-    this.inClass = in;
-    this.outClass = out;
+  /* Largest array size that is safe to allocate on common JVMs. */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+  private final StreamFactory<InputStream> inFactory;
+  private final StreamFactory<OutputStream> outFactory;
+
+  FileType(StreamFactory<InputStream> in, StreamFactory<OutputStream> out) {
+    this.inFactory = in;
+    this.outFactory = out;
   }
 
   /**
@@ -59,8 +90,7 @@ public enum FileType {
    * @since 1.4.0
    */
   public InputStream inputStream(InputStream is) throws Exception {
-    return this.inClass.getConstructor(new Class[]{InputStream.class})
-        .newInstance(is);
+    return this.inFactory.create(is);
   }
 
   /**
@@ -69,8 +99,7 @@ public enum FileType {
    * @since 1.4.0
    */
   public OutputStream outputStream(OutputStream os) throws Exception {
-    return this.outClass.getConstructor(new Class[]{OutputStream.class})
-        .newInstance(os);
+    return this.outFactory.create(os);
   }
 
   /**
@@ -79,10 +108,10 @@ public enum FileType {
    * @since 2.2.0
    */
   public byte[] compress(byte[] bytes) throws Exception {
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(
+        MIN_COMPRESSED_SIZE, bytes.length / EXPECTED_COMPRESSION_RATIO));
     try (OutputStream os = this.outputStream(baos)) {
       os.write(bytes);
-      os.flush();
     }
     return baos.toByteArray();
   }
@@ -115,17 +144,35 @@ public enum FileType {
       return bytes;
     }
     try (InputStream is
-        = this.inputStream(new ByteArrayInputStream(bytes));
-        ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-      int readByte = is.read();
-      while (readByte > 0) {
-        baos.write(readByte);
-        readByte = is.read();
-      }
-      baos.flush();
-      return baos.toByteArray();
+        = this.inputStream(new ByteArrayInputStream(bytes))) {
+      return readAllBytes(is, (int) Math.min(MAX_ARRAY_SIZE, Math.max(
+          MIN_DECOMPRESSED_SIZE,
+          (long) bytes.length * EXPECTED_COMPRESSION_RATIO)));
     }
   }
 
+  /* Read all bytes from the given stream in bulk directly into an array of
+   * the given initial size, which is doubled whenever it is full, and return
+   * an array containing exactly the read bytes. */
+  private static byte[] readAllBytes(InputStream is, int initialSize)
+      throws IOException {
+    byte[] buffer = new byte[initialSize];
+    int length = 0;
+    while (true) {
+      if (length == buffer.length) {
+        if (length == MAX_ARRAY_SIZE) {
+          throw new IOException("Decompressed bytes exceed the maximum "
+              + "array size.");
+        }
+        buffer = Arrays.copyOf(buffer, (int) Math.min(MAX_ARRAY_SIZE,
+            2L * length));
+      }
+      int read = is.read(buffer, length, buffer.length - length);
+      if (read < 0) {
+        break;
+      }
+      length += read;
+    }
+    return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+  }
 }
-
@@ -9,16 +9,19 @@ import org.torproject.descriptor.internal.FileType;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Implementation of web server access log descriptors.
@@ -133,38 +136,88 @@ public class WebServerAccessLogImpl extends LogDescriptorImpl
     return this.logDate;
   }
 
-  private static final int LISTLIMIT = Integer.MAX_VALUE / 2;
+  /** Number of lines read at once for parsing them in parallel. */
+  private static final int CHUNK_LINES = 8192;
 
-  /** Returns a stream of all valid log lines. */
+  /**
+   * Returns a stream of all valid log lines.
+   *
+   * <p>Lines are decompressed, read, and parsed only while the stream is
+   * being consumed, so that a log never needs to fit into memory as a
+   * whole.  Parallel streams read chunks of lines and parse these chunks in
+   * parallel.  Errors while reading are thrown as
+   * {@link UncheckedIOException} from the stream's terminal operation.
+   * Closing the stream closes the underlying decompressed stream.</p>
+   */
   @Override
   public Stream<WebServerAccessLog.Line> logLines()
       throws DescriptorParseException {
-    try (BufferedReader br = new BufferedReader(new InputStreamReader(
-        this.decompressedByteStream()))) {
-      List<List<WebServerAccessLogLine>> lists = new ArrayList<>();
-      List<WebServerAccessLogLine> currentList = new ArrayList<>();
-      lists.add(currentList);
-      String lineStr = br.readLine();
+    BufferedReader br = new BufferedReader(new InputStreamReader(
+        this.decompressedByteStream()));
+    return StreamSupport.stream(new LineSpliterator(br), false)
+        .onClose(() -> {
+          try {
+            br.close();
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        })
+        .map(WebServerAccessLogLine::makeLine)
+        .filter(WebServerAccessLogLine::isValid)
+        .map(WebServerAccessLog.Line.class::cast);
+  }
+
+  /**
+   * Spliterator over lines read from a reader, which reads one line at a
+   * time when traversed sequentially and splits off chunks of up to
+   * {@link #CHUNK_LINES} lines when split for parallel processing.
+   */
+  private static class LineSpliterator implements Spliterator<String> {
+
+    private final BufferedReader reader;
+
+    private LineSpliterator(BufferedReader reader) {
+      this.reader = reader;
+    }
+
+    private String readLine() {
+      try {
+        return this.reader.readLine();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+      String line = this.readLine();
+      if (null == line) {
+        return false;
+      }
+      action.accept(line);
+      return true;
+    }
+
+    @Override
+    public Spliterator<String> trySplit() {
+      String[] chunk = new String[CHUNK_LINES];
       int count = 0;
-      while (null != lineStr) {
-        WebServerAccessLogLine wsal = WebServerAccessLogLine.makeLine(lineStr);
-        if (wsal.isValid()) {
-          currentList.add(wsal);
-          count++;
-        }
-        if (count >= LISTLIMIT) {
-          currentList = new ArrayList<>();
-          lists.add(currentList);
-          count = 0;
-        }
-        lineStr = br.readLine();
+      String line;
+      while (count < CHUNK_LINES && null != (line = this.readLine())) {
+        chunk[count++] = line;
       }
-      br.close();
-      return lists.stream().flatMap(Collection::stream);
-    } catch (Exception ex) {
-      throw new DescriptorParseException("Cannot retrieve log lines.", ex);
+      return count == 0 ? null
+          : Spliterators.spliterator(chunk, 0, count, this.characteristics());
     }
-  }
 
-}
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
 
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+  }
+}
@@ -9,10 +9,12 @@ import org.torproject.descriptor.Method;
 import org.torproject.descriptor.WebServerAccessLog;
 
 import java.time.LocalDate;
+import java.time.Month;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,14 +37,30 @@ public class WebServerAccessLogLine implements WebServerAccessLog.Line {
       + "\"([A-Z]+) ([^\"]+) ([A-Z]+/\\d\\.\\d)\" "
       + "(\\d{3}) (\\d+|-)(.*)");
 
-  private static Map<String, String> ipMap
-      = Collections.synchronizedMap(new HashMap<>());
+  /* Abbreviated month names exactly as parsed by the date-time formatter
+   * above, indexed by month value minus one, or null for any name that does
+   * not consist of three ASCII letters and is left to the regular
+   * expression. */
+  private static final String[] monthNames = new String[12];
+
+  static {
+    DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("MMM");
+    for (Month month : Month.values()) {
+      String monthName = monthFormatter.format(month);
+      if (monthName.matches("[A-Za-z]{3}")) {
+        monthNames[month.ordinal()] = monthName;
+      }
+    }
+  }
+
+  private static final Method[] methods = Method.values();
+
+  private static Map<String, String> ipMap = new ConcurrentHashMap<>();
   private static Map<LocalDate, LocalDate> dateMap
-      = Collections.synchronizedMap(new HashMap<>(500));
-  private static Map<String, String> protocolMap
-      = Collections.synchronizedMap(new HashMap<>());
+      = new ConcurrentHashMap<>(500);
+  private static Map<String, String> protocolMap = new ConcurrentHashMap<>();
   private static Map<String, String> requestMap
-      = Collections.synchronizedMap(new HashMap<>(50_000));
+      = new ConcurrentHashMap<>(50_000);
 
   private String ip;
   private int response;
@@ -125,8 +143,19 @@ public class WebServerAccessLogLine implements WebServerAccessLog.Line {
     return this.valid;
   }
 
-  /** Creates a Line from a string. */
+  /**
+   * Creates a Line from a string.
+   *
+   * <p>Lines in the usual shape are parsed by hand, and only lines that look
+   * any different are matched against the regular expression, which yields
+   * the exact same results for lines in the usual shape.</p>
+   */
   public static WebServerAccessLogLine makeLine(String line) {
+    WebServerAccessLogLine res = parseUsualLine(line);
+    return null != res ? res : matchLine(line);
+  }
+
+  static WebServerAccessLogLine matchLine(String line) {
     WebServerAccessLogLine res = new WebServerAccessLogLine();
     try {
       Matcher mat = logLinePattern.matcher(line);
@@ -154,11 +183,182 @@ public class WebServerAccessLogLine implements WebServerAccessLog.Line {
     return res;
   }
 
-  private static <T> T fromMap(T val, Map<T, T> map) {
-    synchronized (map) {
-      map.putIfAbsent(Objects.requireNonNull(val), val);
-      return map.get(val);
+  /* Parse a line of the form
+   * {@code 0.0.0.0 - - [20/Sep/2017:00:00:00 +0000] "GET / HTTP/1.1" 200 -}
+   * without going through the regular expression, or return null if the
+   * line deviates in any way from that shape, including dates, times, or
+   * time zone offsets that would need to be resolved in a special way and
+   * sizes that may not fit into an int. */
+  static WebServerAccessLogLine parseUsualLine(String line) {
+    int length = line.length();
+    int index = 0;
+    for (int octet = 0; octet < 4; octet++) {
+      int octetStart = index;
+      while (index < length && index - octetStart < 3
+          && isDigit(line.charAt(index))) {
+        index++;
+      }
+      if (index == octetStart || index >= length
+          || line.charAt(index) != (octet < 3 ? '.' : ' ')) {
+        return null;
+      }
+      index++;
+    }
+    int ipEnd = index - 1;
+    for (int field = 0; field < 2; field++) {
+      int fieldStart = index;
+      while (index < length && line.charAt(index) != ' ') {
+        if (Character.isWhitespace(line.charAt(index))) {
+          return null;
+        }
+        index++;
+      }
+      if (index == fieldStart || index >= length) {
+        return null;
+      }
+      index++;
+    }
+    if (index + 30 > length || line.charAt(index) != '['
+        || line.charAt(index + 3) != '/' || line.charAt(index + 7) != '/'
+        || line.charAt(index + 12) != ':' || line.charAt(index + 15) != ':'
+        || line.charAt(index + 18) != ':' || line.charAt(index + 21) != ' '
+        || line.charAt(index + 27) != ']' || line.charAt(index + 28) != ' '
+        || line.charAt(index + 29) != '"') {
+      return null;
+    }
+    int month = 0;
+    while (month < monthNames.length && (null == monthNames[month]
+        || !line.startsWith(monthNames[month], index + 4))) {
+      month++;
+    }
+    if (month++ == monthNames.length) {
+      return null;
+    }
+    int day = parseDigits(line, index + 1, 2);
+    int year = parseDigits(line, index + 8, 4);
+    int hour = parseDigits(line, index + 13, 2);
+    int minute = parseDigits(line, index + 16, 2);
+    int second = parseDigits(line, index + 19, 2);
+    char offsetSign = line.charAt(index + 22);
+    int offsetHours = parseDigits(line, index + 23, 2);
+    int offsetMinutes = parseDigits(line, index + 25, 2);
+    if (day < 1 || year < 1 || day > Month.of(month).length(
+        year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))
+        || hour < 0 || hour > 23 || minute < 0 || minute > 59
+        || second < 0 || second > 59 || (offsetSign != '+'
+        && offsetSign != '-') || offsetHours < 0 || offsetHours > 17
+        || offsetMinutes < 0 || offsetMinutes > 59) {
+      return null;
+    }
+    index += 30;
+    int methodStart = index;
+    while (index < length && line.charAt(index) >= 'A'
+        && line.charAt(index) <= 'Z') {
+      index++;
+    }
+    if (index == methodStart || index >= length
+        || line.charAt(index) != ' ') {
+      return null;
+    }
+    Method method = null;
+    for (Method candidate : methods) {
+      if (candidate.name().length() == index - methodStart
+          && line.startsWith(candidate.name(), methodStart)) {
+        method = candidate;
+      }
+    }
+    if (null == method) {
+      return null;
     }
+    int requestStart = index + 1;
+    int quote = line.indexOf('"', requestStart);
+    int requestEnd = quote < 0 ? -1 : line.lastIndexOf(' ', quote);
+    if (requestEnd <= requestStart
+        || !isProtocol(line, requestEnd + 1, quote)) {
+      return null;
+    }
+    index = quote + 1;
+    if (index + 6 > length || line.charAt(index) != ' '
+        || line.charAt(index + 4) != ' ') {
+      return null;
+    }
+    int response = parseDigits(line, index + 1, 3);
+    if (response < 0) {
+      return null;
+    }
+    index += 5;
+    int size = -1;
+    if (line.charAt(index) != '-') {
+      int sizeStart = index;
+      while (index < length && isDigit(line.charAt(index))) {
+        index++;
+      }
+      if (index == sizeStart || index - sizeStart > 9) {
+        return null;
+      }
+      size = parseDigits(line, sizeStart, index - sizeStart);
+    }
+    int utcSecondOfDay = hour * 3600 + minute * 60 + second
+        + (offsetSign == '+' ? -1 : 1) * (offsetHours * 3600
+        + offsetMinutes * 60);
+    LocalDate date = LocalDate.of(year, month, day);
+    if (utcSecondOfDay < 0) {
+      date = date.minusDays(1);
+    } else if (utcSecondOfDay >= 86400) {
+      date = date.plusDays(1);
+    }
+    WebServerAccessLogLine res = new WebServerAccessLogLine();
+    res.response = response;
+    res.method = method;
+    res.date = fromMap(date, dateMap);
+    res.ip = fromMap(line.substring(0, ipEnd), ipMap);
+    res.request = fromMap(line.substring(requestStart, requestEnd),
+        requestMap);
+    res.protocol = fromMap(line.substring(requestEnd + 1, quote),
+        protocolMap);
+    res.size = size;
+    res.valid = true;
+    return res;
+  }
+
+  private static boolean isDigit(char character) {
+    return character >= '0' && character <= '9';
+  }
+
+  /* Parse the given number of ASCII digits, or return -1 if any of the
+   * characters is not an ASCII digit. */
+  private static int parseDigits(String line, int start, int count) {
+    int value = 0;
+    for (int index = start; index < start + count; index++) {
+      char character = line.charAt(index);
+      if (!isDigit(character)) {
+        return -1;
+      }
+      value = value * 10 + (character - '0');
+    }
+    return value;
+  }
+
+  /* Return whether the given part of the line is a protocol like HTTP/1.1,
+   * matching {@code [A-Z]+/\d\.\d}. */
+  private static boolean isProtocol(String line, int start, int end) {
+    int slash = end - 4;
+    if (slash <= start || line.charAt(slash) != '/'
+        || !isDigit(line.charAt(slash + 1))
+        || line.charAt(slash + 2) != '.' || !isDigit(line.charAt(slash + 3))) {
+      return false;
+    }
+    for (int index = start; index < slash; index++) {
+      if (line.charAt(index) < 'A' || line.charAt(index) > 'Z') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static <T> T fromMap(T val, Map<T, T> map) {
+    T existing = map.putIfAbsent(Objects.requireNonNull(val), val);
+    return null == existing ? val : existing;
   }
 
   @Override
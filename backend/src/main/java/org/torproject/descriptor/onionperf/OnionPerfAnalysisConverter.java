@@ -4,7 +4,6 @@
 package org.torproject.descriptor.onionperf;
 
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
-import org.apache.commons.compress.utils.IOUtils;
 import org.torproject.descriptor.Descriptor;
 import org.torproject.descriptor.DescriptorParseException;
 import org.torproject.descriptor.impl.TorperfResultImpl;
@@ -45,6 +44,14 @@ public class OnionPerfAnalysisConverter {
    */
   private List<Descriptor> convertedTorperfResults;
 
+  /**
+   * First exception thrown while converting measurement data, which is only
+   * thrown after verifying document type and version, because measurement
+   * data is converted while parsing the document, and type and version may
+   * come after measurement data.
+   */
+  private DescriptorParseException conversionException;
+
   /**
    * Construct a new instance from the given bytes and file reference.
    *
@@ -62,33 +69,72 @@ public class OnionPerfAnalysisConverter {
    * convert its contents to {@link org.torproject.descriptor.TorperfResult}
    * descriptors.
    *
+   * <p>The document is decompressed and parsed as a stream, and measurement
+   * data is converted one source at a time, so that neither the whole
+   * decompressed document nor measurement data of all sources need to be
+   * kept in memory.  Measurement data of a single source is still
+   * deserialized completely before converting it, because transfers can
+   * only be matched to streams and circuits once all of them are known.</p>
+   *
    * @return Converted transfers.
    * @throws DescriptorParseException Thrown if something goes wrong while
    *     parsing, verifying, or converting the OnionPerf analysis file to
    *     Torperf results.
    */
   public List<Descriptor> asTorperfResults() throws DescriptorParseException {
+    InputStream decompressedInputStream;
+    try {
+      InputStream compressedInputStream = new ByteArrayInputStream(
+          this.rawDescriptorBytes);
+      decompressedInputStream = new XZCompressorInputStream(
+          compressedInputStream);
+    } catch (IOException ioException) {
+      throw new DescriptorParseException("Ran into an I/O error while "
+          + "attempting to parse an OnionPerf analysis document.",
+          ioException);
+    }
+    return this.asTorperfResults(decompressedInputStream);
+  }
+
+  /**
+   * Parse the given uncompressed OnionPerf analysis JSON document, do some
+   * basic verification, and convert its contents to
+   * {@link org.torproject.descriptor.TorperfResult} descriptors.
+   *
+   * @param decompressedInputStream Uncompressed document contents, which are
+   *     closed afterwards.
+   * @return Converted transfers.
+   * @throws DescriptorParseException Thrown if something goes wrong while
+   *     parsing, verifying, or converting the OnionPerf analysis file to
+   *     Torperf results.
+   */
+  List<Descriptor> asTorperfResults(InputStream decompressedInputStream)
+      throws DescriptorParseException {
+    this.convertedTorperfResults = new ArrayList<>();
+    this.conversionException = null;
     ParsedOnionPerfAnalysis parsedOnionPerfAnalysis
-        = this.parseOnionPerfAnalysis();
+        = this.parseOnionPerfAnalysis(decompressedInputStream);
     this.verifyDocumentTypeAndVersion(parsedOnionPerfAnalysis);
-    StringBuilder formattedTorperfResults
-        = this.formatTorperfResults(parsedOnionPerfAnalysis);
-    this.parseFormattedTorperfResults(formattedTorperfResults);
+    if (null != this.conversionException) {
+      throw this.conversionException;
+    }
+    if (this.convertedTorperfResults.isEmpty()) {
+      /* Converting an analysis without any transfers used to fail on parsing
+       * the empty formatted results, so keep treating it as unparseable. */
+      throw new DescriptorParseException("Descriptor is empty.");
+    }
     return this.convertedTorperfResults;
   }
 
   /**
-   * Parse the OnionPerf analysis JSON document.
+   * Parse the OnionPerf analysis JSON document while converting measurement
+   * data.
    */
-  private ParsedOnionPerfAnalysis parseOnionPerfAnalysis()
-      throws DescriptorParseException {
+  private ParsedOnionPerfAnalysis parseOnionPerfAnalysis(
+      InputStream decompressedInputStream) throws DescriptorParseException {
     try {
-      InputStream compressedInputStream = new ByteArrayInputStream(
-          this.rawDescriptorBytes);
-      InputStream decompressedInputStream = new XZCompressorInputStream(
-          compressedInputStream);
-      byte[] decompressedBytes = IOUtils.toByteArray(decompressedInputStream);
-      return ParsedOnionPerfAnalysis.fromBytes(decompressedBytes);
+      return ParsedOnionPerfAnalysis.fromInputStream(decompressedInputStream,
+          this::convertMeasurementData);
     } catch (IOException ioException) {
       throw new DescriptorParseException("Ran into an I/O error while "
           + "attempting to parse an OnionPerf analysis document.",
@@ -125,129 +171,127 @@ public class OnionPerfAnalysisConverter {
   }
 
   /**
-   * Format the parsed OnionPerf analysis file as one or more Torperf result
-   * strings.
+   * Convert measurement data of a single source to Torperf results.
    *
-   * @param parsedOnionPerfAnalysis Parsed OnionPerf analysis document.
+   * @param nickname Source nickname.
+   * @param measurements Measurement data of the given source.
    */
-  private StringBuilder formatTorperfResults(
-      ParsedOnionPerfAnalysis parsedOnionPerfAnalysis) {
-    StringBuilder formattedTorperfResults = new StringBuilder();
-    for (Map.Entry<String, ParsedOnionPerfAnalysis.MeasurementData> data
-        : parsedOnionPerfAnalysis.data.entrySet()) {
-      String nickname = data.getKey();
-      ParsedOnionPerfAnalysis.MeasurementData measurements = data.getValue();
-      if (null == measurements.tgen) {
-        continue;
-      }
-      String measurementIp = measurements.measurementIp;
-      Map<String, List<ParsedOnionPerfAnalysis.Stream>> streamsBySourcePort
-          = new HashMap<>();
-      Map<String, ParsedOnionPerfAnalysis.Circuit> circuitsByCircuitId
-          = new HashMap<>();
-      if (null != measurements.tor) {
-        circuitsByCircuitId = measurements.tor.circuits;
-        if (null != measurements.tor.streams) {
-          for (ParsedOnionPerfAnalysis.Stream stream
-              : measurements.tor.streams.values()) {
-            if (null != stream.source && stream.source.contains(":")) {
-              String sourcePort = stream.source.split(":")[1];
-              streamsBySourcePort.putIfAbsent(sourcePort, new ArrayList<>());
-              streamsBySourcePort.get(sourcePort).add(stream);
-            }
+  private void convertMeasurementData(String nickname,
+      ParsedOnionPerfAnalysis.MeasurementData measurements) {
+    if (null == measurements.tgen) {
+      return;
+    }
+    String measurementIp = measurements.measurementIp;
+    Map<String, List<ParsedOnionPerfAnalysis.Stream>> streamsBySourcePort
+        = new HashMap<>();
+    Map<String, ParsedOnionPerfAnalysis.Circuit> circuitsByCircuitId
+        = new HashMap<>();
+    if (null != measurements.tor) {
+      circuitsByCircuitId = measurements.tor.circuits;
+      if (null != measurements.tor.streams) {
+        for (ParsedOnionPerfAnalysis.Stream stream
+            : measurements.tor.streams.values()) {
+          if (null != stream.source && stream.source.contains(":")) {
+            String sourcePort = stream.source.split(":")[1];
+            streamsBySourcePort.putIfAbsent(sourcePort, new ArrayList<>());
+            streamsBySourcePort.get(sourcePort).add(stream);
           }
         }
       }
-      if (null != measurements.tgen.transfers) {
-        for (ParsedOnionPerfAnalysis.Transfer transfer
-            : measurements.tgen.transfers.values()) {
-          TorperfResultsBuilder torperfResultsBuilder
-              = new TorperfResultsBuilder();
-          boolean isFiltered = false;
-          torperfResultsBuilder.addString("SOURCE", nickname);
-          torperfResultsBuilder.addString("SOURCEADDRESS", measurementIp);
-          this.formatTransferParts(torperfResultsBuilder, transfer);
-          if (null != transfer.endpointLocal) {
-            String[] endpointLocalParts = transfer.endpointLocal.split(":");
-            if (endpointLocalParts.length >= 3) {
-              String sourcePort = endpointLocalParts[2];
-              if (streamsBySourcePort.containsKey(sourcePort)) {
-                for (ParsedOnionPerfAnalysis.Stream stream
-                    : streamsBySourcePort.get(sourcePort)) {
-                  if (Math.abs(transfer.unixTsEnd - stream.unixTsEnd) < 150.0) {
-                    this.formatStreamParts(torperfResultsBuilder, stream);
-                    if (null != stream.circuitId
-                        && circuitsByCircuitId.containsKey(stream.circuitId)) {
-                      ParsedOnionPerfAnalysis.Circuit circuit
-                          = circuitsByCircuitId.get(stream.circuitId);
-                      isFiltered = circuit.filteredOut != null
-                              && circuit.filteredOut.equalsIgnoreCase("TRUE");
-                      this.formatCircuitParts(torperfResultsBuilder, circuit);
-                    }
+    }
+    if (null != measurements.tgen.transfers) {
+      for (ParsedOnionPerfAnalysis.Transfer transfer
+          : measurements.tgen.transfers.values()) {
+        TorperfResultsBuilder torperfResultsBuilder
+            = new TorperfResultsBuilder();
+        boolean isFiltered = false;
+        torperfResultsBuilder.addString("SOURCE", nickname);
+        torperfResultsBuilder.addString("SOURCEADDRESS", measurementIp);
+        this.formatTransferParts(torperfResultsBuilder, transfer);
+        if (null != transfer.endpointLocal) {
+          String[] endpointLocalParts = transfer.endpointLocal.split(":");
+          if (endpointLocalParts.length >= 3) {
+            String sourcePort = endpointLocalParts[2];
+            if (streamsBySourcePort.containsKey(sourcePort)) {
+              for (ParsedOnionPerfAnalysis.Stream stream
+                  : streamsBySourcePort.get(sourcePort)) {
+                if (Math.abs(transfer.unixTsEnd - stream.unixTsEnd) < 150.0) {
+                  this.formatStreamParts(torperfResultsBuilder, stream);
+                  if (null != stream.circuitId
+                      && circuitsByCircuitId.containsKey(stream.circuitId)) {
+                    ParsedOnionPerfAnalysis.Circuit circuit
+                        = circuitsByCircuitId.get(stream.circuitId);
+                    isFiltered = circuit.filteredOut != null
+                            && circuit.filteredOut.equalsIgnoreCase("TRUE");
+                    this.formatCircuitParts(torperfResultsBuilder, circuit);
                   }
                 }
               }
             }
           }
-          if (!isFiltered) {
-            formattedTorperfResults.append(torperfResultsBuilder.build());
-          }
+        }
+        if (!isFiltered) {
+          this.parseTorperfResult(torperfResultsBuilder.build());
         }
       }
-      if (null != measurements.tgen.streams) {
-        for (ParsedOnionPerfAnalysis.TgenStream stream
-             : measurements.tgen.streams.values()) {
-          TorperfResultsBuilder torperfResultsBuilder
-              = new TorperfResultsBuilder();
-          boolean isFiltered = false;
-          torperfResultsBuilder.addString("SOURCE", nickname);
-          torperfResultsBuilder.addString("SOURCEADDRESS", measurementIp);
-          this.formatTgenStreamParts(torperfResultsBuilder, stream);
-          if (null != stream.transportInfo
-              && null != stream.transportInfo.local) {
-            String[] endpointLocalParts = stream.transportInfo.local.split(":");
-            if (endpointLocalParts.length >= 3) {
-              String sourcePort = endpointLocalParts[2];
-              if (streamsBySourcePort.containsKey(sourcePort)) {
-                for (ParsedOnionPerfAnalysis.Stream torStream
-                    : streamsBySourcePort.get(sourcePort)) {
-                  if (Math.abs(stream.unixTsEnd
-                      - torStream.unixTsEnd) < 150.0) {
-                    this.formatStreamParts(torperfResultsBuilder, torStream);
-                    if (null != torStream.circuitId && circuitsByCircuitId
-                        .containsKey(torStream.circuitId)) {
-                      ParsedOnionPerfAnalysis.Circuit circuit
-                          = circuitsByCircuitId.get(torStream.circuitId);
-                      isFiltered = circuit.filteredOut != null
-                          && circuit.filteredOut.equalsIgnoreCase("TRUE");
-                      this.formatCircuitParts(torperfResultsBuilder, circuit);
-                    }
+    }
+    if (null != measurements.tgen.streams) {
+      for (ParsedOnionPerfAnalysis.TgenStream stream
+           : measurements.tgen.streams.values()) {
+        TorperfResultsBuilder torperfResultsBuilder
+            = new TorperfResultsBuilder();
+        boolean isFiltered = false;
+        torperfResultsBuilder.addString("SOURCE", nickname);
+        torperfResultsBuilder.addString("SOURCEADDRESS", measurementIp);
+        this.formatTgenStreamParts(torperfResultsBuilder, stream);
+        if (null != stream.transportInfo
+            && null != stream.transportInfo.local) {
+          String[] endpointLocalParts = stream.transportInfo.local.split(":");
+          if (endpointLocalParts.length >= 3) {
+            String sourcePort = endpointLocalParts[2];
+            if (streamsBySourcePort.containsKey(sourcePort)) {
+              for (ParsedOnionPerfAnalysis.Stream torStream
+                  : streamsBySourcePort.get(sourcePort)) {
+                if (Math.abs(stream.unixTsEnd
+                    - torStream.unixTsEnd) < 150.0) {
+                  this.formatStreamParts(torperfResultsBuilder, torStream);
+                  if (null != torStream.circuitId && circuitsByCircuitId
+                      .containsKey(torStream.circuitId)) {
+                    ParsedOnionPerfAnalysis.Circuit circuit
+                        = circuitsByCircuitId.get(torStream.circuitId);
+                    isFiltered = circuit.filteredOut != null
+                        && circuit.filteredOut.equalsIgnoreCase("TRUE");
+                    this.formatCircuitParts(torperfResultsBuilder, circuit);
                   }
                 }
               }
             }
           }
-          if (!isFiltered) {
-            formattedTorperfResults.append(torperfResultsBuilder.build());
-          }
+        }
+        if (!isFiltered) {
+          this.parseTorperfResult(torperfResultsBuilder.build());
         }
       }
     }
-    return formattedTorperfResults;
   }
 
   /**
-   * Parse the previously formatted Torperf results.
+   * Parse a single formatted Torperf result and add it to the converted
+   * Torperf results, unless converting measurement data has failed before.
    *
-   * @param formattedTorperfResults Formatted Torperf result strings.
-   * @throws DescriptorParseException Thrown when an error occurs while parsing
-   *     a previously formatted {@link org.torproject.descriptor.TorperfResult}
-   *     string.
+   * @param formattedTorperfResult Formatted Torperf result string.
    */
-  private void parseFormattedTorperfResults(
-      StringBuilder formattedTorperfResults) throws DescriptorParseException {
-    this.convertedTorperfResults = TorperfResultImpl.parseTorperfResults(
-        formattedTorperfResults.toString().getBytes(), this.descriptorFile);
+  private void parseTorperfResult(String formattedTorperfResult) {
+    if (null != this.conversionException) {
+      return;
+    }
+    try {
+      this.convertedTorperfResults.addAll(
+          TorperfResultImpl.parseTorperfResults(
+          formattedTorperfResult.getBytes(), this.descriptorFile));
+    } catch (DescriptorParseException e) {
+      this.conversionException = e;
+    }
   }
 
   /**
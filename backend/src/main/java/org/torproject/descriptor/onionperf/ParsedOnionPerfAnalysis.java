@@ -6,17 +6,28 @@ package org.torproject.descriptor.onionperf;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * Parsed OnionPerf analysis document with all relevant fields for
  * {@link OnionPerfAnalysisConverter} to convert contained measurements to
  * {@link org.torproject.descriptor.TorperfResult} instances.
+ *
+ * <p>Documents are deserialized by {@link #fromInputStream}, which binds
+ * {@link MeasurementData} of one source at a time rather than of all
+ * sources.  A single source's measurement data is bound as a whole,
+ * because its transfers can only be matched to {@code tor} streams and
+ * circuits that may come later in the document.</p>
  */
 public class ParsedOnionPerfAnalysis {
 
@@ -32,24 +43,66 @@ public class ParsedOnionPerfAnalysis {
 
   /**
    * Deserialize an OnionPerf analysis document from the given uncompressed
-   * bytes.
+   * input stream, and pass the measurement data of each source to the given
+   * consumer as soon as it has been deserialized, rather than keeping
+   * measurement data of all sources in memory.
    *
-   * @param bytes Uncompressed contents of the OnionPerf analysis to
-   *     deserialize.
-   * @return Parsed OnionPerf analysis document.
+   * <p>Measurement data is deserialized one source at a time, and fields
+   * that are not needed are skipped without building any objects for them.
+   * All measurement data of a source, including all of its transfers,
+   * streams, and circuits, is still deserialized at once, so memory use is
+   * bounded by the largest source rather than by the whole document.
+   * Sources with {@code null} measurement data are not passed to the
+   * consumer.</p>
+   *
+   * @param inputStream Uncompressed contents of the OnionPerf analysis to
+   *     deserialize, which is closed afterwards.
+   * @param measurementDataConsumer Consumer of source nicknames and their
+   *     measurement data.
+   * @return Parsed OnionPerf analysis document with type and version, but
+   *     without measurement data.
    * @throws IOException Thrown if something goes wrong while deserializing the
    *     given JSON document, but before doing any verification or
    *     postprocessing.
    */
-  static ParsedOnionPerfAnalysis fromBytes(byte[] bytes) throws IOException {
-    return objectMapper.readValue(bytes, ParsedOnionPerfAnalysis.class);
+  static ParsedOnionPerfAnalysis fromInputStream(InputStream inputStream,
+      BiConsumer<String, MeasurementData> measurementDataConsumer)
+      throws IOException {
+    ParsedOnionPerfAnalysis parsedOnionPerfAnalysis
+        = new ParsedOnionPerfAnalysis();
+    try (JsonParser parser = objectMapper.createParser(inputStream)) {
+      if (JsonToken.START_OBJECT != parser.nextToken()) {
+        throw new JsonParseException(parser, "OnionPerf analysis document "
+            + "is not a JSON object.");
+      }
+      while (JsonToken.FIELD_NAME == parser.nextToken()) {
+        String fieldName = parser.getCurrentName();
+        JsonToken valueToken = parser.nextToken();
+        if ("data".equals(fieldName)
+            && JsonToken.START_OBJECT == valueToken) {
+          while (JsonToken.FIELD_NAME == parser.nextToken()) {
+            String nickname = parser.getCurrentName();
+            parser.nextToken();
+            MeasurementData measurementData = objectMapper.readValue(parser,
+                MeasurementData.class);
+            if (null != measurementData) {
+              measurementDataConsumer.accept(nickname, measurementData);
+            }
+          }
+        } else if ("type".equals(fieldName)) {
+          parsedOnionPerfAnalysis.type = objectMapper.readValue(parser,
+              String.class);
+        } else if ("version".equals(fieldName)) {
+          parsedOnionPerfAnalysis.version = objectMapper.readValue(parser,
+              Object.class);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return parsedOnionPerfAnalysis;
   }
 
-  /**
-   * OnionPerf measurement data by source nickname.
-   */
-  Map<String, MeasurementData> data;
-
   /**
    * Descriptor type, which should always be {@code "onionperf"} for OnionPerf
    * analysis documents.
@@ -36,4 +36,59 @@ data class DescriptorConfig(
      * The sub path to download recent relay server descriptors from
      */
     val recentRelayServers: String,
+
+    /**
+     * The number of remote descriptor files which are downloaded in parallel
+     */
+    val downloadThreads: Int = 4,
+
+    /**
+     * The maximum number of concurrent connections to the remote server
+     */
+    val maxConnectionsPerHost: Int = 4,
+
+    /**
+     * How often a failed download of a descriptor file is retried
+     */
+    val downloadRetries: Int = 3,
+
+    /**
+     * The delay before the first retry of a failed download, which is doubled for each further retry
+     */
+    val downloadRetryBackoffMillis: Long = 5000,
+
+    /**
+     * The local file in which the last fetched remote index is kept for conditional requests
+     */
+    val indexCacheFile: String = "tormap-data/index.json",
+
+    /**
+     * For how many minutes the fetched remote index is shared by all collection jobs before it is revalidated
+     */
+    val indexMaxAgeMinutes: Long = 30,
+
+    /**
+     * The local file in which the inventory of downloaded descriptor files is kept between collection runs
+     */
+    val localInventoryFile: String = "tormap-data/descriptors-inventory.txt",
+
+    /**
+     * The number of local descriptor files or tarballs which are read and parsed in parallel
+     */
+    val readerThreads: Int = 2,
+
+    /**
+     * The estimated heap size in megabytes of parsed descriptors which are queued for processing per reader
+     */
+    val maxQueueMegabytes: Long = 100,
+
+    /**
+     * Whether status entry lines of relay consensuses other than fingerprint, address and flags are only parsed when accessed
+     */
+    val lazyStatusEntries: Boolean = true,
+
+    /**
+     * Whether only the server descriptor lines needed for relay details are parsed
+     */
+    val projectServerDescriptors: Boolean = true,
 )
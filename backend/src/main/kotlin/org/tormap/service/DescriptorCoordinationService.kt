@@ -11,7 +11,10 @@ import org.tormap.database.repository.RelayLocationRepository
 import org.tormap.util.logger
 import org.torproject.descriptor.DescriptorCollector
 import org.torproject.descriptor.index.DescriptorIndexCollector
+import org.torproject.descriptor.index.IndexCache
+import org.torproject.descriptor.index.LocalFileInventory
 import java.io.File
+import java.util.concurrent.TimeUnit
 
 
 /**
@@ -29,7 +32,30 @@ class DescriptorCoordinationService(
     private val cacheService: CacheService,
 ) {
     private val logger = logger()
-    private val descriptorCollector: DescriptorCollector = DescriptorIndexCollector()
+    private val descriptorCollector: DescriptorCollector by lazy {
+        DescriptorIndexCollector().apply {
+            setMaxDownloadThreads(descriptorConfig.downloadThreads)
+            setMaxConnectionsPerHost(descriptorConfig.maxConnectionsPerHost)
+            setMaxRetries(descriptorConfig.downloadRetries)
+            setRetryBackoffMillis(descriptorConfig.downloadRetryBackoffMillis)
+            setIndexCache(
+                IndexCache(
+                    File(descriptorConfig.indexCacheFile),
+                    TimeUnit.MINUTES.toMillis(descriptorConfig.indexMaxAgeMinutes),
+                    descriptorConfig.archiveRelayConsensuses,
+                    descriptorConfig.archiveRelayServers,
+                    descriptorConfig.recentRelayConsensuses,
+                    descriptorConfig.recentRelayServers,
+                )
+            )
+            setLocalFileInventory(
+                LocalFileInventory(
+                    File(descriptorConfig.localDownloadDirectory),
+                    File(descriptorConfig.localInventoryFile),
+                )
+            )
+        }
+    }
 
     fun collectAndProcessDescriptors(apiPath: String, descriptorType: DescriptorType) {
         try {
@@ -5,6 +5,7 @@ import org.tormap.config.value.DescriptorConfig
 import org.tormap.database.entity.*
 import org.tormap.database.repository.ProcessedFileRepository
 import org.torproject.descriptor.Descriptor
+import org.torproject.descriptor.ServerDescriptor
 import org.torproject.descriptor.impl.DescriptorReaderImpl
 import java.io.File
 import java.time.Instant
@@ -12,6 +13,28 @@ import java.time.LocalDateTime
 import java.time.temporal.ChronoUnit
 
 const val DAYS_TO_KEEP_RECENT_FILES = 4L
+const val MAX_DESCRIPTORS_IN_QUEUE = 10_000
+
+/**
+ * Keywords of server descriptor lines containing the fields used by [DescriptorProcessingService] and [RelayDetails].
+ * The router line with nickname, address and ports is always parsed.
+ */
+val SERVER_DESCRIPTOR_KEYWORDS = setOf(
+    "published",
+    "fingerprint",
+    "bandwidth",
+    "platform",
+    "proto",
+    "protocols",
+    "hibernating",
+    "uptime",
+    "contact",
+    "family",
+    "caches-extra-info",
+    "hidden-service-dir",
+    "allow-single-hop-exits",
+    "tunnelled-dir-server",
+)
 
 @Service
 class DescriptorFileService(
@@ -35,13 +58,17 @@ class DescriptorFileService(
                 it.lastModified,
             )
         }.toSortedMap()
-        descriptorReader.setMaxDescriptorsInQueue(
-            when {
-                descriptorType.isRelayConsensusType() -> 10 // 1 consensus descriptors ~= 8 MB in heap => 10 descriptors ~= 80 MB
-                descriptorType.isRelayServerType() -> 400 // 1 server descriptor often < 50 KB in heap => 400 descriptors ~= 20 MB
-                else -> throw Exception("Descriptor type ${descriptorType.name} is not yet supported!")
-            }
-        )
+        if (!descriptorType.isRelayConsensusType() && !descriptorType.isRelayServerType()) {
+            throw Exception("Descriptor type ${descriptorType.name} is not yet supported!")
+        }
+        // Queued descriptors are limited by their estimated heap size, the count only guards against huge queues of tiny descriptors
+        descriptorReader.setMaxDescriptorsInQueue(MAX_DESCRIPTORS_IN_QUEUE)
+        descriptorReader.setMaxBytesInQueue(descriptorConfig.maxQueueMegabytes * 1024 * 1024)
+        descriptorReader.setReaderThreads(descriptorConfig.readerThreads)
+        descriptorReader.setLazyStatusEntries(descriptorConfig.lazyStatusEntries)
+        if (descriptorConfig.projectServerDescriptors) {
+            descriptorReader.setProjection(ServerDescriptor::class.java, SERVER_DESCRIPTOR_KEYWORDS)
+        }
         return descriptorReader.readDescriptors(parentDirectory)
     }
 
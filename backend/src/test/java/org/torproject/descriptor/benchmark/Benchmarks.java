@@ -0,0 +1,59 @@
+package org.torproject.descriptor.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs a task repeatedly on the current thread and prints the average time
+ * and number of bytes allocated per run.
+ *
+ * <p>Allocated bytes are counted per thread by the JVM, so they do not
+ * depend on garbage collection and are stable between runs, unlike
+ * times.</p>
+ */
+public final class Benchmarks {
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /* Sum of results returned by tasks, which keeps the JIT compiler from
+   * removing work whose results would otherwise be unused. */
+  private static long sink;
+
+  private Benchmarks() {
+  }
+
+  /**
+   * Run the given task a number of times without measuring it, then a
+   * number of times while measuring it, and print the results.
+   *
+   * <p>The numbers of runs are taken from the system properties
+   * {@code benchmark.warmups} (default: 10) and
+   * {@code benchmark.iterations} (default: 20).</p>
+   */
+  public static void run(String label, LongSupplier task) {
+    int warmups = Integer.getInteger("benchmark.warmups", 10);
+    int iterations = Integer.getInteger("benchmark.iterations", 20);
+    for (int i = 0; i < warmups; i++) {
+      sink += task.getAsLong();
+    }
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+    long started = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      sink += task.getAsLong();
+    }
+    long nanos = System.nanoTime() - started;
+    long allocated = THREADS.getThreadAllocatedBytes(threadId)
+        - allocatedBefore;
+    System.out.println(String.format(Locale.US,
+        "%-45s %12.3f ms/op %14.1f kB/op", label,
+        nanos / 1e6 / iterations, allocated / 1024.0 / iterations));
+  }
+
+  /** Print the sum of task results, so that it is used. */
+  public static void done() {
+    System.out.println("(checksum " + sink + ")");
+  }
+}
@@ -0,0 +1,66 @@
+package org.torproject.descriptor.benchmark;
+
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.DescriptorParser;
+import org.torproject.descriptor.DescriptorSourceFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures time and allocation of parsing descriptor files on a single
+ * thread, including iterating over all parsed descriptors.
+ *
+ * <p>Run with {@code ./gradlew descriptorBenchmark --args="FILE..."}, or
+ * without arguments to parse the fixtures of the golden file tests.</p>
+ */
+public class DescriptorParserBenchmark {
+
+  private static final String GOLDEN_DIRECTORY =
+      "/org/torproject/descriptor/impl/golden/";
+
+  private static final String[] DEFAULT_FIXTURES = new String[] {
+      "consensus", "server-descriptors", "extra-info", "microdescriptors"};
+
+  /** Parse the given files, or the default fixtures. */
+  public static void main(String[] args) throws IOException {
+    DescriptorParser parser = DescriptorSourceFactory.createDescriptorParser();
+    if (args.length == 0) {
+      for (String fixture : DEFAULT_FIXTURES) {
+        benchmark(parser, fixture, readFixture(fixture));
+      }
+    } else {
+      for (String arg : args) {
+        Path path = Paths.get(arg);
+        benchmark(parser, path.getFileName().toString(),
+            Files.readAllBytes(path));
+      }
+    }
+    Benchmarks.done();
+  }
+
+  private static byte[] readFixture(String fixture) throws IOException {
+    try (InputStream is = DescriptorParserBenchmark.class.getResourceAsStream(
+        GOLDEN_DIRECTORY + fixture)) {
+      if (null == is) {
+        throw new IOException("Missing fixture " + fixture);
+      }
+      return is.readAllBytes();
+    }
+  }
+
+  private static void benchmark(DescriptorParser parser, String fileName,
+      byte[] bytes) {
+    Benchmarks.run("parse " + fileName, () -> {
+      long parsedBytes = 0L;
+      for (Descriptor descriptor : parser.parseDescriptors(bytes, null,
+          fileName)) {
+        parsedBytes += descriptor.getRawDescriptorLength();
+      }
+      return parsedBytes;
+    });
+  }
+}
@@ -0,0 +1,90 @@
+package org.torproject.descriptor.benchmark;
+
+import org.torproject.descriptor.internal.FileType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Measures time and allocation of compressing and decompressing descriptor
+ * bytes in memory with each compressing file type.
+ *
+ * <p>Run with {@code ./gradlew descriptorBenchmark
+ * -Pbenchmark=benchmark.FileTypeBenchmark --args="FILE"}, or without
+ * arguments to use the server descriptors fixture of the golden file
+ * tests, repeated to about 3 MB.  The repeated fixture compresses much
+ * better than real descriptor files, so pass a real file for
+ * representative numbers.  Decompressing is measured both into an array
+ * and by reading from the decompressing stream.</p>
+ */
+public class FileTypeBenchmark {
+
+  private static final String FIXTURE =
+      "/org/torproject/descriptor/impl/golden/server-descriptors";
+
+  private static final int DEFAULT_SIZE = 3 * 1024 * 1024;
+
+  private static final FileType[] COMPRESSING_TYPES = new FileType[] {
+      FileType.BZ2, FileType.GZ, FileType.XZ};
+
+  /** Compress and decompress the given file, or the default input. */
+  public static void main(String[] args) throws Exception {
+    byte[] bytes = args.length == 0 ? defaultInput()
+        : Files.readAllBytes(Paths.get(args[0]));
+    byte[] buffer = new byte[64 * 1024];
+    for (FileType fileType : COMPRESSING_TYPES) {
+      byte[] compressed = fileType.compress(bytes);
+      System.out.println(fileType + ": " + bytes.length + " bytes, "
+          + compressed.length + " compressed");
+      Benchmarks.run("compress " + fileType, () -> {
+        try {
+          return fileType.compress(bytes).length;
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      Benchmarks.run("decompress " + fileType + " to array", () -> {
+        try {
+          return fileType.decompress(compressed).length;
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      Benchmarks.run("decompress " + fileType + " from stream", () -> {
+        long decompressedBytes = 0L;
+        try (InputStream is = fileType.decompress(
+            new ByteArrayInputStream(compressed))) {
+          int read;
+          while ((read = is.read(buffer)) >= 0) {
+            decompressedBytes += read;
+          }
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+        return decompressedBytes;
+      });
+    }
+    Benchmarks.done();
+  }
+
+  private static byte[] defaultInput() throws IOException {
+    byte[] fixture;
+    try (InputStream is = FileTypeBenchmark.class.getResourceAsStream(
+        FIXTURE)) {
+      if (null == is) {
+        throw new IOException("Missing fixture " + FIXTURE);
+      }
+      fixture = is.readAllBytes();
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(DEFAULT_SIZE
+        + fixture.length);
+    while (baos.size() < DEFAULT_SIZE) {
+      baos.write(fixture);
+    }
+    return baos.toByteArray();
+  }
+}
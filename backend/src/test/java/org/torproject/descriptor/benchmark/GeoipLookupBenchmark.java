@@ -0,0 +1,158 @@
+package org.torproject.descriptor.benchmark;
+
+import org.torproject.descriptor.DescriptorParser;
+import org.torproject.descriptor.DescriptorSourceFactory;
+import org.torproject.descriptor.GeoipFile;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Measures time and allocation of looking up addresses in geoip and geoip6
+ * files.
+ *
+ * <p>Run with {@code ./gradlew descriptorBenchmark
+ * -Pbenchmark=benchmark.GeoipLookupBenchmark --args="GEOIP GEOIP6"}, or
+ * without arguments to use generated files with about as many ranges as
+ * Tor's geoip and geoip6 files, including gaps between ranges.  Each
+ * operation looks up 100,000 random addresses, which are created before
+ * measuring, once as {@link InetAddress} and once as integers.</p>
+ */
+public class GeoipLookupBenchmark {
+
+  private static final int LOOKUPS_PER_OPERATION = 100_000;
+
+  private static final int GEOIP_RANGES = 200_000;
+
+  private static final int GEOIP6_RANGES = 60_000;
+
+  private static final String[] COUNTRY_CODES = new String[] {"AU", "CN",
+      "DE", "FR", "JP", "NL", "RU", "SE", "US", "??"};
+
+  /** Look up addresses in the given files, or in generated files. */
+  public static void main(String[] args) throws Exception {
+    Random random = new Random(1L);
+    byte[] geoipBytes = args.length >= 1
+        ? Files.readAllBytes(Paths.get(args[0])) : generateGeoip(random);
+    byte[] geoip6Bytes = args.length >= 2
+        ? Files.readAllBytes(Paths.get(args[1])) : generateGeoip6(random);
+    DescriptorParser parser = DescriptorSourceFactory.createDescriptorParser();
+    GeoipFile geoip = (GeoipFile) parser.parseDescriptors(geoipBytes, null,
+        "geoip").iterator().next();
+    GeoipFile geoip6 = (GeoipFile) parser.parseDescriptors(geoip6Bytes,
+        null, "geoip6").iterator().next();
+    System.out.println("geoip: " + geoip.getEntries().size()
+        + " entries, geoip6: " + geoip6.getEntries().size() + " entries");
+
+    int[] ipv4Addresses = new int[LOOKUPS_PER_OPERATION];
+    InetAddress[] ipv4InetAddresses = new InetAddress[LOOKUPS_PER_OPERATION];
+    for (int i = 0; i < LOOKUPS_PER_OPERATION; i++) {
+      ipv4Addresses[i] = random.nextInt();
+      ipv4InetAddresses[i] = InetAddress.getByAddress(ByteBuffer.allocate(4)
+          .putInt(ipv4Addresses[i]).array());
+    }
+    long[] ipv6High = new long[LOOKUPS_PER_OPERATION];
+    long[] ipv6Low = new long[LOOKUPS_PER_OPERATION];
+    InetAddress[] ipv6InetAddresses = new InetAddress[LOOKUPS_PER_OPERATION];
+    for (int i = 0; i < LOOKUPS_PER_OPERATION; i++) {
+      ipv6High[i] = 0x2000_0000_0000_0000L
+          | (random.nextLong() & 0x03ff_ffff_ffff_ffffL);
+      ipv6Low[i] = random.nextLong();
+      ipv6InetAddresses[i] = InetAddress.getByAddress(ByteBuffer.allocate(16)
+          .putLong(ipv6High[i]).putLong(ipv6Low[i]).array());
+    }
+
+    Benchmarks.run("geoip getEntry(InetAddress) x" + LOOKUPS_PER_OPERATION,
+        () -> {
+          long found = 0L;
+          for (InetAddress address : ipv4InetAddresses) {
+            if (geoip.getEntry(address).isPresent()) {
+              found++;
+            }
+          }
+          return found;
+        });
+    Benchmarks.run("geoip getEntry(int) x" + LOOKUPS_PER_OPERATION, () -> {
+      long found = 0L;
+      for (int address : ipv4Addresses) {
+        if (geoip.getEntry(address).isPresent()) {
+          found++;
+        }
+      }
+      return found;
+    });
+    Benchmarks.run("geoip6 getEntry(InetAddress) x" + LOOKUPS_PER_OPERATION,
+        () -> {
+          long found = 0L;
+          for (InetAddress address : ipv6InetAddresses) {
+            if (geoip6.getEntry(address).isPresent()) {
+              found++;
+            }
+          }
+          return found;
+        });
+    Benchmarks.run("geoip6 getEntry(long,long) x" + LOOKUPS_PER_OPERATION,
+        () -> {
+          long found = 0L;
+          for (int i = 0; i < LOOKUPS_PER_OPERATION; i++) {
+            if (geoip6.getEntry(ipv6High[i], ipv6Low[i]).isPresent()) {
+              found++;
+            }
+          }
+          return found;
+        });
+    Benchmarks.done();
+  }
+
+  /* Generate IPv4 ranges covering the whole address space in Tor's geoip
+   * format, with every tenth range followed by a gap. */
+  private static byte[] generateGeoip(Random random) {
+    StringBuilder sb = new StringBuilder("# Generated\n");
+    long rangeSize = (1L << 32) / GEOIP_RANGES;
+    long start = 0L;
+    for (int i = 0; i < GEOIP_RANGES; i++) {
+      long end = Math.min(1L << 32,
+          start + 1 + random.nextInt((int) rangeSize));
+      if (start >= end) {
+        break;
+      }
+      sb.append(start).append(',').append(end - 1).append(',')
+          .append(COUNTRY_CODES[random.nextInt(COUNTRY_CODES.length)])
+          .append('\n');
+      start = random.nextInt(10) == 0 ? end + random.nextInt(
+          (int) rangeSize) : end;
+    }
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /* Generate IPv6 ranges within 2000::/6 in Tor's geoip6 format, each
+   * covering one or more whole /64 networks, with every tenth range
+   * followed by a gap. */
+  private static byte[] generateGeoip6(Random random)
+      throws UnknownHostException {
+    StringBuilder sb = new StringBuilder("# Generated\n");
+    long rangeSize = (1L << 58) / GEOIP6_RANGES;
+    long start = 0x2000_0000_0000_0000L;
+    for (int i = 0; i < GEOIP6_RANGES; i++) {
+      long end = start + 1 + (random.nextLong() & Long.MAX_VALUE) % rangeSize;
+      sb.append(ipv6Network(start, 0L)).append(',')
+          .append(ipv6Network(end - 1, -1L)).append(',')
+          .append(COUNTRY_CODES[random.nextInt(COUNTRY_CODES.length)])
+          .append('\n');
+      start = random.nextInt(10) == 0
+          ? end + (random.nextLong() & Long.MAX_VALUE) % rangeSize : end;
+    }
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static String ipv6Network(long high, long low)
+      throws UnknownHostException {
+    return InetAddress.getByAddress(ByteBuffer.allocate(16).putLong(high)
+        .putLong(low).array()).getHostAddress();
+  }
+}
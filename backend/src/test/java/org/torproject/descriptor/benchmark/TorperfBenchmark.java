@@ -0,0 +1,120 @@
+package org.torproject.descriptor.benchmark;
+
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.DescriptorParser;
+import org.torproject.descriptor.DescriptorSourceFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Measures time and allocation of parsing a month of Torperf results.
+ *
+ * <p>Run with {@code ./gradlew descriptorBenchmark
+ * -Pbenchmark=benchmark.TorperfBenchmark}.  Input is generated: three
+ * sources with a measurement every five minutes for thirty days, with
+ * CRLF line endings and all keys written by OnionPerf, which makes 25,920
+ * results in a single file.</p>
+ */
+public class TorperfBenchmark {
+
+  private static final String[] SOURCES = new String[] {"op-hk2", "op-nl2",
+      "op-us2"};
+
+  private static final int[] FILE_SIZES = new int[] {51200, 1048576,
+      5242880};
+
+  private static final long FIRST_START_MILLIS = 1598918400000L;
+
+  private static final long INTERVAL_MILLIS = 5L * 60L * 1000L;
+
+  private static final int DAYS = 30;
+
+  private static String timestamp(long millis) {
+    return String.format("%d.%02d", millis / 1000L, millis % 1000L / 10L);
+  }
+
+  private static String fingerprint(Random random) {
+    StringBuilder sb = new StringBuilder("$");
+    for (int i = 0; i < 40; i++) {
+      sb.append("0123456789ABCDEF".charAt(random.nextInt(16)));
+    }
+    return sb.toString();
+  }
+
+  private static void appendResult(StringBuilder sb, Random random,
+      String source, int fileSize, long startMillis) {
+    long[] events = new long[8];
+    long millis = startMillis;
+    for (int i = 0; i < events.length; i++) {
+      millis += 1 + random.nextInt(400);
+      events[i] = millis;
+    }
+    sb.append("BUILDTIMES=0.").append(100 + random.nextInt(800))
+        .append(",0.").append(100 + random.nextInt(800))
+        .append(",1.").append(100 + random.nextInt(900))
+        .append(" CIRC_ID=").append(random.nextInt(100000))
+        .append(" CONNECT=").append(timestamp(events[1]))
+        .append(" DATACOMPLETE=").append(timestamp(events[7] + 2000L));
+    for (int percentile = 10; percentile <= 90; percentile += 10) {
+      sb.append(" DATAPERC").append(percentile).append('=')
+          .append(timestamp(events[6] + percentile * 20L));
+    }
+    sb.append(" DATAREQUEST=").append(timestamp(events[4]))
+        .append(" DATARESPONSE=").append(timestamp(events[5]))
+        .append(" DIDTIMEOUT=0 ENDPOINTLOCAL=localhost:127.0.0.1:")
+        .append(40000 + random.nextInt(20000))
+        .append(" ENDPOINTPROXY=localhost:127.0.0.1:9050")
+        .append(" ENDPOINTREMOTE=37.218.245.95:37.218.245.95:80")
+        .append(" FILESIZE=").append(fileSize)
+        .append(" HOSTNAMELOCAL=").append(source)
+        .append(" HOSTNAMEREMOTE=(null)")
+        .append(" LAUNCH=").append(timestamp(startMillis - 5000L))
+        .append(" NEGOTIATE=").append(timestamp(events[2]))
+        .append(" PATH=").append(fingerprint(random)).append(',')
+        .append(fingerprint(random)).append(',')
+        .append(fingerprint(random))
+        .append(" QUANTILE=0.800000 READBYTES=").append(fileSize + 300)
+        .append(" REQUEST=").append(timestamp(events[3]))
+        .append(" RESPONSE=").append(timestamp(events[4] + 10L))
+        .append(" SOCKET=").append(timestamp(events[0]))
+        .append(" SOURCE=").append(source)
+        .append(" SOURCEADDRESS=1.2.3.4")
+        .append(" START=").append(timestamp(startMillis))
+        .append(" TIMEOUT=1500")
+        .append(" USED_AT=").append(timestamp(events[7] + 2100L))
+        .append(" USED_BY=").append(random.nextInt(100))
+        .append(" WRITEBYTES=54\r\n");
+  }
+
+  private static byte[] month() {
+    Random random = new Random(1L);
+    StringBuilder sb = new StringBuilder("@type torperf 1.1\r\n");
+    int results = 0;
+    long end = FIRST_START_MILLIS + DAYS * 24L * 60L * 60L * 1000L;
+    for (long millis = FIRST_START_MILLIS; millis < end;
+        millis += INTERVAL_MILLIS) {
+      for (String source : SOURCES) {
+        appendResult(sb, random, source,
+            FILE_SIZES[results++ % FILE_SIZES.length],
+            millis + random.nextInt(1000));
+      }
+    }
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /** Run the Torperf parsing benchmark. */
+  public static void main(String[] args) {
+    DescriptorParser parser = DescriptorSourceFactory.createDescriptorParser();
+    byte[] bytes = month();
+    Benchmarks.run("torperf month " + bytes.length + " bytes", () -> {
+      long descriptors = 0L;
+      for (Descriptor descriptor : parser.parseDescriptors(bytes, null,
+          "op-nl2-51200-2020-09.tpf")) {
+        descriptors += descriptor.getRawDescriptorLength();
+      }
+      return descriptors;
+    });
+    Benchmarks.done();
+  }
+}
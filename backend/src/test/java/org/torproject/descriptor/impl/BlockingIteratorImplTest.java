@@ -0,0 +1,259 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockingIteratorImplTest {
+
+  private static final long TIMEOUT_MILLIS = 10_000L;
+
+  /* Start a thread running the given task and remember what it throws. */
+  private static Thread start(Runnable task,
+      AtomicReference<Throwable> thrown) {
+    Thread thread = new Thread(() -> {
+      try {
+        task.run();
+      } catch (Throwable t) {
+        thrown.set(t);
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /* Wait until the given thread is blocked waiting for a lock or
+   * condition. */
+  private static void awaitBlocked(Thread thread)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (thread.getState() != Thread.State.WAITING) {
+      assertTrue(thread.isAlive(), "Thread ended instead of blocking.");
+      assertTrue(System.currentTimeMillis() < deadline,
+          "Thread did not block.");
+      Thread.sleep(1L);
+    }
+  }
+
+  private static void awaitEnded(Thread thread) throws InterruptedException {
+    thread.join(TIMEOUT_MILLIS);
+    assertFalse(thread.isAlive(), "Thread is still blocked.");
+  }
+
+  @Test
+  void cancelReleasesProducersBlockedInPut() throws InterruptedException {
+    BlockingIteratorImpl<Integer> queue = new BlockingIteratorImpl<>(4);
+    List<Thread> producers = new ArrayList<>();
+    List<AtomicReference<Throwable>> thrown = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      AtomicReference<Throwable> producerThrown = new AtomicReference<>();
+      thrown.add(producerThrown);
+      producers.add(start(() -> {
+        for (int j = 0; j < 100; j++) {
+          queue.add(j);
+        }
+      }, producerThrown));
+    }
+    for (Thread producer : producers) {
+      awaitBlocked(producer);
+    }
+    queue.cancel();
+    for (int i = 0; i < producers.size(); i++) {
+      awaitEnded(producers.get(i));
+      assertTrue(thrown.get(i).get() instanceof CancellationException,
+          String.valueOf(thrown.get(i).get()));
+    }
+    assertTrue(queue.isCancelled());
+    assertThrows(CancellationException.class, queue::hasNext);
+  }
+
+  @Test
+  void cancelReleasesProducersBlockedInReserveWeight()
+      throws InterruptedException {
+    BlockingIteratorImpl<Long> queue = new BlockingIteratorImpl<>(100, 10L,
+        weight -> weight);
+    queue.add(6L);
+    List<Thread> producers = new ArrayList<>();
+    List<AtomicReference<Throwable>> thrown = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      AtomicReference<Throwable> producerThrown = new AtomicReference<>();
+      thrown.add(producerThrown);
+      producers.add(start(() -> queue.add(6L), producerThrown));
+    }
+    for (Thread producer : producers) {
+      awaitBlocked(producer);
+    }
+    assertEquals(1, queue.getQueueDepth());
+    queue.cancel();
+    for (int i = 0; i < producers.size(); i++) {
+      awaitEnded(producers.get(i));
+      assertTrue(thrown.get(i).get() instanceof CancellationException,
+          String.valueOf(thrown.get(i).get()));
+    }
+  }
+
+  @Test
+  void producerBlocksUntilWeightIsReleased() throws InterruptedException {
+    BlockingIteratorImpl<Long> queue = new BlockingIteratorImpl<>(100, 10L,
+        weight -> weight);
+    queue.add(4L);
+    queue.add(5L);
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread producer = start(() -> queue.add(3L), thrown);
+    awaitBlocked(producer);
+    assertEquals(2, queue.getQueueDepth());
+    assertEquals(4L, (long) queue.next());
+    awaitEnded(producer);
+    assertNull(thrown.get());
+    assertEquals(2, queue.getQueueDepth());
+    assertTrue(queue.getProducerStallMillis() >= 0L);
+    queue.setOutOfDescriptors();
+    assertEquals(5L, (long) queue.next());
+    assertEquals(3L, (long) queue.next());
+    assertFalse(queue.hasNext());
+  }
+
+  /* An element that exceeds the weight limit on its own is admitted into
+   * an empty queue right away, and the next element waits until it has
+   * been returned. */
+  @Test
+  void oversizedElementIsAdmittedIntoEmptyQueue()
+      throws InterruptedException {
+    BlockingIteratorImpl<Long> queue = new BlockingIteratorImpl<>(100, 10L,
+        weight -> weight);
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread producer = start(() -> {
+      queue.add(25L);
+      queue.add(1L);
+    }, thrown);
+    awaitBlocked(producer);
+    assertEquals(1, queue.getQueueDepth());
+    assertEquals(25L, (long) queue.next());
+    awaitEnded(producer);
+    assertNull(thrown.get());
+    assertEquals(1L, (long) queue.next());
+  }
+
+  @Test
+  void interruptedConsumerGetsCancellationException()
+      throws InterruptedException {
+    BlockingIteratorImpl<Integer> queue = new BlockingIteratorImpl<>(4);
+    AtomicBoolean interrupted = new AtomicBoolean();
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread consumer = start(() -> {
+      try {
+        queue.hasNext();
+      } finally {
+        interrupted.set(Thread.currentThread().isInterrupted());
+      }
+    }, thrown);
+    awaitBlocked(consumer);
+    consumer.interrupt();
+    awaitEnded(consumer);
+    assertTrue(thrown.get() instanceof CancellationException,
+        String.valueOf(thrown.get()));
+    assertTrue(interrupted.get());
+    assertTrue(queue.isCancelled());
+    assertThrows(CancellationException.class, () -> queue.add(1));
+  }
+
+  /* Several producers add more elements than fit into the queue and the
+   * consumer's batch together, and the consumer takes them in batches.
+   * Elements of each producer are returned in the order in which that
+   * producer added them. */
+  @Test
+  void batchedDrainingKeepsOrderAcrossProducers()
+      throws InterruptedException {
+    int producerCount = 8;
+    int elementsPerProducer = 5000;
+    BlockingIteratorImpl<int[]> queue = new BlockingIteratorImpl<>(16);
+    List<Thread> producers = new ArrayList<>();
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    for (int i = 0; i < producerCount; i++) {
+      int producer = i;
+      producers.add(start(() -> {
+        for (int j = 0; j < elementsPerProducer; j++) {
+          queue.add(new int[] {producer, j});
+        }
+      }, thrown));
+    }
+    Thread closer = start(() -> {
+      try {
+        for (Thread producer : producers) {
+          producer.join();
+        }
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+      queue.setOutOfDescriptors();
+    }, thrown);
+    int[] nextElements = new int[producerCount];
+    int returned = 0;
+    for (int[] element : queue) {
+      assertEquals(nextElements[element[0]]++, element[1]);
+      returned++;
+    }
+    awaitEnded(closer);
+    assertNull(thrown.get());
+    assertEquals(producerCount * elementsPerProducer, returned);
+    for (int next : nextElements) {
+      assertEquals(elementsPerProducer, next);
+    }
+    assertEquals(0, queue.getQueueDepth());
+    assertFalse(queue.hasNext());
+  }
+
+  @Test
+  void setOutOfDescriptorsAfterCancelDoesNotThrow() {
+    BlockingIteratorImpl<Integer> fullQueue = new BlockingIteratorImpl<>(4);
+    for (int i = 0; i < 3; i++) {
+      fullQueue.add(i);
+    }
+    fullQueue.cancel();
+    fullQueue.setOutOfDescriptors();
+    assertThrows(CancellationException.class, fullQueue::hasNext);
+    BlockingIteratorImpl<Integer> emptyQueue = new BlockingIteratorImpl<>(4);
+    emptyQueue.cancel();
+    emptyQueue.setOutOfDescriptors();
+    assertThrows(CancellationException.class, emptyQueue::next);
+  }
+
+  @Test
+  void queueDepthAndStallTimes() throws InterruptedException {
+    BlockingIteratorImpl<Integer> queue = new BlockingIteratorImpl<>(4);
+    assertEquals(0, queue.getQueueDepth());
+    AtomicReference<Throwable> thrown = new AtomicReference<>();
+    Thread producer = start(() -> {
+      for (int i = 0; i < 4; i++) {
+        queue.add(i);
+      }
+    }, thrown);
+    awaitBlocked(producer);
+    assertEquals(3, queue.getQueueDepth());
+    Thread.sleep(20L);
+    assertEquals(0, (int) queue.next());
+    awaitEnded(producer);
+    assertTrue(queue.getProducerStallMillis() >= 20L,
+        String.valueOf(queue.getProducerStallMillis()));
+    assertEquals(3, queue.getQueueDepth());
+    for (int i = 1; i < 4; i++) {
+      assertEquals(i, (int) queue.next());
+    }
+    assertEquals(0, queue.getQueueDepth());
+    Thread consumer = start(queue::hasNext, thrown);
+    awaitBlocked(consumer);
+    Thread.sleep(20L);
+    queue.setOutOfDescriptors();
+    awaitEnded(consumer);
+    assertNull(thrown.get());
+    assertTrue(queue.getConsumerStallMillis() >= 20L,
+        String.valueOf(queue.getConsumerStallMillis()));
+  }
+}
@@ -0,0 +1,176 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DescriptorBytesTest {
+
+  private static final byte[] KEYWORDS_AND_SEPARATORS =
+      bytes("router\n \tpublished r s opt @type?\u00e9");
+
+  private static final String[] TOKENS = new String[] {"router", "r",
+      "published", "@type", "opt", "s", "\n", " ", "\nrouter", "router ",
+      ""};
+
+  private static byte[] bytes(String string) {
+    return string.getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  /* Decode bytes as the parser did before searching raw bytes. */
+  private static String ascii(byte[] bytes, int from, int to) {
+    return new String(bytes, from, to - from, StandardCharsets.US_ASCII);
+  }
+
+  /* Random bytes drawn from keywords, separators and a non-ASCII byte, so
+   * that tokens occur often and at line starts. */
+  private static byte[] randomBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = KEYWORDS_AND_SEPARATORS[
+          random.nextInt(KEYWORDS_AND_SEPARATORS.length)];
+    }
+    return bytes;
+  }
+
+  @Test
+  void regionMatches() {
+    byte[] bytes = bytes("router a\npublished b\n");
+    assertTrue(DescriptorBytes.regionMatches(bytes, 0, bytes.length,
+        DescriptorBytes.ascii("router ")));
+    assertTrue(DescriptorBytes.regionMatches(bytes, 9, bytes.length,
+        DescriptorBytes.ascii("published")));
+    assertFalse(DescriptorBytes.regionMatches(bytes, 1, bytes.length,
+        DescriptorBytes.ascii("router")));
+    assertFalse(DescriptorBytes.regionMatches(bytes, -1, bytes.length,
+        DescriptorBytes.ascii("router")));
+    /* The token must end at or before index to. */
+    assertTrue(DescriptorBytes.regionMatches(bytes, 0, 6,
+        DescriptorBytes.ascii("router")));
+    assertFalse(DescriptorBytes.regionMatches(bytes, 0, 5,
+        DescriptorBytes.ascii("router")));
+    assertFalse(DescriptorBytes.regionMatches(bytes, 18, bytes.length,
+        DescriptorBytes.ascii("b\nc")));
+  }
+
+  @Test
+  void indexOfToken() {
+    byte[] bytes = bytes("router a\nrouter b\n");
+    byte[] router = DescriptorBytes.ascii("router");
+    assertEquals(0, DescriptorBytes.indexOf(bytes, 0, bytes.length, router));
+    assertEquals(9, DescriptorBytes.indexOf(bytes, 1, bytes.length, router));
+    assertEquals(-1, DescriptorBytes.indexOf(bytes, 1, 14, router));
+    assertEquals(9, DescriptorBytes.indexOf(bytes, 1, 15, router));
+    assertEquals(0, DescriptorBytes.indexOf(bytes, -5, bytes.length,
+        router));
+    assertEquals(3, DescriptorBytes.indexOf(bytes, 3, bytes.length,
+        new byte[0]));
+  }
+
+  @Test
+  void indexOfByte() {
+    byte[] bytes = bytes("a b\nc");
+    assertEquals(3, DescriptorBytes.indexOf(bytes, 0, bytes.length,
+        DescriptorBytes.NL));
+    assertEquals(-1, DescriptorBytes.indexOf(bytes, 0, 3,
+        DescriptorBytes.NL));
+    assertEquals(-1, DescriptorBytes.indexOf(bytes, 4, bytes.length,
+        DescriptorBytes.NL));
+  }
+
+  @Test
+  void nonAsciiBytesNeverMatchAsciiTokens() {
+    /* US-ASCII decodes byte 0xE9 to the replacement character U+FFFD, and
+     * searching for "?" must not match it either. */
+    byte[] bytes = bytes("\u00e9router\u00e9");
+    assertEquals(-1, DescriptorBytes.indexOf(bytes, 0, bytes.length,
+        DescriptorBytes.ascii("?")));
+    assertEquals(1, DescriptorBytes.indexOf(bytes, 0, bytes.length,
+        DescriptorBytes.ascii("router")));
+    assertEquals(ascii(bytes, 0, bytes.length).indexOf("router"),
+        DescriptorBytes.indexOf(bytes, 0, bytes.length,
+        DescriptorBytes.ascii("router")));
+  }
+
+  @Test
+  void isKeywordAt() {
+    byte[] bytes = bytes("router a\nrouter\nrouters\nrouter");
+    byte[] router = DescriptorBytes.ascii("router");
+    assertTrue(DescriptorBytes.isKeywordAt(bytes, 0, bytes.length, router,
+        DescriptorBytes.SP));
+    assertFalse(DescriptorBytes.isKeywordAt(bytes, 0, bytes.length, router,
+        DescriptorBytes.NL));
+    assertTrue(DescriptorBytes.isKeywordAt(bytes, 9, bytes.length, router,
+        DescriptorBytes.NL));
+    assertFalse(DescriptorBytes.isKeywordAt(bytes, 16, bytes.length, router,
+        DescriptorBytes.SP));
+    /* The separator must come before index to, so a keyword at the very
+     * end does not match. */
+    assertFalse(DescriptorBytes.isKeywordAt(bytes, 24, bytes.length, router,
+        DescriptorBytes.NL));
+    assertFalse(DescriptorBytes.isKeywordAt(bytes, 0, 6, router,
+        DescriptorBytes.SP));
+  }
+
+  @Test
+  void indexOfNewlineKeyword() {
+    byte[] bytes = bytes("@type a\nrouters\nrouter\nrouter b\n");
+    byte[] router = DescriptorBytes.ascii("router");
+    assertEquals(22, DescriptorBytes.indexOfNewlineKeyword(bytes, 0,
+        bytes.length, router, DescriptorBytes.SP));
+    assertEquals(15, DescriptorBytes.indexOfNewlineKeyword(bytes, 0,
+        bytes.length, router, DescriptorBytes.NL));
+    /* A keyword followed by a space is preferred over an earlier one
+     * followed by a newline. */
+    assertEquals(22, DescriptorBytes.indexOfNewlineKeyword(bytes, 0,
+        bytes.length, router));
+    assertEquals(15, DescriptorBytes.indexOfNewlineKeyword(bytes, 0, 29,
+        router));
+    assertEquals(-1, DescriptorBytes.indexOfNewlineKeyword(bytes, 0, 22,
+        router));
+    /* A keyword at the very start is not preceded by a newline. */
+    assertEquals(-1, DescriptorBytes.indexOfNewlineKeyword(bytes, 0,
+        bytes.length, DescriptorBytes.ascii("@type")));
+  }
+
+  @Test
+  void searchesMatchStringSearchesOnRandomInput() {
+    Random random = new Random(4711L);
+    for (int run = 0; run < 2000; run++) {
+      byte[] bytes = randomBytes(random, random.nextInt(120));
+      int from = random.nextInt(bytes.length + 1);
+      int to = from + random.nextInt(bytes.length - from + 1);
+      String string = ascii(bytes, 0, to);
+      for (String token : TOKENS) {
+        byte[] tokenBytes = DescriptorBytes.ascii(token);
+        String message = "'" + string + "' from " + from + " token '"
+            + token + "'";
+        assertEquals(string.indexOf(token, from),
+            DescriptorBytes.indexOf(bytes, from, to, tokenBytes), message);
+        assertEquals(string.startsWith(token, from),
+            DescriptorBytes.regionMatches(bytes, from, to, tokenBytes),
+            message);
+        if (token.isEmpty() || token.contains("\n")
+            || token.contains(" ")) {
+          continue;
+        }
+        for (char separator : new char[] {' ', '\n'}) {
+          assertEquals(string.indexOf("\n" + token + separator, from),
+              DescriptorBytes.indexOfNewlineKeyword(bytes, from, to,
+              tokenBytes, (byte) separator), message);
+          assertEquals(string.startsWith(token + separator, from),
+              DescriptorBytes.isKeywordAt(bytes, from, to, tokenBytes,
+              (byte) separator), message);
+        }
+        int withSpace = string.indexOf("\n" + token + " ", from);
+        assertEquals(withSpace >= 0 ? withSpace
+            : string.indexOf("\n" + token + "\n", from),
+            DescriptorBytes.indexOfNewlineKeyword(bytes, from, to,
+            tokenBytes), message);
+      }
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.DescriptorParser;
+import org.torproject.descriptor.DescriptorSourceFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parses sample descriptor files and compares the values returned by all
+ * getters with the output recorded from the parser before it moved from
+ * Scanner and String.split to LineTokenizer.
+ *
+ * <p>Each fixture in {@code golden/} has a {@code .expected} file next to
+ * it, which contains one line per descriptor and getter.</p>
+ */
+class DescriptorGoldenFileTest {
+
+  private static final String GOLDEN_DIRECTORY =
+      "/org/torproject/descriptor/impl/golden/";
+
+  /* Names of methods that are not getters of parsed contents or that return
+   * values which differ between parser runs. */
+  private static final Set<String> SKIPPED_METHODS = new TreeSet<>(
+      Arrays.asList("getClass", "getDescriptorFile", "hashCode", "toString",
+      "iterator", "spliterator"));
+
+  @Test
+  void consensus() throws IOException {
+    assertGolden("consensus");
+  }
+
+  @Test
+  void consensusWithLazyStatusEntries() throws IOException {
+    DescriptorParserImpl parser = new DescriptorParserImpl();
+    parser.setLazyStatusEntries(true);
+    assertGolden("consensus", parse(parser, "consensus"));
+  }
+
+  @Test
+  void serverDescriptors() throws IOException {
+    assertGolden("server-descriptors");
+  }
+
+  @Test
+  void serverDescriptorWithOptPrefixes() throws IOException {
+    assertGolden("server-descriptor-opt");
+  }
+
+  @Test
+  void serverDescriptorWithTabs() throws IOException {
+    assertGolden("server-descriptor-tabs");
+  }
+
+  @Test
+  void serverDescriptorWithCrlfLineEndings() throws IOException {
+    assertGolden("server-descriptor-crlf");
+  }
+
+  @Test
+  void serverDescriptorWithoutTrailingNewline() throws IOException {
+    assertGolden("server-descriptor-no-trailing-newline");
+  }
+
+  @Test
+  void serverDescriptorWithEmptyLines() throws IOException {
+    assertGolden("server-descriptor-empty-lines");
+  }
+
+  @Test
+  void extraInfoDescriptor() throws IOException {
+    assertGolden("extra-info");
+  }
+
+  @Test
+  void microdescriptors() throws IOException {
+    assertGolden("microdescriptors");
+  }
+
+  private static void assertGolden(String fixture) throws IOException {
+    assertGolden(fixture, parse(
+        DescriptorSourceFactory.createDescriptorParser(), fixture));
+  }
+
+  private static void assertGolden(String fixture, List<String> actual)
+      throws IOException {
+    List<String> expected = Arrays.asList(new String(
+        readResource(fixture + ".expected"), StandardCharsets.UTF_8)
+        .split("\n"));
+    for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+      assertEquals(expected.get(i), actual.get(i),
+          fixture + " line " + (i + 1));
+    }
+    assertEquals(expected.size(), actual.size(), fixture + " lines");
+  }
+
+  private static List<String> parse(DescriptorParser parser,
+      String fixture) throws IOException {
+    return dump(parser.parseDescriptors(readResource(fixture), null,
+        fixture));
+  }
+
+  private static byte[] readResource(String name) throws IOException {
+    try (InputStream is = DescriptorGoldenFileTest.class.getResourceAsStream(
+        GOLDEN_DIRECTORY + name)) {
+      assertNotNull(is, name);
+      return is.readAllBytes();
+    }
+  }
+
+  /** Return one line per descriptor and getter with the returned value. */
+  static List<String> dump(Iterable<Descriptor> descriptors) {
+    List<String> lines = new ArrayList<>();
+    int index = 0;
+    for (Descriptor descriptor : descriptors) {
+      index++;
+      for (Map.Entry<String, String> getter
+          : getters(descriptor).entrySet()) {
+        lines.add(index + " " + descriptor.getClass().getSimpleName() + "."
+            + getter.getKey() + " = " + getter.getValue());
+      }
+    }
+    return lines;
+  }
+
+  private static SortedMap<String, String> getters(Object object) {
+    SortedMap<String, String> getters = new TreeMap<>();
+    for (Class<?> type : interfaces(object.getClass())) {
+      for (Method method : type.getMethods()) {
+        String name = method.getName();
+        if (method.getParameterCount() != 0 || SKIPPED_METHODS.contains(name)
+            || !(name.startsWith("get") || name.startsWith("is")
+            || name.startsWith("has"))) {
+          continue;
+        }
+        String value;
+        try {
+          value = format(method.invoke(object));
+        } catch (InvocationTargetException e) {
+          value = "throws " + format(e.getCause());
+        } catch (IllegalAccessException e) {
+          throw new AssertionError(e);
+        }
+        getters.put(name, value);
+      }
+    }
+    return getters;
+  }
+
+  private static Set<Class<?>> interfaces(Class<?> type) {
+    Set<Class<?>> interfaces = new LinkedHashSet<>();
+    for (Class<?> current = type; null != current;
+        current = current.getSuperclass()) {
+      for (Class<?> implemented : current.getInterfaces()) {
+        interfaces.add(implemented);
+        interfaces.addAll(interfaces(implemented));
+      }
+    }
+    return interfaces;
+  }
+
+  private static String format(Object value) {
+    if (null == value) {
+      return "null";
+    } else if (value instanceof byte[]) {
+      return formatBytes((byte[]) value);
+    } else if (value instanceof int[]) {
+      return Arrays.toString((int[]) value);
+    } else if (value instanceof long[]) {
+      return Arrays.toString((long[]) value);
+    } else if (value instanceof double[]) {
+      return Arrays.toString((double[]) value);
+    } else if (value instanceof Object[]) {
+      return format(Arrays.asList((Object[]) value));
+    } else if (value instanceof Map) {
+      SortedMap<String, String> entries = new TreeMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        entries.put(String.valueOf(entry.getKey()),
+            format(entry.getValue()));
+      }
+      return entries.toString();
+    } else if (value instanceof Set) {
+      Set<String> elements = new TreeSet<>();
+      for (Object element : (Set<?>) value) {
+        elements.add(format(element));
+      }
+      return elements.toString();
+    } else if (value instanceof Collection) {
+      List<String> elements = new ArrayList<>();
+      for (Object element : (Collection<?>) value) {
+        elements.add(format(element));
+      }
+      return elements.toString();
+    } else if (value instanceof Optional) {
+      return "Optional[" + format(((Optional<?>) value).orElse(null)) + "]";
+    } else if (value instanceof Throwable) {
+      return value.getClass().getSimpleName() + ": "
+          + ((Throwable) value).getMessage();
+    } else if (value.getClass().getName().startsWith("org.torproject.")
+        && !value.getClass().isEnum()) {
+      return value.getClass().getSimpleName() + getters(value);
+    } else {
+      return String.valueOf(value).replace("\r", "\\r")
+          .replace("\n", "\\n").replace("\t", "\\t");
+    }
+  }
+
+  private static String formatBytes(byte[] bytes) {
+    try {
+      StringBuilder sb = new StringBuilder(bytes.length + " bytes, SHA-256 ");
+      for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.RelayServerDescriptor;
+import org.torproject.descriptor.UnparseableDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DescriptorParserImplTest {
+
+  private static final String SERVER_DESCRIPTORS =
+      "/org/torproject/descriptor/impl/golden/server-descriptors";
+
+  private static final String EXTRA_INFO =
+      "/org/torproject/descriptor/impl/golden/extra-info";
+
+  private static final String RELAY1_ROUTER_LINE =
+      "router relay1 31.151.142.64 9001 0 9030\n";
+
+  private static String readResource(String name) throws IOException {
+    try (InputStream is = DescriptorParserImplTest.class
+        .getResourceAsStream(name)) {
+      assertNotNull(is, name);
+      return new String(is.readAllBytes(), StandardCharsets.US_ASCII);
+    }
+  }
+
+  /* Two server descriptors from the golden fixture followed by the first
+   * of them again, so that there is a descriptor after the second one. */
+  private static String readServerDescriptors() throws IOException {
+    String descriptors = readResource(SERVER_DESCRIPTORS);
+    return descriptors + descriptors.substring(0,
+        descriptors.indexOf("@type", 1));
+  }
+
+  private static Iterable<Descriptor> parse(String descriptors) {
+    return new DescriptorParserImpl().parseDescriptors(
+        descriptors.getBytes(StandardCharsets.US_ASCII), null,
+        "server-descriptors");
+  }
+
+  private static List<Descriptor> toList(Iterable<Descriptor> descriptors) {
+    List<Descriptor> list = new ArrayList<>();
+    for (Descriptor descriptor : descriptors) {
+      list.add(descriptor);
+    }
+    return list;
+  }
+
+  @Test
+  void iteratingTwiceParsesDescriptorsAgain() throws IOException {
+    Iterable<Descriptor> descriptors = parse(readServerDescriptors());
+    List<Descriptor> first = toList(descriptors);
+    List<Descriptor> second = toList(descriptors);
+    assertEquals(3, first.size());
+    assertEquals(first.size(), second.size());
+    for (int i = 0; i < first.size(); i++) {
+      assertNotSame(first.get(i), second.get(i));
+      assertArrayEquals(first.get(i).getRawDescriptorBytes(),
+          second.get(i).getRawDescriptorBytes());
+      assertEquals(((RelayServerDescriptor) first.get(i)).getNickname(),
+          ((RelayServerDescriptor) second.get(i)).getNickname());
+    }
+  }
+
+  @Test
+  void iteratorsAreIndependent() throws IOException {
+    Iterable<Descriptor> descriptors = parse(readServerDescriptors());
+    Iterator<Descriptor> first = descriptors.iterator();
+    assertEquals("relay0",
+        ((RelayServerDescriptor) first.next()).getNickname());
+    Iterator<Descriptor> second = descriptors.iterator();
+    assertEquals("relay0",
+        ((RelayServerDescriptor) second.next()).getNickname());
+    assertEquals("relay1",
+        ((RelayServerDescriptor) first.next()).getNickname());
+  }
+
+  @Test
+  void nextAfterLastDescriptorThrows() throws IOException {
+    Iterator<Descriptor> descriptors =
+        parse(readServerDescriptors()).iterator();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(descriptors.hasNext());
+      descriptors.next();
+    }
+    assertFalse(descriptors.hasNext());
+    assertThrows(NoSuchElementException.class, descriptors::next);
+  }
+
+  @Test
+  void malformedSecondDescriptorIsUnparseableWhileIterating()
+      throws IOException {
+    String descriptors = readServerDescriptors();
+    assertTrue(descriptors.contains(RELAY1_ROUTER_LINE));
+    Iterator<Descriptor> iterator = parse(descriptors.replace(
+        RELAY1_ROUTER_LINE, "router relay1 31.151.142.256 9001 0 9030\n"))
+        .iterator();
+
+    assertTrue(iterator.hasNext());
+    Descriptor first = iterator.next();
+    assertTrue(first instanceof RelayServerDescriptor);
+    assertEquals("relay0", ((RelayServerDescriptor) first).getNickname());
+
+    assertTrue(iterator.hasNext());
+    Descriptor second = iterator.next();
+    assertTrue(second instanceof UnparseableDescriptor);
+    UnparseableDescriptor unparseable = (UnparseableDescriptor) second;
+    assertNotNull(unparseable.getDescriptorParseException());
+    assertTrue(unparseable.getDescriptorParseException().getMessage()
+        .contains("31.151.142.256"),
+        unparseable.getDescriptorParseException().getMessage());
+    assertTrue(new String(unparseable.getRawDescriptorBytes(),
+        StandardCharsets.US_ASCII).contains("router relay1 "));
+
+    /* Descriptors after the malformed one are still parsed. */
+    assertTrue(iterator.hasNext());
+    Descriptor third = iterator.next();
+    assertTrue(third instanceof RelayServerDescriptor);
+    assertEquals("relay0", ((RelayServerDescriptor) third).getNickname());
+    assertFalse(iterator.hasNext());
+  }
+
+  /* A line that moves everything after it out of the first 100 bytes,
+   * which are the only bytes that type detection looks at. */
+  private static final String PADDING = "@source " + "x".repeat(100) + "\n";
+
+  private static String missing(String keyword) {
+    return "Unparseable: Keyword '" + keyword + "' is contained 0 times, "
+        + "but must be contained exactly once.";
+  }
+
+  private static String undetected(String start) {
+    return "Unparseable: Could not detect descriptor type in descriptor "
+        + "starting with '" + start + "'.";
+  }
+
+  /* Descriptor file contents, file names, and the types of parsed
+   * descriptors or the parse error, as returned by the parser before type
+   * detection moved from String prefix checks and a regular expression to
+   * comparing bytes.  Annotations are followed by padding, so that the
+   * keywords after them cannot be what the type is detected from. */
+  private static final String[][] TYPE_DETECTION_CASES = new String[][] {
+      {"@type network-status-consensus-3 1.0\n" + PADDING
+          + "network-status-version 3\nvote-status consensus\n", null,
+          missing("consensus-method")},
+      {"@type network-status-microdesc-consensus-3 1.0\n" + PADDING
+          + "network-status-version 3 microdesc\nvote-status consensus\n",
+          null, missing("consensus-method")},
+      {"network-status-version 3\nvote-status consensus\n", null,
+          missing("consensus-method")},
+      {"network-status-version 3 microdesc\nvote-status consensus\n", null,
+          missing("consensus-method")},
+      {"@source a\nnetwork-status-version 3\nvote-status consensus\n", null,
+          missing("consensus-method")},
+      {"network-status-version 3\nvote-status consensus", null,
+          undetected("network-status-version 3\nvote-status consensus")},
+      {"@type network-status-vote-3 1.0\n" + PADDING
+          + "network-status-version 3\nvote-status vote\n", null,
+          missing("dir-identity-key")},
+      {"network-status-version 3\nvote-status vote\n", null,
+          missing("dir-identity-key")},
+      {"network-status-version 3 microdesc\nvote-status vote\n", null,
+          undetected("network-status-version 3 microdesc\n"
+          + "vote-status vote\n")},
+      {"network-status-version 3\nvote-status other\n", null,
+          undetected("network-status-version 3\nvote-status other\n")},
+      {"@type bridge-network-status 1.2\n" + PADDING
+          + "published 2020-01-01 00:00:00\n", null,
+          "BridgeNetworkStatusImpl"},
+      {"r a b c\n", null, "Unparseable: r line 'r a b c' has fewer "
+          + "space-separated elements than expected."},
+      {"@source a\nr a b c\n", null, undetected("@source a\nr a b c\n")},
+      {"@type bridge-server-descriptor 1.2\n" + PADDING
+          + "router a 1.2.3.4 9001 0 0\n", null, missing("bandwidth")},
+      {"@type server-descriptor 1.0\n" + PADDING
+          + "router a 1.2.3.4 9001 0 0\n", null, missing("bandwidth")},
+      {"router a 1.2.3.4 9001 0 0\n", null, missing("bandwidth")},
+      {"@source a\nrouter a 1.2.3.4 9001 0 0\n", null, missing("bandwidth")},
+      {PADDING + "router a 1.2.3.4 9001 0 0\n", null,
+          undetected(PADDING.substring(0, 100))},
+      {"routerx a\n", null, undetected("routerx a\n")},
+      {"@type bridge-extra-info 1.3\n" + PADDING + "extra-info a "
+          + "0000000000000000000000000000000000000000\n", null,
+          missing("published")},
+      {"@type extra-info 1.0\n" + PADDING + "extra-info a "
+          + "0000000000000000000000000000000000000000\n", null,
+          missing("published")},
+      {"extra-info a 0000000000000000000000000000000000000000\n", null,
+          missing("published")},
+      {"@type microdescriptor 1.0\n" + PADDING + "onion-key\n", null,
+          "MicrodescriptorImpl"},
+      {"onion-key\n", null, "MicrodescriptorImpl"},
+      {"@source \u00e9\nonion-key\n", null, "MicrodescriptorImpl"},
+      {"onion-key", null, undetected("onion-key")},
+      {"@type bridge-pool-assignment 1.0\n" + PADDING
+          + "bridge-pool-assignment 2020-01-01 00:00:00\n", null,
+          "BridgePoolAssignmentImpl"},
+      {"bridge-pool-assignment 2020-01-01 00:00:00\n", null,
+          "BridgePoolAssignmentImpl"},
+      {"@type dir-key-certificate-3 1.0\n" + PADDING
+          + "dir-key-certificate-version 3\n", null,
+          "Unparseable: Could not calculate descriptor digest."},
+      {"dir-key-certificate-version 3\n", null,
+          "Unparseable: Could not calculate descriptor digest."},
+      {"@type tordnsel 1.0\n" + PADDING + "ExitNode "
+          + "0000000000000000000000000000000000000000\n", null,
+          "Unparseable: Missing 'ExitAddress' line in exit list entry."},
+      {"ExitNode 0000000000000000000000000000000000000000\n", null,
+          "Unparseable: Missing 'ExitAddress' line in exit list entry."},
+      {"Downloaded 2020-01-01 00:00:00\nExitNode 00\n", null,
+          "Unparseable: Illegal hex string in line 'ExitNode 00'."},
+      {"@type network-status-2 1.0\n" + PADDING
+          + "network-status-version 2\n", null, missing("contact")},
+      {"network-status-version 2\n", null, missing("contact")},
+      {"network-status-version 2", null,
+          undetected("network-status-version 2")},
+      {"@type directory 1.0\n" + PADDING + "signed-directory\n", null,
+          missing("published")},
+      {"signed-directory\n", null, missing("published")},
+      {"@type torperf 1.1\nSOURCE=a FILESIZE=1 START=1600000000.00 "
+          + "SOCKET=1600000000.01 CONNECT=1600000000.02 "
+          + "NEGOTIATE=1600000000.03 REQUEST=1600000000.04 "
+          + "RESPONSE=1600000000.05 DATAREQUEST=1600000000.06 "
+          + "DATARESPONSE=1600000000.07 DATACOMPLETE=1600000000.08 "
+          + "WRITEBYTES=1 READBYTES=1\n", null, "TorperfResultImpl"},
+      {"@type snowflake-stats 1.0\n" + PADDING
+          + "snowflake-stats-end 2020-01-01 00:00:00 (86400 s)\n", null,
+          "SnowflakeStatsImpl"},
+      {"snowflake-stats-end 2020-01-01 00:00:00 (86400 s)\n", null,
+          "SnowflakeStatsImpl"},
+      {"@type bridgedb-metrics 1.0\n" + PADDING
+          + "bridgedb-metrics-end 2020-01-01 00:00:00 (86400 s)\n", null,
+          missing("bridgedb-metrics-version")},
+      {"bridgedb-metrics-end 2020-01-01 00:00:00 (86400 s)\n", null,
+          missing("bridgedb-metrics-version")},
+      {"@type bridgestrap-stats 1.0\n" + PADDING
+          + "bridgestrap-stats-end 2020-01-01 00:00:00 (86400 s)\n", null,
+          "BridgestrapStatsImpl"},
+      {"bridgestrap-stats-end 2020-01-01 00:00:00 (86400 s)\n", null,
+          "BridgestrapStatsImpl"},
+      {"@type bandwidth-file 1.0\n" + PADDING
+          + "1600000000\nversion=1.4.0\n", null, "BandwidthFileImpl"},
+      {"1600000000\nversion=1.4.0\n", null, "BandwidthFileImpl"},
+      {"160000000\n", null, undetected("160000000\n")},
+      {"16000000001\n", null, undetected("16000000001\n")},
+      {"1600000000", null, undetected("1600000000")},
+      {"@type unknown 1.0\n", null, undetected("@type unknown 1.0\n")},
+      {"@type server-descriptor 2.0\n", null,
+          undetected("@type server-descriptor 2.0\n")},
+      {"@type server-descriptor\n", null,
+          undetected("@type server-descriptor\n")},
+      {"", null, undetected("")},
+      {"1.0.0.0,1.0.0.255,AU\n", "geoip", "GeoipFileImpl"},
+      {"1.0.0.0,1.0.0.255,AU\n", "geoip6", "GeoipFileImpl"},
+      {"AU,Australia\n", "countries.txt", "GeoipNamesFileImpl"},
+      {"1,AS\n", "asn.txt", "GeoipNamesFileImpl"},
+      {"unknown\n", "geoip.txt", undetected("unknown\n")}
+  };
+
+  private static String typesOrError(byte[] bytes, String fileName) {
+    List<String> types = new ArrayList<>();
+    for (Descriptor descriptor : new DescriptorParserImpl().parseDescriptors(
+        bytes, null == fileName ? null : new File(fileName), fileName)) {
+      types.add(descriptor instanceof UnparseableDescriptor
+          ? "Unparseable: " + ((UnparseableDescriptor) descriptor)
+          .getDescriptorParseException().getMessage()
+          : descriptor.getClass().getSimpleName());
+    }
+    return String.join(", ", types);
+  }
+
+  @Test
+  void detectsSameTypesAsBefore() {
+    for (String[] typeDetectionCase : TYPE_DETECTION_CASES) {
+      assertEquals(typeDetectionCase[2], typesOrError(
+          typeDetectionCase[0].getBytes(StandardCharsets.UTF_8),
+          typeDetectionCase[1]), typeDetectionCase[0]);
+    }
+  }
+
+  @Test
+  void detectsBridgeDescriptorsByTypeAnnotation() throws IOException {
+    String serverDescriptors = readResource(SERVER_DESCRIPTORS);
+    assertEquals("RelayServerDescriptorImpl, RelayServerDescriptorImpl",
+        typesOrError(serverDescriptors.getBytes(StandardCharsets.US_ASCII),
+        null));
+    assertEquals("BridgeServerDescriptorImpl, BridgeServerDescriptorImpl",
+        typesOrError(serverDescriptors.replace("@type server-descriptor 1.0",
+        "@type bridge-server-descriptor 1.2")
+        .getBytes(StandardCharsets.US_ASCII), null));
+    String extraInfo = readResource(EXTRA_INFO);
+    assertEquals("RelayExtraInfoDescriptorImpl", typesOrError(
+        extraInfo.getBytes(StandardCharsets.US_ASCII), null));
+    assertEquals("BridgeExtraInfoDescriptorImpl", typesOrError(
+        extraInfo.replace("@type extra-info 1.0",
+        "@type bridge-extra-info 1.3").getBytes(StandardCharsets.US_ASCII),
+        null));
+  }
+}
@@ -0,0 +1,372 @@
+package org.torproject.descriptor.impl;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.DescriptorParser;
+import org.torproject.descriptor.DescriptorReader;
+import org.torproject.descriptor.UnparseableDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DescriptorReaderImplTest {
+
+  private static final String GOLDEN_DIRECTORY =
+      "/org/torproject/descriptor/impl/golden/";
+
+  private static final String[] FIXTURES = new String[] {"consensus",
+      "extra-info", "microdescriptors", "server-descriptors",
+      "server-descriptor-crlf", "server-descriptor-empty-lines",
+      "server-descriptor-no-trailing-newline", "server-descriptor-opt",
+      "server-descriptor-tabs"};
+
+  @TempDir
+  Path tempDir;
+
+  private File descriptorDirectory;
+
+  /* Write all fixtures as plain files, some of them into a subdirectory,
+   * and all of them again as entries of two tarballs. */
+  @BeforeEach
+  void writeDescriptorFiles() throws IOException {
+    this.descriptorDirectory = this.tempDir.resolve("descriptors").toFile();
+    File subdirectory = new File(this.descriptorDirectory, "nested");
+    subdirectory.mkdirs();
+    for (int i = 0; i < FIXTURES.length; i++) {
+      File directory = i % 2 == 0 ? this.descriptorDirectory : subdirectory;
+      Files.write(new File(directory, FIXTURES[i]).toPath(),
+          fixture(FIXTURES[i]));
+    }
+    writeTarball(new File(this.descriptorDirectory, "first.tar"), FIXTURES);
+    writeTarball(new File(subdirectory, "second.tar"),
+        new String[] {"server-descriptors", "consensus", "extra-info"});
+  }
+
+  static byte[] fixture(String name) throws IOException {
+    try (InputStream is = DescriptorReaderImplTest.class.getResourceAsStream(
+        GOLDEN_DIRECTORY + name)) {
+      return is.readAllBytes();
+    }
+  }
+
+  static void writeTarball(File tarball, String[] fixtures)
+      throws IOException {
+    List<byte[]> contents = new ArrayList<>();
+    for (String fixture : fixtures) {
+      contents.add(fixture(fixture));
+    }
+    writeTarball(tarball, fixtures, contents);
+  }
+
+  static void writeTarball(File tarball, String[] names,
+      List<byte[]> contents) throws IOException {
+    try (OutputStream os = Files.newOutputStream(tarball.toPath());
+        TarArchiveOutputStream taos = new TarArchiveOutputStream(os)) {
+      for (int i = 0; i < names.length; i++) {
+        TarArchiveEntry entry = new TarArchiveEntry("descriptors/"
+            + names[i]);
+        entry.setSize(contents.get(i).length);
+        taos.putArchiveEntry(entry);
+        taos.write(contents.get(i));
+        taos.closeArchiveEntry();
+      }
+    }
+  }
+
+  /* Describe a descriptor by the file it was read from, its type, and its
+   * raw bytes. */
+  static String describe(Descriptor descriptor) {
+    return descriptor.getDescriptorFile().getName() + " "
+        + descriptor.getClass().getSimpleName() + " "
+        + new String(descriptor.getRawDescriptorBytes(),
+        StandardCharsets.US_ASCII);
+  }
+
+  private List<Descriptor> read(DescriptorReader reader) {
+    List<Descriptor> descriptors = new ArrayList<>();
+    for (Descriptor descriptor
+        : reader.readDescriptors(this.descriptorDirectory)) {
+      descriptors.add(descriptor);
+    }
+    return descriptors;
+  }
+
+  private static DescriptorReader newReader(int readerThreads) {
+    DescriptorReader reader = new DescriptorReaderImpl();
+    reader.setReaderThreads(readerThreads);
+    reader.setMaxDescriptorsInQueue(4);
+    return reader;
+  }
+
+  /* Parse the given file or tarball entry by entry with a parser, which is
+   * what the reader is expected to return for it. */
+  private static List<String> parseFile(File file) throws IOException {
+    DescriptorParser parser = new DescriptorParserImpl();
+    List<String> descriptors = new ArrayList<>();
+    if (file.getName().endsWith(".tar")) {
+      String[] names = file.getName().startsWith("first") ? FIXTURES
+          : new String[] {"server-descriptors", "consensus", "extra-info"};
+      for (String name : names) {
+        for (Descriptor descriptor : parser.parseDescriptors(fixture(name),
+            file, name)) {
+          descriptors.add(describe(descriptor));
+        }
+      }
+    } else {
+      for (Descriptor descriptor : parser.parseDescriptors(
+          Files.readAllBytes(file.toPath()), file, file.getName())) {
+        descriptors.add(describe(descriptor));
+      }
+    }
+    return descriptors;
+  }
+
+  @Test
+  void parallelReadingReturnsSameDescriptorsAsSequentialReading()
+      throws IOException {
+    DescriptorReader sequentialReader = newReader(1);
+    List<Descriptor> sequential = this.read(sequentialReader);
+    DescriptorReader parallelReader = newReader(4);
+    List<Descriptor> parallel = this.read(parallelReader);
+    List<String> expected = new ArrayList<>();
+    for (Descriptor descriptor : sequential) {
+      expected.add(describe(descriptor));
+    }
+    List<String> actual = new ArrayList<>();
+    for (Descriptor descriptor : parallel) {
+      actual.add(describe(descriptor));
+    }
+    assertEquals(expected, actual);
+
+    /* All descriptors of a file are returned together and in the order in
+     * which the file contains them, and tarballs come after plain files. */
+    List<File> files = new ArrayList<>();
+    for (Descriptor descriptor : parallel) {
+      if (files.isEmpty() || !files.get(files.size() - 1).equals(
+          descriptor.getDescriptorFile())) {
+        files.add(descriptor.getDescriptorFile());
+      }
+    }
+    assertEquals(FIXTURES.length + 2, files.size());
+    assertEquals(files.size(), new HashSet<>(files).size());
+    assertTrue(files.get(files.size() - 2).getName().endsWith(".tar"));
+    assertTrue(files.get(files.size() - 1).getName().endsWith(".tar"));
+    List<String> expectedByFile = new ArrayList<>();
+    for (File file : files) {
+      expectedByFile.addAll(parseFile(file));
+    }
+    assertEquals(expectedByFile, actual);
+  }
+
+  private List<String> readTarball(File tarball, int readerThreads) {
+    DescriptorReader reader = newReader(readerThreads);
+    List<String> descriptors = new ArrayList<>();
+    for (Descriptor descriptor : reader.readDescriptors(tarball)) {
+      String described = describe(descriptor);
+      if (descriptor instanceof UnparseableDescriptor) {
+        described += " " + ((UnparseableDescriptor) descriptor)
+            .getDescriptorParseException().getMessage();
+      }
+      descriptors.add(described);
+    }
+    assertEquals(1, reader.getParsedFiles().size());
+    return descriptors;
+  }
+
+  /* Write a tarball with many entries of different sizes, each with an
+   * annotation containing its position, and check that entries parsed on
+   * parser threads are returned in tarball order. */
+  @Test
+  void pipelinedTarballReadingKeepsEntryOrder() throws IOException {
+    String[] fixtures = new String[] {"consensus", "extra-info",
+        "microdescriptors", "server-descriptors", "server-descriptor-opt",
+        "server-descriptor-tabs"};
+    int entries = 100;
+    String[] names = new String[entries];
+    List<byte[]> contents = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < entries; i++) {
+      names[i] = "entry-" + i;
+      String fixture = new String(fixture(fixtures[i % fixtures.length]),
+          StandardCharsets.US_ASCII);
+      contents.add(fixture.replaceFirst("\n", "\n@entry " + i + "\n")
+          .getBytes(StandardCharsets.US_ASCII));
+      expected.add("@entry " + i);
+    }
+    File tarball = this.tempDir.resolve("entries.tar").toFile();
+    writeTarball(tarball, names, contents);
+    List<String> sequential = this.readTarball(tarball, 1);
+    List<String> pipelined = this.readTarball(tarball, 4);
+    assertEquals(sequential, pipelined);
+    List<String> actual = new ArrayList<>();
+    for (Descriptor descriptor : newReader(4).readDescriptors(tarball)) {
+      /* Only the first descriptor of an entry has annotations. */
+      for (String annotation : descriptor.getAnnotations()) {
+        if (annotation.startsWith("@entry ")) {
+          actual.add(annotation.trim());
+        }
+      }
+    }
+    assertEquals(expected, actual);
+  }
+
+  /* Parse errors in tar entries parsed on parser threads are returned as
+   * the same unparseable descriptors as when parsing entries on the
+   * decompressing thread, followed by the remaining entries. */
+  @Test
+  void pipelinedParseErrorMatchesSequentialReading() throws IOException {
+    String[] names = new String[] {"server-descriptors", "broken",
+        "consensus", "broken-too", "extra-info"};
+    List<byte[]> contents = new ArrayList<>();
+    contents.add(fixture("server-descriptors"));
+    contents.add("@type server-descriptor 1.0\nrouter bogus\n"
+        .getBytes(StandardCharsets.US_ASCII));
+    contents.add(fixture("consensus"));
+    contents.add("@type network-status-consensus-3 1.0\n"
+        .concat("network-status-version 3\nvote-status consensus\n")
+        .getBytes(StandardCharsets.US_ASCII));
+    contents.add(fixture("extra-info"));
+    File tarball = this.tempDir.resolve("broken.tar").toFile();
+    writeTarball(tarball, names, contents);
+    List<String> sequential = this.readTarball(tarball, 1);
+    List<String> pipelined = this.readTarball(tarball, 4);
+    assertEquals(sequential, pipelined);
+    int unparseable = 0;
+    for (String descriptor : pipelined) {
+      if (descriptor.startsWith("broken.tar UnparseableDescriptorImpl ")) {
+        unparseable++;
+      }
+    }
+    assertEquals(2, unparseable);
+    assertTrue(pipelined.contains("broken.tar UnparseableDescriptorImpl "
+        + "@type server-descriptor 1.0\nrouter bogus\n "
+        + "Illegal line 'router bogus' in server descriptor."));
+    assertTrue(pipelined.get(pipelined.size() - 1)
+        .startsWith("broken.tar RelayExtraInfoDescriptorImpl "));
+  }
+
+  /* Let the reader fill its queue while not consuming descriptors, and
+   * check that the queue depth and the time the reader was blocked are
+   * reported. */
+  @Test
+  void queueStatistics() throws InterruptedException {
+    for (int readerThreads : new int[] {1, 4}) {
+      DescriptorReader reader = newReader(readerThreads);
+      assertThrows(IllegalStateException.class, reader::getQueueDepth);
+      assertThrows(IllegalStateException.class,
+          reader::getProducerStallMillis);
+      assertThrows(IllegalStateException.class,
+          reader::getConsumerStallMillis);
+      Iterator<Descriptor> descriptors = reader.readDescriptors(
+          this.descriptorDirectory).iterator();
+      long deadline = System.currentTimeMillis() + 10_000L;
+      while (reader.getQueueDepth() < 3) {
+        assertTrue(System.currentTimeMillis() < deadline);
+        Thread.sleep(1L);
+      }
+      Thread.sleep(100L);
+      assertEquals(3, reader.getQueueDepth());
+      int returned = 0;
+      while (descriptors.hasNext()) {
+        descriptors.next();
+        returned++;
+      }
+      assertEquals(0, reader.getQueueDepth());
+      assertTrue(returned > 3);
+      assertTrue(reader.getProducerStallMillis() >= 50L,
+          String.valueOf(reader.getProducerStallMillis()));
+      assertTrue(reader.getConsumerStallMillis() >= 0L);
+    }
+  }
+
+  /* With a byte budget that even a single descriptor exceeds, the reader
+   * queues one descriptor at a time, waits until it has been returned, and
+   * still returns all descriptors. */
+  @Test
+  void maxBytesInQueueBlocksReadingUntilDescriptorsAreReturned()
+      throws InterruptedException {
+    List<String> expected = new ArrayList<>();
+    for (Descriptor descriptor : this.read(newReader(1))) {
+      expected.add(describe(descriptor));
+    }
+    for (int readerThreads : new int[] {1, 4}) {
+      DescriptorReader reader = newReader(readerThreads);
+      reader.setMaxDescriptorsInQueue(100);
+      reader.setMaxBytesInQueue(1L);
+      Iterator<Descriptor> descriptors = reader.readDescriptors(
+          this.descriptorDirectory).iterator();
+      long deadline = System.currentTimeMillis() + 10_000L;
+      while (reader.getQueueDepth() < 1) {
+        assertTrue(System.currentTimeMillis() < deadline);
+        Thread.sleep(1L);
+      }
+      Thread.sleep(50L);
+      assertEquals(1, reader.getQueueDepth());
+      List<String> actual = new ArrayList<>();
+      while (descriptors.hasNext()) {
+        assertTrue(reader.getQueueDepth() <= 1);
+        actual.add(describe(descriptors.next()));
+      }
+      assertEquals(expected, actual);
+      assertTrue(reader.getProducerStallMillis() >= 25L,
+          String.valueOf(reader.getProducerStallMillis()));
+    }
+  }
+
+  @Test
+  void parallelReadingKeepsParseHistory() throws IOException {
+    File sequentialHistory = this.tempDir.resolve("sequential").toFile();
+    File parallelHistory = this.tempDir.resolve("parallel").toFile();
+    DescriptorReader sequentialReader = newReader(1);
+    this.read(sequentialReader);
+    sequentialReader.saveHistoryFile(sequentialHistory);
+    DescriptorReader parallelReader = newReader(4);
+    this.read(parallelReader);
+    parallelReader.saveHistoryFile(parallelHistory);
+    assertEquals(FIXTURES.length + 2,
+        parallelReader.getParsedFiles().size());
+    assertEquals(sequentialReader.getParsedFiles(),
+        parallelReader.getParsedFiles());
+    assertEquals(sequentialReader.getExcludedFiles(),
+        parallelReader.getExcludedFiles());
+    assertEquals(Files.readAllLines(sequentialHistory.toPath()),
+        Files.readAllLines(parallelHistory.toPath()));
+
+    /* Files in the history are skipped and reported as excluded by both. */
+    SortedMap<String, Long> excludedFiles =
+        new TreeMap<>(parallelReader.getParsedFiles());
+    String skippedPath = excludedFiles.firstKey();
+    excludedFiles.remove(excludedFiles.lastKey());
+    for (int readerThreads : new int[] {1, 4}) {
+      DescriptorReader reader = newReader(readerThreads);
+      reader.setExcludedFiles(excludedFiles);
+      Set<String> readFiles = new HashSet<>();
+      for (Descriptor descriptor : this.read(reader)) {
+        readFiles.add(descriptor.getDescriptorFile().getAbsolutePath());
+      }
+      assertEquals(Set.of(parallelReader.getParsedFiles().lastKey()),
+          readFiles);
+      assertEquals(excludedFiles, reader.getExcludedFiles());
+      assertEquals(1, reader.getParsedFiles().size());
+      assertFalse(reader.getParsedFiles().containsKey(skippedPath));
+    }
+  }
+}
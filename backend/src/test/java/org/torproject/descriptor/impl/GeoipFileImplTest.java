@@ -0,0 +1,206 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.DescriptorParseException;
+import org.torproject.descriptor.GeoipFile;
+import org.torproject.descriptor.GeoipFile.GeoipEntry;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeoipFileImplTest {
+
+  /* IPv4 ranges as in Tor's geoip file, with a gap between the second and
+   * third range and ranges above 128.0.0.0, whose integer representation
+   * is negative. */
+  private static final String GEOIP = "# Last updated based on ...\n"
+      + "16777216,16777471,AU\n"
+      + "16777472,16778239,CN,AS4134\n"
+      + "16779264,16781311,CN\n"
+      + "2147483648,2147483903,US\n"
+      + "3758096384,4294967294,??\n";
+
+  /* IPv6 ranges as in Tor's geoip6 file, with a gap between the second and
+   * third range and ranges whose upper or lower 64 bits are negative. */
+  private static final String GEOIP6 = "# Last updated based on ...\n"
+      + "2001:200::,2001:200:ffff:ffff:ffff:ffff:ffff:ffff,JP\n"
+      + "2001:208::,2001:208:ffff:ffff:ffff:ffff:ffff:ffff,SG,AS4773\n"
+      + "2001:218::,2001:218:0:0:7fff:ffff:ffff:ffff,JP\n"
+      + "2001:218::8000:0:0:0,2001:218:0:0:ffff:ffff:ffff:fffe,US\n"
+      + "fe80::,fe80::ffff,ZZ\n";
+
+  private static GeoipFile parse(String geoip)
+      throws DescriptorParseException {
+    return (GeoipFile) GeoipFileImpl.parse(
+        geoip.getBytes(StandardCharsets.US_ASCII), null).get(0);
+  }
+
+  private static InetAddress address(String address)
+      throws UnknownHostException {
+    return InetAddress.getByName(address);
+  }
+
+  /* Look up the given address in all possible ways, check that they agree,
+   * and return the country code, or null if no entry contains it. */
+  private static String countryCode(GeoipFile geoipFile, String address)
+      throws UnknownHostException {
+    byte[] bytes = address(address).getAddress();
+    Optional<GeoipEntry> entry = geoipFile.getEntry(address(address));
+    if (bytes.length == 4) {
+      assertEquals(entry, geoipFile.getEntry(
+          (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+          | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF)), address);
+    } else {
+      assertEquals(entry, geoipFile.getEntry(longBits(bytes, 0),
+          longBits(bytes, 8)), address);
+    }
+    return entry.map(GeoipEntry::getCountryCode).orElse(null);
+  }
+
+  private static long longBits(byte[] bytes, int offset) {
+    long bits = 0L;
+    for (int i = offset; i < offset + 8; i++) {
+      bits = bits << 8 | (bytes[i] & 0xFF);
+    }
+    return bits;
+  }
+
+  @Test
+  void ipv4RangeStartsAndEnds() throws Exception {
+    GeoipFile geoipFile = parse(GEOIP);
+    assertNull(countryCode(geoipFile, "0.0.0.0"));
+    assertNull(countryCode(geoipFile, "0.255.255.255"));
+    assertEquals("AU", countryCode(geoipFile, "1.0.0.0"));
+    assertEquals("AU", countryCode(geoipFile, "1.0.0.128"));
+    assertEquals("AU", countryCode(geoipFile, "1.0.0.255"));
+    assertEquals("CN", countryCode(geoipFile, "1.0.1.0"));
+    assertEquals("CN", countryCode(geoipFile, "1.0.3.255"));
+    assertEquals("AS4134", geoipFile.getEntry(address("1.0.1.0")).get()
+        .getAutonomousSystemNumber());
+    assertNull(geoipFile.getEntry(address("1.0.0.0")).get()
+        .getAutonomousSystemNumber());
+    assertNull(countryCode(geoipFile, "1.0.4.0"));
+    assertNull(countryCode(geoipFile, "1.0.7.255"));
+    assertEquals("CN", countryCode(geoipFile, "1.0.8.0"));
+    assertEquals("CN", countryCode(geoipFile, "1.0.15.255"));
+    assertNull(countryCode(geoipFile, "1.0.16.0"));
+    assertNull(countryCode(geoipFile, "127.255.255.255"));
+    assertEquals("US", countryCode(geoipFile, "128.0.0.0"));
+    assertEquals("US", countryCode(geoipFile, "128.0.0.255"));
+    assertNull(countryCode(geoipFile, "128.0.1.0"));
+    assertNull(countryCode(geoipFile, "223.255.255.255"));
+    assertEquals("??", countryCode(geoipFile, "224.0.0.0"));
+    assertEquals("??", countryCode(geoipFile, "255.255.255.254"));
+    /* Past the end of the last range, which used to throw an
+     * IndexOutOfBoundsException. */
+    assertNull(countryCode(geoipFile, "255.255.255.255"));
+  }
+
+  @Test
+  void ipv6RangeStartsAndEnds() throws Exception {
+    GeoipFile geoipFile = parse(GEOIP6);
+    assertNull(countryCode(geoipFile, "::"));
+    assertNull(countryCode(geoipFile,
+        "2001:1ff:ffff:ffff:ffff:ffff:ffff:ffff"));
+    assertEquals("JP", countryCode(geoipFile, "2001:200::"));
+    assertEquals("JP", countryCode(geoipFile,
+        "2001:200:ffff:ffff:ffff:ffff:ffff:ffff"));
+    assertNull(countryCode(geoipFile, "2001:201::"));
+    assertNull(countryCode(geoipFile,
+        "2001:207:ffff:ffff:ffff:ffff:ffff:ffff"));
+    assertEquals("SG", countryCode(geoipFile, "2001:208::"));
+    assertEquals("SG", countryCode(geoipFile, "2001:208:8000::"));
+    assertEquals("SG", countryCode(geoipFile,
+        "2001:208:ffff:ffff:ffff:ffff:ffff:ffff"));
+    assertNull(countryCode(geoipFile, "2001:209::"));
+    assertEquals("JP", countryCode(geoipFile, "2001:218::"));
+    assertEquals("JP", countryCode(geoipFile,
+        "2001:218::7fff:ffff:ffff:ffff"));
+    assertEquals("US", countryCode(geoipFile, "2001:218::8000:0:0:0"));
+    assertEquals("US", countryCode(geoipFile,
+        "2001:218::ffff:ffff:ffff:fffe"));
+    assertNull(countryCode(geoipFile, "2001:218::ffff:ffff:ffff:ffff"));
+    assertNull(countryCode(geoipFile, "2001:219::"));
+    assertNull(countryCode(geoipFile, "fe7f:ffff:ffff:ffff:ffff:ffff:ffff:"
+        + "ffff"));
+    assertEquals("ZZ", countryCode(geoipFile, "fe80::"));
+    assertEquals("ZZ", countryCode(geoipFile, "fe80::ffff"));
+    assertNull(countryCode(geoipFile, "fe80::1:0"));
+    assertNull(countryCode(geoipFile, "ffff:ffff:ffff:ffff:ffff:ffff:ffff:"
+        + "ffff"));
+  }
+
+  /* Addresses of the other family used to make the lookup throw a
+   * RuntimeException. */
+  @Test
+  void otherFamilyIsNotFound() throws Exception {
+    assertNull(countryCode(parse(GEOIP), "2001:200::"));
+    assertNull(countryCode(parse(GEOIP), "::100:0"));
+    assertNull(countryCode(parse(GEOIP6), "1.0.0.0"));
+    /* IPv4-mapped IPv6 addresses are parsed as IPv4 addresses. */
+    assertEquals("AU", countryCode(parse(GEOIP), "::ffff:1.0.0.0"));
+  }
+
+  @Test
+  void bothFamiliesInOneFile() throws Exception {
+    GeoipFile geoipFile = parse(GEOIP + GEOIP6);
+    assertEquals("AU", countryCode(geoipFile, "1.0.0.255"));
+    assertNull(countryCode(geoipFile, "1.0.4.0"));
+    assertEquals("SG", countryCode(geoipFile, "2001:208::"));
+    assertNull(countryCode(geoipFile, "2001:209::"));
+    assertEquals(10, geoipFile.getEntries().size());
+  }
+
+  /* Compare lookups of random addresses around range boundaries with a
+   * linear scan over all entries. */
+  @Test
+  void lookupsMatchLinearScan() throws Exception {
+    GeoipFile geoipFile = parse(GEOIP + GEOIP6);
+    Random random = new Random(4711L);
+    for (GeoipEntry entry : geoipFile.getEntries()) {
+      for (InetAddress boundary : new InetAddress[] {entry.getStart(),
+          entry.getEnd()}) {
+        for (int run = 0; run < 50; run++) {
+          byte[] bytes = boundary.getAddress();
+          int delta = random.nextInt(5) - 2;
+          for (int i = bytes.length - 1; i >= 0 && delta != 0; i--) {
+            int sum = (bytes[i] & 0xFF) + delta;
+            bytes[i] = (byte) sum;
+            delta = sum < 0 ? -1 : sum > 0xFF ? 1 : 0;
+          }
+          InetAddress address = InetAddress.getByAddress(bytes);
+          GeoipEntry expected = null;
+          for (GeoipEntry candidate : geoipFile.getEntries()) {
+            if (contains(candidate, bytes)) {
+              expected = candidate;
+            }
+          }
+          assertEquals(Optional.ofNullable(expected),
+              geoipFile.getEntry(address), address.toString());
+        }
+      }
+    }
+  }
+
+  private static boolean contains(GeoipEntry entry, byte[] address) {
+    byte[] start = entry.getStart().getAddress();
+    byte[] end = entry.getEnd().getAddress();
+    return start.length == address.length
+        && compare(start, address) <= 0 && compare(address, end) <= 0;
+  }
+
+  private static int compare(byte[] b1, byte[] b2) {
+    for (int i = 0; i < b1.length; i++) {
+      int result = Integer.compare(b1[i] & 0xFF, b2[i] & 0xFF);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,170 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.DescriptorParseException;
+import org.torproject.descriptor.NetworkStatusEntry;
+import org.torproject.descriptor.RelayNetworkStatusConsensus;
+import org.torproject.descriptor.UnparseableDescriptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkStatusEntryImplTest {
+
+  private static final String CONSENSUS =
+      "/org/torproject/descriptor/impl/golden/consensus";
+
+  private static final String RELAY0_W_LINE =
+      "w Bandwidth=81639 Unmeasured=1\n";
+
+  private static final String RELAY0_FINGERPRINT =
+      "B6589FC6AB0DC82CF12099D1C2D40AB994E8410C";
+
+  private static String readConsensus() throws IOException {
+    try (InputStream is = NetworkStatusEntryImplTest.class
+        .getResourceAsStream(CONSENSUS)) {
+      assertNotNull(is, CONSENSUS);
+      return new String(is.readAllBytes(), StandardCharsets.US_ASCII);
+    }
+  }
+
+  private static Descriptor parse(String consensus, boolean lazy) {
+    DescriptorParserImpl parser = new DescriptorParserImpl();
+    parser.setLazyStatusEntries(lazy);
+    List<Descriptor> descriptors = new ArrayList<>();
+    for (Descriptor descriptor : parser.parseDescriptors(
+        consensus.getBytes(StandardCharsets.US_ASCII), null, "consensus")) {
+      descriptors.add(descriptor);
+    }
+    assertEquals(1, descriptors.size());
+    return descriptors.get(0);
+  }
+
+  private static String replaceRelay0WLine(String replacement)
+      throws IOException {
+    String consensus = readConsensus();
+    assertTrue(consensus.contains(RELAY0_W_LINE));
+    return consensus.replace(RELAY0_W_LINE, replacement);
+  }
+
+  @Test
+  void lazyAndEagerParsingReturnSameValues() throws IOException {
+    String consensus = readConsensus();
+    assertEquals(
+        DescriptorGoldenFileTest.dump(Arrays.asList(parse(consensus, false))),
+        DescriptorGoldenFileTest.dump(Arrays.asList(parse(consensus, true))));
+  }
+
+  @Test
+  void lazyStatusEntriesReturnSameValuesInAnyOrder() throws IOException {
+    String consensus = readConsensus();
+    RelayNetworkStatusConsensus eager =
+        (RelayNetworkStatusConsensus) parse(consensus, false);
+    RelayNetworkStatusConsensus lazy =
+        (RelayNetworkStatusConsensus) parse(consensus, true);
+    assertEquals(eager.getStatusEntries().keySet(),
+        lazy.getStatusEntries().keySet());
+    for (String fingerprint : eager.getStatusEntries().keySet()) {
+      NetworkStatusEntry expected = eager.getStatusEntry(fingerprint);
+      NetworkStatusEntry actual = lazy.getStatusEntry(fingerprint);
+      /* Request fields of deferred lines last to first, so that parsing is
+       * triggered by a different line than in the golden file test. */
+      assertEquals(expected.getMasterKeyEd25519(),
+          actual.getMasterKeyEd25519());
+      assertEquals(expected.getMicrodescriptorDigestsSha256Base64(),
+          actual.getMicrodescriptorDigestsSha256Base64());
+      assertEquals(expected.getPortList(), actual.getPortList());
+      assertEquals(expected.getDefaultPolicy(), actual.getDefaultPolicy());
+      assertEquals(expected.getUnmeasured(), actual.getUnmeasured());
+      assertEquals(expected.getMeasured(), actual.getMeasured());
+      assertEquals(expected.getBandwidth(), actual.getBandwidth());
+      assertEquals(expected.getProtocols(), actual.getProtocols());
+      assertEquals(expected.getVersion(), actual.getVersion());
+      assertEquals(expected.getOrAddresses(), actual.getOrAddresses());
+      assertEquals(expected.getFlags(), actual.getFlags());
+      assertEquals(expected.getAddress(), actual.getAddress());
+      assertEquals(expected.getNickname(), actual.getNickname());
+    }
+  }
+
+  @Test
+  void duplicateDeferredLineIsRejectedWhileParsing() throws IOException {
+    String consensus = replaceRelay0WLine(RELAY0_W_LINE + RELAY0_W_LINE);
+    for (boolean lazy : new boolean[] {false, true}) {
+      Descriptor descriptor = parse(consensus, lazy);
+      assertTrue(descriptor instanceof UnparseableDescriptor,
+          "lazy = " + lazy);
+      assertEquals("Duplicate 'w' line in status entry.",
+          ((UnparseableDescriptor) descriptor).getDescriptorParseException()
+          .getMessage());
+    }
+  }
+
+  @Test
+  void duplicateDeferredLineWithOptPrefixIsRejectedWhileParsing()
+      throws IOException {
+    String consensus = readConsensus().replaceFirst("\nv Tor 0.4.8.0\n",
+        "\nv Tor 0.4.8.0\nopt v Tor 0.4.8.0\n");
+    Descriptor descriptor = parse(consensus, true);
+    assertTrue(descriptor instanceof UnparseableDescriptor);
+    assertEquals("Duplicate 'v' line in status entry.",
+        ((UnparseableDescriptor) descriptor).getDescriptorParseException()
+        .getMessage());
+  }
+
+  @Test
+  void invalidDeferredLineOnlyFailsItsOwnGetters() throws IOException {
+    String consensus = replaceRelay0WLine(
+        "w Bandwidth=notanumber Unmeasured=1\n");
+    assertTrue(parse(consensus, false) instanceof UnparseableDescriptor);
+
+    RelayNetworkStatusConsensus lazy =
+        (RelayNetworkStatusConsensus) parse(consensus, true);
+    NetworkStatusEntry entry = lazy.getStatusEntry(RELAY0_FINGERPRINT);
+    assertNotNull(entry);
+    assertEquals("relay0", entry.getNickname());
+    assertEquals("180.99.121.87", entry.getAddress());
+    assertFalse(entry.getFlags().isEmpty());
+
+    /* Every call of a method returning a field of the w line throws, not
+     * only the first one. */
+    for (int i = 0; i < 2; i++) {
+      IllegalStateException e = assertThrows(IllegalStateException.class,
+          entry::getBandwidth);
+      assertTrue(e.getCause() instanceof DescriptorParseException);
+      assertTrue(e.getCause().getMessage().contains("notanumber"),
+          e.getCause().getMessage());
+      assertThrows(IllegalStateException.class, entry::getMeasured);
+      assertThrows(IllegalStateException.class, entry::getUnmeasured);
+    }
+
+    /* Fields of other deferred lines of the same entry are still
+     * returned. */
+    assertEquals("Tor 0.4.8.0", entry.getVersion());
+    assertEquals("reject", entry.getDefaultPolicy());
+    assertEquals("1-65535", entry.getPortList());
+    assertEquals(1, entry.getOrAddresses().size());
+    assertFalse(entry.getProtocols().isEmpty());
+
+    /* Other entries are not affected at all. */
+    Iterator<NetworkStatusEntry> entries =
+        lazy.getStatusEntries().values().iterator();
+    int others = 0;
+    while (entries.hasNext()) {
+      NetworkStatusEntry other = entries.next();
+      if (other != entry) {
+        assertTrue(other.getBandwidth() > 0L);
+        others++;
+      }
+    }
+    assertTrue(others > 0);
+  }
+}
@@ -0,0 +1,62 @@
+package org.torproject.descriptor.impl;
+
+import org.torproject.descriptor.DescriptorParseException;
+import org.torproject.descriptor.benchmark.Benchmarks;
+
+/**
+ * Measures time and allocation of the field validators in
+ * {@link ParseHelper} on typical valid inputs.
+ *
+ * <p>Run with
+ * {@code ./gradlew descriptorBenchmark -Pbenchmark=impl.ParseHelperBenchmark}.
+ * Each operation validates 10,000 inputs.</p>
+ */
+public class ParseHelperBenchmark {
+
+  private static final int INPUTS_PER_OPERATION = 10_000;
+
+  private static final String LINE = "r relay0 tlifxqsNyCzxIJnRwtQKuZToQQw "
+      + "tlifxqsNyCzxIJnRwtQKuZToQQw 2024-01-01 00:00:00 180.99.121.87 "
+      + "9001 0";
+
+  @FunctionalInterface
+  private interface Validator {
+    Object validate() throws DescriptorParseException;
+  }
+
+  /** Run all validator benchmarks. */
+  public static void main(String[] args) {
+    benchmark("parseNickname",
+        () -> ParseHelper.parseNickname(LINE, "relay0"));
+    benchmark("parseIpv4Address",
+        () -> ParseHelper.parseIpv4Address(LINE, "180.99.121.87"));
+    benchmark("parseTwentyByteHexString",
+        () -> ParseHelper.parseTwentyByteHexString(LINE,
+        "b6589fc6ab0dc82cf12099d1c2d40ab994e8410c"));
+    benchmark("parseKeyword",
+        () -> ParseHelper.parseKeyword(LINE, "family-ids"));
+    benchmark("convertTwentyByteBase64StringToHex",
+        () -> ParseHelper.convertTwentyByteBase64StringToHex(LINE,
+        "tlifxqsNyCzxIJnRwtQKuZToQQw"));
+    benchmark("verifyThirtyTwoByteBase64String", () -> {
+      ParseHelper.verifyThirtyTwoByteBase64String(LINE,
+          "tlifxqsNyCzxIJnRwtQKuZToQQwtlifxqsNyCzxIJnR");
+      return LINE;
+    });
+    Benchmarks.done();
+  }
+
+  private static void benchmark(String name, Validator validator) {
+    Benchmarks.run(name + " x" + INPUTS_PER_OPERATION, () -> {
+      long sum = 0L;
+      try {
+        for (int i = 0; i < INPUTS_PER_OPERATION; i++) {
+          sum += validator.validate().hashCode();
+        }
+      } catch (DescriptorParseException e) {
+        throw new IllegalStateException(e);
+      }
+      return sum;
+    });
+  }
+}
@@ -0,0 +1,325 @@
+package org.torproject.descriptor.impl;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.DescriptorParseException;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the validators in {@link ParseHelper} accept and reject the
+ * same inputs with the same results and messages as the regular expressions
+ * they replaced, which are kept in {@link RegexParseHelper} for
+ * comparison.
+ */
+class ParseHelperTest {
+
+  private static final String LINE = "line";
+
+  /* Validator under test, which returns the parsed value or throws. */
+  @FunctionalInterface
+  private interface Validator {
+    String validate(String input) throws DescriptorParseException;
+  }
+
+  /* Previous implementations based on regular expressions. */
+  private static final class RegexParseHelper {
+
+    private static final Pattern KEYWORD = Pattern.compile("^[A-Za-z0-9-]+$");
+
+    private static final Pattern IPV4 = Pattern.compile("^[0-9.]{7,15}$");
+
+    private static final Pattern HEX = Pattern.compile("^[0-9a-fA-F]*$");
+
+    private static final Pattern NICKNAME =
+        Pattern.compile("^[0-9a-zA-Z]{1,19}$");
+
+    private static final Pattern TWENTY_BYTE_BASE64 =
+        Pattern.compile("^[0-9a-zA-Z+/]{27}$");
+
+    private static final Pattern THIRTY_TWO_BYTE_BASE64 =
+        Pattern.compile("^[0-9a-zA-Z+/]{43}$");
+
+    static String parseKeyword(String line, String keyword)
+        throws DescriptorParseException {
+      if (!KEYWORD.matcher(keyword).matches()) {
+        throw new DescriptorParseException("Unrecognized character in "
+            + "keyword '" + keyword + "' in line '" + line + "'.");
+      }
+      return keyword;
+    }
+
+    static String parseIpv4Address(String line, String address)
+        throws DescriptorParseException {
+      boolean isValid = true;
+      if (!IPV4.matcher(address).matches()) {
+        isValid = false;
+      } else {
+        String[] parts = address.split("\\.", -1);
+        if (parts.length != 4) {
+          isValid = false;
+        } else {
+          for (int i = 0; i < 4; i++) {
+            try {
+              int octetValue = Integer.parseInt(parts[i]);
+              if (octetValue < 0 || octetValue > 255) {
+                isValid = false;
+              }
+            } catch (NumberFormatException e) {
+              isValid = false;
+            }
+          }
+        }
+      }
+      if (!isValid) {
+        throw new DescriptorParseException("'" + address + "' in line '"
+            + line + "' is not a valid IPv4 address.");
+      }
+      return address;
+    }
+
+    static String parseHexString(String line, String hexString,
+        int expectedLength) throws DescriptorParseException {
+      if (!HEX.matcher(hexString).matches()
+          || hexString.length() % 2 != 0
+          || (expectedLength >= 0
+          && hexString.length() != expectedLength)) {
+        throw new DescriptorParseException("Illegal hex string in line '"
+            + line + "'.");
+      }
+      return hexString.toUpperCase();
+    }
+
+    static String parseNickname(String line, String nickname)
+        throws DescriptorParseException {
+      if (!NICKNAME.matcher(nickname).matches()) {
+        throw new DescriptorParseException("Illegal nickname in line '"
+            + line + "'.");
+      }
+      return nickname;
+    }
+
+    static String convertTwentyByteBase64StringToHex(String line,
+        String base64String) throws DescriptorParseException {
+      if (!TWENTY_BYTE_BASE64.matcher(base64String).matches()) {
+        throw new DescriptorParseException("'" + base64String
+            + "' in line '" + line + "' is not a valid base64-encoded "
+            + "20-byte value.");
+      }
+      return Hex.encodeHexString(Base64.decodeBase64(base64String + "="))
+          .toUpperCase();
+    }
+
+    static String verifyThirtyTwoByteBase64String(String line,
+        String base64String) throws DescriptorParseException {
+      if (!THIRTY_TWO_BYTE_BASE64.matcher(base64String).matches()) {
+        throw new DescriptorParseException("'" + base64String
+            + "' in line '" + line + "' is not a valid base64-encoded "
+            + "32-byte value.");
+      }
+      return base64String;
+    }
+  }
+
+  private static final String BASE64_27 = "tlifxqsNyCzxIJnRwtQKuZToQQw";
+
+  private static final String BASE64_43 =
+      "tlifxqsNyCzxIJnRwtQKuZToQQwtlifxqsNyCzxIJnR";
+
+  private static final String HEX_40 =
+      "B6589FC6AB0DC82CF12099D1C2D40AB994E8410C";
+
+  /* Return the result of the given validator, or the exception message
+   * prefixed with "!". */
+  private static String outcome(Validator validator, String input) {
+    try {
+      return validator.validate(input);
+    } catch (DescriptorParseException e) {
+      return "!" + e.getMessage();
+    }
+  }
+
+  private static void assertValid(Validator validator, String input,
+      String expected) {
+    assertEquals(expected, outcome(validator, input), input);
+  }
+
+  private static void assertSameAsRegex(Validator validator,
+      Validator regexValidator, String input) {
+    assertEquals(outcome(regexValidator, input), outcome(validator, input),
+        "'" + input + "'");
+  }
+
+  private static void assertSameAsRegex(Validator validator,
+      Validator regexValidator, String[] inputs) {
+    for (String input : inputs) {
+      assertSameAsRegex(validator, regexValidator, input);
+    }
+  }
+
+  /* Random strings of up to maxLength characters drawn from the given
+   * alphabet, followed by strings of exactly the given lengths. */
+  private static void assertSameAsRegexOnRandomInputs(Validator validator,
+      Validator regexValidator, String alphabet, int maxLength,
+      int... lengths) {
+    Random random = new Random(4711L);
+    for (int run = 0; run < 20000; run++) {
+      int length = run % 2 == 0 || lengths.length == 0
+          ? random.nextInt(maxLength + 1)
+          : lengths[random.nextInt(lengths.length)];
+      StringBuilder sb = new StringBuilder(length);
+      for (int i = 0; i < length; i++) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      assertSameAsRegex(validator, regexValidator, sb.toString());
+    }
+  }
+
+  private static final Validator IPV4 =
+      input -> ParseHelper.parseIpv4Address(LINE, input);
+
+  private static final Validator REGEX_IPV4 =
+      input -> RegexParseHelper.parseIpv4Address(LINE, input);
+
+  @Test
+  void ipv4Addresses() {
+    assertValid(IPV4, "1.2.3.4", "1.2.3.4");
+    assertValid(IPV4, "255.255.255.255", "255.255.255.255");
+    assertValid(IPV4, "0.0.0.0", "0.0.0.0");
+    /* Leading zeros were accepted by the regular expression and still
+     * are, as long as the whole address has at most 15 characters. */
+    assertValid(IPV4, "01.2.3.4", "01.2.3.4");
+    assertValid(IPV4, "001.002.003.004", "001.002.003.004");
+    assertValid(IPV4, "0000.1.2.3", "0000.1.2.3");
+    for (String invalid : new String[] {"256.1.2.3", "1.2.3.256",
+        "1.2.3.999", "1.2.3", "1.2.3.4.5", "1.2.3.", ".1.2.3", "1..2.3",
+        "1.2.3.4 ", " 1.2.3.4", "1.2.3.4\n", "1.2.3.+4", "1.2.3.-4",
+        "1.2.3.a", "0001.002.003.004", "", "1.2.3.4/8",
+        "\u0661.2.3.4", "1.2.3.\uff14"}) {
+      assertEquals("!'" + invalid + "' in line '" + LINE
+          + "' is not a valid IPv4 address.", outcome(IPV4, invalid),
+          invalid);
+    }
+  }
+
+  @Test
+  void ipv4AddressesSameAsRegex() {
+    assertSameAsRegex(IPV4, REGEX_IPV4, new String[] {"256.1.2.3",
+        "01.2.3.4", "1.2.3", "1.2.3.4.5", "00000000000000.", "1.1.1.1111",
+        "99999999999.1.1", "1.2.3.4"});
+    assertSameAsRegexOnRandomInputs(IPV4, REGEX_IPV4, "0125689.", 17,
+        7, 15);
+    assertSameAsRegexOnRandomInputs(IPV4, REGEX_IPV4, "0123456789.a+- ",
+        17, 7, 15);
+  }
+
+  private static final Validator NICKNAME =
+      input -> ParseHelper.parseNickname(LINE, input);
+
+  @Test
+  void nicknamesSameAsRegex() {
+    Validator regex = input -> RegexParseHelper.parseNickname(LINE, input);
+    assertValid(NICKNAME, "relay0", "relay0");
+    assertValid(NICKNAME, "a123456789012345678", "a123456789012345678");
+    assertSameAsRegex(NICKNAME, regex, new String[] {"", "a",
+        "a1234567890123456789", "relay-0", "relay_0", "relay 0", "r\u00e9lay",
+        "relay\u0661", "Unnamed"});
+    assertSameAsRegexOnRandomInputs(NICKNAME, regex, "aZ09-_ \u00e9", 21,
+        19, 20);
+  }
+
+  @Test
+  void keywordsSameAsRegex() {
+    Validator keyword = input -> ParseHelper.parseKeyword(LINE, input);
+    Validator regex = input -> RegexParseHelper.parseKeyword(LINE, input);
+    assertValid(keyword, "family-ids", "family-ids");
+    assertSameAsRegex(keyword, regex, new String[] {"", "-", "router",
+        "opt", "@type", "key_word", "key word", "k\u00e9y", "key\t"});
+    assertSameAsRegexOnRandomInputs(keyword, regex, "aZ09-_@ \t\u00e9", 8);
+  }
+
+  @Test
+  void hexStringsSameAsRegex() {
+    Validator twentyByteHex =
+        input -> ParseHelper.parseTwentyByteHexString(LINE, input);
+    Validator regexTwentyByteHex =
+        input -> RegexParseHelper.parseHexString(LINE, input, 40);
+    Validator hex = input -> ParseHelper.parseHexString(LINE, input);
+    Validator regexHex =
+        input -> RegexParseHelper.parseHexString(LINE, input, -1);
+    assertValid(twentyByteHex, HEX_40.toLowerCase(), HEX_40);
+    assertValid(hex, "", "");
+    String[] inputs = new String[] {"", "a", "ab", "abc", "0g", HEX_40,
+        HEX_40.toLowerCase(), HEX_40 + "00", HEX_40.substring(1),
+        HEX_40.substring(0, 39) + "G", "\uff10\uff10"};
+    assertSameAsRegex(twentyByteHex, regexTwentyByteHex, inputs);
+    assertSameAsRegex(hex, regexHex, inputs);
+    assertSameAsRegexOnRandomInputs(twentyByteHex, regexTwentyByteHex,
+        "0123456789abcdefABCDEFgG", 42, 39, 40, 41);
+    assertSameAsRegexOnRandomInputs(hex, regexHex,
+        "0123456789abcdefABCDEFgG", 12);
+  }
+
+  private static final Validator TWENTY_BYTE_BASE64 =
+      input -> ParseHelper.convertTwentyByteBase64StringToHex(LINE, input);
+
+  private static final Validator REGEX_TWENTY_BYTE_BASE64 =
+      input -> RegexParseHelper.convertTwentyByteBase64StringToHex(LINE,
+      input);
+
+  @Test
+  void twentyByteBase64StringsSameAsRegex() {
+    assertValid(TWENTY_BYTE_BASE64, BASE64_27, HEX_40);
+    assertValid(TWENTY_BYTE_BASE64, "///////////////////////////",
+        "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF");
+    /* The last character only contributes its upper four bits, so its
+     * lower two bits are ignored like before. */
+    assertSameAsRegex(TWENTY_BYTE_BASE64, REGEX_TWENTY_BYTE_BASE64,
+        new String[] {BASE64_27, BASE64_27.substring(0, 26) + "R",
+        BASE64_27.substring(0, 26) + "/", "AAAAAAAAAAAAAAAAAAAAAAAAAAA",
+        "+++++++++++++++++++++++++++"});
+    for (char bad : new char[] {'=', '-', '_', '.', ' ', '\n', '\u00e9',
+        '\uff21', '\u0661'}) {
+      for (int position : new int[] {0, 13, 26}) {
+        String input = BASE64_27.substring(0, position) + bad
+            + BASE64_27.substring(position + 1);
+        assertEquals(27, input.length());
+        assertEquals("!'" + input + "' in line '" + LINE + "' is not a valid "
+            + "base64-encoded 20-byte value.",
+            outcome(TWENTY_BYTE_BASE64, input), input);
+        assertSameAsRegex(TWENTY_BYTE_BASE64, REGEX_TWENTY_BYTE_BASE64,
+            input);
+      }
+    }
+    assertSameAsRegex(TWENTY_BYTE_BASE64, REGEX_TWENTY_BYTE_BASE64,
+        new String[] {"", BASE64_27.substring(1), BASE64_27 + "A",
+        BASE64_27 + "=", BASE64_27.substring(1) + "="});
+    assertSameAsRegexOnRandomInputs(TWENTY_BYTE_BASE64,
+        REGEX_TWENTY_BYTE_BASE64,
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/",
+        28, 26, 27, 28);
+    assertSameAsRegexOnRandomInputs(TWENTY_BYTE_BASE64,
+        REGEX_TWENTY_BYTE_BASE64, "aZ09+/=-_ \u00e9", 28, 27);
+  }
+
+  @Test
+  void thirtyTwoByteBase64StringsSameAsRegex() {
+    Validator thirtyTwoByteBase64 = input -> {
+      ParseHelper.verifyThirtyTwoByteBase64String(LINE, input);
+      return input;
+    };
+    Validator regex = input ->
+        RegexParseHelper.verifyThirtyTwoByteBase64String(LINE, input);
+    assertValid(thirtyTwoByteBase64, BASE64_43, BASE64_43);
+    assertSameAsRegex(thirtyTwoByteBase64, regex, new String[] {"",
+        BASE64_43.substring(1), BASE64_43 + "A", BASE64_43 + "=",
+        BASE64_43.substring(1) + "=", BASE64_43.substring(1) + "-",
+        BASE64_43.substring(1) + "\u00e9"});
+    assertSameAsRegexOnRandomInputs(thirtyTwoByteBase64, regex,
+        "aZ09+/=-_ \u00e9", 44, 42, 43, 44);
+  }
+}
@@ -0,0 +1,221 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+import org.tormap.service.DescriptorFileServiceKt;
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.ExtraInfoDescriptor;
+import org.torproject.descriptor.Microdescriptor;
+import org.torproject.descriptor.RelayServerDescriptor;
+import org.torproject.descriptor.ServerDescriptor;
+import org.torproject.descriptor.UnparseableDescriptor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parses the sample server descriptors with and without the projection that
+ * the backend configures for reading server descriptors, and checks that
+ * the projection does not change any field that the backend reads.
+ */
+class ServerDescriptorProjectionTest {
+
+  private static final String GOLDEN_DIRECTORY =
+      "/org/torproject/descriptor/impl/golden/";
+
+  private static final Set<String> KEYWORDS =
+      DescriptorFileServiceKt.getSERVER_DESCRIPTOR_KEYWORDS();
+
+  /* Getters called by DescriptorProcessingService and RelayDetails, plus
+   * the other router line fields, digests, and unrecognized lines. */
+  private static final Map<String, Function<ServerDescriptor, Object>>
+      GETTERS = new LinkedHashMap<>();
+
+  static {
+    GETTERS.put("getAddress", ServerDescriptor::getAddress);
+    GETTERS.put("getOrPort", ServerDescriptor::getOrPort);
+    GETTERS.put("getSocksPort", ServerDescriptor::getSocksPort);
+    GETTERS.put("getDirPort", ServerDescriptor::getDirPort);
+    GETTERS.put("getAllowSingleHopExits",
+        ServerDescriptor::getAllowSingleHopExits);
+    GETTERS.put("getNickname", ServerDescriptor::getNickname);
+    GETTERS.put("getBandwidthRate", ServerDescriptor::getBandwidthRate);
+    GETTERS.put("getBandwidthBurst", ServerDescriptor::getBandwidthBurst);
+    GETTERS.put("getBandwidthObserved",
+        ServerDescriptor::getBandwidthObserved);
+    GETTERS.put("getPlatform", ServerDescriptor::getPlatform);
+    GETTERS.put("getProtocols", ServerDescriptor::getProtocols);
+    GETTERS.put("getPublishedMillis", ServerDescriptor::getPublishedMillis);
+    GETTERS.put("getFingerprint", ServerDescriptor::getFingerprint);
+    GETTERS.put("isHibernating", ServerDescriptor::isHibernating);
+    GETTERS.put("getUptime", ServerDescriptor::getUptime);
+    GETTERS.put("getContact", ServerDescriptor::getContact);
+    GETTERS.put("getFamilyEntries", ServerDescriptor::getFamilyEntries);
+    GETTERS.put("getCachesExtraInfo", ServerDescriptor::getCachesExtraInfo);
+    GETTERS.put("isHiddenServiceDir", ServerDescriptor::isHiddenServiceDir);
+    GETTERS.put("getLinkProtocolVersions",
+        ServerDescriptor::getLinkProtocolVersions);
+    GETTERS.put("getCircuitProtocolVersions",
+        ServerDescriptor::getCircuitProtocolVersions);
+    GETTERS.put("getTunnelledDirServer",
+        ServerDescriptor::getTunnelledDirServer);
+    GETTERS.put("getDigestSha1Hex", ServerDescriptor::getDigestSha1Hex);
+    GETTERS.put("getDigestSha256Base64",
+        ServerDescriptor::getDigestSha256Base64);
+    GETTERS.put("getAnnotations", ServerDescriptor::getAnnotations);
+    GETTERS.put("getUnrecognizedLines",
+        ServerDescriptor::getUnrecognizedLines);
+  }
+
+  private static byte[] fixture(String name) throws IOException {
+    try (InputStream is = ServerDescriptorProjectionTest.class
+        .getResourceAsStream(GOLDEN_DIRECTORY + name)) {
+      return is.readAllBytes();
+    }
+  }
+
+  private static List<Descriptor> parse(byte[] rawDescriptorBytes,
+      boolean projected) {
+    DescriptorParserImpl parser = new DescriptorParserImpl();
+    if (projected) {
+      parser.setProjection(ServerDescriptor.class, KEYWORDS);
+    }
+    List<Descriptor> descriptors = new ArrayList<>();
+    for (Descriptor descriptor : parser.parseDescriptors(rawDescriptorBytes,
+        null, "server-descriptors")) {
+      descriptors.add(descriptor);
+    }
+    return descriptors;
+  }
+
+  private static void assertSameFields(String fixture) throws IOException {
+    List<Descriptor> complete = parse(fixture(fixture), false);
+    List<Descriptor> projected = parse(fixture(fixture), true);
+    assertFalse(complete.isEmpty());
+    assertEquals(complete.size(), projected.size());
+    for (int i = 0; i < complete.size(); i++) {
+      assertTrue(complete.get(i) instanceof RelayServerDescriptor,
+          complete.get(i).getClass().getName());
+      assertTrue(projected.get(i) instanceof RelayServerDescriptor,
+          projected.get(i).getClass().getName());
+      ServerDescriptor completeDescriptor =
+          (ServerDescriptor) complete.get(i);
+      ServerDescriptor projectedDescriptor =
+          (ServerDescriptor) projected.get(i);
+      for (Map.Entry<String, Function<ServerDescriptor, Object>> getter
+          : GETTERS.entrySet()) {
+        assertEquals(getter.getValue().apply(completeDescriptor),
+            getter.getValue().apply(projectedDescriptor),
+            fixture + " " + i + " " + getter.getKey());
+      }
+      /* Lines outside of the projection are really skipped. */
+      assertNotNull(completeDescriptor.getOnionKey());
+      assertNull(projectedDescriptor.getOnionKey());
+      assertNull(projectedDescriptor.getSigningKey());
+      assertNull(projectedDescriptor.getRouterSignature());
+      assertEquals(-1, projectedDescriptor.getNtorOnionKeyCrosscertSign());
+    }
+  }
+
+  @Test
+  void serverDescriptors() throws IOException {
+    assertSameFields("server-descriptors");
+  }
+
+  @Test
+  void serverDescriptorWithOptPrefixes() throws IOException {
+    assertSameFields("server-descriptor-opt");
+    assertEquals(Arrays.asList("future-keyword some\targuments"),
+        parse(fixture("server-descriptor-opt"), true).get(0)
+        .getUnrecognizedLines());
+  }
+
+  @Test
+  void serverDescriptorWithTabs() throws IOException {
+    assertSameFields("server-descriptor-tabs");
+  }
+
+  /* Crypto blocks following skipped lines are skipped together with those
+   * lines rather than reported as unrecognized lines. */
+  @Test
+  void skippedCryptoBlocksAreNotUnrecognized() throws IOException {
+    for (String fixture : new String[] {"server-descriptors",
+        "server-descriptor-opt", "server-descriptor-tabs"}) {
+      for (Descriptor descriptor : parse(fixture(fixture), true)) {
+        List<String> unrecognizedLines = descriptor.getUnrecognizedLines();
+        if (null == unrecognizedLines) {
+          continue;
+        }
+        for (String line : unrecognizedLines) {
+          assertFalse(line.startsWith("-----"), line);
+          assertFalse(line.startsWith("onion-key"), line);
+          assertFalse(line.startsWith("signing-key"), line);
+          assertFalse(line.startsWith("ntor-onion-key-crosscert"), line);
+          assertFalse(line.startsWith("identity-ed25519"), line);
+        }
+      }
+    }
+    for (String keyword : new String[] {"onion-key", "signing-key",
+        "ntor-onion-key-crosscert", "identity-ed25519"}) {
+      assertFalse(KEYWORDS.contains(keyword), keyword);
+    }
+    String descriptors = new String(fixture("server-descriptors"),
+        StandardCharsets.US_ASCII);
+    assertTrue(descriptors.contains("\nidentity-ed25519\n"));
+    assertTrue(descriptors.contains("\nntor-onion-key-crosscert "));
+  }
+
+  /* Insert a copy of the first line starting with the given keyword right
+   * after it, and check that the descriptor is rejected for the same reason
+   * with and without projection. */
+  private static void assertDuplicateRejected(String fixture,
+      String keyword) throws IOException {
+    String descriptor = new String(fixture(fixture),
+        StandardCharsets.US_ASCII);
+    int start = descriptor.indexOf("\n" + keyword + " ") + 1;
+    assertTrue(start > 0, keyword);
+    int end = descriptor.indexOf('\n', start) + 1;
+    byte[] duplicated = (descriptor.substring(0, end)
+        + descriptor.substring(start)).getBytes(StandardCharsets.US_ASCII);
+    List<Descriptor> complete = parse(duplicated, false);
+    List<Descriptor> projected = parse(duplicated, true);
+    assertTrue(complete.get(0) instanceof UnparseableDescriptor, keyword);
+    assertTrue(projected.get(0) instanceof UnparseableDescriptor, keyword);
+    assertEquals(((UnparseableDescriptor) complete.get(0))
+        .getDescriptorParseException().getMessage(),
+        ((UnparseableDescriptor) projected.get(0))
+        .getDescriptorParseException().getMessage(), keyword);
+  }
+
+  @Test
+  void duplicateKeywordsAreRejected() throws IOException {
+    assertDuplicateRejected("server-descriptor-tabs", "ntor-onion-key");
+    assertDuplicateRejected("server-descriptors", "master-key-ed25519");
+    assertDuplicateRejected("server-descriptors", "platform");
+    assertDuplicateRejected("server-descriptors", "published");
+  }
+
+  @Test
+  void otherDescriptorTypesAreRejected() {
+    DescriptorParserImpl parser = new DescriptorParserImpl();
+    assertThrows(IllegalArgumentException.class,
+        () -> parser.setProjection(ExtraInfoDescriptor.class, KEYWORDS));
+    assertThrows(IllegalArgumentException.class,
+        () -> parser.setProjection(Microdescriptor.class, KEYWORDS));
+    assertThrows(IllegalArgumentException.class,
+        () -> new DescriptorReaderImpl().setProjection(
+        ExtraInfoDescriptor.class, KEYWORDS));
+    assertThrows(IllegalArgumentException.class,
+        () -> parser.setProjection(ServerDescriptor.class,
+        Set.of("published", "no-such-keyword")));
+  }
+}
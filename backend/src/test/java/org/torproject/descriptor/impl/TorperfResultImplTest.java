@@ -0,0 +1,222 @@
+package org.torproject.descriptor.impl;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.DescriptorParseException;
+import org.torproject.descriptor.TorperfResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TorperfResultImplTest {
+
+  private static final String REQUIRED_KEYS = "SOURCE=torperf FILESIZE=51200 "
+      + "START=1333268401.16 SOCKET=1333268401.16 CONNECT=1333268401.17 "
+      + "NEGOTIATE=1333268401.17 REQUEST=1333268401.17 "
+      + "RESPONSE=1333268401.35 DATAREQUEST=1333268401.35 "
+      + "DATARESPONSE=1333268401.56 DATACOMPLETE=1333268402.12 "
+      + "WRITEBYTES=75 READBYTES=51269";
+
+  private static final String OPTIONAL_KEYS = "DIDTIMEOUT=0 "
+      + "DATAPERC10=1333268401.63 DATAPERC90=1333268402.07 "
+      + "LAUNCH=1333268396.84 USED_AT=1333268402.12 "
+      + "PATH=$3D6D7A5A3ACA04D4A4AA9EDE8D2D2E5C1E6E3A9A,"
+      + "$7A1E4F3EFEDBB41E1C9A9B3A1D2E5C6D7E8F9A0B "
+      + "BUILDTIMES=0.28,0.59 TIMEOUT=1500 QUANTILE=0.800000 CIRC_ID=1234 "
+      + "USED_BY=7";
+
+  private static List<Descriptor> parse(String results)
+      throws DescriptorParseException {
+    return TorperfResultImpl.parseTorperfResults(
+        results.getBytes(StandardCharsets.UTF_8), null);
+  }
+
+  private static TorperfResult parseOne(String results)
+      throws DescriptorParseException {
+    List<Descriptor> descriptors = parse(results);
+    assertEquals(1, descriptors.size());
+    return (TorperfResult) descriptors.get(0);
+  }
+
+  private static String rawString(Descriptor descriptor) {
+    return new String(descriptor.getRawDescriptorBytes(),
+        StandardCharsets.UTF_8);
+  }
+
+  private static String parseError(String results) {
+    return assertThrows(DescriptorParseException.class,
+        () -> parse(results)).getMessage();
+  }
+
+  @Test
+  void parsesRequiredAndOptionalKeys() throws DescriptorParseException {
+    TorperfResult result = parseOne("@type torperf 1.1\n" + REQUIRED_KEYS
+        + " " + OPTIONAL_KEYS + "\n");
+    assertEquals("torperf", result.getSource());
+    assertEquals(51200, result.getFileSize());
+    assertEquals(1333268401160L, result.getStartMillis());
+    assertEquals(1333268402120L, result.getDataCompleteMillis());
+    assertEquals(75, result.getWriteBytes());
+    assertEquals(51269, result.getReadBytes());
+    assertEquals(Boolean.FALSE, result.didTimeout());
+    assertEquals(Long.valueOf(1333268401630L),
+        result.getDataPercentiles().get(10));
+    assertEquals(Long.valueOf(1333268402070L),
+        result.getDataPercentiles().get(90));
+    assertEquals(1333268396840L, result.getLaunchMillis());
+    assertEquals(Arrays.asList("3D6D7A5A3ACA04D4A4AA9EDE8D2D2E5C1E6E3A9A",
+        "7A1E4F3EFEDBB41E1C9A9B3A1D2E5C6D7E8F9A0B"), result.getPath());
+    assertEquals(Arrays.asList(280L, 590L), result.getBuildTimes());
+    assertEquals(1500L, result.getTimeout());
+    assertEquals(0.8, result.getQuantile(), 0.0);
+    assertEquals(1234, result.getCircId());
+    assertEquals(7, result.getUsedBy());
+    assertNull(result.getUnrecognizedKeys());
+  }
+
+  @Test
+  void annotationOnlyBelongsToFollowingResult()
+      throws DescriptorParseException {
+    List<Descriptor> results = parse("@type torperf 1.1\n" + REQUIRED_KEYS
+        + "\n" + REQUIRED_KEYS.replace("SOURCE=torperf", "SOURCE=second")
+        + "\n");
+    assertEquals(2, results.size());
+    assertEquals(REQUIRED_KEYS + "\n", rawString(results.get(0)));
+    assertEquals(Arrays.asList("@type torperf 1.1"),
+        results.get(0).getAnnotations());
+    assertEquals("second", ((TorperfResult) results.get(1)).getSource());
+    assertTrue(results.get(1).getAnnotations().isEmpty());
+  }
+
+  @Test
+  void crlfLineEndingsAreRemoved() throws DescriptorParseException {
+    List<Descriptor> results = parse("@type torperf 1.1\r\n" + REQUIRED_KEYS
+        + "\r\n" + REQUIRED_KEYS + "\r\n");
+    assertEquals(2, results.size());
+    assertEquals(REQUIRED_KEYS + "\n", rawString(results.get(0)));
+    assertEquals(Arrays.asList("@type torperf 1.1"),
+        results.get(0).getAnnotations());
+    assertEquals(REQUIRED_KEYS + "\n", rawString(results.get(1)));
+    assertEquals(51269, ((TorperfResult) results.get(1)).getReadBytes());
+  }
+
+  @Test
+  void lastLineWithoutNewline() throws DescriptorParseException {
+    List<Descriptor> results = parse(REQUIRED_KEYS + "\n" + REQUIRED_KEYS);
+    assertEquals(2, results.size());
+    assertEquals(REQUIRED_KEYS + "\n", rawString(results.get(1)));
+  }
+
+  @Test
+  void oneLeadingLineBreakIsSkipped() throws DescriptorParseException {
+    assertEquals("torperf", parseOne("\n" + REQUIRED_KEYS).getSource());
+    assertEquals("torperf", parseOne("\r\n" + REQUIRED_KEYS).getSource());
+    assertEquals("Blank lines are not allowed.",
+        parseError("\n\n" + REQUIRED_KEYS));
+  }
+
+  @Test
+  void blankLinesAreRejected() {
+    assertEquals("Blank lines are not allowed.",
+        parseError(REQUIRED_KEYS + "\n\n" + REQUIRED_KEYS + "\n"));
+    assertEquals("Blank lines are not allowed.",
+        parseError(REQUIRED_KEYS + "\r\n\r\n" + REQUIRED_KEYS + "\r\n"));
+    assertEquals("Descriptor is empty.", parseError(""));
+  }
+
+  /* Lines starting with "@" other than a type annotation used to make the
+   * parser throw a NoSuchElementException, which escaped the parser.  They
+   * are rejected like blank lines now. */
+  @Test
+  void otherAnnotationLinesAreRejected() {
+    assertEquals("Blank lines are not allowed.",
+        parseError("@type torperf 1.1\n@source a\n" + REQUIRED_KEYS + "\n"));
+    assertEquals("Blank lines are not allowed.",
+        parseError("@source a\n" + REQUIRED_KEYS + "\n"));
+  }
+
+  @Test
+  void invalidTypeAnnotations() {
+    assertEquals("Illegal line '@type torperf 1.1 extra'.",
+        parseError("@type torperf 1.1 extra\n" + REQUIRED_KEYS + "\n"));
+    assertEquals("Unsupported version in  line '@type torperf 2.0'.",
+        parseError("@type torperf 2.0\n" + REQUIRED_KEYS + "\n"));
+  }
+
+  @Test
+  void nonAsciiLines() throws DescriptorParseException {
+    String line = REQUIRED_KEYS.replace("SOURCE=torperf",
+        "SOURCE=t\u00f6rperf\u20ac");
+    TorperfResult result = parseOne("@type torperf 1.1\n" + line + "\n");
+    assertEquals("t\u00f6rperf\u20ac", result.getSource());
+    assertArrayEquals((line + "\n").getBytes(StandardCharsets.UTF_8),
+        result.getRawDescriptorBytes());
+  }
+
+  @Test
+  void malformedUtf8IsReplaced() throws DescriptorParseException {
+    byte[] line = (REQUIRED_KEYS.replace("SOURCE=torperf", "SOURCE=t?rperf")
+        + "\n").getBytes(StandardCharsets.US_ASCII);
+    line["SOURCE=t".length()] = (byte) 0xff;
+    List<Descriptor> results = TorperfResultImpl.parseTorperfResults(line,
+        null);
+    assertEquals(1, results.size());
+    TorperfResult result = (TorperfResult) results.get(0);
+    assertEquals("t\ufffdrperf", result.getSource());
+    assertEquals(REQUIRED_KEYS.replace("SOURCE=torperf",
+        "SOURCE=t\ufffdrperf") + "\n", rawString(result));
+  }
+
+  /* Scanner#nextLine, which was used before, also ends lines at these
+   * characters, so that anything following them is ignored. */
+  @Test
+  void unicodeLineSeparatorsEndResultLines()
+      throws DescriptorParseException {
+    for (String separator : new String[] {"\r", "\u0085", "\u2028",
+        "\u2029"}) {
+      TorperfResult result = parseOne(REQUIRED_KEYS + separator
+          + "FILESIZE=1\n");
+      assertEquals(51200, result.getFileSize(), separator);
+    }
+  }
+
+  @Test
+  void eachMissingRequiredKeyIsReported() {
+    for (String pair : REQUIRED_KEYS.split(" ")) {
+      String key = pair.substring(0, pair.indexOf('='));
+      String line = REQUIRED_KEYS.replace(pair + " ", "")
+          .replace(" " + pair, "");
+      assertEquals("Key '" + key + "' is contained contained 0 times in "
+          + "line '" + line + "', but must be contained exactly once.",
+          parseError(line + "\n"));
+    }
+  }
+
+  @Test
+  void firstMissingRequiredKeyIsReported() {
+    assertEquals("Key 'WRITEBYTES' is contained contained 0 times in "
+        + "line 'SOURCE=torperf', but must be contained exactly once.",
+        parseError("SOURCE=torperf\n"));
+  }
+
+  @Test
+  void duplicateKeysAndIllegalValues() {
+    assertEquals("Key 'SOURCE' is contained at least twice in line '"
+        + REQUIRED_KEYS + " SOURCE=b', but must be contained at most once.",
+        parseError(REQUIRED_KEYS + " SOURCE=b\n"));
+    String line = REQUIRED_KEYS.replace("START=1333268401.16",
+        "START=13332684a1.16");
+    assertEquals("Illegal timestamp '13332684a1.16' in "
+        + "'START=13332684a1.16' in line '" + line + "'.",
+        parseError(line + "\n"));
+    line = REQUIRED_KEYS.replace("FILESIZE=51200", "FILESIZE=5k");
+    assertEquals("Illegal value in 'FILESIZE=5k' in line '" + line + "'.",
+        parseError(line + "\n"));
+    line = REQUIRED_KEYS + " NOVALUE";
+    assertEquals("Illegal key-value pair in line '" + line + "'.",
+        parseError(line + "\n"));
+  }
+}
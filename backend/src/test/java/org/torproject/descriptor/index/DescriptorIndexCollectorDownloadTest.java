@@ -0,0 +1,512 @@
+package org.torproject.descriptor.index;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DescriptorIndexCollectorDownloadTest {
+
+  private static final String LAST_MODIFIED = "2024-01-01 00:00";
+
+  private static final String[] REMOTE_DIRECTORIES =
+      new String[] {"/recent/relay-descriptors/"};
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void collectDescriptorsFetchesFilesInParallelWithinConnectionLimit()
+      throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    for (int i = 1; i <= 8; i++) {
+      files.put("descriptor-" + i, "content of descriptor " + i);
+    }
+    CollecTorStandIn server = new CollecTorStandIn(files);
+    /* Hold back the first two requests until both have arrived, which only
+     * happens if fetches overlap, and keep later requests open for a moment
+     * so that a third concurrent connection would be observed. */
+    CountDownLatch firstTwoRequests = new CountDownLatch(2);
+    server.beforeResponse = () -> {
+      firstTwoRequests.countDown();
+      if (!firstTwoRequests.await(10L, TimeUnit.SECONDS)) {
+        throw new IOException("Fetches did not overlap.");
+      }
+      Thread.sleep(50L);
+    };
+    File localDirectory = tempDir.toFile();
+    DescriptorIndexCollector collector = new DescriptorIndexCollector();
+    collector.setMaxDownloadThreads(4);
+    collector.setMaxConnectionsPerHost(2);
+
+    try {
+      server.start();
+      collector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES, 0L,
+          localDirectory, false);
+    } finally {
+      server.stop();
+    }
+
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      assertEquals(file.getValue(), readLocalFile(file.getKey()));
+      assertEquals(1, server.requests(file.getKey()));
+    }
+    assertEquals(0L, firstTwoRequests.getCount());
+    assertEquals(2, server.maxInFlight.get());
+    assertEquals(0, hiddenFiles().size());
+  }
+
+  @Test
+  void setMaxConnectionsPerHostIsRejectedAfterFirstCollection()
+      throws IOException {
+    CollecTorStandIn server = new CollecTorStandIn(
+        Collections.singletonMap("descriptor-1", "content of descriptor 1"));
+    DescriptorIndexCollector collector = new DescriptorIndexCollector();
+    collector.setMaxConnectionsPerHost(2);
+    collector.setMaxConnectionsPerHost(3);
+
+    try {
+      server.start();
+      collector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES, 0L,
+          tempDir.toFile(), false);
+    } finally {
+      server.stop();
+    }
+
+    assertEquals("content of descriptor 1", readLocalFile("descriptor-1"));
+    assertThrows(IllegalStateException.class,
+        () -> collector.setMaxConnectionsPerHost(1));
+    assertThrows(IllegalArgumentException.class,
+        () -> collector.setMaxConnectionsPerHost(0));
+  }
+
+  @Test
+  void collectDescriptorsFetchesFilesOneAfterAnotherByDefault()
+      throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    for (int i = 1; i <= 4; i++) {
+      files.put("descriptor-" + i, "content of descriptor " + i);
+    }
+    CollecTorStandIn server = new CollecTorStandIn(files);
+    server.beforeResponse = () -> Thread.sleep(20L);
+
+    try {
+      server.start();
+      new DescriptorIndexCollector().collectDescriptors(server.baseUrl(),
+          REMOTE_DIRECTORIES, 0L, tempDir.toFile(), false);
+    } finally {
+      server.stop();
+    }
+
+    for (Map.Entry<String, String> file : files.entrySet()) {
+      assertEquals(file.getValue(), readLocalFile(file.getKey()));
+    }
+    assertEquals(1, server.maxInFlight.get());
+  }
+
+  @Test
+  void collectDescriptorsRetriesFailedDownloadAndDropsWrongSize()
+      throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    files.put("flaky", "eventually served");
+    files.put("truncated", "never served completely");
+    CollecTorStandIn server = new CollecTorStandIn(files);
+    server.failFirstRequests.add("flaky");
+    server.truncated.add("truncated");
+    DescriptorIndexCollector collector = new DescriptorIndexCollector();
+    collector.setMaxDownloadThreads(2);
+    collector.setMaxRetries(1);
+    collector.setRetryBackoffMillis(10L);
+
+    try {
+      server.start();
+      collector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES, 0L,
+          tempDir.toFile(), false);
+    } finally {
+      server.stop();
+    }
+
+    assertEquals("eventually served", readLocalFile("flaky"));
+    assertFalse(Files.exists(localFile("truncated")));
+    assertEquals(2, server.requests("flaky"));
+    assertEquals(2, server.requests("truncated"));
+  }
+
+  @Test
+  void collectDescriptorsResumesInterruptedDownloadWithRangeRequest()
+      throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    files.put("archive.tar.xz", "0123456789abcdefghij");
+    CollecTorStandIn server = new CollecTorStandIn(files);
+    server.interruptFirstRequests.add("archive.tar.xz");
+    DescriptorIndexCollector collector = new DescriptorIndexCollector();
+    collector.setMaxRetries(1);
+    collector.setRetryBackoffMillis(10L);
+
+    try {
+      server.start();
+      collector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES, 0L,
+          tempDir.toFile(), false);
+    } finally {
+      server.stop();
+    }
+
+    assertEquals("0123456789abcdefghij", readLocalFile("archive.tar.xz"));
+    assertEquals(2, server.requests("archive.tar.xz"));
+    assertEquals(Collections.singletonList("bytes=8-"), server.ranges);
+  }
+
+  @Test
+  void collectDescriptorsKeepsPartialFileOfRecentDescriptors()
+      throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    files.put("archive.tar.xz", "0123456789abcdefghij");
+    CollecTorStandIn server = new CollecTorStandIn(files);
+    server.interruptFirstRequests.add("archive.tar.xz");
+
+    try {
+      server.start();
+      new DescriptorIndexCollector().collectDescriptors(server.baseUrl(),
+          REMOTE_DIRECTORIES, 0L, tempDir.toFile(), true);
+      assertFalse(Files.exists(localFile("archive.tar.xz")));
+      assertEquals("01234567", readLocalFile(".archive.tar.xz"));
+      new DescriptorIndexCollector().collectDescriptors(server.baseUrl(),
+          REMOTE_DIRECTORIES, 0L, tempDir.toFile(), true);
+    } finally {
+      server.stop();
+    }
+
+    assertEquals("0123456789abcdefghij", readLocalFile("archive.tar.xz"));
+    assertEquals(Collections.singletonList("bytes=8-"), server.ranges);
+    assertEquals(0, hiddenFiles().size());
+  }
+
+  @Test
+  void collectDescriptorsKeepsPartialFileOutOfLocalFileInventory()
+      throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    files.put("archive.tar.xz", "0123456789abcdefghij");
+    CollecTorStandIn server = new CollecTorStandIn(files);
+    server.interruptFirstRequests.add("archive.tar.xz");
+    File localDirectory = tempDir.resolve("local").toFile();
+    File inventoryFile = tempDir.resolve("inventory").toFile();
+    DescriptorIndexCollector collector = new DescriptorIndexCollector();
+    collector.setLocalFileInventory(
+        new LocalFileInventory(localDirectory, inventoryFile));
+
+    try {
+      server.start();
+      collector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES, 0L,
+          localDirectory, true);
+      assertTrue(Files.exists(localDirectory.toPath().resolve("recent")
+          .resolve("relay-descriptors").resolve(".archive.tar.xz")));
+      assertTrue(new LocalFileInventory(localDirectory, inventoryFile)
+          .refresh().isEmpty());
+      collector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES, 0L,
+          localDirectory, true);
+    } finally {
+      server.stop();
+    }
+
+    assertEquals(Collections.singletonList("bytes=8-"), server.ranges);
+    assertEquals(Collections.singleton("recent" + File.separator
+        + "relay-descriptors" + File.separator + "archive.tar.xz"),
+        new LocalFileInventory(localDirectory, inventoryFile).refresh()
+        .keySet());
+  }
+
+  @Test
+  void statLocalDirectoryLeavesOutTemporaryFiles() throws IOException {
+    Files.createDirectories(localFile(""));
+    Files.write(localFile("consensus"), new byte[1]);
+    Files.write(localFile(".consensus"), new byte[1]);
+
+    assertEquals(Collections.singleton("recent" + File.separator
+        + "relay-descriptors" + File.separator + "consensus"),
+        DescriptorIndexCollector.statLocalDirectory(tempDir.toFile())
+        .keySet());
+  }
+
+  @Test
+  void deleteExtraneousLocalFilesKeepsTemporaryFiles() throws IOException {
+    Files.createDirectories(localFile(""));
+    Files.write(localFile("extraneous"), new byte[1]);
+    Files.write(localFile(".partial"), new byte[1]);
+    SortedMap<String, Long> locals = new TreeMap<>();
+    locals.put("recent/relay-descriptors/extraneous", 0L);
+    locals.put("recent/relay-descriptors/.partial", 0L);
+
+    DescriptorIndexCollector.deleteExtraneousLocalFiles(REMOTE_DIRECTORIES,
+        new TreeMap<>(), tempDir.toFile(), locals);
+
+    assertFalse(Files.exists(localFile("extraneous")));
+    assertTrue(Files.exists(localFile(".partial")));
+  }
+
+  @Test
+  void collectDescriptorsRevalidatesPersistedIndex() throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    files.put("consensus", "content");
+    CollecTorStandIn server = new CollecTorStandIn(files);
+    File indexCacheFile = tempDir.resolve("index.json").toFile();
+    DescriptorIndexCollector firstCollector = new DescriptorIndexCollector();
+    firstCollector.setIndexCache(new IndexCache(indexCacheFile, 0L));
+    DescriptorIndexCollector secondCollector = new DescriptorIndexCollector();
+    secondCollector.setIndexCache(new IndexCache(indexCacheFile, 0L));
+
+    try {
+      server.start();
+      firstCollector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES,
+          0L, tempDir.toFile(), false);
+      Files.delete(localFile("consensus"));
+      secondCollector.collectDescriptors(server.baseUrl(), REMOTE_DIRECTORIES,
+          0L, tempDir.toFile(), false);
+    } finally {
+      server.stop();
+    }
+
+    assertEquals("content", readLocalFile("consensus"));
+    assertEquals(1, server.requests("index.json"));
+    assertEquals(1, server.requests("index.json (not modified)"));
+  }
+
+  @Test
+  void collectDescriptorsAbortsIfIndexCacheDoesNotKeepDirectory()
+      throws IOException {
+    CollecTorStandIn server = new CollecTorStandIn(
+        Collections.singletonMap("consensus", "content"));
+    Files.createDirectories(localFile(""));
+    Files.write(localFile("local"), "local".getBytes(StandardCharsets.UTF_8));
+    DescriptorIndexCollector otherDirectoryCollector =
+        new DescriptorIndexCollector();
+    otherDirectoryCollector.setIndexCache(new IndexCache(null, 0L,
+        "/recent/relay-descriptors/consensuses/"));
+    DescriptorIndexCollector sameDirectoryCollector =
+        new DescriptorIndexCollector();
+    sameDirectoryCollector.setIndexCache(new IndexCache(null, 0L,
+        "recent/relay-descriptors", "/archive/relay-descriptors/"));
+
+    try {
+      server.start();
+      otherDirectoryCollector.collectDescriptors(server.baseUrl(),
+          REMOTE_DIRECTORIES, 0L, tempDir.toFile(), true);
+      assertEquals(0, server.requests("index.json"));
+      assertEquals("local", readLocalFile("local"));
+      assertFalse(Files.exists(localFile("consensus")));
+      sameDirectoryCollector.collectDescriptors(server.baseUrl(),
+          REMOTE_DIRECTORIES, 0L, tempDir.toFile(), true);
+    } finally {
+      server.stop();
+    }
+
+    assertEquals(1, server.requests("index.json"));
+    assertEquals("content", readLocalFile("consensus"));
+    assertFalse(Files.exists(localFile("local")));
+  }
+
+  @Test
+  void indexCacheRejectsDirectoriesItDoesNotKeep() {
+    IndexCache indexCache = new IndexCache(null, 0L,
+        "/recent/relay-descriptors/");
+    assertThrows(IllegalArgumentException.class, () -> indexCache.fetchIndex(
+        "http://127.0.0.1:9/index/index.json", "/recent/relay-descriptors/",
+        "/recent/bridge-descriptors/"));
+    assertThrows(IllegalArgumentException.class, () -> indexCache.fetchIndex(
+        "http://127.0.0.1:9/index/index.json", "/recent/"));
+  }
+
+  private Path localFile(String name) {
+    return tempDir.resolve("recent").resolve("relay-descriptors")
+        .resolve(name);
+  }
+
+  private String readLocalFile(String name) throws IOException {
+    return new String(Files.readAllBytes(localFile(name)),
+        StandardCharsets.UTF_8);
+  }
+
+  private List<String> hiddenFiles() {
+    List<String> hiddenFiles = new ArrayList<>();
+    String[] names = localFile("").toFile().list();
+    if (null != names) {
+      for (String name : names) {
+        if (name.startsWith(".")) {
+          hiddenFiles.add(name);
+        }
+      }
+    }
+    return hiddenFiles;
+  }
+
+  private interface BeforeResponse {
+    void run() throws IOException, InterruptedException;
+  }
+
+  /**
+   * Serves a fake CollecTor index.json listing the given files in
+   * /recent/relay-descriptors/ and the files themselves, counts requests and
+   * concurrently served file requests, and collects range requests.
+   */
+  private static class CollecTorStandIn {
+
+    private final Map<String, String> files;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String, AtomicInteger> requests =
+        new ConcurrentHashMap<>();
+
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final Set<String> failFirstRequests = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> truncated = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> interruptFirstRequests =
+        ConcurrentHashMap.newKeySet();
+
+    private BeforeResponse beforeResponse = () -> { };
+
+    private CollecTorStandIn(Map<String, String> files) throws IOException {
+      this.files = files;
+      this.server = HttpServer.create(
+          new InetSocketAddress("127.0.0.1", 0), 0);
+      this.server.setExecutor(this.executor);
+      this.server.createContext("/index/index.json", this::serveIndex);
+      this.server.createContext("/recent/relay-descriptors/",
+          this::serveFile);
+    }
+
+    private String baseUrl() {
+      return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    private void start() {
+      this.server.start();
+    }
+
+    private void stop() {
+      this.server.stop(0);
+      this.executor.shutdownNow();
+    }
+
+    private int requests(String name) {
+      AtomicInteger count = this.requests.get(name);
+      return null == count ? 0 : count.get();
+    }
+
+    private int countRequest(String name) {
+      return this.requests.computeIfAbsent(name, n -> new AtomicInteger())
+          .incrementAndGet();
+    }
+
+    private void serveIndex(HttpExchange exchange) throws IOException {
+      if ("\"index\"".equals(
+          exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        this.countRequest("index.json (not modified)");
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+      this.countRequest("index.json");
+      StringBuilder fileNodes = new StringBuilder();
+      for (Map.Entry<String, String> file : this.files.entrySet()) {
+        fileNodes.append(fileNodes.length() > 0 ? "," : "")
+            .append("{\"path\":\"").append(file.getKey())
+            .append("\",\"size\":").append(file.getValue().length())
+            .append(",\"last_modified\":\"").append(LAST_MODIFIED)
+            .append("\"}");
+      }
+      byte[] body = ("{\"index_created\":\"" + LAST_MODIFIED + "\","
+          + "\"path\":\"" + this.baseUrl() + "\",\"directories\":[{\"path\":"
+          + "\"recent\",\"directories\":[{\"path\":\"relay-descriptors\","
+          + "\"files\":[" + fileNodes + "]}]}]}")
+          .getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("ETag", "\"index\"");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    }
+
+    private void serveFile(HttpExchange exchange) throws IOException {
+      int current = this.inFlight.incrementAndGet();
+      this.maxInFlight.accumulateAndGet(current, Math::max);
+      try {
+        this.beforeResponse.run();
+        this.respond(exchange);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        exchange.close();
+      } finally {
+        this.inFlight.decrementAndGet();
+      }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+      String path = exchange.getRequestURI().getPath();
+      String name = path.substring(path.lastIndexOf('/') + 1);
+      int count = this.countRequest(name);
+      String content = this.files.get(name);
+      if (null == content
+          || (this.failFirstRequests.contains(name) && count == 1)) {
+        exchange.sendResponseHeaders(500, -1);
+        exchange.close();
+        return;
+      }
+      byte[] body = (this.truncated.contains(name) ? content.substring(1)
+          : content).getBytes(StandardCharsets.UTF_8);
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      if (null != range) {
+        this.ranges.add(range);
+        int from = Integer.parseInt(range.substring("bytes=".length(),
+            range.length() - 1));
+        exchange.getResponseHeaders().add("Content-Range",
+            "bytes " + from + "-" + (body.length - 1) + "/" + body.length);
+        exchange.sendResponseHeaders(206, body.length - from);
+        try (OutputStream os = exchange.getResponseBody()) {
+          os.write(body, from, body.length - from);
+        }
+      } else if (this.interruptFirstRequests.contains(name) && count == 1) {
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body, 0, 8);
+        exchange.close();
+      } else {
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+          os.write(body);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package org.torproject.descriptor.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexNodeTest {
+
+  /* An index whose directory objects list files and subdirectories before
+   * or after their path, with unknown fields in between, and with files in
+   * ancestor directories of requested directories. */
+  private static final String INDEX = "{"
+      + "\"directories\":["
+      + "{\"files\":[" + file("recent-file", 1) + "],"
+      + "\"directories\":["
+      + "{\"directories\":[{\"path\":\"consensuses\",\"files\":["
+      + file("2024-01-01-00-00-00-consensus", 2) + ","
+      + file("2024-01-01-01-00-00-consensus", 3) + "]},"
+      + "{\"files\":[" + file("2024-01-01-00-00-00-vote", 4) + "],"
+      + "\"path\":\"votes\"}],"
+      + "\"unknown\":{\"files\":[],\"path\":\"unknown\"},"
+      + "\"files\":[" + file("relay-descriptors-file", 5) + "],"
+      + "\"path\":\"relay-descriptors\"},"
+      + "{\"path\":\"bridge-descriptors\",\"files\":["
+      + file("bridge-file", 6) + "]}],"
+      + "\"path\":\"recent\"},"
+      + "{\"path\":\"archive\",\"directories\":["
+      + "{\"path\":\"relay-descriptors\",\"files\":[" + file("consensuses-2024-01.tar.xz", 7) + "]}]}],"
+      + "\"path\":\"https://collector.torproject.org\","
+      + "\"index_created\":\"2024-01-01 02:00\","
+      + "\"build_revision\":\"abc123\","
+      + "\"files\":[" + file("top-file", 8) + "]}";
+
+  private static final String[][] REQUESTED_DIRECTORIES = new String[][] {
+      {"/recent/relay-descriptors/consensuses/"},
+      {"recent/relay-descriptors/votes"},
+      {"/recent/relay-descriptors/"},
+      {"/recent/"},
+      {"/recent/bridge-descriptors/", "/archive/relay-descriptors/"},
+      {"/recent/relay-descriptors/consensuses/",
+          "/recent/relay-descriptors/votes/"}};
+
+  private static String file(String path, int size) {
+    return "{\"path\":\"" + path + "\",\"size\":" + size
+        + ",\"last_modified\":\"2024-01-01 0" + size % 10 + ":00\"}";
+  }
+
+  private static InputStream index() {
+    return new ByteArrayInputStream(INDEX.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /* FileNode does not implement equals, so compare file paths, sizes, and
+   * last-modified times. */
+  private static List<String> describe(SortedMap<String, FileNode> files) {
+    List<String> described = new ArrayList<>();
+    for (Map.Entry<String, FileNode> file : files.entrySet()) {
+      described.add(file.getKey() + " " + file.getValue().path + " "
+          + file.getValue().size + " " + file.getValue().lastModified);
+    }
+    return described;
+  }
+
+  private static List<String> paths(SortedSet<DirectoryNode> directories) {
+    List<String> paths = new ArrayList<>();
+    for (DirectoryNode directory : directories) {
+      paths.add(directory.path);
+    }
+    return paths;
+  }
+
+  @Test
+  void streamedIndexReturnsSameFilesAsCompleteIndex() throws IOException {
+    IndexNode completeIndex = IndexNode.fetchIndex(index());
+    for (String[] requested : REQUESTED_DIRECTORIES) {
+      IndexNode streamedIndex = IndexNode.fetchIndex(index(), requested);
+      List<String> expected = describe(
+          completeIndex.retrieveFilesIn(requested));
+      assertFalse(expected.isEmpty(), String.join(",", requested));
+      assertEquals(expected, describe(streamedIndex.retrieveFilesIn(
+          requested)), String.join(",", requested));
+      assertEquals(completeIndex.created, streamedIndex.created);
+      assertEquals(completeIndex.revision, streamedIndex.revision);
+      assertEquals(completeIndex.path, streamedIndex.path);
+    }
+  }
+
+  @Test
+  void filesAndDirectoriesBeforePathAreRead() throws IOException {
+    IndexNode index = IndexNode.fetchIndex(index(),
+        "/recent/relay-descriptors/votes/");
+    DirectoryNode relayDescriptors = IndexNode.findPathIn(
+        "relay-descriptors", IndexNode.findPathIn("recent",
+        index.directories).directories);
+    assertEquals("relay-descriptors-file",
+        relayDescriptors.files.first().path);
+    assertEquals(5L, relayDescriptors.files.first().size);
+    DirectoryNode votes = IndexNode.findPathIn("votes",
+        relayDescriptors.directories);
+    assertEquals("2024-01-01-00-00-00-vote", votes.files.first().path);
+    assertEquals("2024-01-01 04:00", votes.files.first().lastModified);
+  }
+
+  @Test
+  void unrequestedSiblingsAreSkippedAndAncestorFilesKept()
+      throws IOException {
+    IndexNode index = IndexNode.fetchIndex(index(),
+        "/recent/relay-descriptors/consensuses/");
+    assertEquals(1, index.directories.size());
+    DirectoryNode recent = IndexNode.findPathIn("recent", index.directories);
+    assertEquals("recent-file", recent.files.first().path);
+    assertEquals(1, recent.files.size());
+    assertEquals(1, recent.directories.size());
+    assertNull(IndexNode.findPathIn("bridge-descriptors",
+        recent.directories));
+    DirectoryNode relayDescriptors = IndexNode.findPathIn(
+        "relay-descriptors", recent.directories);
+    assertEquals("relay-descriptors-file",
+        relayDescriptors.files.first().path);
+    List<String> subdirectories = paths(relayDescriptors.directories);
+    assertEquals(1, subdirectories.size());
+    assertEquals("consensuses", subdirectories.get(0));
+    assertNull(IndexNode.findPathIn("archive", index.directories));
+    assertTrue(index.files.isEmpty());
+  }
+
+  @Test
+  void noRequestedDirectoriesReadCompleteIndex() throws IOException {
+    for (String[] requested : new String[][] {{}, {"", "/"}, null}) {
+      IndexNode index = IndexNode.fetchIndex(index(), requested);
+      assertEquals("top-file", index.files.first().path);
+      assertEquals(2, index.directories.size());
+      assertEquals(describe(IndexNode.fetchIndex(index()).retrieveFilesIn(
+          "/archive/relay-descriptors/")), describe(index.retrieveFilesIn(
+          "/archive/relay-descriptors/")));
+    }
+  }
+
+  @Test
+  void indexMustBeJsonObject() {
+    assertThrows(IOException.class, () -> IndexNode.fetchIndex(
+        new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)),
+        "/recent/"));
+  }
+}
@@ -0,0 +1,110 @@
+package org.torproject.descriptor.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileTypeTest {
+
+  private static final FileType[] COMPRESSING_TYPES =
+      new FileType[] {FileType.BZ2, FileType.GZ, FileType.XZ};
+
+  private static byte[] withNulBytes() {
+    return ("router a\0\0 1.2.3.4\n\0published \0\n\0")
+        .getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /* Random bytes, including 0x00, that don't compress and therefore make
+   * the decompression buffer grow several times. */
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(4711L).nextBytes(bytes);
+    bytes[0] = 0;
+    bytes[length - 1] = 0;
+    return bytes;
+  }
+
+  @Test
+  void compressAndDecompressRoundTripWithNulBytes() throws Exception {
+    for (FileType fileType : COMPRESSING_TYPES) {
+      byte[] original = withNulBytes();
+      byte[] compressed = fileType.compress(original);
+      assertFalse(Arrays.equals(original, compressed));
+      assertArrayEquals(original, fileType.decompress(compressed),
+          fileType.name());
+    }
+  }
+
+  @Test
+  void compressAndDecompressRoundTripLargeIncompressibleInput()
+      throws Exception {
+    for (FileType fileType : COMPRESSING_TYPES) {
+      byte[] original = randomBytes(300_000);
+      assertArrayEquals(original,
+          fileType.decompress(fileType.compress(original)), fileType.name());
+    }
+  }
+
+  @Test
+  void compressAndDecompressRoundTripHighlyCompressibleInput()
+      throws Exception {
+    for (FileType fileType : COMPRESSING_TYPES) {
+      byte[] original = new byte[1_000_000];
+      assertArrayEquals(original,
+          fileType.decompress(fileType.compress(original)), fileType.name());
+    }
+  }
+
+  @Test
+  void compressAndDecompressRoundTripEmptyInput() throws Exception {
+    for (FileType fileType : COMPRESSING_TYPES) {
+      assertArrayEquals(new byte[0],
+          fileType.decompress(fileType.compress(new byte[0])),
+          fileType.name());
+    }
+  }
+
+  @Test
+  void decompressReadsStreamsWrittenThroughOutputStream() throws Exception {
+    for (FileType fileType : COMPRESSING_TYPES) {
+      byte[] original = randomBytes(50_000);
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try (OutputStream os = fileType.compress(baos)) {
+        os.write(original);
+      }
+      assertArrayEquals(original, fileType.decompress(baos.toByteArray()),
+          fileType.name());
+      try (InputStream is = fileType.decompress(
+          new ByteArrayInputStream(baos.toByteArray()))) {
+        assertArrayEquals(original, is.readAllBytes(), fileType.name());
+      }
+    }
+  }
+
+  @Test
+  void plainTypesLeaveBytesUnchanged() throws Exception {
+    for (FileType fileType : new FileType[] {FileType.PLAIN,
+        FileType.JSON}) {
+      byte[] original = withNulBytes();
+      assertArrayEquals(original, fileType.compress(original));
+      assertArrayEquals(original, fileType.decompress(original));
+    }
+  }
+
+  @Test
+  void findTypeFallsBackToPlain() {
+    assertEquals(FileType.BZ2, FileType.findType("bz2"));
+    assertEquals(FileType.GZ, FileType.findType("GZ"));
+    assertEquals(FileType.XZ, FileType.findType("xz"));
+    assertEquals(FileType.PLAIN, FileType.findType("tar"));
+    assertEquals(FileType.PLAIN, FileType.findType(null));
+  }
+}
@@ -0,0 +1,87 @@
+package org.torproject.descriptor.log;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.DescriptorParseException;
+import org.torproject.descriptor.WebServerAccessLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebServerAccessLogImplTest {
+
+  private static final String LOG_NAME = "metrics.torproject.org_"
+      + "meronense.torproject.org_access.log_20170920.gz";
+
+  /* More than three chunks of lines, so that a parallel stream splits off
+   * several chunks and a rest. */
+  private static final int LINES = 3 * 8192 + 100;
+
+  private static String request(int index) {
+    return "/" + index;
+  }
+
+  /* Every tenth line is invalid and filtered out. */
+  private static WebServerAccessLogImpl log()
+      throws DescriptorParseException, IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < LINES; i++) {
+      if (i % 10 == 9) {
+        sb.append("invalid ").append(i).append('\n');
+      } else {
+        sb.append("0.0.0.0 - - [20/Sep/2017:00:00:00 +0000] \"GET ")
+            .append(request(i)).append(" HTTP/1.1\" 200 -\n");
+      }
+    }
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream os = new GZIPOutputStream(baos)) {
+      os.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+    return new WebServerAccessLogImpl(baos.toByteArray(), LOG_NAME, false);
+  }
+
+  private static List<String> expectedRequests() {
+    return IntStream.range(0, LINES).filter(i -> i % 10 != 9)
+        .mapToObj(WebServerAccessLogImplTest::request)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void sequentialStreamReturnsLinesInOrder()
+      throws DescriptorParseException, IOException {
+    try (Stream<WebServerAccessLog.Line> lines = log().logLines()) {
+      assertEquals(expectedRequests(), lines
+          .map(WebServerAccessLog.Line::getRequest)
+          .collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  void parallelStreamKeepsLineOrderAcrossChunks()
+      throws DescriptorParseException, IOException {
+    WebServerAccessLogImpl log = log();
+    for (int run = 0; run < 5; run++) {
+      try (Stream<WebServerAccessLog.Line> lines = log.logLines()) {
+        assertEquals(expectedRequests(), lines.parallel()
+            .map(WebServerAccessLog.Line::getRequest)
+            .collect(Collectors.toList()));
+      }
+    }
+  }
+
+  @Test
+  void parallelStreamCountsAllValidLines()
+      throws DescriptorParseException, IOException {
+    try (Stream<WebServerAccessLog.Line> lines = log().logLines()) {
+      assertEquals(expectedRequests().size(), lines.parallel().count());
+    }
+  }
+}
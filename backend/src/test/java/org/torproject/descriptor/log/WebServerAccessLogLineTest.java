@@ -0,0 +1,126 @@
+package org.torproject.descriptor.log;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.Method;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebServerAccessLogLineTest {
+
+  private static final String LINE = "0.0.0.0 - - [20/Sep/2017:00:00:00 "
+      + "+0000] \"GET / HTTP/1.1\" 200 -";
+
+  /* Lines in the usual shape, which are parsed by hand, and their log
+   * strings. */
+  private static final String[][] USUAL_LINES = new String[][] {
+      {LINE, LINE},
+      {"10.11.222.1 a b [20/Sep/2017:00:00:00 +0000] \"HEAD / HTTP/1.0\" "
+          + "404 1234", "10.11.222.1 - - [20/Sep/2017:00:00:00 +0000] "
+          + "\"HEAD / HTTP/1.0\" 404 1234"},
+      {LINE.replace("GET / ", "POST /a b\t\u00e9 "),
+          LINE.replace("GET / ", "POST /a b\t\u00e9 ")},
+      {LINE.replace(" 200 -", " 200 999999999 \"-\" \"agent\""),
+          LINE.replace(" 200 -", " 200 999999999")},
+      {LINE.replace("00:00:00 +0000", "00:30:00 +0100"),
+          LINE.replace("20/Sep", "19/Sep")},
+      {LINE.replace("00:00:00 +0000", "23:30:00 -0100"),
+          LINE.replace("20/Sep", "21/Sep")},
+      {LINE.replace("20/Sep/2017", "31/Dec/2017")
+          .replace("00:00:00 +0000", "23:00:00 -1759"),
+          LINE.replace("20/Sep/2017", "01/Jan/2018")},
+      {LINE.replace("20/Sep/2017", "29/Feb/2016"),
+          LINE.replace("20/Sep/2017", "29/Feb/2016")}};
+
+  /* Lines that the hand-written parser hands back to the regular
+   * expression, and their log strings, which are empty for invalid lines.
+   * The regular expression and date-time formatter accept some of them
+   * and resolve dates and times in their own way. */
+  private static final String[][] REGEX_LINES = new String[][] {
+      /* Whitespace other than spaces. */
+      {LINE.replace("- - [", "a\u000bb - ["), ""},
+      {LINE.replace("- - [", "a\u2003b - ["), LINE},
+      {LINE.replace("- - [", "-\t- ["), ""},
+      {LINE.replace("00 +0000", "00\t+0000"), ""},
+      /* Invalid dates. */
+      {LINE.replace("20/Sep", "31/Sep"), LINE.replace("20/Sep", "30/Sep")},
+      {LINE.replace("20/Sep/2017", "29/Feb/2017"),
+          LINE.replace("20/Sep/2017", "28/Feb/2017")},
+      {LINE.replace("20/Sep", "00/Sep"), ""},
+      {LINE.replace("20/Sep", "32/Sep"), ""},
+      {LINE.replace("Sep", "sep"), ""},
+      {LINE.replace("2017", "0000"), ""},
+      /* Invalid times. */
+      {LINE.replace("2017:00:00:00", "2017:24:00:00"),
+          LINE.replace("20/Sep", "21/Sep")},
+      {LINE.replace("2017:00:00:00", "2017:23:60:00"), ""},
+      {LINE.replace("2017:00:00:00", "2017:23:00:60"), ""},
+      /* Time zone offsets out of the usual range. */
+      {LINE.replace("+0000", "+1800"), LINE.replace("20/Sep", "19/Sep")},
+      {LINE.replace("+0000", "-1800"), LINE},
+      {LINE.replace("+0000", "+1900"), ""},
+      {LINE.replace("+0000", "+0060"), ""},
+      {LINE.replace("+0000", "*0000"), ""},
+      /* Sizes that may not fit into an int. */
+      {LINE.replace(" 200 -", " 200 1234567890"),
+          LINE.replace(" 200 -", " 200 1234567890")},
+      {LINE.replace(" 200 -", " 200 01234567890"),
+          LINE.replace(" 200 -", " 200 1234567890")},
+      {LINE.replace(" 200 -", " 200 12345678901"), ""},
+      /* Unknown methods. */
+      {LINE.replace("GET", "PUT"), ""},
+      {LINE.replace("GET", "get"), ""},
+      /* Invalid protocols. */
+      {LINE.replace("HTTP/1.1", "HTTP/11"), ""},
+      {LINE.replace("HTTP/1.1", "http/1.1"), ""},
+      {LINE.replace("HTTP/1.1", "HTTP/1.1 "), ""},
+      {LINE.replace("HTTP/1.1", "HTTP-1.1"), ""},
+      {LINE.replace("\"GET / HTTP/1.1\"", "\"GET / HTTP/1.1"), ""},
+      /* Other deviations. */
+      {LINE.replace("0.0.0.0", "0000.0.0.0"), ""},
+      {LINE.replace(" 200 ", " 20 "), ""},
+      {"", ""}};
+
+  @Test
+  void usualLinesAreParsedByHand() {
+    for (String[] usualLine : USUAL_LINES) {
+      WebServerAccessLogLine line
+          = WebServerAccessLogLine.parseUsualLine(usualLine[0]);
+      assertNotNull(line, usualLine[0]);
+      assertTrue(line.isValid(), usualLine[0]);
+      assertEquals(usualLine[1], line.toLogString(), usualLine[0]);
+      assertEquals(WebServerAccessLogLine.matchLine(usualLine[0]), line,
+          usualLine[0]);
+    }
+  }
+
+  @Test
+  void usualLineFields() {
+    WebServerAccessLogLine line = WebServerAccessLogLine.makeLine(
+        "10.11.222.1 - - [20/Sep/2017:23:59:59 -0100] "
+        + "\"HEAD /a b HTTP/1.0\" 404 1234");
+    assertEquals("10.11.222.1", line.getIp());
+    assertEquals(LocalDate.of(2017, 9, 21), line.getDate());
+    assertEquals(Method.HEAD, line.getMethod());
+    assertEquals("/a b", line.getRequest());
+    assertEquals("HTTP/1.0", line.getProtocol());
+    assertEquals(404, line.getResponse());
+    assertEquals(Optional.of(1234), line.getSize());
+    assertEquals(Optional.empty(),
+        WebServerAccessLogLine.makeLine(LINE).getSize());
+  }
+
+  @Test
+  void otherLinesAreHandedToRegex() {
+    for (String[] regexLine : REGEX_LINES) {
+      assertNull(WebServerAccessLogLine.parseUsualLine(regexLine[0]),
+          regexLine[0]);
+      WebServerAccessLogLine line
+          = WebServerAccessLogLine.makeLine(regexLine[0]);
+      assertEquals(!regexLine[1].isEmpty(), line.isValid(), regexLine[0]);
+      assertEquals(regexLine[1], line.toLogString(), regexLine[0]);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package org.torproject.descriptor.onionperf;
+
+import org.junit.jupiter.api.Test;
+import org.torproject.descriptor.Descriptor;
+import org.torproject.descriptor.DescriptorParseException;
+import org.torproject.descriptor.TorperfResult;
+import org.torproject.descriptor.impl.TorperfResultImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Converts sample OnionPerf analysis documents and compares the converted
+ * Torperf results with the output recorded from the converter before it
+ * started to parse documents as a stream and to parse each result on its
+ * own.
+ *
+ * <p>Each sample document in {@code onionperf/} has a {@code .expected}
+ * file next to it, which contains the raw descriptor bytes of all
+ * converted results in their original order.</p>
+ */
+class OnionPerfAnalysisConverterTest {
+
+  private static final String DIRECTORY =
+      "/org/torproject/descriptor/onionperf/";
+
+  /* Source with a transfer that lacks the keys which Torperf results
+   * require, so that converting it fails. */
+  private static final String UNCONVERTIBLE_SOURCE = "\"op-bad\": {\"tgen\": "
+      + "{\"transfers\": {\"t:1\": {\"endpoint_local\": "
+      + "\"localhost:127.0.0.1:40000\", \"is_error\": false, "
+      + "\"unix_ts_end\": 1600000002.5, \"unix_ts_start\": 1600000001.0}}}}";
+
+  private static final List<Function<TorperfResult, Object>> GETTERS =
+      Arrays.asList(TorperfResult::getSource, TorperfResult::getSourceAddress,
+      TorperfResult::getFileSize, TorperfResult::getStartMillis,
+      TorperfResult::getSocketMillis, TorperfResult::getDataCompleteMillis,
+      TorperfResult::getReadBytes, TorperfResult::getWriteBytes,
+      TorperfResult::getPartials, TorperfResult::getDataPercentiles,
+      TorperfResult::getLaunchMillis, TorperfResult::getUsedAtMillis,
+      TorperfResult::getPath, TorperfResult::getBuildTimes,
+      TorperfResult::getCircId, TorperfResult::getUsedBy,
+      TorperfResult::getEndpointLocal, TorperfResult::getHostnameRemote,
+      TorperfResult::getErrorCode, TorperfResult::getUnrecognizedKeys,
+      TorperfResult::getAnnotations, TorperfResult::getUnrecognizedLines);
+
+  private static byte[] readResource(String name) throws IOException {
+    try (InputStream is = OnionPerfAnalysisConverterTest.class
+        .getResourceAsStream(DIRECTORY + name)) {
+      return is.readAllBytes();
+    }
+  }
+
+  private static List<Descriptor> convert(byte[] document)
+      throws DescriptorParseException {
+    return new OnionPerfAnalysisConverter(null, null).asTorperfResults(
+        new ByteArrayInputStream(document));
+  }
+
+  private static List<Descriptor> convert(String document)
+      throws DescriptorParseException {
+    return convert(document.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String conversionError(String document) {
+    return assertThrows(DescriptorParseException.class,
+        () -> convert(document)).getMessage();
+  }
+
+  private static void assertConverted(String name)
+      throws IOException, DescriptorParseException {
+    List<Descriptor> converted = convert(readResource(name));
+    ByteArrayOutputStream rawDescriptorBytes = new ByteArrayOutputStream();
+    ByteArrayOutputStream formattedResults = new ByteArrayOutputStream();
+    for (Descriptor descriptor : converted) {
+      assertTrue(descriptor instanceof TorperfResult,
+          descriptor.getClass().getName());
+      rawDescriptorBytes.write(descriptor.getRawDescriptorBytes());
+      for (String annotation : descriptor.getAnnotations()) {
+        formattedResults.write((annotation + "\r\n").getBytes(
+            StandardCharsets.UTF_8));
+      }
+      formattedResults.write(descriptor.getRawDescriptorBytes());
+    }
+    assertEquals(new String(readResource(name + ".expected"),
+        StandardCharsets.UTF_8), rawDescriptorBytes.toString(
+        StandardCharsets.UTF_8.name()));
+
+    /* Parsing all formatted results at once, as the converter did before,
+     * gives the same results as parsing them one by one. */
+    List<Descriptor> parsedAtOnce = TorperfResultImpl.parseTorperfResults(
+        formattedResults.toByteArray(), null);
+    assertEquals(parsedAtOnce.size(), converted.size());
+    for (int i = 0; i < converted.size(); i++) {
+      assertArrayEquals(parsedAtOnce.get(i).getRawDescriptorBytes(),
+          converted.get(i).getRawDescriptorBytes());
+      for (int j = 0; j < GETTERS.size(); j++) {
+        assertEquals(GETTERS.get(j).apply((TorperfResult) parsedAtOnce.get(i)),
+            GETTERS.get(j).apply((TorperfResult) converted.get(i)),
+            name + " " + i + " " + j);
+      }
+    }
+  }
+
+  @Test
+  void transfers() throws IOException, DescriptorParseException {
+    assertConverted("transfers.json");
+  }
+
+  @Test
+  void tgenStreams() throws IOException, DescriptorParseException {
+    assertConverted("streams.json");
+  }
+
+  @Test
+  void filteredCircuitsAreSkipped()
+      throws IOException, DescriptorParseException {
+    for (Descriptor descriptor : convert(readResource("transfers.json"))) {
+      assertNotEquals("localhost:127.0.0.1:40002",
+          ((TorperfResult) descriptor).getEndpointLocal());
+    }
+  }
+
+  @Test
+  void conversionError() {
+    assertTrue(conversionError("{\"data\": {" + UNCONVERTIBLE_SOURCE
+        + "}, \"type\": \"onionperf\", \"version\": \"2.0\"}")
+        .startsWith("Key 'WRITEBYTES' is contained contained 0 times"));
+  }
+
+  /* Type and version are verified after converting measurement data that
+   * comes before them, but their errors are still reported instead of
+   * conversion errors. */
+  @Test
+  void typeAndVersionErrorsWinOverConversionErrors() {
+    assertEquals("Parsed OnionPerf analysis file does not contain type "
+        + "information.", conversionError("{\"data\": {"
+        + UNCONVERTIBLE_SOURCE + "}, \"version\": \"3.0\"}"));
+    assertEquals("Parsed OnionPerf analysis file does not contain version "
+        + "information.", conversionError("{\"data\": {"
+        + UNCONVERTIBLE_SOURCE + "}, \"type\": \"onionperf\"}"));
+    assertEquals("Parsed OnionPerf analysis file contains unsupported "
+        + "version 4.0.", conversionError("{\"data\": {"
+        + UNCONVERTIBLE_SOURCE + "}, \"type\": \"onionperf\", "
+        + "\"version\": \"4.0\"}"));
+    assertEquals("Parsed OnionPerf analysis file contains unsupported "
+        + "version 4.0.", conversionError("{\"type\": \"onionperf\", "
+        + "\"version\": 4.0, \"data\": {" + UNCONVERTIBLE_SOURCE + "}}"));
+  }
+
+  @Test
+  void documentsWithoutResultsAreEmpty() {
+    for (String document : new String[] {
+        "{\"type\": \"onionperf\", \"version\": \"3.0\", \"data\": "
+        + "{\"op-de\": {\"tgen\": {\"transfers\": {}}}}}",
+        "{\"type\": \"onionperf\", \"version\": \"3.0\", \"data\": "
+        + "{\"op-de\": {\"measurement_ip\": \"unknown\"}}}",
+        "{\"type\": \"onionperf\", \"version\": \"3.0\", \"data\": "
+        + "{\"op-de\": null}}",
+        "{\"type\": \"onionperf\", \"version\": \"3.0\"}"}) {
+      assertEquals("Descriptor is empty.", conversionError(document),
+          document);
+    }
+  }
+
+  @Test
+  void malformedDocumentsAreUnparseable() {
+    for (String document : new String[] {"", "[]", "{\"type\": "
+        + "\"onionperf\", \"version\": \"3.0\", \"data\": {\"op-de\": "
+        + "{\"tgen\": "}) {
+      DescriptorParseException exception = assertThrows(
+          DescriptorParseException.class, () -> convert(document));
+      assertEquals("Ran into an I/O error while attempting to parse an "
+          + "OnionPerf analysis document.", exception.getMessage());
+      assertTrue(exception.getCause() instanceof IOException);
+    }
+  }
+
+  /* Results of sources without measurement data are left out, rather than
+   * failing the whole document. */
+  @Test
+  void sourcesWithoutMeasurementDataAreSkipped()
+      throws IOException, DescriptorParseException {
+    String document = new String(readResource("transfers.json"),
+        StandardCharsets.UTF_8).replaceFirst("\"data\": \\{",
+        "\"data\": {\"op-null\": null, ");
+    List<String> sources = new ArrayList<>();
+    for (Descriptor descriptor : convert(document)) {
+      sources.add(((TorperfResult) descriptor).getSource());
+    }
+    assertEquals(Arrays.asList("op-nl", "op-nl", "op-hk"), sources);
+  }
+}
@@ -0,0 +1,86 @@
+package org.torproject.descriptor.onionperf;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParsedOnionPerfAnalysisTest {
+
+  private static final String DATA = "\"data\": {\"op-nl\": "
+      + "{\"measurement_ip\": \"192.0.2.1\", \"tgen\": {\"transfers\": "
+      + "{\"t:1\": {\"filesize_bytes\": 51200, \"unknown\": [1, {\"a\": 2}]}}},"
+      + " \"tor\": {\"streams\": {\"7\": {\"source\": \"127.0.0.1:40000\"}}}},"
+      + " \"op-null\": null, \"op-hk\": {\"tgen\": {\"streams\": {\"s:1\": "
+      + "{\"byte_info\": {\"total-bytes-recv\": \"51269\"}}}}}}";
+
+  private final List<String> nicknames = new ArrayList<>();
+
+  private final List<ParsedOnionPerfAnalysis.MeasurementData> measurements =
+      new ArrayList<>();
+
+  private ParsedOnionPerfAnalysis parse(String document) throws IOException {
+    InputStream inputStream = new ByteArrayInputStream(
+        document.getBytes(StandardCharsets.UTF_8));
+    return ParsedOnionPerfAnalysis.fromInputStream(inputStream,
+        (nickname, measurementData) -> {
+          this.nicknames.add(nickname);
+          this.measurements.add(measurementData);
+        });
+  }
+
+  private void assertMeasurements() {
+    assertEquals(Arrays.asList("op-nl", "op-hk"), this.nicknames);
+    ParsedOnionPerfAnalysis.MeasurementData nl = this.measurements.get(0);
+    assertEquals("192.0.2.1", nl.measurementIp);
+    assertEquals(51200, (int) nl.tgen.transfers.get("t:1").filesizeBytes);
+    assertEquals("127.0.0.1:40000", nl.tor.streams.get("7").source);
+    ParsedOnionPerfAnalysis.MeasurementData hk = this.measurements.get(1);
+    assertNull(hk.measurementIp);
+    assertNull(hk.tor);
+    assertEquals("51269",
+        hk.tgen.streams.get("s:1").byteInfo.totalBytesRecv);
+  }
+
+  @Test
+  void typeAndVersionAfterData() throws IOException {
+    ParsedOnionPerfAnalysis parsed = this.parse("{" + DATA
+        + ", \"type\": \"onionperf\", \"version\": \"3.0\"}");
+    assertEquals("onionperf", parsed.type);
+    assertEquals("3.0", parsed.version);
+    assertMeasurements();
+  }
+
+  @Test
+  void typeAndVersionBeforeData() throws IOException {
+    ParsedOnionPerfAnalysis parsed = this.parse("{\"type\": \"onionperf\", "
+        + "\"version\": 1.0, \"skipped\": {\"data\": {\"op-x\": {}}}, "
+        + DATA + "}");
+    assertEquals("onionperf", parsed.type);
+    assertEquals(1.0, parsed.version);
+    assertMeasurements();
+  }
+
+  @Test
+  void missingTypeAndVersion() throws IOException {
+    ParsedOnionPerfAnalysis parsed = this.parse("{\"data\": {}}");
+    assertNull(parsed.type);
+    assertNull(parsed.version);
+    assertTrue(this.nicknames.isEmpty());
+  }
+
+  @Test
+  void malformedDocuments() {
+    for (String document : new String[] {"", "[]", "\"onionperf\"",
+        "{\"data\": {\"op-nl\": {\"tgen\": ", "{\"data\": [1]"}) {
+      assertThrows(IOException.class, () -> this.parse(document), document);
+    }
+  }
+}